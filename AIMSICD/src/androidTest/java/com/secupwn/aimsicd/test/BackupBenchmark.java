@@ -0,0 +1,147 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.test;
+
+import android.telephony.TelephonyManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+import com.secupwn.aimsicd.data.OperationalModule;
+import com.secupwn.aimsicd.data.ReferenceModule;
+import com.secupwn.aimsicd.data.backup.DatabaseBackup;
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Measure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+
+/**
+ * Backs up and restores a synthetic database with {@link DatabaseBackup}: throughput in
+ * both directions and the size of the backup compared to the realm file.
+ * <p>
+ * Results are written to logcat with the tag "BackupBenchmark".
+ */
+public class BackupBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "BackupBenchmark";
+    private static final int CELLS = 2000;
+    private static final int MEASURES = 500000;
+    private static final int BATCH = 10000;
+    private static final long START = 1483228800000L; // 2017-01-01
+
+    public void testBackupRestore() throws Exception {
+        Realm.init(getContext());
+
+        RealmConfiguration operational = new RealmConfiguration.Builder()
+                .name("benchmark-backup.realm")
+                .modules(new OperationalModule())
+                .build();
+        RealmConfiguration reference = new RealmConfiguration.Builder()
+                .name("benchmark-backup-reference.realm")
+                .modules(new ReferenceModule())
+                .build();
+        Realm.deleteRealm(operational);
+        Realm.deleteRealm(reference);
+        Realm.getInstance(reference).close();
+
+        fill(operational);
+        Realm.compactRealm(operational);
+        long realmSize = new File(operational.getPath()).length();
+
+        File file = new File(getContext().getCacheDir(), "benchmark.backup");
+        long backupStart = System.nanoTime();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+        try {
+            DatabaseBackup.backup(out, operational, reference);
+        } finally {
+            out.close();
+        }
+        long backupMs = (System.nanoTime() - backupStart) / 1000000;
+
+        long restoreStart = System.nanoTime();
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+        try {
+            DatabaseBackup.restore(in, operational, reference);
+        } finally {
+            in.close();
+        }
+        long restoreMs = (System.nanoTime() - restoreStart) / 1000000;
+
+        long backupSize = file.length();
+        Log.i(TAG, String.format("realm file %d bytes, backup %d bytes (ratio %.2f)",
+                realmSize, backupSize, (double) backupSize / realmSize));
+        Log.i(TAG, String.format("backup: %d ms (%.1f MB/s of realm data)", backupMs, mbPerSecond(realmSize, backupMs)));
+        Log.i(TAG, String.format("restore: %d ms (%.1f MB/s of realm data)", restoreMs, mbPerSecond(realmSize, restoreMs)));
+
+        Realm realm = Realm.getInstance(operational);
+        try {
+            assertEquals(CELLS, realm.where(BaseTransceiverStation.class).count());
+            assertEquals(MEASURES, realm.where(Measure.class).count());
+            assertEquals(MEASURES, realm.where(Measure.class).isNotNull("baseStation").count());
+        } finally {
+            realm.close();
+        }
+
+        file.delete();
+        Realm.deleteRealm(operational);
+        Realm.deleteRealm(reference);
+    }
+
+    private static double mbPerSecond(long bytes, long ms) {
+        return bytes / 1048576.0 / Math.max(ms, 1) * 1000;
+    }
+
+    private void fill(RealmConfiguration configuration) {
+        Random random = new Random(42);
+        Realm realm = Realm.getInstance(configuration);
+        try {
+            BaseTransceiverStation[] stations = new BaseTransceiverStation[CELLS];
+            realm.beginTransaction();
+            for (int i = 0; i < CELLS; i++) {
+                BaseTransceiverStation station = realm.createObject(BaseTransceiverStation.class);
+                station.setMobileCountryCode(260);
+                station.setMobileNetworkCode(1 + random.nextInt(3));
+                station.setLocationAreaCode(1000 + random.nextInt(50));
+                station.setCellId(random.nextInt(1 << 28));
+                station.setPrimaryScramblingCode(random.nextInt(512));
+                station.setTimeFirst(START);
+                station.setTimeLast(START);
+                station.setLatitudeE6(GeoFixedPoint.toFixed(52.0 + random.nextDouble() * 0.5));
+                station.setLongitudeE6(GeoFixedPoint.toFixed(21.0 + random.nextDouble() * 0.5));
+                stations[i] = station;
+            }
+            realm.commitTransaction();
+
+            for (int i = 0; i < MEASURES; i += BATCH) {
+                realm.beginTransaction();
+                for (int j = i; j < i + BATCH; j++) {
+                    Measure measure = realm.createObject(Measure.class);
+                    measure.setBaseStation(stations[random.nextInt(CELLS)]);
+                    measure.setTime(START + j * 15000L);
+                    measure.setLatitudeE6(GeoFixedPoint.toFixed(52.0 + random.nextDouble() * 0.5));
+                    measure.setLongitudeE6(GeoFixedPoint.toFixed(21.0 + random.nextDouble() * 0.5));
+                    measure.setAccuracy(10f);
+                    measure.setRxSignal(-50 - random.nextInt(60));
+                    measure.setRadioAccessTechnology(TelephonyManager.NETWORK_TYPE_LTE);
+                    measure.setTimingAdvance(Integer.MAX_VALUE);
+                }
+                realm.commitTransaction();
+            }
+        } finally {
+            realm.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.secupwn.aimsicd.smsdetection.DetectionStringMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scans a synthetic radio logcat with the {@link String#contains} loop the SMS detector
+ * used before and with the {@link DetectionStringMatcher}, for the default detection
+ * strings plus some user added ones as on a customized install.
+ * <p>
+ * Only the results are asserted, the timings are written to logcat with the tag
+ * "DetectionStringMatcherBenchmark".
+ */
+public class DetectionStringMatcherBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "DetectionStringMatcherBenchmark";
+    private static final int LINES = 200000;
+    private static final int ROUNDS = 5;
+    private static final int TYPE0 = 1, MWI = 2, WAP = 3;
+
+    /**
+     * The detectable default strings of {@link com.secupwn.aimsicd.data.DefaultDataTransaction}
+     */
+    private static final String[] STRINGS = {
+            "Received short message type 0",
+            "Received voice mail indicator clear SMS shouldStore=false",
+            "isTypeZero=true",
+            "incoming msg. Mti 0 ProtocolID 0 DCS 0x04 class -1",
+            "SMS TP-PID:0 data coding scheme: 4",
+    };
+    private static final int[] TYPES = {TYPE0, MWI, TYPE0, WAP, WAP};
+
+    private static final String[] TEMPLATES = {
+            "D/RILJ    ( 1489): [%d]> SIGNAL_STRENGTH",
+            "D/RILJ    ( 1489): [%d]< SIGNAL_STRENGTH {14, 99, -120, -160, -120, -1, -1, 99, 2147483647, gsm|lte}",
+            "D/RILJ    ( 1489): [%d]< VOICE_REGISTRATION_STATE {1, 5a3c, 0130c4e1, 3, null, null, 0}",
+            "D/RILJ    ( 1489): [%d]< GET_NEIGHBORING_CELL_IDS {[5a3c0130c4e2 at -101], [psc: 261 at -95]}",
+            "D/GsmSST  ( 1489): [GsmSST] Poll ServiceState done: oldSS=[0 home T-Mobile 26201 UMTS] %d",
+            "D/SMS     ( 1489): SMS TP-PID:%d data coding scheme: 0",
+    };
+
+    public void testMatcherAgainstContains() {
+        List<String> strings = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (int i = 0; i < STRINGS.length; i++) {
+            strings.add(STRINGS[i]);
+            types.add(TYPES[i]);
+        }
+        for (int i = 0; i < 20; i++) {
+            strings.add("SMS TP-PID:" + (64 + i) + " data coding scheme: " + (200 + i));
+            types.add(MWI);
+        }
+
+        DetectionStringMatcher.Builder builder = new DetectionStringMatcher.Builder();
+        for (int i = 0; i < strings.size(); i++) {
+            builder.add(strings.get(i), types.get(i));
+        }
+        DetectionStringMatcher matcher = builder.build();
+
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            if (random.nextInt(1000) == 0) {
+                lines.add("D/SMS     ( 1489): " + STRINGS[random.nextInt(STRINGS.length)]);
+            } else {
+                lines.add(String.format(TEMPLATES[random.nextInt(TEMPLATES.length)], random.nextInt(10000)));
+            }
+        }
+
+        long naiveBest = Long.MAX_VALUE;
+        long matcherBest = Long.MAX_VALUE;
+        int naiveHits = 0;
+        int matcherHits = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            naiveHits = 0;
+            for (String line : lines) {
+                naiveHits += naive(strings, types, line);
+            }
+            naiveBest = Math.min(naiveBest, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            matcherHits = 0;
+            for (String line : lines) {
+                matcherHits += matcher.match(line);
+            }
+            matcherBest = Math.min(matcherBest, System.nanoTime() - start);
+        }
+
+        assertEquals(naiveHits, matcherHits);
+        Log.i(TAG, String.format("%d strings, %d lines: contains %d ns/line, matcher %d ns/line (%d states)",
+                strings.size(), lines.size(), naiveBest / lines.size(), matcherBest / lines.size(),
+                matcher.size()));
+    }
+
+    private static int naive(List<String> strings, List<Integer> types, String line) {
+        for (int i = 0; i < strings.size(); i++) {
+            if (line.contains(strings.get(i))) {
+                return types.get(i);
+            }
+        }
+        return DetectionStringMatcher.NO_MATCH;
+    }
+}
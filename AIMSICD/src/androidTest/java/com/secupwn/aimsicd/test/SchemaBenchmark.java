@@ -0,0 +1,160 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.test;
+
+import android.telephony.TelephonyManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Random;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+
+/**
+ * Compares the v1 (linked GpsLocation, Date, String RAT) and the compact v2 layout
+ * of the Measure table: file size, insert time and a time/area range query.
+ * <p>
+ * Both layouts are built with a {@link DynamicRealm} in separate files so that the
+ * benchmark doesn't depend on the model classes compiled into the app.
+ * Results are written to logcat with the tag "SchemaBenchmark".
+ */
+public class SchemaBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "SchemaBenchmark";
+    private static final int ROWS = 1000000;
+    private static final int BATCH = 10000;
+    private static final long START = 1483228800000L; // 2017-01-01
+
+    public void testMeasureLayouts() {
+        Realm.init(getContext());
+
+        long v1Size = run("v1", false);
+        long v2Size = run("v2", true);
+
+        Log.i(TAG, String.format("v2/v1 file size ratio: %.2f", (double) v2Size / v1Size));
+        assertTrue(v2Size < v1Size);
+    }
+
+    private long run(String name, boolean compact) {
+        RealmConfiguration config = new RealmConfiguration.Builder()
+                .name("benchmark-" + name + ".realm")
+                .build();
+        Realm.deleteRealm(config);
+
+        DynamicRealm realm = DynamicRealm.getInstance(config);
+        try {
+            realm.beginTransaction();
+            createSchema(realm.getSchema(), compact);
+            realm.commitTransaction();
+
+            Random random = new Random(42);
+            long insertStart = System.nanoTime();
+            for (int i = 0; i < ROWS; i += BATCH) {
+                realm.beginTransaction();
+                for (int j = i; j < i + BATCH; j++) {
+                    insert(realm, compact, j, random);
+                }
+                realm.commitTransaction();
+            }
+            long insertMs = (System.nanoTime() - insertStart) / 1000000;
+
+            long queryStart = System.nanoTime();
+            long hits = query(realm, compact);
+            long queryMs = (System.nanoTime() - queryStart) / 1000000;
+
+            Log.i(TAG, String.format("%s: inserted %d rows in %d ms, query returned %d rows in %d ms",
+                    name, ROWS, insertMs, hits, queryMs));
+        } finally {
+            realm.close();
+        }
+
+        Realm.compactRealm(config);
+        long size = new File(config.getPath()).length();
+        Log.i(TAG, String.format("%s: file size %d bytes (%.1f bytes/row)", name, size, (double) size / ROWS));
+        Realm.deleteRealm(config);
+        return size;
+    }
+
+    private void createSchema(RealmSchema schema, boolean compact) {
+        RealmObjectSchema measure = schema.create("Measure")
+                .addField("cellId", int.class)
+                .addField("rxSignal", int.class)
+                .addField("timingAdvance", int.class)
+                .addField("submitted", boolean.class)
+                .addField("neighbor", boolean.class);
+        if (compact) {
+            measure.addField("time", long.class)
+                    .addIndex("time")
+                    .addField("latitudeE6", int.class)
+                    .addField("longitudeE6", int.class)
+                    .addField("accuracy", float.class)
+                    .addField("radioAccessTechnology", int.class);
+        } else {
+            RealmObjectSchema gpsLocation = schema.create("GpsLocation")
+                    .addField("latitude", double.class)
+                    .addField("longitude", double.class)
+                    .addField("accuracy", double.class);
+            measure.addField("time", Date.class)
+                    .addField("radioAccessTechnology", String.class)
+                    .addRealmObjectField("gpsLocation", gpsLocation);
+        }
+    }
+
+    private void insert(DynamicRealm realm, boolean compact, int row, Random random) {
+        long time = START + row * 15000L;
+        double lat = 52.0 + random.nextDouble() * 0.5;
+        double lon = 21.0 + random.nextDouble() * 0.5;
+
+        DynamicRealmObject measure = realm.createObject("Measure");
+        measure.setInt("cellId", random.nextInt(500));
+        measure.setInt("rxSignal", -50 - random.nextInt(60));
+        measure.setInt("timingAdvance", Integer.MAX_VALUE);
+        if (compact) {
+            measure.setLong("time", time);
+            measure.setInt("latitudeE6", GeoFixedPoint.toFixed(lat));
+            measure.setInt("longitudeE6", GeoFixedPoint.toFixed(lon));
+            measure.setFloat("accuracy", 10f);
+            measure.setInt("radioAccessTechnology", TelephonyManager.NETWORK_TYPE_LTE);
+        } else {
+            DynamicRealmObject gpsLocation = realm.createObject("GpsLocation");
+            gpsLocation.setDouble("latitude", lat);
+            gpsLocation.setDouble("longitude", lon);
+            gpsLocation.setDouble("accuracy", 10.0);
+            measure.setDate("time", new Date(time));
+            measure.setString("radioAccessTechnology", "LTE");
+            measure.setObject("gpsLocation", gpsLocation);
+        }
+    }
+
+    /**
+     * One day of measurements inside a small bounding box.
+     */
+    private long query(DynamicRealm realm, boolean compact) {
+        long from = START + ROWS / 2 * 15000L;
+        long to = from + 24 * 3600 * 1000L;
+        if (compact) {
+            return realm.where("Measure")
+                    .between("time", from, to)
+                    .between("latitudeE6", GeoFixedPoint.toFixed(52.1), GeoFixedPoint.toFixed(52.3))
+                    .between("longitudeE6", GeoFixedPoint.toFixed(21.1), GeoFixedPoint.toFixed(21.3))
+                    .count();
+        }
+        return realm.where("Measure")
+                .between("time", new Date(from), new Date(to))
+                .between("gpsLocation.latitude", 52.1, 52.3)
+                .between("gpsLocation.longitude", 21.1, 21.3)
+                .count();
+    }
+}
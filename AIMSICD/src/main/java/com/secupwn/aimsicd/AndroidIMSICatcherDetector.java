@@ -7,13 +7,16 @@ package com.secupwn.aimsicd;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.os.Vibrator;
 import android.support.v4.content.LocalBroadcastManager;
 import android.util.SparseArray;
 
 import com.secupwn.aimsicd.constants.TinyDbKeys;
+import com.secupwn.aimsicd.data.AimsicdRealmMigration;
 import com.secupwn.aimsicd.data.DefaultDataTransaction;
+import com.secupwn.aimsicd.data.OperationalModule;
+import com.secupwn.aimsicd.data.ReferenceRealm;
 import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.AlertPipeline;
 import com.secupwn.aimsicd.utils.BaseAsyncTask;
 import com.secupwn.aimsicd.utils.TinyDB;
 import com.secupwn.aimsicd.utils.UncaughtExceptionLogger;
@@ -65,13 +68,18 @@ public class AndroidIMSICatcherDetector extends InjectionApplication {
 
         TinyDB.getInstance().init(getApplicationContext());
         TinyDB.getInstance().putBoolean(TinyDbKeys.FINISHED_LOAD_IN_MAP, true);
+        AlertPipeline.getInstance().init(getApplicationContext());
     }
 
     private void initRealm() {
         Realm.init(this);
+        // must be ready before the default realm migration copies Import rows into it
+        ReferenceRealm.init(this);
 
         RealmConfiguration realmConfiguration = new RealmConfiguration.Builder()
-                .deleteRealmIfMigrationNeeded()
+                .modules(new OperationalModule())
+                .schemaVersion(AimsicdRealmMigration.SCHEMA_VERSION)
+                .migration(new AimsicdRealmMigration())
                 .initialData(new DefaultDataTransaction())
                 .build();
 
@@ -157,7 +165,7 @@ public class AndroidIMSICatcherDetector extends InjectionApplication {
             LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
 
             if (vibrate && status.ordinal() >= minVibrateLevel) {
-                ((Vibrator) getSystemService(VIBRATOR_SERVICE)).vibrate(100);
+                AlertPipeline.getInstance().vibrate(100);
             }
         }
         currentStatus = status;
@@ -41,6 +41,8 @@ public class DrawerMenu {
          * Constants of item of 'settings' section of menu
          */
         public static class DATABASE_SETTINGS {
+            public static final int BACKUP_DB = 310;  //Backup DataBase
+            public static final int RESTORE_DB = 320; //Restore DataBase
             public static final int RESET_DB = 330; //Reset DataBase
         }
 
@@ -0,0 +1,242 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.Import;
+
+import java.util.Date;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
+import io.realm.Realm;
+import io.realm.RealmMigration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Migrates the default realm between schema versions.
+ * <p>
+ * Version history:
+ * <ul>
+ * <li>0: initial realm layout (linked {@code GpsLocation}, {@link Date} timestamps, String RAT)</li>
+ * <li>2: compact layout; {@code Measure}, {@code Import}, {@code Event} and
+ * {@code BaseTransceiverStation} store fixed-point coordinates inline, epoch millis
+ * and integer RAT codes</li>
+ * <li>3: {@code Import} moved out of the default realm into the {@link ReferenceRealm}</li>
+ * <li>4: {@code MeasureArchiveBlock} added, see {@link MeasureArchive}</li>
+ * <li>5: {@code NeighborObservation} added</li>
+ * <li>6: indexes on {@code Event.cellId} and {@code Event.dfId}, see {@link DatabaseQuery}</li>
+ * <li>7: {@code ServingCellInterval} added</li>
+ * </ul>
+ */
+@Slf4j
+public class AimsicdRealmMigration implements RealmMigration {
+
+    public static final long SCHEMA_VERSION = 7;
+
+    @Override
+    public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+        RealmSchema schema = realm.getSchema();
+        log.info("Migrating realm from schema version {} to {}", oldVersion, newVersion);
+
+        if (oldVersion < 2) {
+            migrateToCompactSchema(schema);
+            oldVersion = 2;
+        }
+
+        if (oldVersion < 3) {
+            moveImportsToReferenceRealm(realm);
+            schema.remove("Import");
+            oldVersion = 3;
+        }
+
+        if (oldVersion < 4) {
+            schema.create("MeasureArchiveBlock")
+                    .addRealmObjectField("baseStation", schema.get("BaseTransceiverStation"))
+                    .addField("timeStart", long.class, FieldAttribute.INDEXED)
+                    .addField("timeEnd", long.class)
+                    .addField("count", int.class)
+                    .addField("rxSignalSum", long.class)
+                    .addField("submitted", boolean.class)
+                    .addField("data", byte[].class, FieldAttribute.REQUIRED);
+            oldVersion = 4;
+        }
+
+        if (oldVersion < 5) {
+            schema.create("NeighborObservation")
+                    .addField("servingLocationAreaCode", int.class)
+                    .addField("servingCellId", int.class, FieldAttribute.INDEXED)
+                    .addField("neighborKey", long.class, FieldAttribute.INDEXED)
+                    .addField("locationAreaCode", int.class)
+                    .addField("cellId", int.class)
+                    .addField("primaryScramblingCode", int.class)
+                    .addField("radioAccessTechnology", int.class)
+                    .addField("intervalStart", long.class, FieldAttribute.INDEXED)
+                    .addField("timeLast", long.class)
+                    .addField("samples", int.class)
+                    .addField("rssiSum", long.class)
+                    .addField("latitudeE6", int.class)
+                    .addField("longitudeE6", int.class);
+            oldVersion = 5;
+        }
+
+        if (oldVersion < 6) {
+            schema.get("Event")
+                    .addIndex("cellId")
+                    .addIndex("dfId");
+            oldVersion = 6;
+        }
+
+        if (oldVersion < 7) {
+            schema.create("ServingCellInterval")
+                    .addField("subscriptionId", int.class)
+                    .addField("mobileCountryCode", int.class)
+                    .addField("mobileNetworkCode", int.class)
+                    .addField("locationAreaCode", int.class)
+                    .addField("cellId", int.class, FieldAttribute.INDEXED)
+                    .addField("primaryScramblingCode", int.class)
+                    .addField("radioAccessTechnology", int.class)
+                    .addField("timeStart", long.class, FieldAttribute.INDEXED)
+                    .addField("timeEnd", long.class)
+                    .addField("samples", int.class)
+                    .addField("signalMin", int.class)
+                    .addField("signalMax", int.class)
+                    .addField("signalSum", long.class);
+            oldVersion = 7;
+        }
+    }
+
+    private void migrateToCompactSchema(RealmSchema schema) {
+        RealmObjectSchema measure = schema.get("Measure");
+        inlineLocation(measure, true);
+        dateToMillis(measure, "time");
+        ratToCode(measure);
+        measure.addIndex("time");
+
+        RealmObjectSchema anImport = schema.get("Import");
+        inlineLocation(anImport, false);
+        dateToMillis(anImport, "timeFirst");
+        dateToMillis(anImport, "timeLast");
+        ratToCode(anImport);
+        anImport.addIndex("locationAreaCode");
+        anImport.addIndex("cellId");
+
+        RealmObjectSchema event = schema.get("Event");
+        inlineLocation(event, true);
+        dateToMillis(event, "timestamp");
+        event.addIndex("timestamp");
+
+        RealmObjectSchema baseStation = schema.get("BaseTransceiverStation");
+        inlineLocation(baseStation, false);
+        dateToMillis(baseStation, "timeFirst");
+        dateToMillis(baseStation, "timeLast");
+        baseStation.addIndex("locationAreaCode");
+        baseStation.addIndex("cellId");
+    }
+
+    /**
+     * Copies the already downloaded OCID data into the reference realm, which requires
+     * {@link ReferenceRealm#init(android.content.Context)} to have been called.
+     */
+    private void moveImportsToReferenceRealm(DynamicRealm realm) {
+        Realm reference = ReferenceRealm.getInstance();
+        try {
+            reference.beginTransaction();
+            for (DynamicRealmObject obj : realm.where("Import").findAll()) {
+                Import anImport = reference.createObject(Import.class);
+                anImport.setDbSource(obj.getString("dbSource"));
+                anImport.setRadioAccessTechnology(obj.getInt("radioAccessTechnology"));
+                anImport.setMobileCountryCode(obj.getInt("mobileCountryCode"));
+                anImport.setMobileNetworkCode(obj.getInt("mobileNetworkCode"));
+                anImport.setLocationAreaCode(obj.getInt("locationAreaCode"));
+                anImport.setCellId(obj.getInt("cellId"));
+                anImport.setPrimaryScramblingCode(obj.getInt("primaryScramblingCode"));
+                anImport.setLatitudeE6(obj.getInt("latitudeE6"));
+                anImport.setLongitudeE6(obj.getInt("longitudeE6"));
+                anImport.setGpsExact(obj.getBoolean("gpsExact"));
+                anImport.setAvgRange(obj.getInt("avgRange"));
+                anImport.setAvgSignal(obj.getInt("avgSignal"));
+                anImport.setSamples(obj.getInt("samples"));
+                anImport.setTimeFirst(obj.getLong("timeFirst"));
+                anImport.setTimeLast(obj.getLong("timeLast"));
+                anImport.setRejCause(obj.isNull("rejCause") ? null : obj.getInt("rejCause"));
+            }
+            reference.commitTransaction();
+        } catch (RuntimeException e) {
+            reference.cancelTransaction();
+            throw e;
+        } finally {
+            reference.close();
+        }
+    }
+
+    /**
+     * Copies the linked GpsLocation into inline fixed-point columns and deletes the
+     * no longer referenced GpsLocation object.
+     */
+    private void inlineLocation(RealmObjectSchema objectSchema, final boolean withAccuracy) {
+        objectSchema
+                .addField("latitudeE6", int.class)
+                .addField("longitudeE6", int.class);
+        if (withAccuracy) {
+            objectSchema.addField("accuracy", float.class);
+        }
+
+        objectSchema.transform(new RealmObjectSchema.Function() {
+            @Override
+            public void apply(DynamicRealmObject obj) {
+                DynamicRealmObject gpsLocation = obj.getObject("gpsLocation");
+                if (gpsLocation == null) {
+                    return;
+                }
+                obj.setInt("latitudeE6", GeoFixedPoint.toFixed(gpsLocation.getDouble("latitude")));
+                obj.setInt("longitudeE6", GeoFixedPoint.toFixed(gpsLocation.getDouble("longitude")));
+                if (withAccuracy) {
+                    obj.setFloat("accuracy", (float) gpsLocation.getDouble("accuracy"));
+                }
+                gpsLocation.deleteFromRealm();
+            }
+        });
+
+        objectSchema.removeField("gpsLocation");
+    }
+
+    private void dateToMillis(RealmObjectSchema objectSchema, final String field) {
+        final String tmpField = field + "Millis";
+        objectSchema
+                .addField(tmpField, long.class)
+                .transform(new RealmObjectSchema.Function() {
+                    @Override
+                    public void apply(DynamicRealmObject obj) {
+                        Date date = obj.getDate(field);
+                        obj.setLong(tmpField, date == null ? 0L : date.getTime());
+                    }
+                })
+                .removeField(field)
+                .renameField(tmpField, field);
+    }
+
+    private void ratToCode(RealmObjectSchema objectSchema) {
+        objectSchema
+                .addField("radioAccessTechnologyCode", int.class)
+                .transform(new RealmObjectSchema.Function() {
+                    @Override
+                    public void apply(DynamicRealmObject obj) {
+                        obj.setInt("radioAccessTechnologyCode",
+                                RadioAccessTechnology.fromName(obj.getString("radioAccessTechnology")));
+                    }
+                })
+                .removeField("radioAccessTechnology")
+                .renameField("radioAccessTechnologyCode", "radioAccessTechnology");
+    }
+
+    @Override
+    public int hashCode() {
+        return AimsicdRealmMigration.class.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AimsicdRealmMigration;
+    }
+}
@@ -0,0 +1,292 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Event;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import io.realm.Realm;
+import io.realm.Sort;
+
+import static java.lang.String.valueOf;
+
+/**
+ * Streams the rows matching a {@link DatabaseQuery} to CSV or JSON.
+ * <p>
+ * Rows are read lazily from the realm results and written one at a time through a
+ * buffered writer which is flushed every {@link #CHUNK_SIZE} rows, so memory use does
+ * not depend on the number of exported rows. Measurements include the
+ * {@link MeasureArchive archived} ones.
+ * <p>
+ * Exports of large tables take a while, don't call this on the main thread.
+ */
+public final class DatabaseExporter {
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    static final int CHUNK_SIZE = 1000;
+
+    private static final String[] EVENT_COLUMNS = {"timestamp", "cellId", "locationAreaCode",
+            "primaryScramblingCode", "latitude", "longitude", "accuracy", "dfId", "dfDescription", "message"};
+    private static final boolean[] EVENT_RAW = {true, true, true, true, true, true, true, true, false, false};
+
+    private static final String[] MEASURE_COLUMNS = {"time", "mobileCountryCode", "mobileNetworkCode",
+            "locationAreaCode", "cellId", "latitude", "longitude", "accuracy", "rxSignal",
+            "radioAccessTechnology", "timingAdvance", "submitted", "neighbor"};
+    private static final boolean[] MEASURE_RAW = {true, true, true, true, true, true, true, true, true,
+            false, true, true, true};
+
+    private static final String[] BASE_STATION_COLUMNS = {"mobileCountryCode", "mobileNetworkCode",
+            "locationAreaCode", "cellId", "primaryScramblingCode", "timeFirst", "timeLast", "latitude", "longitude"};
+    private static final boolean[] BASE_STATION_RAW = {true, true, true, true, true, true, true, true, true};
+
+    private DatabaseExporter() {
+    }
+
+    /**
+     * @return The number of exported rows
+     */
+    public static long export(Realm realm, DatabaseQuery query, Format format, File file) throws IOException {
+        Writer writer = new BufferedWriter(new FileWriter(file), 64 * 1024);
+        try {
+            return export(realm, query, format, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the matching rows ordered by time. The writer is flushed but not closed.
+     *
+     * @return The number of exported rows
+     */
+    public static long export(Realm realm, DatabaseQuery query, Format format, Writer writer) throws IOException {
+        switch (query.getTable()) {
+            case EVENT:
+                return exportEvents(realm, query, open(format, writer, EVENT_COLUMNS, EVENT_RAW));
+            case MEASURE:
+                return exportMeasures(realm, query, open(format, writer, MEASURE_COLUMNS, MEASURE_RAW));
+            case BASE_STATION:
+                return exportBaseStations(realm, query, open(format, writer, BASE_STATION_COLUMNS, BASE_STATION_RAW));
+            default:
+                throw new IllegalArgumentException("Unknown table " + query.getTable());
+        }
+    }
+
+    /**
+     * @param raw Per column, true if the values are JSON numbers or booleans and written unquoted
+     */
+    static RowWriter open(Format format, Writer writer, String[] columns, boolean[] raw) throws IOException {
+        return format == Format.JSON ? new JsonRowWriter(writer, columns, raw) : new CsvRowWriter(writer, columns);
+    }
+
+    private static long exportEvents(Realm realm, DatabaseQuery query, RowWriter out) throws IOException {
+        String[] row = new String[EVENT_COLUMNS.length];
+        long count = 0;
+        for (Event event : query.events(realm).findAllSorted("timestamp", Sort.ASCENDING)) {
+            row[0] = valueOf(event.getTimestamp());
+            row[1] = valueOf(event.getCellId());
+            row[2] = valueOf(event.getLocationAreaCode());
+            row[3] = valueOf(event.getPrimaryScramblingCode());
+            row[4] = valueOf(event.getLatitude());
+            row[5] = valueOf(event.getLongitude());
+            row[6] = valueOf(event.getAccuracy());
+            row[7] = valueOf(event.getDfId());
+            row[8] = event.getDfDescription();
+            row[9] = event.getMessage();
+            out.write(row);
+            count++;
+        }
+        out.finish();
+        return count;
+    }
+
+    private static long exportMeasures(Realm realm, DatabaseQuery query, final RowWriter out) throws IOException {
+        final String[] row = new String[MEASURE_COLUMNS.length];
+        final long[] count = new long[1];
+        try {
+            MeasureArchive.forEach(query.archivedMeasures(realm), query.measures(realm),
+                    query.getFrom(), query.getTo(), new MeasureArchive.Visitor() {
+                        @Override
+                        public void visit(BaseTransceiverStation baseStation, MeasureRecord measure) {
+                            row[0] = valueOf(measure.getTime());
+                            row[1] = baseStation == null ? null : valueOf(baseStation.getMobileCountryCode());
+                            row[2] = baseStation == null ? null : valueOf(baseStation.getMobileNetworkCode());
+                            row[3] = baseStation == null ? null : valueOf(baseStation.getLocationAreaCode());
+                            row[4] = baseStation == null ? null : valueOf(baseStation.getCellId());
+                            row[5] = valueOf(measure.getLatitude());
+                            row[6] = valueOf(measure.getLongitude());
+                            row[7] = valueOf(measure.getAccuracy());
+                            row[8] = valueOf(measure.getRxSignal());
+                            row[9] = measure.getRadioAccessTechnologyName();
+                            row[10] = valueOf(measure.getTimingAdvance());
+                            row[11] = valueOf(measure.isSubmitted());
+                            row[12] = valueOf(measure.isNeighbor());
+                            try {
+                                out.write(row);
+                            } catch (IOException e) {
+                                throw new ExportException(e);
+                            }
+                            count[0]++;
+                        }
+                    });
+        } catch (ExportException e) {
+            throw e.getCause();
+        }
+        out.finish();
+        return count[0];
+    }
+
+    private static long exportBaseStations(Realm realm, DatabaseQuery query, RowWriter out) throws IOException {
+        String[] row = new String[BASE_STATION_COLUMNS.length];
+        long count = 0;
+        for (BaseTransceiverStation baseStation : query.baseStations(realm).findAllSorted("timeLast", Sort.ASCENDING)) {
+            row[0] = valueOf(baseStation.getMobileCountryCode());
+            row[1] = valueOf(baseStation.getMobileNetworkCode());
+            row[2] = valueOf(baseStation.getLocationAreaCode());
+            row[3] = valueOf(baseStation.getCellId());
+            row[4] = valueOf(baseStation.getPrimaryScramblingCode());
+            row[5] = valueOf(baseStation.getTimeFirst());
+            row[6] = valueOf(baseStation.getTimeLast());
+            row[7] = valueOf(baseStation.getLatitude());
+            row[8] = valueOf(baseStation.getLongitude());
+            out.write(row);
+            count++;
+        }
+        out.finish();
+        return count;
+    }
+
+    /**
+     * Carries an {@link IOException} out of a {@link MeasureArchive.Visitor}
+     */
+    private static final class ExportException extends RuntimeException {
+        ExportException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    abstract static class RowWriter {
+        private final Writer writer;
+        private int pending;
+
+        RowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        void write(String[] row) throws IOException {
+            writeRow(row);
+            if (++pending >= CHUNK_SIZE) {
+                writer.flush();
+                pending = 0;
+            }
+        }
+
+        void finish() throws IOException {
+            writer.flush();
+        }
+
+        abstract void writeRow(String[] row) throws IOException;
+    }
+
+    private static final class CsvRowWriter extends RowWriter {
+        private final CSVWriter csv;
+
+        CsvRowWriter(Writer writer, String[] columns) {
+            super(writer);
+            csv = new CSVWriter(writer);
+            csv.writeNext(columns);
+        }
+
+        @Override
+        void writeRow(String[] row) {
+            csv.writeNext(row);
+        }
+    }
+
+    private static final class JsonRowWriter extends RowWriter {
+        private final Writer writer;
+        private final String[] columns;
+        private final boolean[] raw;
+        private boolean first = true;
+
+        JsonRowWriter(Writer writer, String[] columns, boolean[] raw) throws IOException {
+            super(writer);
+            this.writer = writer;
+            this.columns = columns;
+            this.raw = raw;
+            writer.write('[');
+        }
+
+        @Override
+        void writeRow(String[] row) throws IOException {
+            writer.write(first ? "\n{" : ",\n{");
+            first = false;
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write('"');
+                writer.write(columns[i]);
+                writer.write("\":");
+                if (row[i] == null) {
+                    writer.write("null");
+                } else if (raw[i]) {
+                    writer.write(row[i]);
+                } else {
+                    writeString(row[i]);
+                }
+            }
+            writer.write('}');
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.write("\n]\n");
+            super.finish();
+        }
+
+        private void writeString(String value) throws IOException {
+            writer.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"':
+                        writer.write("\\\"");
+                        break;
+                    case '\\':
+                        writer.write("\\\\");
+                        break;
+                    case '\n':
+                        writer.write("\\n");
+                        break;
+                    case '\r':
+                        writer.write("\\r");
+                        break;
+                    case '\t':
+                        writer.write("\\t");
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            writer.write(String.format("\\u%04x", (int) c));
+                        } else {
+                            writer.write(c);
+                        }
+                }
+            }
+            writer.write('"');
+        }
+    }
+}
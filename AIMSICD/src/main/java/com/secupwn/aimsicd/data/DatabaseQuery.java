@@ -0,0 +1,141 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Event;
+import com.secupwn.aimsicd.data.model.Measure;
+import com.secupwn.aimsicd.data.model.MeasureArchiveBlock;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmQuery;
+import lombok.Getter;
+
+/**
+ * Filter over the {@link Table tables} used for incident analysis, e.g.
+ * <pre>
+ * DatabaseQuery.of(Table.EVENT).between(from, to).cellId(cid).detectionType(4)
+ * </pre>
+ * Conditions on indexed fields are applied first so realm can use the index to
+ * narrow the rows before the remaining conditions are checked.
+ * Unset criteria don't filter.
+ */
+@Getter
+public final class DatabaseQuery {
+
+    public enum Table {
+        EVENT("timestamp", "cellId", "locationAreaCode"),
+        MEASURE("time", "baseStation.cellId", "baseStation.locationAreaCode"),
+        BASE_STATION("timeLast", "cellId", "locationAreaCode");
+
+        private final String timeField;
+        private final String cellIdField;
+        private final String lacField;
+
+        Table(String timeField, String cellIdField, String lacField) {
+            this.timeField = timeField;
+            this.cellIdField = cellIdField;
+            this.lacField = lacField;
+        }
+    }
+
+    private final Table table;
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private Integer cellId;
+    private Integer locationAreaCode;
+    private Integer detectionType;
+
+    private DatabaseQuery(Table table) {
+        this.table = table;
+    }
+
+    public static DatabaseQuery of(Table table) {
+        return new DatabaseQuery(table);
+    }
+
+    /**
+     * @param from Inclusive, milliseconds since epoch
+     * @param to   Inclusive, milliseconds since epoch
+     */
+    public DatabaseQuery between(long from, long to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+
+    public DatabaseQuery cellId(int cellId) {
+        this.cellId = cellId;
+        return this;
+    }
+
+    public DatabaseQuery locationAreaCode(int locationAreaCode) {
+        this.locationAreaCode = locationAreaCode;
+        return this;
+    }
+
+    /**
+     * Only applies to {@link Table#EVENT}, see {@link Event#getDfId()}
+     */
+    public DatabaseQuery detectionType(int dfId) {
+        if (table != Table.EVENT) {
+            throw new IllegalArgumentException("Detection type is only stored for events");
+        }
+        this.detectionType = dfId;
+        return this;
+    }
+
+    public RealmQuery<Event> events(Realm realm) {
+        checkTable(Table.EVENT);
+        RealmQuery<Event> query = withCell(realm.where(Event.class));
+        if (detectionType != null) {
+            query.equalTo("dfId", detectionType);
+        }
+        return withTime(query);
+    }
+
+    /**
+     * Live measurements only, see {@link #archivedMeasures(Realm)}
+     */
+    public RealmQuery<Measure> measures(Realm realm) {
+        checkTable(Table.MEASURE);
+        return withTime(withCell(realm.where(Measure.class)));
+    }
+
+    /**
+     * The archive blocks of the matching cells, without time filter since
+     * {@link MeasureArchive#forEach(RealmQuery, RealmQuery, long, long, MeasureArchive.Visitor)}
+     * filters the blocks and the rows inside them by time.
+     */
+    public RealmQuery<MeasureArchiveBlock> archivedMeasures(Realm realm) {
+        checkTable(Table.MEASURE);
+        return withCell(realm.where(MeasureArchiveBlock.class));
+    }
+
+    public RealmQuery<BaseTransceiverStation> baseStations(Realm realm) {
+        checkTable(Table.BASE_STATION);
+        return withTime(withCell(realm.where(BaseTransceiverStation.class)));
+    }
+
+    private <E extends RealmObject> RealmQuery<E> withCell(RealmQuery<E> query) {
+        if (cellId != null) {
+            query.equalTo(table.cellIdField, cellId);
+        }
+        if (locationAreaCode != null) {
+            query.equalTo(table.lacField, locationAreaCode);
+        }
+        return query;
+    }
+
+    private <E extends RealmObject> RealmQuery<E> withTime(RealmQuery<E> query) {
+        if (from != Long.MIN_VALUE || to != Long.MAX_VALUE) {
+            query.between(table.timeField, from, to);
+        }
+        return query;
+    }
+
+    private void checkTable(Table expected) {
+        if (table != expected) {
+            throw new IllegalStateException("Query is for " + table + ", not " + expected);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.secupwn.aimsicd.data;
+
+/**
+ * Conversion between degrees and the fixed-point (micro degree) coordinates
+ * stored inline in the realm models.
+ * <p>
+ * One micro degree is roughly 0.11 m at the equator, which is well below the
+ * accuracy of any fix we record, so nothing is lost by storing an {@code int}
+ * instead of a linked {@link com.secupwn.aimsicd.data.model.GpsLocation GpsLocation}.
+ */
+public final class GeoFixedPoint {
+
+    public static final double SCALE = 1e6;
+
+    private GeoFixedPoint() {
+    }
+
+    public static int toFixed(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    public static double toDegrees(int fixed) {
+        return fixed / SCALE;
+    }
+}
@@ -0,0 +1,301 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Measure;
+import com.secupwn.aimsicd.data.model.MeasureArchiveBlock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.OrderedRealmCollectionSnapshot;
+import io.realm.Realm;
+import io.realm.RealmModel;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Archive tier for old {@link Measure measurements}.
+ * <p>
+ * Measurements older than a cut-off are only needed for exports and OpenCellID uploads,
+ * so instead of keeping one realm object per row they are moved into per-cell
+ * {@link MeasureArchiveBlock blocks} encoded by {@link MeasureBlockCodec}. Use
+ * {@link #forEach(Realm, long, long, boolean, Visitor)} to read both tiers at once, in time order.
+ */
+@Slf4j
+public final class MeasureArchive {
+
+    public static final int DEFAULT_ARCHIVE_AGE_DAYS = 30;
+
+    /**
+     * Upper bound of rows per block, keeps decoding of a single block cheap.
+     */
+    static final int MAX_BLOCK_SIZE = 4096;
+
+    /**
+     * Upper bound of rows moved per transaction, the rest is archived on the next run.
+     */
+    static final int MAX_ROWS_PER_RUN = 50000;
+
+    private static final String SUBMITTED = ":1";
+
+    public interface Visitor {
+        void visit(BaseTransceiverStation baseStation, MeasureRecord measure);
+    }
+
+    private MeasureArchive() {
+    }
+
+    /**
+     * Moves measurements older than the given amount of days into the archive.
+     * Measurements without a {@link BaseTransceiverStation} are left alone.
+     */
+    public static Realm.Transaction archiveOlderThan(final int days) {
+        return new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+                archive(realm, cutoff);
+            }
+        };
+    }
+
+    static void archive(Realm realm, long cutoff) {
+        OrderedRealmCollectionSnapshot<Measure> old = realm.where(Measure.class)
+                .lessThan("time", cutoff)
+                .isNotNull("baseStation")
+                .findAllSorted("time", Sort.ASCENDING)
+                .createSnapshot();
+        int rows = Math.min(old.size(), MAX_ROWS_PER_RUN);
+        if (rows == 0) {
+            return;
+        }
+
+        // group by cell and upload state, old is time ordered so every group is too
+        Map<String, List<MeasureRecord>> groups = new LinkedHashMap<>();
+        Map<String, BaseTransceiverStation> stations = new LinkedHashMap<>();
+        for (int i = 0; i < rows; i++) {
+            Measure measure = old.get(i);
+            BaseTransceiverStation baseStation = measure.getBaseStation();
+            String key = groupKey(baseStation, measure.isSubmitted());
+            List<MeasureRecord> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+                stations.put(key, baseStation);
+            }
+            group.add(MeasureRecord.from(measure));
+        }
+
+        int blocks = 0;
+        for (Map.Entry<String, List<MeasureRecord>> entry : groups.entrySet()) {
+            List<MeasureRecord> group = entry.getValue();
+            boolean submitted = entry.getKey().endsWith(SUBMITTED);
+            for (int from = 0; from < group.size(); from += MAX_BLOCK_SIZE) {
+                List<MeasureRecord> slice = group.subList(from, Math.min(group.size(), from + MAX_BLOCK_SIZE));
+                writeBlock(realm, stations.get(entry.getKey()), slice, submitted);
+                blocks++;
+            }
+        }
+
+        for (int i = 0; i < rows; i++) {
+            old.get(i).deleteFromRealm();
+        }
+        log.info("Archived {} measurements into {} blocks", rows, blocks);
+    }
+
+    /**
+     * Cells are told apart by MCC, MNC, LAC and CID like the {@link BaseTransceiverStation} rows,
+     * the CID alone is reused across LACs and operators.
+     */
+    private static String groupKey(BaseTransceiverStation baseStation, boolean submitted) {
+        return baseStation.getMobileCountryCode() + ":" + baseStation.getMobileNetworkCode() + ":"
+                + baseStation.getLocationAreaCode() + ":" + baseStation.getCellId()
+                + (submitted ? SUBMITTED : ":0");
+    }
+
+    private static void writeBlock(Realm realm, BaseTransceiverStation baseStation,
+                                   List<MeasureRecord> records, boolean submitted) {
+        long signalSum = 0;
+        for (MeasureRecord record : records) {
+            signalSum += record.getRxSignal();
+        }
+        MeasureArchiveBlock block = realm.createObject(MeasureArchiveBlock.class);
+        block.setBaseStation(baseStation);
+        block.setTimeStart(records.get(0).getTime());
+        block.setTimeEnd(records.get(records.size() - 1).getTime());
+        block.setCount(records.size());
+        block.setRxSignalSum(signalSum);
+        block.setSubmitted(submitted);
+        block.setData(MeasureBlockCodec.encode(records));
+    }
+
+    /**
+     * Visits all measurements taken between {@code from} and {@code to} (inclusive), archived
+     * and live ones merged in time order.
+     *
+     * @param unsubmittedOnly Only visit measurements not yet uploaded to OpenCellID
+     */
+    public static void forEach(Realm realm, long from, long to, boolean unsubmittedOnly, Visitor visitor) {
+        RealmQuery<MeasureArchiveBlock> blocks = realm.where(MeasureArchiveBlock.class);
+        RealmQuery<Measure> live = realm.where(Measure.class);
+        if (unsubmittedOnly) {
+            blocks.equalTo("submitted", false);
+            live.equalTo("submitted", false);
+        }
+        forEach(blocks, live, from, to, visitor);
+    }
+
+    /**
+     * Like {@link #forEach(Realm, long, long, boolean, Visitor)} with caller supplied filters.
+     * Both classes link their {@code baseStation}, so the same cell filters apply to both queries.
+     * The time range is added here.
+     * <p>
+     * Blocks are per cell and overlap in time, so they are merged with the live rows: a block
+     * is decoded once the merge reaches its start time and dropped when it is used up, only
+     * the blocks overlapping the current time are held in memory. Equal times are visited
+     * archived first.
+     */
+    public static void forEach(RealmQuery<MeasureArchiveBlock> blocks, RealmQuery<Measure> live,
+                               long from, long to, Visitor visitor) {
+        RealmResults<MeasureArchiveBlock> archived = blocks.lessThanOrEqualTo("timeStart", to)
+                .greaterThanOrEqualTo("timeEnd", from)
+                .findAllSorted("timeStart", Sort.ASCENDING);
+        RealmResults<Measure> rows = live.between("time", from, to)
+                .findAllSorted("time", Sort.ASCENDING);
+
+        PriorityQueue<BlockCursor> open = new PriorityQueue<>();
+        int nextBlock = 0;
+        int nextRow = 0;
+        Measure row = rows.isEmpty() ? null : rows.get(0);
+        while (true) {
+            BlockCursor head = open.peek();
+            boolean hasNext = head != null || row != null;
+            long next = head != null ? head.time() : Long.MAX_VALUE;
+            if (row != null) {
+                next = Math.min(next, row.getTime());
+            }
+            // a block starting before the next record may hold an older one
+            if (nextBlock < archived.size() && (!hasNext || archived.get(nextBlock).getTimeStart() <= next)) {
+                BlockCursor cursor = new BlockCursor(archived.get(nextBlock), nextBlock, from, to);
+                nextBlock++;
+                if (cursor.hasNext()) {
+                    open.add(cursor);
+                }
+                continue;
+            }
+            if (!hasNext) {
+                break;
+            }
+
+            if (head != null && head.time() == next) {
+                open.poll();
+                visitor.visit(head.block.getBaseStation(), head.next());
+                if (head.hasNext()) {
+                    open.add(head);
+                }
+            } else {
+                visitor.visit(row.getBaseStation(), MeasureRecord.from(row));
+                nextRow++;
+                row = nextRow < rows.size() ? rows.get(nextRow) : null;
+            }
+        }
+    }
+
+    /**
+     * The remaining records of one decoded block within the visited time range
+     */
+    private static final class BlockCursor implements Comparable<BlockCursor> {
+        private final MeasureArchiveBlock block;
+        private final int order;
+        private final MeasureRecord[] records;
+        private final long to;
+        private int position;
+
+        BlockCursor(MeasureArchiveBlock block, int order, long from, long to) {
+            this.block = block;
+            this.order = order;
+            this.records = MeasureBlockCodec.decode(block.getData());
+            this.to = to;
+            while (position < records.length && records[position].getTime() < from) {
+                position++;
+            }
+        }
+
+        boolean hasNext() {
+            return position < records.length && records[position].getTime() <= to;
+        }
+
+        long time() {
+            return records[position].getTime();
+        }
+
+        MeasureRecord next() {
+            MeasureRecord record = records[position++];
+            if (block.isSubmitted()) {
+                record.setSubmitted(true); // the block flag takes precedence, see markSubmitted
+            }
+            return record;
+        }
+
+        @Override
+        public int compareTo(BlockCursor other) {
+            long time = time();
+            long otherTime = other.time();
+            if (time != otherTime) {
+                return time < otherTime ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    /**
+     * @return The newest measurement of the cell, live or archived, null if there is none
+     */
+    public static MeasureRecord newest(Realm realm, BaseTransceiverStation baseStation) {
+        RealmResults<Measure> live = ofCell(realm.where(Measure.class), baseStation)
+                .findAllSorted("time", Sort.DESCENDING);
+        if (!live.isEmpty()) {
+            return MeasureRecord.from(live.first());
+        }
+        RealmResults<MeasureArchiveBlock> blocks = ofCell(realm.where(MeasureArchiveBlock.class), baseStation)
+                .findAllSorted("timeEnd", Sort.DESCENDING);
+        if (blocks.isEmpty()) {
+            return null;
+        }
+        MeasureRecord[] records = MeasureBlockCodec.decode(blocks.first().getData());
+        return records[records.length - 1];
+    }
+
+    private static <E extends RealmModel> RealmQuery<E> ofCell(RealmQuery<E> query, BaseTransceiverStation baseStation) {
+        return query.equalTo("baseStation.mobileCountryCode", baseStation.getMobileCountryCode())
+                .equalTo("baseStation.mobileNetworkCode", baseStation.getMobileNetworkCode())
+                .equalTo("baseStation.locationAreaCode", baseStation.getLocationAreaCode())
+                .equalTo("baseStation.cellId", baseStation.getCellId());
+    }
+
+    /**
+     * @return Number of archived measurements not yet uploaded to OpenCellID
+     */
+    public static long countUnsubmitted(Realm realm) {
+        return realm.where(MeasureArchiveBlock.class)
+                .equalTo("submitted", false)
+                .sum("count")
+                .longValue();
+    }
+
+    /**
+     * Marks all archived blocks as uploaded, the per-row flags inside the blocks are
+     * left as they are since {@link MeasureArchiveBlock#isSubmitted()} takes precedence.
+     */
+    public static void markSubmitted(Realm realm) {
+        for (MeasureArchiveBlock block : realm.where(MeasureArchiveBlock.class).equalTo("submitted", false).findAll()) {
+            block.setSubmitted(true);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.secupwn.aimsicd.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes a time ordered run of {@link MeasureRecord measurements} of one cell into a
+ * compact byte array.
+ * <p>
+ * The block is stored column by column. Every column is delta encoded against the
+ * previous row and written as a zig-zag {@link Varint}, so slowly changing values (time steps of
+ * a few seconds, neighbouring coordinates, a stable signal level) mostly take one or two
+ * bytes per row instead of eight.
+ * <p>
+ * Layout: {@code version, count, time[], latitudeE6[], longitudeE6[], accuracy[],
+ * rxSignal[], radioAccessTechnology[], timingAdvance[], flags[]}.
+ * The accuracy is kept in decimeters.
+ */
+public final class MeasureBlockCodec {
+
+    static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_SUBMITTED = 1;
+    private static final int FLAG_NEIGHBOR = 1 << 1;
+
+    private MeasureBlockCodec() {
+    }
+
+    public static byte[] encode(List<MeasureRecord> records) {
+        int count = records.size();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(count * 10 + 8);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            encode(records, out);
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void encode(List<MeasureRecord> records, DataOutputStream out) throws IOException {
+        out.write(FORMAT_VERSION);
+        Varint.write(out, records.size());
+
+        long previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getTime() - previous);
+            previous = record.getTime();
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getLatitudeE6() - previous);
+            previous = record.getLatitudeE6();
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getLongitudeE6() - previous);
+            previous = record.getLongitudeE6();
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            long decimeters = Math.round(record.getAccuracy() * 10.0);
+            Varint.writeSigned(out, decimeters - previous);
+            previous = decimeters;
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getRxSignal() - previous);
+            previous = record.getRxSignal();
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getRadioAccessTechnology() - previous);
+            previous = record.getRadioAccessTechnology();
+        }
+        previous = 0;
+        for (MeasureRecord record : records) {
+            Varint.writeSigned(out, record.getTimingAdvance() - previous);
+            previous = record.getTimingAdvance();
+        }
+        for (MeasureRecord record : records) {
+            int flags = (record.isSubmitted() ? FLAG_SUBMITTED : 0) | (record.isNeighbor() ? FLAG_NEIGHBOR : 0);
+            out.write(flags);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the block is truncated or of an unknown version
+     */
+    public static MeasureRecord[] decode(byte[] data) {
+        try {
+            return decode(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated measure block", e);
+        }
+    }
+
+    private static MeasureRecord[] decode(DataInputStream in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unknown measure block version " + version);
+        }
+        long count = Varint.read(in);
+        if (count < 0 || count > in.available()) {
+            throw new IllegalArgumentException("Invalid measure block size " + count);
+        }
+        MeasureRecord[] records = new MeasureRecord[(int) count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new MeasureRecord();
+        }
+
+        long value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setTime(value);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setLatitudeE6((int) value);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setLongitudeE6((int) value);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setAccuracy(value / 10f);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setRxSignal((int) value);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setRadioAccessTechnology((int) value);
+        }
+        value = 0;
+        for (MeasureRecord record : records) {
+            value += Varint.readSigned(in);
+            record.setTimingAdvance((int) value);
+        }
+        for (MeasureRecord record : records) {
+            int flags = in.readUnsignedByte();
+            record.setSubmitted((flags & FLAG_SUBMITTED) != 0);
+            record.setNeighbor((flags & FLAG_NEIGHBOR) != 0);
+        }
+        return records;
+    }
+}
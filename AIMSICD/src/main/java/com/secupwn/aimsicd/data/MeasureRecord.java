@@ -0,0 +1,51 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.Measure;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A detached, read-only view of a measurement which may come from either the live
+ * {@link Measure} realm or from the {@link MeasureArchive}.
+ */
+@Getter
+@Setter
+public class MeasureRecord {
+
+    private long time;
+    private int latitudeE6;
+    private int longitudeE6;
+    private float accuracy;
+    private int rxSignal;
+    private int radioAccessTechnology;
+    private int timingAdvance;
+    private boolean submitted;
+    private boolean neighbor;
+
+    public static MeasureRecord from(Measure measure) {
+        MeasureRecord record = new MeasureRecord();
+        record.time = measure.getTime();
+        record.latitudeE6 = measure.getLatitudeE6();
+        record.longitudeE6 = measure.getLongitudeE6();
+        record.accuracy = measure.getAccuracy();
+        record.rxSignal = measure.getRxSignal();
+        record.radioAccessTechnology = measure.getRadioAccessTechnology();
+        record.timingAdvance = measure.getTimingAdvance();
+        record.submitted = measure.isSubmitted();
+        record.neighbor = measure.isNeighbor();
+        return record;
+    }
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+
+    public String getRadioAccessTechnologyName() {
+        return RadioAccessTechnology.toName(radioAccessTechnology);
+    }
+}
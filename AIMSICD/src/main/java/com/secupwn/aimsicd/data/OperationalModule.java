@@ -0,0 +1,34 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.DefaultLocation;
+import com.secupwn.aimsicd.data.model.Event;
+import com.secupwn.aimsicd.data.model.GpsLocation;
+import com.secupwn.aimsicd.data.model.Measure;
+import com.secupwn.aimsicd.data.model.MeasureArchiveBlock;
+import com.secupwn.aimsicd.data.model.NeighborObservation;
+import com.secupwn.aimsicd.data.model.ServingCellInterval;
+import com.secupwn.aimsicd.data.model.SmsData;
+import com.secupwn.aimsicd.data.model.SmsDetectionString;
+
+import io.realm.annotations.RealmModule;
+
+/**
+ * Classes stored in the default (operational) realm.
+ * <p>
+ * Reference tower data lives in its own file, see {@link ReferenceModule} and {@link ReferenceRealm}.
+ */
+@RealmModule(classes = {
+        BaseTransceiverStation.class,
+        DefaultLocation.class,
+        Event.class,
+        GpsLocation.class,
+        Measure.class,
+        MeasureArchiveBlock.class,
+        NeighborObservation.class,
+        ServingCellInterval.class,
+        SmsData.class,
+        SmsDetectionString.class
+})
+public class OperationalModule {
+}
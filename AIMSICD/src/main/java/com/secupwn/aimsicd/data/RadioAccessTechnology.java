@@ -0,0 +1,78 @@
+package com.secupwn.aimsicd.data;
+
+import android.telephony.TelephonyManager;
+
+import com.secupwn.aimsicd.utils.Cell;
+
+/**
+ * Integer codes for the radio access technology stored in the realm models.
+ * <p>
+ * The code is the {@link TelephonyManager} network type (NETWORK_TYPE_*), so a value
+ * read from the radio can be stored without conversion. OpenCellID only knows the
+ * RAT family ("GSM", "UMTS", "LTE", "CDMA"), which is mapped onto the matching
+ * network type constant.
+ */
+public final class RadioAccessTechnology {
+
+    private RadioAccessTechnology() {
+    }
+
+    /**
+     * @return Human-readable name of the RAT code (e.g. "EDGE", "LTE")
+     */
+    public static String toName(int code) {
+        return Cell.getRatFromInt(code);
+    }
+
+    /**
+     * Parses a RAT name as found in OCID CSV files or in the old (v1) string columns.
+     *
+     * @return The RAT code or {@link TelephonyManager#NETWORK_TYPE_UNKNOWN} if not known
+     */
+    public static int fromName(String name) {
+        if (name == null) {
+            return TelephonyManager.NETWORK_TYPE_UNKNOWN;
+        }
+        switch (name.trim().toUpperCase()) {
+            case "GSM":
+                return TelephonyManager.NETWORK_TYPE_GSM;
+            case "GPRS":
+                return TelephonyManager.NETWORK_TYPE_GPRS;
+            case "EDGE":
+                return TelephonyManager.NETWORK_TYPE_EDGE;
+            case "UMTS":
+                return TelephonyManager.NETWORK_TYPE_UMTS;
+            case "HSDPA":
+                return TelephonyManager.NETWORK_TYPE_HSDPA;
+            case "HSUPA":
+                return TelephonyManager.NETWORK_TYPE_HSUPA;
+            case "HSPA":
+                return TelephonyManager.NETWORK_TYPE_HSPA;
+            case "HSPA+":
+                return TelephonyManager.NETWORK_TYPE_HSPAP;
+            case "LTE":
+                return TelephonyManager.NETWORK_TYPE_LTE;
+            case "CDMA":
+                return TelephonyManager.NETWORK_TYPE_CDMA;
+            case "1XRTT":
+                return TelephonyManager.NETWORK_TYPE_1xRTT;
+            case "EHRPD":
+                return TelephonyManager.NETWORK_TYPE_EHRPD;
+            case "EVDO REV. 0":
+                return TelephonyManager.NETWORK_TYPE_EVDO_0;
+            case "EVDO REV. A":
+                return TelephonyManager.NETWORK_TYPE_EVDO_A;
+            case "EVDO REV. B":
+                return TelephonyManager.NETWORK_TYPE_EVDO_B;
+            case "IDEN":
+                return TelephonyManager.NETWORK_TYPE_IDEN;
+            default:
+                try {
+                    // Cell.getRatFromInt() falls back to the plain number
+                    return Integer.parseInt(name.trim());
+                } catch (NumberFormatException e) {
+                    return TelephonyManager.NETWORK_TYPE_UNKNOWN;
+                }
+        }
+    }
+}
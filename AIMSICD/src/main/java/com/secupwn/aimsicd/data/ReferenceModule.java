@@ -0,0 +1,14 @@
+package com.secupwn.aimsicd.data;
+
+import com.secupwn.aimsicd.data.model.Import;
+
+import io.realm.annotations.RealmModule;
+
+/**
+ * Classes stored in the reference realm, see {@link ReferenceRealm}.
+ */
+@RealmModule(classes = {
+        Import.class
+})
+public class ReferenceModule {
+}
@@ -0,0 +1,241 @@
+package com.secupwn.aimsicd.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.realm.DynamicRealm;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmMigration;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Access to the reference tower data ({@link com.secupwn.aimsicd.data.model.Import Import})
+ * which is kept in its own realm file, separate from the operational data.
+ * <p>
+ * Bulk imports never write to the file readers are using. {@link #beginImport()} creates a
+ * staging file (a copy of the current generation), the import and the {@code checkDBe}
+ * sweep run against that file, and {@link #publish(RealmConfiguration)} swaps it in by
+ * updating a single reference. Readers that opened the previous generation keep a
+ * consistent view until they close it, new readers get the new generation.
+ * <p>
+ * Since the files are different from the default realm, imports never hold the write
+ * lock of the operational realm.
+ */
+@Slf4j
+public final class ReferenceRealm {
+
+    private static final String PREFS_NAME = "reference_realm";
+    private static final String KEY_GENERATION = "generation";
+    private static final String FILE_PREFIX = "reference-";
+    private static final String FILE_SUFFIX = ".realm";
+
+    /**
+     * Version history:
+     * <ul>
+     * <li>1: {@code Import} moved here from the default realm</li>
+     * <li>2: index on {@code Import.timeLast}, see {@link com.secupwn.aimsicd.data.adapter.ImportTable}</li>
+     * </ul>
+     */
+    private static final long SCHEMA_VERSION = 2;
+
+    private static final AtomicReference<RealmConfiguration> current = new AtomicReference<>();
+    private static final Object importLock = new Object();
+    private static RealmConfiguration staging;
+
+    private static SharedPreferences preferences;
+    private static File directory;
+
+    private ReferenceRealm() {
+    }
+
+    /**
+     * Must be called once after {@link Realm#init(Context)} and before the default realm
+     * is opened (the migration of the default realm moves old reference data here).
+     */
+    public static void init(Context context) {
+        preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        directory = context.getFilesDir();
+
+        long generation = preferences.getLong(KEY_GENERATION, 0);
+        current.set(configuration(generation));
+        deleteStaleGenerations(generation);
+    }
+
+    /**
+     * @return A realm instance on the currently published generation, must be closed by the caller
+     */
+    public static Realm getInstance() {
+        return Realm.getInstance(current.get());
+    }
+
+    /**
+     * @return The configuration of the currently published generation
+     */
+    public static RealmConfiguration getConfiguration() {
+        return current.get();
+    }
+
+    /**
+     * Creates the staging file for a new import, pre-filled with the current data so that
+     * repeated downloads keep adding to the existing reference data.
+     * <p>
+     * Only one import may be in progress at a time.
+     *
+     * @return The configuration of the staging realm
+     * @throws IllegalStateException if another import is still in progress
+     */
+    public static RealmConfiguration beginImport() {
+        return beginImport(true);
+    }
+
+    /**
+     * Like {@link #beginImport()}, but the staging realm starts empty if {@code copyCurrent}
+     * is false, e.g. when the whole reference data is replaced by a backup.
+     */
+    public static RealmConfiguration beginImport(boolean copyCurrent) {
+        synchronized (importLock) {
+            if (staging != null) {
+                throw new IllegalStateException("Reference data import already in progress");
+            }
+            long generation = generationOf(current.get()) + 1;
+            staging = configuration(generation);
+            Realm.deleteRealm(staging);
+            if (!copyCurrent) {
+                log.debug("Started empty reference data import into {}", staging.getRealmFileName());
+                return staging;
+            }
+
+            Realm realm = getInstance();
+            try {
+                realm.writeCopyTo(new File(staging.getPath()));
+            } catch (RuntimeException e) {
+                staging = null;
+                throw e;
+            } finally {
+                realm.close();
+            }
+            log.debug("Started reference data import into {}", staging.getRealmFileName());
+            return staging;
+        }
+    }
+
+    /**
+     * Makes the staging realm the current generation. All realm instances on the staging
+     * configuration must be closed before calling this.
+     *
+     * @throws IOException if the new generation could not be persisted, the staging realm
+     *                     is then still in progress and must be {@link #discard discarded}
+     */
+    public static void publish(RealmConfiguration configuration) throws IOException {
+        synchronized (importLock) {
+            if (!configuration.equals(staging)) {
+                throw new IllegalStateException("Not the staging realm: " + configuration.getRealmFileName());
+            }
+            long generation = generationOf(configuration);
+            // commit() so the pointer is on disk before anybody reads the new generation
+            if (!preferences.edit().putLong(KEY_GENERATION, generation).commit()) {
+                throw new IOException("Could not persist reference realm generation " + generation);
+            }
+            staging = null;
+            RealmConfiguration previous = current.getAndSet(configuration);
+            log.info("Published reference data generation {}", generation);
+            delete(previous);
+        }
+    }
+
+    /**
+     * Throws away a staging realm after a failed import.
+     */
+    public static void discard(RealmConfiguration configuration) {
+        synchronized (importLock) {
+            if (configuration.equals(staging)) {
+                staging = null;
+            }
+        }
+        delete(configuration);
+    }
+
+    private static RealmConfiguration configuration(long generation) {
+        return new RealmConfiguration.Builder()
+                .directory(directory)
+                .name(FILE_PREFIX + generation + FILE_SUFFIX)
+                .schemaVersion(SCHEMA_VERSION)
+                .modules(new ReferenceModule())
+                .migration(new Migration())
+                .build();
+    }
+
+    /**
+     * Keeps the downloaded data, re-downloading it after an update would need network access
+     * the user may not have at the time.
+     */
+    private static final class Migration implements RealmMigration {
+
+        @Override
+        public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+            log.info("Migrating reference realm from schema version {} to {}", oldVersion, newVersion);
+            if (oldVersion < 2) {
+                realm.getSchema().get("Import").addIndex("timeLast");
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return Migration.class.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Migration;
+        }
+    }
+
+    private static long generationOf(RealmConfiguration configuration) {
+        return generationOf(configuration.getRealmFileName());
+    }
+
+    private static long generationOf(String fileName) {
+        return Long.parseLong(fileName.substring(FILE_PREFIX.length(), fileName.length() - FILE_SUFFIX.length()));
+    }
+
+    /**
+     * Deletes the files of a previous generation, unless somebody still has it open.
+     * Files that can't be deleted now are removed by the next {@link #init(Context)}.
+     */
+    private static void delete(RealmConfiguration configuration) {
+        if (Realm.getGlobalInstanceCount(configuration) > 0) {
+            log.debug("{} still in use, deleting it on next start", configuration.getRealmFileName());
+            return;
+        }
+        try {
+            Realm.deleteRealm(configuration);
+        } catch (IllegalStateException e) {
+            log.warn("Could not delete {}", configuration.getRealmFileName(), e);
+        }
+    }
+
+    private static void deleteStaleGenerations(long generation) {
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+                continue; // also skips the .lock and .management files
+            }
+            try {
+                long stale = generationOf(name);
+                if (stale != generation) {
+                    delete(configuration(stale));
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Unexpected file in realm directory: {}", name);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.secupwn.aimsicd.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length encoding of unsigned values (7 bits per byte) and zig-zag mapping
+ * for signed values, shared by {@link MeasureBlockCodec} and the backup format.
+ */
+public final class Varint {
+
+    private Varint() {
+    }
+
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public static void write(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    public static long read(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeSigned(DataOutput out, long value) throws IOException {
+        write(out, zigZag(value));
+    }
+
+    public static long readSigned(DataInput in) throws IOException {
+        return unZigZag(read(in));
+    }
+}
@@ -0,0 +1,56 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.data.adapter;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import static java.lang.String.valueOf;
+
+/**
+ * Contains the data and definitions of all the items of the XML layout
+ * <p/>
+ * TODO: Add DB items: T3212, A5x and ST_id
+ */
+public class BaseStationTable extends PagedTable<BaseTransceiverStation> {
+
+    public BaseStationTable() {
+        // These are the names of the "@+id/xxxx" items in the XML layout file
+        super(BaseTransceiverStation.class, "timeLast", false, R.layout.unique_bts_data,
+                R.id.tv_uniquebts_lac,
+                R.id.tv_uniquebts_cid,
+                R.id.tv_uniquebts_mcc,
+                R.id.tv_uniquebts_mnc,
+                R.id.tv_uniquebts_psc,
+                R.id.tv_uniquebts_time_first,
+                R.id.tv_uniquebts_time_last,
+                R.id.tv_uniquebts_lat,
+                R.id.tv_uniquebts_lon,
+                R.id.record_id);
+    }
+
+    @Override
+    public long getTime(BaseTransceiverStation item) {
+        return item.getTimeLast();
+    }
+
+    @Override
+    public void format(BaseTransceiverStation baseStation, int position, DateFormat dateFormat, String[] row) {
+        row[0] = valueOf(baseStation.getLocationAreaCode());
+        row[1] = valueOf(baseStation.getCellId());
+        row[2] = valueOf(baseStation.getMobileCountryCode());
+        row[3] = valueOf(baseStation.getMobileNetworkCode());
+        row[4] = valueOf(baseStation.getPrimaryScramblingCode());
+        row[5] = dateFormat.format(new Date(baseStation.getTimeFirst()));
+        row[6] = dateFormat.format(new Date(baseStation.getTimeLast()));
+        row[7] = valueOf(baseStation.getLatitude());
+        row[8] = valueOf(baseStation.getLongitude());
+        row[9] = valueOf(position);
+    }
+}
@@ -0,0 +1,45 @@
+package com.secupwn.aimsicd.data.adapter;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.model.Event;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import static java.lang.String.valueOf;
+
+public class EventTable extends PagedTable<Event> {
+
+    public EventTable() {
+        super(Event.class, "timestamp", true, R.layout.eventlog_items,
+                R.id.time,
+                R.id.LAC,
+                R.id.CID,
+                R.id.PSC,
+                R.id.gpsd_lat,
+                R.id.gpsd_lon,
+                R.id.gpsd_accu,
+                R.id.DF_id,
+                R.id.DF_desc,
+                R.id.record_id);
+    }
+
+    @Override
+    public long getTime(Event item) {
+        return item.getTimestamp();
+    }
+
+    @Override
+    public void format(Event event, int position, DateFormat dateFormat, String[] row) {
+        row[0] = dateFormat.format(new Date(event.getTimestamp()));
+        row[1] = valueOf(event.getLocationAreaCode());
+        row[2] = valueOf(event.getCellId());
+        row[3] = valueOf(event.getPrimaryScramblingCode());
+        row[4] = valueOf(event.getLatitude());
+        row[5] = valueOf(event.getLongitude());
+        row[6] = valueOf(event.getAccuracy());
+        row[7] = valueOf(event.getDfId());
+        row[8] = event.getDfDescription();
+        row[9] = valueOf(position);
+    }
+}
@@ -0,0 +1,73 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.data.adapter;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.ReferenceRealm;
+import com.secupwn.aimsicd.data.model.Import;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import io.realm.Realm;
+
+import static java.lang.String.valueOf;
+
+public class ImportTable extends PagedTable<Import> {
+
+    public ImportTable() {
+        // These are the id names as used in the "dbe_import_items.xml" stylesheet
+        super(Import.class, "timeLast", true, R.layout.dbe_import_items,
+                R.id.dbsource,
+                R.id.RAT,
+                R.id.nMCC,
+                R.id.nMNC,
+                R.id.nLAC,
+                R.id.nCID,
+                R.id.nPSC,
+                R.id.ngpsd_lat,
+                R.id.ngpsd_lon,
+                R.id.is_exact,
+                R.id.navg_range,
+                R.id.navg_signal,
+                R.id.nSAMPLES,
+                R.id.nTIME_FIRST,
+                R.id.nTIME_LAST,
+                R.id.nREJ_CAUSE,
+                R.id.record_id);
+    }
+
+    @Override
+    public Realm openRealm() {
+        return ReferenceRealm.getInstance();
+    }
+
+    @Override
+    public long getTime(Import item) {
+        return item.getTimeLast();
+    }
+
+    @Override
+    public void format(Import anImport, int position, DateFormat dateFormat, String[] row) {
+        row[0] = anImport.getDbSource();
+        row[1] = anImport.getRadioAccessTechnologyName();
+        row[2] = valueOf(anImport.getMobileCountryCode());
+        row[3] = valueOf(anImport.getMobileNetworkCode());
+        row[4] = valueOf(anImport.getLocationAreaCode());
+        row[5] = valueOf(anImport.getCellId());
+        row[6] = valueOf(anImport.getPrimaryScramblingCode());
+        row[7] = valueOf(anImport.getLatitude());
+        row[8] = valueOf(anImport.getLongitude());
+        row[9] = valueOf(anImport.isGpsExact());
+        row[10] = valueOf(anImport.getAvgRange());
+        row[11] = valueOf(anImport.getAvgSignal());
+        row[12] = valueOf(anImport.getSamples());
+        row[13] = dateFormat.format(new Date(anImport.getTimeFirst()));
+        row[14] = dateFormat.format(new Date(anImport.getTimeLast()));
+        row[15] = valueOf(anImport.getRejCause());
+        row[16] = valueOf(position);
+    }
+}
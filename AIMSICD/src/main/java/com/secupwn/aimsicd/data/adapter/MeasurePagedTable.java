@@ -0,0 +1,86 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.data.adapter;
+
+import android.support.annotation.LayoutRes;
+
+import com.secupwn.aimsicd.data.MeasureArchive;
+import com.secupwn.aimsicd.data.MeasureRecord;
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Measure;
+import com.secupwn.aimsicd.data.model.MeasureArchiveBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.Realm;
+
+/**
+ * A viewer table of measurements which also pages the ones moved to the {@link MeasureArchive},
+ * so history older than {@link MeasureArchive#DEFAULT_ARCHIVE_AGE_DAYS} days stays visible.
+ * <p>
+ * Archived records are handed to {@link #format} as unmanaged {@link Measure} objects.
+ */
+public abstract class MeasurePagedTable extends PagedTable<Measure> {
+
+    protected MeasurePagedTable(@LayoutRes int layout, int... viewIds) {
+        super(Measure.class, "time", true, layout, viewIds);
+    }
+
+    @Override
+    public Number findMinTime(Realm realm) {
+        Number live = super.findMinTime(realm);
+        Number archived = realm.where(MeasureArchiveBlock.class).min("timeStart");
+        if (live == null || archived == null) {
+            return live == null ? archived : live;
+        }
+        return Math.min(live.longValue(), archived.longValue());
+    }
+
+    @Override
+    public Number findMaxTime(Realm realm) {
+        Number live = super.findMaxTime(realm);
+        Number archived = realm.where(MeasureArchiveBlock.class).max("timeEnd");
+        if (live == null || archived == null) {
+            return live == null ? archived : live;
+        }
+        return Math.max(live.longValue(), archived.longValue());
+    }
+
+    @Override
+    public List<Measure> findWindow(Realm realm, long from, long to) {
+        final List<Measure> window = new ArrayList<>();
+        MeasureArchive.forEach(realm, from, to, false, new MeasureArchive.Visitor() {
+            @Override
+            public void visit(BaseTransceiverStation baseStation, MeasureRecord measure) {
+                window.add(toMeasure(baseStation, measure));
+            }
+        });
+        Collections.reverse(window);
+        return window;
+    }
+
+    @Override
+    public long getTime(Measure item) {
+        return item.getTime();
+    }
+
+    private static Measure toMeasure(BaseTransceiverStation baseStation, MeasureRecord record) {
+        Measure measure = new Measure();
+        measure.setBaseStation(baseStation);
+        measure.setTime(record.getTime());
+        measure.setLatitudeE6(record.getLatitudeE6());
+        measure.setLongitudeE6(record.getLongitudeE6());
+        measure.setAccuracy(record.getAccuracy());
+        measure.setRxSignal(record.getRxSignal());
+        measure.setRadioAccessTechnology(record.getRadioAccessTechnology());
+        measure.setTimingAdvance(record.getTimingAdvance());
+        measure.setSubmitted(record.isSubmitted());
+        measure.setNeighbor(record.isNeighbor());
+        return measure;
+    }
+}
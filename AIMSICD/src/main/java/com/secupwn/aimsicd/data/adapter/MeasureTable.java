@@ -0,0 +1,43 @@
+package com.secupwn.aimsicd.data.adapter;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.model.Measure;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import static java.lang.String.valueOf;
+
+/**
+ * Contains the data and definitions of all the items of the XML layout
+ */
+public class MeasureTable extends MeasurePagedTable {
+
+    public MeasureTable() {
+        super(R.layout.bts_measure_data,
+                R.id.tv_bts_measure_bts_id,
+                R.id.tv_bts_measure_time,
+                R.id.tv_bts_measure_gpsd_lat,
+                R.id.tv_bts_measure_gpsd_lon,
+                R.id.tv_bts_measure_gpsd_accu,
+                R.id.tv_bts_measure_rx_signal,
+                R.id.tv_bts_measure_rat,
+                R.id.tv_bts_measure_isSubmitted,
+                R.id.tv_bts_measure_isNeighbor,
+                R.id.record_id);
+    }
+
+    @Override
+    public void format(Measure item, int position, DateFormat dateFormat, String[] row) {
+        row[0] = item.getBaseStation() == null ? "" : valueOf(item.getBaseStation().getCellId());
+        row[1] = dateFormat.format(new Date(item.getTime()));
+        row[2] = valueOf(item.getLatitude());
+        row[3] = valueOf(item.getLongitude());
+        row[4] = valueOf(item.getAccuracy());
+        row[5] = valueOf(item.getRxSignal());
+        row[6] = item.getRadioAccessTechnologyName();
+        row[7] = valueOf(item.isSubmitted());
+        row[8] = valueOf(item.isNeighbor());
+        row[9] = valueOf(position);
+    }
+}
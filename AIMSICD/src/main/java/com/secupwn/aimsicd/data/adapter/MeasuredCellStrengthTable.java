@@ -0,0 +1,36 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.data.adapter;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.model.Measure;
+
+import java.text.DateFormat;
+import java.util.Date;
+
+import static java.lang.String.valueOf;
+
+/**
+ * Used in DB viewer (for Measured cell strength measurements)
+ *
+ * @author Tor Henning Ueland
+ */
+public class MeasuredCellStrengthTable extends MeasurePagedTable {
+
+    public MeasuredCellStrengthTable() {
+        super(R.layout.measured_signal_str,
+                R.id.tv_measure_cid,
+                R.id.tv_measure_rss,
+                R.id.tv_measure_time);
+    }
+
+    @Override
+    public void format(Measure item, int position, DateFormat dateFormat, String[] row) {
+        row[0] = item.getBaseStation() == null ? "" : valueOf(item.getBaseStation().getCellId());
+        row[1] = valueOf(item.getRxSignal());
+        row[2] = dateFormat.format(new Date(item.getTime()));
+    }
+}
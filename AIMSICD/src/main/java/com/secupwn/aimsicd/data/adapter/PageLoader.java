@@ -0,0 +1,261 @@
+package com.secupwn.aimsicd.data.adapter;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.Sort;
+
+/**
+ * Loads a {@link PagedTable} page by page on a background thread and hands pre-formatted
+ * rows to the main thread.
+ * <p>
+ * Tables with an indexed time field are paged by time: every page queries a bounded window
+ * {@code [cursor - span, cursor]} which is widened until it holds a page, so the cost of a
+ * page depends on the page size and not on the table size. Rows sharing the cursor time
+ * which were already shown are skipped, so a large run of equal timestamps (e.g. a
+ * downloaded OpenCellID import) is still split into pages. Other tables are sorted once
+ * when opened and then sliced.
+ * <p>
+ * All methods must be called on the main thread.
+ */
+public class PageLoader {
+
+    public static final int PAGE_SIZE = 50;
+
+    static final long INITIAL_WINDOW_MS = TimeUnit.HOURS.toMillis(1);
+
+    public interface Listener {
+        /**
+         * @param first True for the first page after {@link #open(PagedTable, long)}
+         */
+        void onPageLoaded(List<String[]> page, boolean first);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Listener listener;
+
+    private boolean loading;
+    private boolean exhausted;
+
+    /**
+     * Only accessed on the executor thread
+     */
+    private Session<?> session;
+
+    public PageLoader(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts showing {@code table}, newest rows first.
+     *
+     * @param before Only show rows older than this time (ms since epoch), {@link Long#MAX_VALUE} for all
+     */
+    public void open(final PagedTable<?> table, final long before) {
+        final int token = generation.incrementAndGet();
+        loading = true;
+        exhausted = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeSession();
+                session = createSession(table, before);
+                deliver(token, session.nextPage(), session.exhausted, true);
+            }
+        });
+    }
+
+    /**
+     * Requests the next page, ignored while a page is loading or all rows were shown.
+     */
+    public void loadNext() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        final int token = generation.get();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (token != generation.get() || session == null) {
+                    return;
+                }
+                deliver(token, session.nextPage(), session.exhausted, false);
+            }
+        });
+    }
+
+    /**
+     * Drops pending pages and releases the realm, {@link #open(PagedTable, long)} may be called again later.
+     */
+    public void close() {
+        generation.incrementAndGet();
+        loading = false;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                closeSession();
+            }
+        });
+    }
+
+    private void deliver(final int token, final List<String[]> page, final boolean last, final boolean first) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (token != generation.get()) {
+                    return; // another table was opened in the meantime
+                }
+                loading = false;
+                exhausted = last;
+                listener.onPageLoaded(page, first);
+            }
+        });
+    }
+
+    private void closeSession() {
+        if (session != null) {
+            session.realm.close();
+            session = null;
+        }
+    }
+
+    private static <E extends RealmObject> Session<E> createSession(PagedTable<E> table, long before) {
+        return new Session<>(table, before);
+    }
+
+    private static final class Session<E extends RealmObject> {
+
+        private final PagedTable<E> table;
+        private final Realm realm;
+        private final DateFormat dateFormat = DateFormat.getDateTimeInstance();
+        private int position;
+        private boolean exhausted;
+
+        // paging by time window, cursor is the newest time not fully shown yet
+        private long cursor;
+        private int shownAtCursor;
+        private long minTime;
+        private long span = INITIAL_WINDOW_MS;
+
+        // paging by offset
+        private RealmResults<E> sorted;
+        private int offset;
+
+        Session(PagedTable<E> table, long before) {
+            this.table = table;
+            this.realm = table.openRealm();
+            String field = table.getTimeField();
+
+            if (table.isTimeIndexed()) {
+                Number min = table.findMinTime(realm);
+                Number max = table.findMaxTime(realm);
+                if (min == null || max == null) {
+                    exhausted = true;
+                    return;
+                }
+                minTime = min.longValue();
+                cursor = before > max.longValue() ? max.longValue() : before - 1;
+            } else {
+                sorted = table.where(realm).findAllSorted(field, Sort.DESCENDING);
+                offset = firstOlderThan(before);
+            }
+        }
+
+        List<String[]> nextPage() {
+            List<String[]> page = new ArrayList<>(PAGE_SIZE);
+            if (exhausted) {
+                return page;
+            }
+            if (table.isTimeIndexed()) {
+                nextWindow(page);
+            } else {
+                nextSlice(page);
+            }
+            return page;
+        }
+
+        private void nextSlice(List<String[]> page) {
+            int end = Math.min(sorted.size(), offset + PAGE_SIZE);
+            for (int i = offset; i < end; i++) {
+                page.add(format(sorted.get(i)));
+            }
+            offset = end;
+            exhausted = offset >= sorted.size();
+        }
+
+        private void nextWindow(List<String[]> page) {
+            List<E> window;
+            long from;
+            while (true) {
+                from = cursor - span;
+                window = table.findWindow(realm, from, cursor);
+                if (window.size() >= shownAtCursor + PAGE_SIZE || from <= minTime) {
+                    break;
+                }
+                span *= 4;
+            }
+
+            // the rows at the cursor time come first, skip the ones the previous page showed
+            int start = Math.min(shownAtCursor, window.size());
+            int end = Math.min(window.size(), start + PAGE_SIZE);
+            for (int i = start; i < end; i++) {
+                page.add(format(window.get(i)));
+            }
+            if (end > start) {
+                long lastTime = table.getTime(window.get(end - 1));
+                int run = 0;
+                for (int i = end - 1; i >= start && table.getTime(window.get(i)) == lastTime; i--) {
+                    run++;
+                }
+                if (lastTime == cursor) {
+                    shownAtCursor += run;
+                } else {
+                    cursor = lastTime;
+                    shownAtCursor = run;
+                }
+            }
+            exhausted = end == window.size() && from <= minTime;
+
+            if (window.size() > 4 * PAGE_SIZE && span > INITIAL_WINDOW_MS) {
+                span /= 4; // dense data, keep the next windows small
+            }
+        }
+
+        private String[] format(E item) {
+            String[] row = new String[table.getViewIds().length];
+            table.format(item, position++, dateFormat, row);
+            return row;
+        }
+
+        /**
+         * Binary search in the newest first {@link #sorted} results.
+         */
+        private int firstOlderThan(long before) {
+            int low = 0;
+            int high = sorted.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (table.getTime(sorted.get(mid)) >= before) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.secupwn.aimsicd.data.adapter;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the pre-formatted rows produced by a {@link PageLoader}.
+ */
+public class PagedRowAdapter extends BaseAdapter {
+
+    private final PagedTable<?> table;
+    private final List<String[]> rows = new ArrayList<>();
+
+    public PagedRowAdapter(PagedTable<?> table) {
+        this.table = table;
+    }
+
+    public void addPage(List<String[]> page) {
+        rows.addAll(page);
+        notifyDataSetChanged();
+    }
+
+    public void clear() {
+        rows.clear();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public String[] getItem(int position) {
+        return rows.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        ViewHolder holder;
+
+        if (convertView == null) {
+            LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+            convertView = inflater.inflate(table.getLayout(), parent, false);
+            holder = new ViewHolder(convertView, table.getViewIds());
+        } else {
+            holder = (ViewHolder) convertView.getTag();
+        }
+
+        holder.updateDisplay(getItem(position));
+        return convertView;
+    }
+
+    private static class ViewHolder {
+
+        private final TextView[] views;
+
+        ViewHolder(View rootView, int[] viewIds) {
+            views = new TextView[viewIds.length];
+            for (int i = 0; i < viewIds.length; i++) {
+                views[i] = (TextView) rootView.findViewById(viewIds[i]);
+            }
+            rootView.setTag(this);
+        }
+
+        void updateDisplay(String[] row) {
+            for (int i = 0; i < views.length; i++) {
+                views[i].setText(row[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.secupwn.aimsicd.data.adapter;
+
+import android.support.annotation.LayoutRes;
+
+import java.text.DateFormat;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmObject;
+import io.realm.RealmQuery;
+import io.realm.Sort;
+import lombok.Getter;
+
+/**
+ * Describes how one realm table is shown in the paged database viewer, see {@link PageLoader}.
+ * <p>
+ * Rows are ordered newest first by {@link #getTimeField()}. Implementations turn a row into
+ * display strings on the loader thread, so {@link PagedRowAdapter#getView} only sets text.
+ */
+@Getter
+public abstract class PagedTable<E extends RealmObject> {
+
+    private final Class<E> modelClass;
+    private final String timeField;
+
+    /**
+     * If {@link #timeField} is indexed, pages are fetched with bounded time windows instead of
+     * a sort over the whole table.
+     */
+    private final boolean timeIndexed;
+
+    @LayoutRes
+    private final int layout;
+
+    /**
+     * The views filled by {@link #format}, in the same order
+     */
+    private final int[] viewIds;
+
+    protected PagedTable(Class<E> modelClass, String timeField, boolean timeIndexed,
+                         @LayoutRes int layout, int... viewIds) {
+        this.modelClass = modelClass;
+        this.timeField = timeField;
+        this.timeIndexed = timeIndexed;
+        this.layout = layout;
+        this.viewIds = viewIds;
+    }
+
+    /**
+     * @return A new realm instance which contains the table, closed by the caller
+     */
+    public Realm openRealm() {
+        return Realm.getDefaultInstance();
+    }
+
+    public RealmQuery<E> where(Realm realm) {
+        return realm.where(modelClass);
+    }
+
+    /**
+     * @return The oldest time of the shown rows, null if there are none.
+     * Only used if {@link #isTimeIndexed()}.
+     */
+    public Number findMinTime(Realm realm) {
+        return where(realm).min(timeField);
+    }
+
+    /**
+     * @return The newest time of the shown rows, null if there are none.
+     * Only used if {@link #isTimeIndexed()}.
+     */
+    public Number findMaxTime(Realm realm) {
+        return where(realm).max(timeField);
+    }
+
+    /**
+     * Tables which also show rows kept outside of {@link #getModelClass()} override this
+     * together with {@link #findMinTime} and {@link #findMaxTime}.
+     * Only used if {@link #isTimeIndexed()}.
+     *
+     * @return The rows with a time within {@code [from, to]}, newest first
+     */
+    public List<E> findWindow(Realm realm, long from, long to) {
+        return where(realm)
+                .greaterThanOrEqualTo(timeField, from)
+                .lessThanOrEqualTo(timeField, to)
+                .findAllSorted(timeField, Sort.DESCENDING);
+    }
+
+    public abstract long getTime(E item);
+
+    /**
+     * Fills {@code row} with one string per entry of {@link #getViewIds()}.
+     * Called on the loader thread.
+     *
+     * @param position   Position of the row in the list, shown as record id
+     * @param dateFormat Not thread safe, only to be used within this call
+     */
+    public abstract void format(E item, int position, DateFormat dateFormat, String[] row);
+}
@@ -0,0 +1,107 @@
+package com.secupwn.aimsicd.data.backup;
+
+import com.secupwn.aimsicd.data.Varint;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the blocks written by {@link BlockOutput} and verifies their checksums.
+ */
+final class BlockInput {
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final CRC32 crc = new CRC32();
+    private byte[] compressed = new byte[DatabaseBackup.BLOCK_SIZE];
+    private byte[] raw = new byte[DatabaseBackup.BLOCK_SIZE + 4096];
+    private int blockNumber;
+    private int type;
+    private DataInputStream data;
+    private ByteArrayInputStream rawStream;
+
+    BlockInput(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    DataInputStream header() {
+        return in;
+    }
+
+    /**
+     * Reads the next block, its type is available from {@link #type()} afterwards.
+     *
+     * @throws IOException if the stream ends early or the block is corrupt
+     */
+    void next() throws IOException {
+        type = in.readUnsignedByte();
+        long rawSize = Varint.read(in);
+        long compressedSize = Varint.read(in);
+        int checksum = in.readInt();
+        // bounded before allocating, a corrupt length must not run out of memory
+        if (rawSize < 0 || rawSize > DatabaseBackup.MAX_BLOCK_SIZE
+                || compressedSize < 0 || compressedSize > DatabaseBackup.MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid length in block " + blockNumber);
+        }
+        int rawLength = (int) rawSize;
+        int compressedLength = (int) compressedSize;
+
+        if (compressed.length < compressedLength) {
+            compressed = new byte[compressedLength];
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        in.readFully(compressed, 0, compressedLength);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, compressedLength);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != rawLength) {
+                throw new EOFException("Truncated block " + blockNumber);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block " + blockNumber, e);
+        }
+
+        crc.reset();
+        crc.update(raw, 0, rawLength);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Checksum mismatch in block " + blockNumber);
+        }
+
+        rawStream = new ByteArrayInputStream(raw, 0, rawLength);
+        data = new DataInputStream(rawStream);
+        blockNumber++;
+    }
+
+    int type() {
+        return type;
+    }
+
+    DataInputStream data() {
+        return data;
+    }
+
+    boolean hasMoreData() {
+        return rawStream.available() > 0;
+    }
+
+    void close() {
+        inflater.end();
+    }
+}
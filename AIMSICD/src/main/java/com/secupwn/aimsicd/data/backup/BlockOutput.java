@@ -0,0 +1,88 @@
+package com.secupwn.aimsicd.data.backup;
+
+import com.secupwn.aimsicd.data.Varint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes the block framing of a backup, see {@link DatabaseBackup} for the layout.
+ * <p>
+ * Records are written to {@link #data()} and collected in memory until the block is
+ * {@link #endBlock() ended}, then the block is deflated, checksummed and written to the
+ * underlying stream. Callers end blocks between records, so records never span blocks.
+ */
+final class BlockOutput {
+
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream(DatabaseBackup.BLOCK_SIZE + 4096);
+    private final DataOutputStream data = new DataOutputStream(raw);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[DatabaseBackup.BLOCK_SIZE];
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(DatabaseBackup.BLOCK_SIZE);
+    private int type = -1;
+
+    BlockOutput(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    void beginBlock(int type) {
+        this.type = type;
+        raw.reset();
+    }
+
+    DataOutputStream data() {
+        return data;
+    }
+
+    boolean isFull() {
+        return raw.size() >= DatabaseBackup.BLOCK_SIZE;
+    }
+
+    /**
+     * Ends a full data block and starts the next one of the same type.
+     */
+    void continueBlock() throws IOException {
+        int current = type;
+        endBlock();
+        beginBlock(current);
+    }
+
+    void endBlock() throws IOException {
+        data.flush();
+        byte[] bytes = raw.toByteArray();
+
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+
+        compressed.reset();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+
+        out.writeByte(type);
+        Varint.write(out, bytes.length);
+        Varint.write(out, compressed.size());
+        out.writeInt((int) crc.getValue());
+        compressed.writeTo(out);
+        type = -1;
+    }
+
+    DataOutputStream header() {
+        return out;
+    }
+
+    void close() throws IOException {
+        deflater.end();
+        out.flush();
+    }
+}
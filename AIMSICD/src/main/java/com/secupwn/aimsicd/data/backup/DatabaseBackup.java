@@ -0,0 +1,596 @@
+package com.secupwn.aimsicd.data.backup;
+
+import com.secupwn.aimsicd.data.ReferenceRealm;
+import com.secupwn.aimsicd.data.Varint;
+import com.secupwn.aimsicd.smsdetection.SmsDetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmFieldType;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Portable, compressed backup of the whole database (operational and reference realm).
+ * <p>
+ * The format is independent of the realm file format. Every class is written with its
+ * field names and types, so a backup can be restored into a newer schema: fields are
+ * matched by name, unknown classes and fields are skipped.
+ * <pre>
+ * file    := magic "AIMSICDB", version (u8), block*
+ * block   := type (u8), raw length (varint), compressed length (varint),
+ *            CRC32 of the raw bytes (int), deflated raw bytes
+ * SECTION := section id (u8), schema version (varint)
+ * CLASS   := name (UTF), referenced (bool), field count (varint),
+ *            per field: name (UTF), type (u8), nullable (bool), link target (UTF)
+ * ROWS    := rows of the last CLASS until the end of the block
+ * END     := empty, last block of the file
+ * </pre>
+ * A row holds one value per field, nullable fields are prefixed with a presence byte.
+ * Integers are zig-zag varints, links are the 1-based position of the target row within
+ * its class (0 for null). Classes are written so that link targets come first.
+ * <p>
+ * Blocks hold about {@link #BLOCK_SIZE} raw bytes, so both sides work as a stream with
+ * bounded memory; only the rows of link target classes are remembered.
+ */
+@Slf4j
+public final class DatabaseBackup {
+
+    static final int FORMAT_VERSION = 1;
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Rows restored per transaction into the empty reference staging realm
+     */
+    static final int COMMIT_ROWS = 10000;
+
+    static final int SECTION_OPERATIONAL = 0;
+    static final int SECTION_REFERENCE = 1;
+
+    static final int BLOCK_SECTION = 1;
+    static final int BLOCK_CLASS = 2;
+    static final int BLOCK_ROWS = 3;
+    static final int BLOCK_END = 4;
+
+    private static final byte[] MAGIC = "AIMSICDB".getBytes(Charset.forName("US-ASCII"));
+
+    private static final int TYPE_INTEGER = 1;
+    private static final int TYPE_BOOLEAN = 2;
+    private static final int TYPE_STRING = 3;
+    private static final int TYPE_BINARY = 4;
+    private static final int TYPE_DATE = 5;
+    private static final int TYPE_FLOAT = 6;
+    private static final int TYPE_DOUBLE = 7;
+    private static final int TYPE_OBJECT = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private DatabaseBackup() {
+    }
+
+    /**
+     * Backs up the default realm and the current reference data.
+     */
+    public static void backup(File file) throws IOException {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BLOCK_SIZE);
+        try {
+            backup(out, Realm.getDefaultConfiguration(), ReferenceRealm.getConfiguration());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replaces the default realm and the reference data with the content of a backup.
+     * <p>
+     * The reference data is restored into an empty staging realm and only published on
+     * success. The default realm stays in use by the service while it is restored, so its
+     * rows are deleted and restored within one write transaction: readers see the old data
+     * until the commit, writers wait for it and their rows are added after the restored
+     * ones, and a failure rolls the whole section back. The file is verified first, so a
+     * corrupt backup is rejected before the write lock is taken.
+     */
+    public static void restore(File file) throws IOException {
+        InputStream verified = new BufferedInputStream(new FileInputStream(file), BLOCK_SIZE);
+        try {
+            verify(verified);
+        } finally {
+            verified.close();
+        }
+
+        RealmConfiguration staging = ReferenceRealm.beginImport(false);
+        boolean published = false;
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BLOCK_SIZE);
+        try {
+            restore(in, Realm.getDefaultConfiguration(), staging);
+            ReferenceRealm.publish(staging);
+            published = true;
+            SmsDetector.invalidateDetectionStrings();
+        } finally {
+            in.close();
+            if (!published) {
+                ReferenceRealm.discard(staging);
+            }
+        }
+    }
+
+    public static void backup(OutputStream stream, RealmConfiguration operational,
+                              RealmConfiguration reference) throws IOException {
+        long start = System.currentTimeMillis();
+        BlockOutput out = new BlockOutput(stream);
+        out.header().write(MAGIC);
+        out.header().writeByte(FORMAT_VERSION);
+        writeSection(out, SECTION_OPERATIONAL, operational);
+        writeSection(out, SECTION_REFERENCE, reference);
+        out.beginBlock(BLOCK_END);
+        out.endBlock();
+        out.close();
+        log.info("Backup written in {} ms", System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reads a whole backup and checks the framing and the checksums of all blocks without
+     * touching any realm.
+     *
+     * @throws IOException if the backup is truncated or corrupt
+     */
+    public static void verify(InputStream stream) throws IOException {
+        BlockInput in = open(stream);
+        try {
+            int blocks = 0;
+            do {
+                in.next();
+                blocks++;
+            } while (in.type() != BLOCK_END);
+            log.debug("Verified {} backup blocks", blocks);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void restore(InputStream stream, RealmConfiguration operational,
+                               RealmConfiguration reference) throws IOException {
+        long start = System.currentTimeMillis();
+        BlockInput in = open(stream);
+        try {
+            in.next();
+            while (in.type() == BLOCK_SECTION) {
+                int section = in.data().readUnsignedByte();
+                long schemaVersion = Varint.read(in.data());
+                log.debug("Restoring section {} (schema version {})", section, schemaVersion);
+                if (section == SECTION_REFERENCE) {
+                    restoreSection(in, reference, COMMIT_ROWS);
+                } else {
+                    restoreSection(in, operational, 0);
+                }
+            }
+            if (in.type() != BLOCK_END) {
+                throw new IOException("Unexpected block type " + in.type());
+            }
+        } finally {
+            in.close();
+        }
+        log.info("Backup restored in {} ms", System.currentTimeMillis() - start);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // writing
+
+    private static void writeSection(BlockOutput out, int section, RealmConfiguration configuration)
+            throws IOException {
+        DynamicRealm realm = DynamicRealm.getInstance(configuration);
+        try {
+            out.beginBlock(BLOCK_SECTION);
+            out.data().writeByte(section);
+            Varint.write(out.data(), realm.getVersion());
+            out.endBlock();
+
+            Map<String, Field[]> classes = describe(realm);
+            Set<String> referenced = new HashSet<>();
+            for (Field[] fields : classes.values()) {
+                for (Field field : fields) {
+                    if (field.target != null) {
+                        referenced.add(field.target);
+                    }
+                }
+            }
+
+            Map<String, Map<DynamicRealmObject, Integer>> positions = new HashMap<>();
+            for (String className : linkTargetsFirst(classes)) {
+                writeClass(out, realm, className, classes.get(className), referenced.contains(className), positions);
+            }
+        } finally {
+            realm.close();
+        }
+    }
+
+    private static Map<String, Field[]> describe(DynamicRealm realm) throws IOException {
+        Map<String, Field[]> classes = new HashMap<>();
+        for (RealmObjectSchema objectSchema : realm.getSchema().getAll()) {
+            String className = objectSchema.getClassName();
+            List<Field> fields = new ArrayList<>();
+            for (String name : objectSchema.getFieldNames()) {
+                int type = typeCode(objectSchema.getFieldType(name));
+                if (type < 0) {
+                    throw new IOException("Unsupported field type for backup: " + className + "." + name);
+                }
+                String target = null;
+                if (type == TYPE_OBJECT) {
+                    // the schema API doesn't expose the link target, take it from a linked row
+                    DynamicRealmObject linked = realm.where(className).isNotNull(name).findFirst();
+                    if (linked == null) {
+                        continue; // never set, nothing to back up
+                    }
+                    target = linked.getObject(name).getType();
+                }
+                fields.add(new Field(name, type, objectSchema.isNullable(name), target));
+            }
+            classes.put(className, fields.toArray(new Field[fields.size()]));
+        }
+        return classes;
+    }
+
+    private static List<String> linkTargetsFirst(Map<String, Field[]> classes) throws IOException {
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String className : classes.keySet()) {
+            visit(className, classes, ordered, new HashSet<String>());
+        }
+        return new ArrayList<>(ordered);
+    }
+
+    private static void visit(String className, Map<String, Field[]> classes, Set<String> ordered,
+                              Set<String> visiting) throws IOException {
+        if (ordered.contains(className)) {
+            return;
+        }
+        if (!visiting.add(className)) {
+            throw new IOException("Cyclic links are not supported: " + className);
+        }
+        for (Field field : classes.get(className)) {
+            if (field.target != null && !field.target.equals(className)) {
+                visit(field.target, classes, ordered, visiting);
+            }
+        }
+        ordered.add(className);
+    }
+
+    private static void writeClass(BlockOutput out, DynamicRealm realm, String className, Field[] fields,
+                                   boolean referenced, Map<String, Map<DynamicRealmObject, Integer>> positions)
+            throws IOException {
+        DataOutputStream data = out.data();
+        out.beginBlock(BLOCK_CLASS);
+        data.writeUTF(className);
+        data.writeBoolean(referenced);
+        Varint.write(data, fields.length);
+        for (Field field : fields) {
+            data.writeUTF(field.name);
+            data.writeByte(field.type);
+            data.writeBoolean(field.nullable);
+            data.writeUTF(field.target == null ? "" : field.target);
+        }
+        out.endBlock();
+
+        Map<DynamicRealmObject, Integer> ownPositions = null;
+        if (referenced) {
+            ownPositions = new HashMap<>();
+            positions.put(className, ownPositions);
+        }
+
+        int position = 0;
+        out.beginBlock(BLOCK_ROWS);
+        for (DynamicRealmObject row : realm.where(className).findAll()) {
+            if (ownPositions != null) {
+                ownPositions.put(row, ++position);
+            }
+            for (Field field : fields) {
+                writeValue(data, row, field, positions);
+            }
+            if (out.isFull()) {
+                out.continueBlock();
+            }
+        }
+        out.endBlock();
+    }
+
+    private static void writeValue(DataOutputStream data, DynamicRealmObject row, Field field,
+                                   Map<String, Map<DynamicRealmObject, Integer>> positions) throws IOException {
+        if (field.nullable) {
+            boolean isNull = row.isNull(field.name);
+            data.writeBoolean(!isNull);
+            if (isNull) {
+                return;
+            }
+        }
+        switch (field.type) {
+            case TYPE_INTEGER:
+                Varint.writeSigned(data, row.getLong(field.name));
+                break;
+            case TYPE_BOOLEAN:
+                data.writeBoolean(row.getBoolean(field.name));
+                break;
+            case TYPE_STRING:
+                writeBytes(data, row.getString(field.name).getBytes(UTF_8));
+                break;
+            case TYPE_BINARY:
+                writeBytes(data, row.getBlob(field.name));
+                break;
+            case TYPE_DATE:
+                Varint.writeSigned(data, row.getDate(field.name).getTime());
+                break;
+            case TYPE_FLOAT:
+                data.writeFloat(row.getFloat(field.name));
+                break;
+            case TYPE_DOUBLE:
+                data.writeDouble(row.getDouble(field.name));
+                break;
+            case TYPE_OBJECT:
+                DynamicRealmObject target = row.getObject(field.name);
+                Integer position = target == null ? null : positions.get(field.target).get(target);
+                Varint.write(data, position == null ? 0 : position);
+                break;
+            default:
+                throw new IOException("Unknown field type " + field.type);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        Varint.write(data, bytes.length);
+        data.write(bytes);
+    }
+
+    // ---------------------------------------------------------------------------------------
+    // reading
+
+    private static BlockInput open(InputStream stream) throws IOException {
+        BlockInput in = new BlockInput(stream);
+        DataInputStream header = in.header();
+        byte[] magic = new byte[MAGIC.length];
+        header.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not an AIMSICD backup");
+        }
+        int version = header.readUnsignedByte();
+        if (version > FORMAT_VERSION) {
+            throw new IOException("Backup format " + version + " is newer than supported " + FORMAT_VERSION);
+        }
+        return in;
+    }
+
+    /**
+     * @param commitRows Rows per transaction, 0 to restore the section in one transaction
+     */
+    private static void restoreSection(BlockInput in, RealmConfiguration configuration, int commitRows)
+            throws IOException {
+        // make sure the file and its schema exist, DynamicRealm doesn't create the schema
+        Realm.getInstance(configuration).close();
+
+        DynamicRealm realm = DynamicRealm.getInstance(configuration);
+        boolean committed = false;
+        try {
+            realm.beginTransaction();
+            realm.deleteAll();
+
+            Map<String, List<DynamicRealmObject>> created = new HashMap<>();
+            long rows = 0;
+            in.next();
+            while (in.type() == BLOCK_CLASS) {
+                rows = restoreClass(in, realm, created, rows, commitRows);
+            }
+            realm.commitTransaction();
+            committed = true;
+            log.debug("Restored {} rows into {}", rows, configuration.getRealmFileName());
+        } finally {
+            if (!committed && realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            realm.close();
+        }
+    }
+
+    /**
+     * Restores the rows following a CLASS block, returns with the next non ROWS block read.
+     * With {@code commitRows} set the transaction is committed every {@code commitRows} rows,
+     * so its size doesn't grow with the backup.
+     *
+     * @param rows       Rows restored so far in this section
+     * @param commitRows Rows per transaction, 0 to keep the whole section in one transaction
+     * @return Rows restored so far including this class
+     */
+    private static long restoreClass(BlockInput in, DynamicRealm realm, Map<String, List<DynamicRealmObject>> created,
+                                     long rows, int commitRows) throws IOException {
+        DataInputStream data = in.data();
+        String className = data.readUTF();
+        boolean referenced = data.readBoolean();
+        long declared = Varint.read(data);
+        if (declared < 0 || declared > data.available()) {
+            throw new IOException("Invalid field count " + declared + " of " + className);
+        }
+        int fieldCount = (int) declared;
+        Field[] fields = new Field[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            String name = data.readUTF();
+            int type = data.readUnsignedByte();
+            boolean nullable = data.readBoolean();
+            String target = data.readUTF();
+            fields[i] = new Field(name, type, nullable, target.isEmpty() ? null : target);
+        }
+
+        RealmSchema schema = realm.getSchema();
+        RealmObjectSchema objectSchema = schema.contains(className) ? schema.get(className) : null;
+        boolean[] apply = new boolean[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            Field field = fields[i];
+            apply[i] = objectSchema != null && objectSchema.hasField(field.name)
+                    && typeCode(objectSchema.getFieldType(field.name)) == field.type;
+            if (!apply[i]) {
+                log.warn("Skipping {}.{} which is not part of the current schema", className, field.name);
+            }
+        }
+
+        List<DynamicRealmObject> own = null;
+        if (referenced) {
+            own = new ArrayList<>();
+            created.put(className, own);
+        }
+
+        in.next();
+        while (in.type() == BLOCK_ROWS) {
+            data = in.data();
+            while (in.hasMoreData()) {
+                DynamicRealmObject row = objectSchema == null ? null : realm.createObject(className);
+                for (int i = 0; i < fieldCount; i++) {
+                    readValue(data, row, fields[i], apply[i], created);
+                }
+                if (own != null) {
+                    own.add(row);
+                }
+                rows++;
+                if (commitRows > 0 && rows % commitRows == 0) {
+                    realm.commitTransaction();
+                    realm.beginTransaction();
+                }
+            }
+            in.next();
+        }
+        return rows;
+    }
+
+    private static void readValue(DataInputStream data, DynamicRealmObject row, Field field, boolean apply,
+                                  Map<String, List<DynamicRealmObject>> created) throws IOException {
+        apply = apply && row != null;
+        if (field.nullable && !data.readBoolean()) {
+            if (apply && field.type != TYPE_OBJECT) {
+                row.setNull(field.name);
+            }
+            return;
+        }
+        switch (field.type) {
+            case TYPE_INTEGER:
+                long longValue = Varint.readSigned(data);
+                if (apply) {
+                    row.setLong(field.name, longValue);
+                }
+                break;
+            case TYPE_BOOLEAN:
+                boolean booleanValue = data.readBoolean();
+                if (apply) {
+                    row.setBoolean(field.name, booleanValue);
+                }
+                break;
+            case TYPE_STRING:
+                String stringValue = new String(readBytes(data), UTF_8);
+                if (apply) {
+                    row.setString(field.name, stringValue);
+                }
+                break;
+            case TYPE_BINARY:
+                byte[] bytes = readBytes(data);
+                if (apply) {
+                    row.setBlob(field.name, bytes);
+                }
+                break;
+            case TYPE_DATE:
+                long time = Varint.readSigned(data);
+                if (apply) {
+                    row.setDate(field.name, new Date(time));
+                }
+                break;
+            case TYPE_FLOAT:
+                float floatValue = data.readFloat();
+                if (apply) {
+                    row.setFloat(field.name, floatValue);
+                }
+                break;
+            case TYPE_DOUBLE:
+                double doubleValue = data.readDouble();
+                if (apply) {
+                    row.setDouble(field.name, doubleValue);
+                }
+                break;
+            case TYPE_OBJECT:
+                int position = (int) Varint.read(data);
+                List<DynamicRealmObject> targets = created.get(field.target);
+                if (apply && position > 0 && targets != null && position <= targets.size()) {
+                    DynamicRealmObject target = targets.get(position - 1);
+                    if (target != null) {
+                        row.setObject(field.name, target);
+                    }
+                }
+                break;
+            default:
+                throw new IOException("Unknown field type " + field.type);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        long length = Varint.read(data);
+        if (length < 0 || length > data.available()) {
+            throw new IOException("Invalid value length " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        data.readFully(bytes);
+        return bytes;
+    }
+
+    private static int typeCode(RealmFieldType type) {
+        switch (type) {
+            case INTEGER:
+                return TYPE_INTEGER;
+            case BOOLEAN:
+                return TYPE_BOOLEAN;
+            case STRING:
+                return TYPE_STRING;
+            case BINARY:
+                return TYPE_BINARY;
+            case DATE:
+                return TYPE_DATE;
+            case FLOAT:
+                return TYPE_FLOAT;
+            case DOUBLE:
+                return TYPE_DOUBLE;
+            case OBJECT:
+                return TYPE_OBJECT;
+            default:
+                return -1;
+        }
+    }
+
+    private static final class Field {
+        final String name;
+        final int type;
+        final boolean nullable;
+        final String target;
+
+        Field(String name, int type, boolean nullable, String target) {
+            this.name = name;
+            this.type = type;
+            this.nullable = nullable;
+            this.target = target;
+        }
+    }
+}
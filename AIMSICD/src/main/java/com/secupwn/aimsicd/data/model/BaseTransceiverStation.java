@@ -1,8 +1,9 @@
 package com.secupwn.aimsicd.data.model;
 
-import java.util.Date;
+import com.secupwn.aimsicd.data.GeoFixedPoint;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,10 +13,45 @@ public class BaseTransceiverStation extends RealmObject {
 
     private int mobileCountryCode;
     private int mobileNetworkCode;
+    @Index
     private int locationAreaCode;
+    @Index
     private int cellId;
     private int primaryScramblingCode;
-    private Date timeFirst;
-    private Date timeLast;
-    private GpsLocation gpsLocation;
+
+    /**
+     * Milliseconds since epoch
+     */
+    private long timeFirst;
+
+    /**
+     * Milliseconds since epoch
+     */
+    private long timeLast;
+
+    /**
+     * Fixed-point latitude, see {@link GeoFixedPoint}
+     */
+    private int latitudeE6;
+
+    /**
+     * Fixed-point longitude, see {@link GeoFixedPoint}
+     */
+    private int longitudeE6;
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public void setLatitude(double latitude) {
+        latitudeE6 = GeoFixedPoint.toFixed(latitude);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+
+    public void setLongitude(double longitude) {
+        longitudeE6 = GeoFixedPoint.toFixed(longitude);
+    }
 }
@@ -1,8 +1,9 @@
 package com.secupwn.aimsicd.data.model;
 
-import java.util.Date;
+import com.secupwn.aimsicd.data.GeoFixedPoint;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -21,15 +22,46 @@ import lombok.Setter;
 @Setter
 public class Event extends RealmObject {
 
-    private Date timestamp;
+    /**
+     * Milliseconds since epoch
+     */
+    @Index
+    private long timestamp;
     private String message;
 
-    private GpsLocation gpsLocation;
+    /**
+     * Fixed-point latitude, see {@link GeoFixedPoint}
+     */
+    private int latitudeE6;
 
+    /**
+     * Fixed-point longitude, see {@link GeoFixedPoint}
+     */
+    private int longitudeE6;
+    private float accuracy;
+
+    @Index
     private int cellId;
     private int locationAreaCode;
     private int primaryScramblingCode;
 
+    @Index
     private int dfId;
     private String dfDescription;
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public void setLatitude(double latitude) {
+        latitudeE6 = GeoFixedPoint.toFixed(latitude);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+
+    public void setLongitude(double longitude) {
+        longitudeE6 = GeoFixedPoint.toFixed(longitude);
+    }
 }
@@ -1,8 +1,10 @@
 package com.secupwn.aimsicd.data.model;
 
-import java.util.Date;
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+import com.secupwn.aimsicd.data.RadioAccessTechnology;
 
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.Required;
 import lombok.Getter;
 import lombok.Setter;
@@ -13,18 +15,62 @@ public class Import extends RealmObject {
 
     @Required
     private String dbSource;
-    private String radioAccessTechnology;
+
+    /**
+     * RAT code, see {@link RadioAccessTechnology}
+     */
+    private int radioAccessTechnology;
     private int mobileCountryCode;
     private int mobileNetworkCode;
+    @Index
     private int locationAreaCode;
+    @Index
     private int cellId;
     private int primaryScramblingCode;
-    private GpsLocation gpsLocation;
+
+    /**
+     * Fixed-point latitude, see {@link GeoFixedPoint}
+     */
+    private int latitudeE6;
+
+    /**
+     * Fixed-point longitude, see {@link GeoFixedPoint}
+     */
+    private int longitudeE6;
     private boolean gpsExact;
     private int avgRange;
     private int avgSignal;
     private int samples;
-    private Date timeFirst;
-    private Date timeLast;
+
+    /**
+     * Milliseconds since epoch
+     */
+    private long timeFirst;
+
+    /**
+     * Milliseconds since epoch
+     */
+    @Index
+    private long timeLast;
     private Integer rejCause;
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public void setLatitude(double latitude) {
+        latitudeE6 = GeoFixedPoint.toFixed(latitude);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+
+    public void setLongitude(double longitude) {
+        longitudeE6 = GeoFixedPoint.toFixed(longitude);
+    }
+
+    public String getRadioAccessTechnologyName() {
+        return RadioAccessTechnology.toName(radioAccessTechnology);
+    }
 }
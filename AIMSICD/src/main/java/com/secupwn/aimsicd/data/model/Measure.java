@@ -1,9 +1,10 @@
 package com.secupwn.aimsicd.data.model;
 
-import java.util.Date;
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+import com.secupwn.aimsicd.data.RadioAccessTechnology;
 
 import io.realm.RealmObject;
-import io.realm.annotations.Required;
+import io.realm.annotations.Index;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -12,13 +13,50 @@ import lombok.Setter;
 public class Measure extends RealmObject {
 
     private BaseTransceiverStation baseStation;
-    @Required
-    private Date time;
-    private GpsLocation gpsLocation;
+
+    /**
+     * Time of the measurement in milliseconds since epoch
+     */
+    @Index
+    private long time;
+
+    /**
+     * Fixed-point latitude, see {@link GeoFixedPoint}
+     */
+    private int latitudeE6;
+
+    /**
+     * Fixed-point longitude, see {@link GeoFixedPoint}
+     */
+    private int longitudeE6;
+    private float accuracy;
     private int rxSignal;
-    @Required
-    private String radioAccessTechnology;
+
+    /**
+     * RAT code, see {@link RadioAccessTechnology}
+     */
+    private int radioAccessTechnology;
     private int timingAdvance;
     private boolean submitted;
     private boolean neighbor;
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public void setLatitude(double latitude) {
+        latitudeE6 = GeoFixedPoint.toFixed(latitude);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+
+    public void setLongitude(double longitude) {
+        longitudeE6 = GeoFixedPoint.toFixed(longitude);
+    }
+
+    public String getRadioAccessTechnologyName() {
+        return RadioAccessTechnology.toName(radioAccessTechnology);
+    }
 }
@@ -0,0 +1,45 @@
+package com.secupwn.aimsicd.data.model;
+
+import com.secupwn.aimsicd.data.MeasureArchive;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.Required;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A block of archived {@link Measure measurements} of one cell, see {@link MeasureArchive}.
+ */
+@Getter
+@Setter
+public class MeasureArchiveBlock extends RealmObject {
+
+    private BaseTransceiverStation baseStation;
+
+    /**
+     * Time of the oldest measurement in the block, milliseconds since epoch
+     */
+    @Index
+    private long timeStart;
+
+    /**
+     * Time of the newest measurement in the block, milliseconds since epoch
+     */
+    private long timeEnd;
+
+    private int count;
+
+    /**
+     * Sum of {@link Measure#rxSignal} over the block, so averages don't need decoding
+     */
+    private long rxSignalSum;
+
+    private boolean submitted;
+
+    /**
+     * Columnar, delta and varint encoded measurements, see {@link com.secupwn.aimsicd.data.MeasureBlockCodec}
+     */
+    @Required
+    private byte[] data;
+}
@@ -0,0 +1,85 @@
+package com.secupwn.aimsicd.data.model;
+
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * All sightings of one neighboring cell next to one serving cell during one
+ * recording interval, see {@link com.secupwn.aimsicd.service.NeighborCellRecorder}.
+ */
+@Getter
+@Setter
+public class NeighborObservation extends RealmObject {
+
+    private int servingLocationAreaCode;
+    @Index
+    private int servingCellId;
+
+    /**
+     * Packed identity of the neighbor, see {@link #neighborKey(int, int, int)}
+     */
+    @Index
+    private long neighborKey;
+    private int locationAreaCode;
+    private int cellId;
+    private int primaryScramblingCode;
+
+    /**
+     * RAT code, see {@link com.secupwn.aimsicd.data.RadioAccessTechnology}
+     */
+    private int radioAccessTechnology;
+
+    /**
+     * Start of the recording interval, milliseconds since epoch
+     */
+    @Index
+    private long intervalStart;
+
+    /**
+     * Last sighting within the interval, milliseconds since epoch
+     */
+    private long timeLast;
+    private int samples;
+
+    /**
+     * Sum of the reported RSSI values, divide by {@link #samples} for the average
+     */
+    private long rssiSum;
+
+    /**
+     * Fixed-point latitude of the device at the last sighting with a fix, see {@link GeoFixedPoint}
+     */
+    private int latitudeE6;
+
+    /**
+     * Fixed-point longitude of the device at the last sighting with a fix, see {@link GeoFixedPoint}
+     */
+    private int longitudeE6;
+
+    /**
+     * Packs a neighbor identity into one value. Neighbors reported without a CID
+     * (usually UMTS, see {@code NeighboringCellInfo.UNKNOWN_CID}) are keyed by PSC.
+     */
+    public static long neighborKey(int locationAreaCode, int cellId, int primaryScramblingCode) {
+        if (cellId < 0 || cellId == Integer.MAX_VALUE) {
+            return Long.MIN_VALUE | (primaryScramblingCode & 0xFFFFFFFFL);
+        }
+        return ((long) locationAreaCode << 32) | (cellId & 0xFFFFFFFFL);
+    }
+
+    public int getAverageRssi() {
+        return samples == 0 ? 0 : (int) (rssiSum / samples);
+    }
+
+    public double getLatitude() {
+        return GeoFixedPoint.toDegrees(latitudeE6);
+    }
+
+    public double getLongitude() {
+        return GeoFixedPoint.toDegrees(longitudeE6);
+    }
+}
@@ -0,0 +1,56 @@
+package com.secupwn.aimsicd.data.model;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One run of the serving-cell timeline: the device was camped on the same cell with the
+ * same RAT from {@link #timeStart} to {@link #timeEnd}, see
+ * {@link com.secupwn.aimsicd.service.ServingCellTimeline}.
+ */
+@Getter
+@Setter
+public class ServingCellInterval extends RealmObject {
+
+    /**
+     * The SIM subscription, see {@link com.secupwn.aimsicd.service.SubscriptionTracker}
+     */
+    private int subscriptionId;
+
+    private int mobileCountryCode;
+    private int mobileNetworkCode;
+    private int locationAreaCode;
+    @Index
+    private int cellId;
+    private int primaryScramblingCode;
+
+    /**
+     * RAT code, see {@link com.secupwn.aimsicd.data.RadioAccessTechnology}
+     */
+    private int radioAccessTechnology;
+
+    /**
+     * First report of the cell, milliseconds since epoch
+     */
+    @Index
+    private long timeStart;
+
+    /**
+     * Last report of the cell, milliseconds since epoch
+     */
+    private long timeEnd;
+
+    /**
+     * Number of signal strength samples, 0 if none were reported
+     */
+    private int samples;
+    private int signalMin;
+    private int signalMax;
+
+    /**
+     * Sum of the signal strength samples, divide by {@link #samples} for the average
+     */
+    private long signalSum;
+}
@@ -0,0 +1,44 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import android.telephony.CellLocation;
+import android.telephony.cdma.CdmaCellLocation;
+import android.telephony.gsm.GsmCellLocation;
+
+import com.secupwn.aimsicd.utils.Cell;
+
+/**
+ * Conversion of the framework cell locations.
+ */
+public final class CellLocations {
+
+    private CellLocations() {
+    }
+
+    /**
+     * @return A cell with LAC and CID (NID and BID for CDMA) set, null for unknown locations
+     */
+    public static Cell toCell(CellLocation location) {
+        Cell cell;
+        if (location instanceof GsmCellLocation) {
+            GsmCellLocation gsm = (GsmCellLocation) location;
+            cell = new Cell();
+            cell.setLocationAreaCode(gsm.getLac());
+            cell.setCellId(gsm.getCid());
+            cell.setPrimaryScramblingCode(gsm.getPsc());
+        } else if (location instanceof CdmaCellLocation) {
+            CdmaCellLocation cdma = (CdmaCellLocation) location;
+            cell = new Cell();
+            cell.setLocationAreaCode(cdma.getNetworkId());
+            cell.setCellId(cdma.getBaseStationId());
+            cell.setSid(cdma.getSystemId());
+        } else {
+            cell = null;
+        }
+        return cell;
+    }
+}
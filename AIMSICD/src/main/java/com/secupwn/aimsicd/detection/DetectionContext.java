@@ -0,0 +1,49 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import android.content.Context;
+import android.telephony.TelephonyManager;
+
+import com.secupwn.aimsicd.service.NeighborCellMonitor;
+import com.secupwn.aimsicd.service.SignalStrengthTracker;
+import com.secupwn.aimsicd.utils.Device;
+import com.secupwn.aimsicd.utils.RealmHelper;
+import com.secupwn.aimsicd.utils.TinyDB;
+
+import lombok.Getter;
+
+/**
+ * What detectors may use. The {@link Device} is updated by the analysis thread before the
+ * detectors run and not modified while they run, detectors must only read it.
+ */
+@Getter
+public final class DetectionContext {
+
+    private final Context context;
+    private final TelephonyManager telephonyManager;
+    private final Device device;
+    private final RealmHelper dbHelper;
+    private final SignalStrengthTracker signalStrengthTracker;
+    private final TinyDB tinyDb;
+
+    /**
+     * The neighbors of the same subscription, read without a call into the telephony service
+     */
+    private final NeighborCellMonitor neighborCellMonitor;
+
+    public DetectionContext(Context context, TelephonyManager telephonyManager, Device device,
+                            RealmHelper dbHelper, SignalStrengthTracker signalStrengthTracker, TinyDB tinyDb,
+                            NeighborCellMonitor neighborCellMonitor) {
+        this.context = context;
+        this.telephonyManager = telephonyManager;
+        this.device = device;
+        this.dbHelper = dbHelper;
+        this.signalStrengthTracker = signalStrengthTracker;
+        this.tinyDb = tinyDb;
+        this.neighborCellMonitor = neighborCellMonitor;
+    }
+}
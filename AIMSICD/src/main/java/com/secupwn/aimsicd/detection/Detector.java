@@ -0,0 +1,36 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.service.RadioSnapshot;
+
+/**
+ * One detection method, fed with the radio snapshots it {@link #accepts(RadioSnapshot) accepts}.
+ * <p>
+ * Detectors run concurrently with each other on the {@link DetectorEngine} executor, so an
+ * implementation must not rely on the order of detectors and must only share state through
+ * the {@link DetectionContext}. A detector that exceeds its {@link #getBudgetMs() budget} is
+ * interrupted and its previous finding stays in effect.
+ */
+public interface Detector {
+
+    /**
+     * Unique name, used as key of the findings and the latency statistics
+     */
+    String getName();
+
+    /**
+     * Maximum time in milliseconds a single analysis may take
+     */
+    long getBudgetMs();
+
+    boolean accepts(RadioSnapshot snapshot);
+
+    /**
+     * @return The new finding of this detector or {@code null} to keep the previous one
+     */
+    Finding analyze(DetectionContext context, RadioSnapshot snapshot) throws Exception;
+}
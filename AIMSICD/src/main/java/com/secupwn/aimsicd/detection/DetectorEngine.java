@@ -0,0 +1,315 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+import com.secupwn.aimsicd.utils.Cell;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs the registered {@link Detector}s on every radio snapshot and merges their findings
+ * into one {@link ThreatAssessment}.
+ * <p>
+ * The detectors accepting a snapshot run in parallel on a small thread pool, so one
+ * {@link #process(RadioSnapshot)} call takes about as long as the slowest detector and never
+ * longer than the largest budget. Latency, timeouts and failures are recorded per detector.
+ * Findings from outside the snapshot pipeline (e.g. the SMS detector) are merged with
+ * {@link #report(Finding)}.
+ * <p>
+ * Alarms are weighed by the {@link ThreatScorer} per serving cell, which decides the status of
+ * the assessment. A finding's event is logged once when its detector raises the alarm on a
+ * cell, not again while the alarm persists.
+ */
+@Slf4j
+public class DetectorEngine {
+
+    public interface Listener {
+        /**
+         * Called on the thread that processed the snapshot or reported the finding
+         */
+        void onAssessmentChanged(ThreatAssessment previous, ThreatAssessment current);
+    }
+
+    /**
+     * Latency and outcome counters of one detector
+     */
+    @Getter
+    public static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        @Override
+        public String toString() {
+            return latency + " timeouts=" + timeouts.get() + " failures=" + failures.get();
+        }
+    }
+
+    static final int MAX_THREADS = 4;
+
+    private final DetectionContext context;
+    private final List<Detector> detectors = new CopyOnWriteArrayList<>();
+    private final Map<String, Stats> stats = new LinkedHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+
+    @Getter
+    private final ThreatScorer scorer = new ThreatScorer();
+
+    /**
+     * Cell on which each detector last logged an event, guarded by this
+     */
+    private final Map<String, Long> eventCells = new HashMap<>();
+
+    private volatile ThreatAssessment assessment = ThreatAssessment.EMPTY;
+
+    public DetectorEngine(DetectionContext context) {
+        this(context, newExecutor(), true);
+    }
+
+    /**
+     * @param executor Runs the detectors, may be shared by several engines (e.g. one per SIM)
+     *                 and is not shut down by {@link #shutdown()}
+     */
+    public DetectorEngine(DetectionContext context, ExecutorService executor) {
+        this(context, executor, false);
+    }
+
+    private DetectorEngine(DetectionContext context, ExecutorService executor, boolean ownsExecutor) {
+        this.context = context;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * @return A thread pool sized for the detectors of one engine
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newFixedThreadPool(MAX_THREADS);
+    }
+
+    public synchronized void register(Detector detector) {
+        detectors.add(detector);
+        stats.put(detector.getName(), new Stats());
+        assessment = assessment.with(Finding.clear(detector.getName()));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public ThreatAssessment getAssessment() {
+        return assessment;
+    }
+
+    /**
+     * @return The statistics of the registered detectors, in registration order
+     */
+    public synchronized Map<String, Stats> getStats() {
+        return new LinkedHashMap<>(stats);
+    }
+
+    /**
+     * Runs all detectors accepting the snapshot and waits for their findings, each detector at
+     * most for its budget. Must be called from one thread only (the analysis thread).
+     */
+    public void process(RadioSnapshot snapshot) {
+        List<Detector> accepting = new ArrayList<>();
+        List<Future<Finding>> futures = new ArrayList<>();
+        List<Long> started = new ArrayList<>();
+        for (Detector detector : detectors) {
+            if (detector.accepts(snapshot)) {
+                accepting.add(detector);
+                started.add(System.nanoTime());
+                futures.add(executor.submit(new Analysis(detector, snapshot)));
+            }
+        }
+
+        for (int i = 0; i < accepting.size(); i++) {
+            Detector detector = accepting.get(i);
+            Stats detectorStats = statsOf(detector);
+            long deadline = started.get(i) + TimeUnit.MILLISECONDS.toNanos(detector.getBudgetMs());
+            Future<Finding> future = futures.get(i);
+            try {
+                Finding finding = future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (finding != null) {
+                    merge(finding);
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                detectorStats.timeouts.incrementAndGet();
+                log.warn("Detector {} exceeded its budget of {} ms", detector.getName(), detector.getBudgetMs());
+            } catch (ExecutionException e) {
+                detectorStats.failures.incrementAndGet();
+                log.error("Detector " + detector.getName() + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        // evidence decays even without new findings
+        merge(null);
+    }
+
+    /**
+     * Runs one registered detector on a snapshot outside of {@link #process(RadioSnapshot)},
+     * e.g. once the data it waited for is available, and merges its finding.
+     * Runs on the calling thread without a budget.
+     */
+    public void rerun(Detector detector, RadioSnapshot snapshot) {
+        Finding finding;
+        try {
+            finding = new Analysis(detector, snapshot).call();
+        } catch (Exception e) {
+            statsOf(detector).failures.incrementAndGet();
+            log.error("Detector " + detector.getName() + " failed", e);
+            return;
+        }
+        if (finding != null) {
+            merge(finding);
+        }
+    }
+
+    /**
+     * Merges a finding produced outside of {@link #process(RadioSnapshot)}.
+     */
+    public void report(Finding finding) {
+        merge(finding);
+    }
+
+    /**
+     * Writes the logged event cells and the scorer state, see {@link ThreatScorer#writeState(DataOutput)}.
+     */
+    public synchronized void writeState(DataOutput out) throws IOException {
+        out.writeShort(eventCells.size());
+        for (Map.Entry<String, Long> entry : eventCells.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        scorer.writeState(out);
+    }
+
+    /**
+     * Restores what {@link #writeState(DataOutput)} wrote, so events already logged for the
+     * serving cell are not logged again after a restart.
+     */
+    public synchronized void readState(DataInput in) throws IOException {
+        Map<String, Long> restored = new HashMap<>();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            String detector = in.readUTF();
+            restored.put(detector, in.readLong());
+        }
+        scorer.readState(in);
+        eventCells.clear();
+        eventCells.putAll(restored);
+    }
+
+    public void logStats() {
+        for (Map.Entry<String, Stats> entry : getStats().entrySet()) {
+            log.info("Detector {}: {}", entry.getKey(), entry.getValue());
+        }
+    }
+
+    public void shutdown() {
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param finding The new finding of a detector or null to only re-evaluate the score
+     */
+    private void merge(Finding finding) {
+        long now = System.currentTimeMillis();
+        Cell cell = context.getDevice().cell;
+        long cellKey = ThreatScorer.cellKey(cell.getLocationAreaCode(), cell.getCellId());
+
+        ThreatAssessment previous;
+        ThreatAssessment current;
+        boolean logEvent = false;
+        synchronized (this) {
+            previous = assessment;
+            current = previous;
+            if (finding != null) {
+                current = current.with(finding);
+                scorer.observe(cellKey, finding, now);
+
+                Long eventCell = eventCells.get(finding.getDetector());
+                if (!finding.isAlarm()) {
+                    eventCells.remove(finding.getDetector());
+                } else if (finding.getEventId() != 0 && (eventCell == null || eventCell != cellKey)) {
+                    eventCells.put(finding.getDetector(), cellKey);
+                    logEvent = true;
+                }
+            }
+            Status status = scorer.evaluate(cellKey, now);
+            current = current.withScore(status, scorer.getScore(), scorer.getReason());
+            assessment = current;
+        }
+
+        if (logEvent) {
+            // the cell of this engine's subscription, not the default one
+            context.getDbHelper().toEventLog(finding.getEventId(), finding.getEventDescription(), cell);
+        }
+        if (!current.sameAs(previous)) {
+            log.debug("Assessment changed: {}", current);
+            for (Listener listener : listeners) {
+                listener.onAssessmentChanged(previous, current);
+            }
+        }
+    }
+
+    private synchronized Stats statsOf(Detector detector) {
+        return stats.get(detector.getName());
+    }
+
+    private final class Analysis implements Callable<Finding> {
+        private final Detector detector;
+        private final RadioSnapshot snapshot;
+
+        Analysis(Detector detector, RadioSnapshot snapshot) {
+            this.detector = detector;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Finding call() throws Exception {
+            long start = System.nanoTime();
+            try {
+                return detector.analyze(context, snapshot);
+            } finally {
+                statsOf(detector).getLatency().record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import android.telephony.CellLocation;
+import android.telephony.TelephonyManager;
+import android.telephony.cdma.CdmaCellLocation;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Connection to a CDMA femtocell, fed by service state snapshots while femtocell tracking
+ * is enabled (CDMA devices only).
+ * <p>
+ * A femtocell uses a network ID in the range [0xfa, 0xff), on EvDo networks as well as on
+ * 1xRTT networks.
+ */
+@Slf4j
+public class FemtocellDetector implements Detector {
+
+    public static final String NAME = "Femtocell";
+
+    private static final int FEMTO_NID_MIN = 0xfa;
+    private static final int FEMTO_NID_MAX = 0xff;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long getBudgetMs() {
+        return 100;
+    }
+
+    @Override
+    public boolean accepts(RadioSnapshot snapshot) {
+        return snapshot.getKind() == RadioSnapshot.Kind.SERVICE_STATE;
+    }
+
+    @Override
+    public Finding analyze(DetectionContext context, RadioSnapshot snapshot) {
+        TelephonyManager tm = context.getTelephonyManager();
+        if (snapshot.getServiceState() == null || tm.getPhoneType() != TelephonyManager.PHONE_TYPE_CDMA) {
+            return Finding.clear(NAME);
+        }
+
+        CellLocation location = tm.getCellLocation();
+        if (!(location instanceof CdmaCellLocation)) {
+            log.debug("Cell location info is null.");
+            return Finding.clear(NAME);
+        }
+
+        int networkID = ((CdmaCellLocation) location).getNetworkId();
+        if (networkID >= FEMTO_NID_MIN && networkID < FEMTO_NID_MAX) {
+            return new Finding(NAME, Status.DANGER,
+                    context.getContext().getString(R.string.alert_femtocell_connection_detected));
+        }
+        return Finding.clear(NAME);
+    }
+}
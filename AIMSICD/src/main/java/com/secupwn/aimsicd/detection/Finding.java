@@ -0,0 +1,84 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.enums.Status;
+
+import lombok.Getter;
+
+/**
+ * Immutable result of a {@link Detector}: the threat level it sees and a message for the user.
+ */
+@Getter
+public final class Finding {
+
+    private final String detector;
+    private final Status status;
+
+    /**
+     * Shown in the status notification, null for {@link #clear(String)} findings
+     */
+    private final String message;
+
+    /**
+     * Detection id written to the {@link com.secupwn.aimsicd.data.model.Event Event} log when
+     * the alarm is raised, 0 if the alarm isn't logged
+     */
+    private final int eventId;
+    private final String eventDescription;
+
+    public Finding(String detector, Status status, String message) {
+        this(detector, status, message, 0, null);
+    }
+
+    public Finding(String detector, Status status, String message, int eventId, String eventDescription) {
+        this.detector = detector;
+        this.status = status;
+        this.message = message;
+        this.eventId = eventId;
+        this.eventDescription = eventDescription;
+    }
+
+    /**
+     * @return A finding stating that the detector sees no threat
+     */
+    public static Finding clear(String detector) {
+        return new Finding(detector, Status.OK, null);
+    }
+
+    /**
+     * @return true if this finding raises the threat level above {@link Status#OK}
+     */
+    public boolean isAlarm() {
+        return status.ordinal() > Status.OK.ordinal();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Finding)) {
+            return false;
+        }
+        Finding other = (Finding) o;
+        return detector.equals(other.detector) && status == other.status && eventId == other.eventId
+                && (message == null ? other.message == null : message.equals(other.message));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = detector.hashCode();
+        result = 31 * result + status.hashCode();
+        result = 31 * result + eventId;
+        return 31 * result + (message == null ? 0 : message.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return detector + ":" + status + (message == null ? "" : " (" + message + ")");
+    }
+}
@@ -0,0 +1,57 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+import com.secupwn.aimsicd.utils.Cell;
+
+import io.realm.Realm;
+import lombok.Cleanup;
+
+/**
+ * Detection 1: the LAC of the serving cell differs from the LAC stored for the same CID.
+ * <p>
+ * Runs on every cell change (see issue #91), the comparison itself is done by
+ * {@link com.secupwn.aimsicd.utils.RealmHelper#checkLAC(Realm, Cell)}.
+ */
+public class LacChangeDetector implements Detector {
+
+    public static final String NAME = "LacChange";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long getBudgetMs() {
+        return 250;
+    }
+
+    @Override
+    public boolean accepts(RadioSnapshot snapshot) {
+        return snapshot.getKind() == RadioSnapshot.Kind.CELL_LOCATION;
+    }
+
+    @Override
+    public Finding analyze(DetectionContext context, RadioSnapshot snapshot) {
+        Cell cell = CellLocations.toCell(snapshot.getCellLocation());
+        if (cell == null) {
+            return null;
+        }
+
+        @Cleanup Realm realm = Realm.getDefaultInstance();
+        if (!context.getDbHelper().checkLAC(realm, cell)) {
+            // checkLAC() only logs, the DetectorEngine logs event 1 when the alarm is raised on a cell
+            return new Finding(NAME, Status.MEDIUM,
+                    context.getContext().getString(R.string.hostile_service_area_changing_lac_detected),
+                    1, "Changing LAC");
+        }
+        return Finding.clear(NAME);
+    }
+}
@@ -0,0 +1,85 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import android.telephony.TelephonyManager;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.NeighborCellMonitor;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+import com.secupwn.aimsicd.utils.TinyDB;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detection 7a: the serving cell provides no neighboring cells although neighbor lists
+ * have been seen before on this network type.
+ * <p>
+ * Whether neighbor lists are supported is remembered per network type in TinyDB
+ * ("nc_list_present_&lt;type&gt;"): set when a list is seen, cleared when none is seen
+ * and none was expected. See issues #346 and #383.
+ * <p>
+ * The neighbors are taken from the {@link NeighborCellMonitor} of the subscription, which
+ * re-reads them on cell changes, so the detector makes no call into the telephony service.
+ * Until the list has been re-read after the cell change it still belongs to the previous
+ * cell, then the previous finding is kept and the subscription re-runs the detector once
+ * the monitor delivers the new list.
+ */
+@Slf4j
+public class NeighborListDetector implements Detector {
+
+    public static final String NAME = "EmptyNeighborList";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long getBudgetMs() {
+        return 250;
+    }
+
+    @Override
+    public boolean accepts(RadioSnapshot snapshot) {
+        return snapshot.getKind() == RadioSnapshot.Kind.CELL_LOCATION;
+    }
+
+    @Override
+    public Finding analyze(DetectionContext context, RadioSnapshot snapshot) {
+        TelephonyManager tm = context.getTelephonyManager();
+        TinyDB tinydb = context.getTinyDb();
+
+        NeighborCellMonitor.Neighbors neighbors = context.getNeighborCellMonitor().getNeighbors();
+        if (neighbors.getTime() < snapshot.getTime()) {
+            // not read since the cell change, keep the previous finding
+            return null;
+        }
+        int neighborCellsCount = neighbors.getCells().size(); // See # 383
+
+        // NC list present for that network type? (default is false)
+        String ncListVariableByType = "nc_list_present_" + tm.getNetworkType();
+        boolean nclSupportedByNetwork = tinydb.getBoolean(ncListVariableByType);
+
+        if (neighborCellsCount > 0) {
+            log.debug("NeighboringCellInfo size: {}", neighborCellsCount);
+            if (!nclSupportedByNetwork) {
+                log.debug("Setting {} to: true", ncListVariableByType);
+                tinydb.putBoolean(ncListVariableByType, true);
+            }
+        } else if (nclSupportedByNetwork) {
+            log.info("ALERT: No neighboring cells detected for CID: {}", context.getDevice().cell.getCellId());
+            return new Finding(NAME, Status.MEDIUM,
+                    context.getContext().getString(R.string.cell_doesnt_provide_any_neighbors),
+                    4, "No neighboring cells detected");
+        } else {
+            log.debug("NC list not supported by this network type or not supported by AOS on this device. Nothing to do.");
+            tinydb.putBoolean(ncListVariableByType, false);
+        }
+        return Finding.clear(NAME);
+    }
+}
@@ -0,0 +1,65 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+import com.secupwn.aimsicd.service.SignalSampleRing;
+import com.secupwn.aimsicd.service.SignalStrengthTracker;
+import com.secupwn.aimsicd.utils.Cell;
+
+/**
+ * The signal strength of the serving cell differs a lot from its stored average,
+ * see {@link SignalStrengthTracker#isMysterious(int, int)}. Once a few samples of the cell
+ * were seen their median is checked instead of the latest one, so a single fading dip
+ * doesn't count.
+ */
+public class SignalStrengthDetector implements Detector {
+
+    public static final String NAME = "SignalStrength";
+
+    private static final int MIN_SAMPLES_FOR_MEDIAN = 5;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long getBudgetMs() {
+        return 250;
+    }
+
+    @Override
+    public boolean accepts(RadioSnapshot snapshot) {
+        return snapshot.getKind() == RadioSnapshot.Kind.SIGNAL_STRENGTH;
+    }
+
+    @Override
+    public Finding analyze(DetectionContext context, RadioSnapshot snapshot) {
+        Cell cell = context.getDevice().cell;
+        int cellId = cell.getCellId();
+        if (cellId <= 0 || cellId == Integer.MAX_VALUE) {
+            return null; // not camped on a known cell yet
+        }
+        SignalStrengthTracker tracker = context.getSignalStrengthTracker();
+        int signal = context.getDevice().getSignalDBm();
+        SignalSampleRing samples = tracker.getRecentSamples(cellId);
+        if (samples != null) {
+            synchronized (samples) {
+                if (samples.size() >= MIN_SAMPLES_FOR_MEDIAN) {
+                    signal = samples.median();
+                }
+            }
+        }
+        if (tracker.isMysterious(cellId, signal)) {
+            return new Finding(NAME, Status.MEDIUM,
+                    context.getContext().getString(R.string.signal_strength_anomaly_detected));
+        }
+        return Finding.clear(NAME);
+    }
+}
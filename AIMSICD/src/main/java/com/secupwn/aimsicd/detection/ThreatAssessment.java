@@ -0,0 +1,105 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.enums.Status;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable merge of the latest {@link Finding} of every detector and the resulting
+ * threat status as scored by the {@link ThreatScorer}.
+ * <p>
+ * Findings are kept in detector registration order.
+ */
+public final class ThreatAssessment {
+
+    static final ThreatAssessment EMPTY = new ThreatAssessment(new LinkedHashMap<String, Finding>(), Status.OK, 0, null);
+
+    private final Map<String, Finding> findings;
+    private final Status status;
+    private final double score;
+    private final Finding reason;
+
+    private ThreatAssessment(Map<String, Finding> findings, Status status, double score, Finding reason) {
+        this.findings = Collections.unmodifiableMap(findings);
+        this.status = status;
+        this.score = score;
+        this.reason = reason;
+    }
+
+    /**
+     * @return A new assessment with the finding of its detector replaced
+     */
+    ThreatAssessment with(Finding finding) {
+        if (finding.equals(findings.get(finding.getDetector()))) {
+            return this;
+        }
+        Map<String, Finding> copy = new LinkedHashMap<>(findings);
+        copy.put(finding.getDetector(), finding);
+        return new ThreatAssessment(copy, status, score, reason);
+    }
+
+    /**
+     * @return A new assessment with the given result of the scorer
+     */
+    ThreatAssessment withScore(Status status, double score, Finding reason) {
+        return new ThreatAssessment(findings, status, score, reason);
+    }
+
+    /**
+     * @return true if both assessments have the same findings, status and reason (the score may differ)
+     */
+    boolean sameAs(ThreatAssessment other) {
+        return findings.equals(other.findings) && status == other.status
+                && (reason == null ? other.reason == null : reason.equals(other.reason));
+    }
+
+    /**
+     * @return The scored threat status, {@link Status#OK} if there is no threat
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The score of the serving cell, see {@link ThreatScorer}
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * @return The alarm contributing most to the status or null if the status is OK
+     */
+    public Finding getTopFinding() {
+        return reason;
+    }
+
+    public Finding getFinding(String detector) {
+        return findings.get(detector);
+    }
+
+    public Collection<Finding> getFindings() {
+        return findings.values();
+    }
+
+    /**
+     * @return true if the given detector currently raises an alarm
+     */
+    public boolean isDetected(String detector) {
+        Finding finding = findings.get(detector);
+        return finding != null && finding.isAlarm();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ThreatAssessment{%s score=%.2f %s}", status, score, findings.values());
+    }
+}
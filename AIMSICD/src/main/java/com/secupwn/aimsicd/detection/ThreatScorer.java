@@ -0,0 +1,349 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.smsdetection.SmsDetector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Turns the findings of the detectors into a stable threat status.
+ * <p>
+ * Every alarm adds evidence for the serving cell it was observed on: the evidence of a
+ * detector is refreshed to its weight and then decays with the detector's half-life, a clear
+ * finding doesn't remove it. The score of a cell is the sum of the decayed evidence of all
+ * detectors, so independent detections add up while a flapping detector doesn't.
+ * <p>
+ * The status follows the score of the serving cell with hysteresis: it rises as soon as the
+ * score reaches the threshold of a level, and only falls once the score dropped below
+ * {@link #EXIT_RATIO} of that threshold and the status has been held for {@link #MIN_DWELL_MS}.
+ */
+public class ThreatScorer {
+
+    /**
+     * One point of the score history
+     */
+    @Getter
+    public static final class Sample {
+        private final long time;
+        private final long cellKey;
+        private final double score;
+        private final Status status;
+
+        Sample(long time, long cellKey, double score, Status status) {
+            this.time = time;
+            this.cellKey = cellKey;
+            this.score = score;
+            this.status = status;
+        }
+    }
+
+    static final double MEDIUM_THRESHOLD = 1.0;
+    static final double HIGH_THRESHOLD = 2.0;
+    static final double DANGER_THRESHOLD = 3.0;
+    static final double EXIT_RATIO = 0.5;
+    static final long MIN_DWELL_MS = TimeUnit.SECONDS.toMillis(30);
+    static final long DEFAULT_HALF_LIFE_MS = TimeUnit.MINUTES.toMillis(5);
+
+    static final int HISTORY_SIZE = 256;
+    static final long HISTORY_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    static final double HISTORY_MIN_DELTA = 0.05;
+    static final int MAX_CELLS = 64;
+
+    private final Map<String, double[]> weights = new HashMap<>();
+
+    /**
+     * Evidence per cell, least recently observed cells are dropped first
+     */
+    private final Map<Long, Map<String, Evidence>> cells = new LinkedHashMap<Long, Map<String, Evidence>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Map<String, Evidence>> eldest) {
+            return size() > MAX_CELLS;
+        }
+    };
+
+    private final Sample[] history = new Sample[HISTORY_SIZE];
+    private int historyHead;
+    private int historySize;
+
+    private Status status = Status.OK;
+    private long statusSince;
+    private double score;
+    private Finding reason;
+
+    public ThreatScorer() {
+        setWeight(LacChangeDetector.NAME, 1.0, TimeUnit.MINUTES.toMillis(10));
+        setWeight(UnknownCellDetector.NAME, 1.0, TimeUnit.MINUTES.toMillis(10));
+        setWeight(NeighborListDetector.NAME, 1.0, TimeUnit.MINUTES.toMillis(5));
+        setWeight(SignalStrengthDetector.NAME, 0.5, TimeUnit.MINUTES.toMillis(2));
+        setWeight(FemtocellDetector.NAME, 3.0, TimeUnit.MINUTES.toMillis(30));
+        setWeight(SmsDetector.DETECTOR_NAME, 3.0, TimeUnit.MINUTES.toMillis(60));
+    }
+
+    /**
+     * Configures how much an alarm of a detector counts and how fast it is forgotten.
+     * Detectors without a weight count with the threshold of their finding's status.
+     */
+    public synchronized void setWeight(String detector, double weight, long halfLifeMs) {
+        weights.put(detector, new double[]{weight, halfLifeMs});
+    }
+
+    /**
+     * Adds the evidence of an alarm observed while camped on the given cell.
+     */
+    public synchronized void observe(long cellKey, Finding finding, long now) {
+        if (!finding.isAlarm()) {
+            return;
+        }
+        Map<String, Evidence> evidence = cells.get(cellKey);
+        if (evidence == null) {
+            evidence = new HashMap<>();
+            cells.put(cellKey, evidence);
+        }
+        Evidence e = evidence.get(finding.getDetector());
+        if (e == null) {
+            e = new Evidence();
+            evidence.put(finding.getDetector(), e);
+        }
+        e.value = Math.max(e.value(now, halfLife(finding.getDetector())), weight(finding));
+        e.time = now;
+        e.finding = finding;
+    }
+
+    /**
+     * Recomputes the score of the serving cell and applies the hysteresis.
+     *
+     * @return The resulting status, {@link Status#OK} if there is no threat
+     */
+    public synchronized Status evaluate(long cellKey, long now) {
+        double total = 0;
+        double strongest = 0;
+        Finding strongestFinding = null;
+        Map<String, Evidence> evidence = cells.get(cellKey);
+        if (evidence != null) {
+            for (Map.Entry<String, Evidence> entry : evidence.entrySet()) {
+                double value = entry.getValue().value(now, halfLife(entry.getKey()));
+                total += value;
+                if (value > strongest) {
+                    strongest = value;
+                    strongestFinding = entry.getValue().finding;
+                }
+            }
+        }
+
+        Status target = levelFor(total);
+        Status previous = status;
+        if (target.ordinal() > status.ordinal()) {
+            status = target;
+            statusSince = now;
+        } else if (target.ordinal() < status.ordinal() && now - statusSince >= MIN_DWELL_MS) {
+            Status lowered = status;
+            while (lowered.ordinal() > Status.OK.ordinal() && total < threshold(lowered) * EXIT_RATIO) {
+                lowered = Status.values()[lowered.ordinal() - 1];
+            }
+            if (lowered != status) {
+                status = lowered;
+                statusSince = now;
+            }
+        }
+        reason = status == Status.OK ? null : strongestFinding;
+
+        Sample last = historySize == 0 ? null : history[(historyHead + historySize - 1) % HISTORY_SIZE];
+        if (last == null || status != previous || last.cellKey != cellKey
+                || Math.abs(total - last.score) >= HISTORY_MIN_DELTA
+                || now - last.time >= HISTORY_INTERVAL_MS) {
+            addHistory(new Sample(now, cellKey, total, status));
+        }
+        score = total;
+        return status;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The score of the serving cell at the last evaluation
+     */
+    public synchronized double getScore() {
+        return score;
+    }
+
+    /**
+     * @return The alarm contributing most to the current status, null if the status is OK
+     */
+    public synchronized Finding getReason() {
+        return reason;
+    }
+
+    /**
+     * @return The score history, oldest first
+     */
+    public synchronized List<Sample> getHistory() {
+        List<Sample> samples = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            samples.add(history[(historyHead + i) % HISTORY_SIZE]);
+        }
+        return samples;
+    }
+
+    /**
+     * Writes the evidence of all cells and the hysteresis state, the history is not written.
+     *
+     * @see com.secupwn.aimsicd.service.TrackerStateStore
+     */
+    public synchronized void writeState(DataOutput out) throws IOException {
+        out.writeByte(status.ordinal());
+        out.writeLong(statusSince);
+        out.writeDouble(score);
+        out.writeShort(cells.size());
+        for (Map.Entry<Long, Map<String, Evidence>> cell : cells.entrySet()) {
+            out.writeLong(cell.getKey());
+            out.writeShort(cell.getValue().size());
+            for (Map.Entry<String, Evidence> entry : cell.getValue().entrySet()) {
+                Evidence e = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeDouble(e.value);
+                out.writeLong(e.time);
+                out.writeByte(e.finding.getStatus().ordinal());
+                writeNullable(out, e.finding.getMessage());
+                out.writeInt(e.finding.getEventId());
+                writeNullable(out, e.finding.getEventDescription());
+            }
+        }
+    }
+
+    /**
+     * Replaces the evidence and the hysteresis state with what {@link #writeState(DataOutput)} wrote.
+     * The reason is determined again by the next {@link #evaluate(long, long)}.
+     */
+    public synchronized void readState(DataInput in) throws IOException {
+        Status restoredStatus = readStatus(in);
+        long restoredSince = in.readLong();
+        double restoredScore = in.readDouble();
+        Map<Long, Map<String, Evidence>> restored = new LinkedHashMap<>();
+        int cellCount = in.readUnsignedShort();
+        for (int i = 0; i < cellCount; i++) {
+            long cellKey = in.readLong();
+            int count = in.readUnsignedShort();
+            Map<String, Evidence> evidence = new HashMap<>();
+            for (int j = 0; j < count; j++) {
+                String detector = in.readUTF();
+                Evidence e = new Evidence();
+                e.value = in.readDouble();
+                e.time = in.readLong();
+                Status findingStatus = readStatus(in);
+                String message = readNullable(in);
+                int eventId = in.readInt();
+                e.finding = new Finding(detector, findingStatus, message, eventId, readNullable(in));
+                evidence.put(detector, e);
+            }
+            restored.put(cellKey, evidence);
+        }
+
+        cells.clear();
+        cells.putAll(restored);
+        status = restoredStatus;
+        statusSince = restoredSince;
+        score = restoredScore;
+        reason = null;
+    }
+
+    /**
+     * @return Key of a cell for {@link #observe(long, Finding, long)} and {@link #evaluate(long, long)}
+     */
+    public static long cellKey(int locationAreaCode, int cellId) {
+        return ((long) locationAreaCode << 32) | (cellId & 0xffffffffL);
+    }
+
+    private void addHistory(Sample sample) {
+        if (historySize == HISTORY_SIZE) {
+            history[historyHead] = sample;
+            historyHead = (historyHead + 1) % HISTORY_SIZE;
+        } else {
+            history[(historyHead + historySize) % HISTORY_SIZE] = sample;
+            historySize++;
+        }
+    }
+
+    private static void writeNullable(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static Status readStatus(DataInput in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        if (ordinal >= Status.values().length) {
+            throw new IOException("Unknown status " + ordinal);
+        }
+        return Status.values()[ordinal];
+    }
+
+    private double weight(Finding finding) {
+        double[] w = weights.get(finding.getDetector());
+        return w != null ? w[0] : Math.max(threshold(finding.getStatus()), MEDIUM_THRESHOLD);
+    }
+
+    private long halfLife(String detector) {
+        double[] w = weights.get(detector);
+        return w != null ? (long) w[1] : DEFAULT_HALF_LIFE_MS;
+    }
+
+    private static Status levelFor(double score) {
+        if (score >= DANGER_THRESHOLD) {
+            return Status.DANGER;
+        } else if (score >= HIGH_THRESHOLD) {
+            return Status.HIGH;
+        } else if (score >= MEDIUM_THRESHOLD) {
+            return Status.MEDIUM;
+        }
+        return Status.OK;
+    }
+
+    private static double threshold(Status status) {
+        switch (status) {
+            case MEDIUM:
+                return MEDIUM_THRESHOLD;
+            case HIGH:
+                return HIGH_THRESHOLD;
+            case DANGER:
+            case SKULL:
+                return DANGER_THRESHOLD;
+            default:
+                return 0;
+        }
+    }
+
+    private static final class Evidence {
+        double value;
+        long time;
+        Finding finding;
+
+        double value(long now, long halfLifeMs) {
+            if (now <= time) {
+                return value;
+            }
+            return value * Math.pow(0.5, (double) (now - time) / halfLifeMs);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.detection;
+
+import android.telephony.gsm.GsmCellLocation;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.service.RadioSnapshot;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Detection 2: the serving cell (GSM/UMTS/LTE only) is not part of the downloaded
+ * OpenCellID reference data. Only active once the reference data has been downloaded.
+ */
+@Slf4j
+public class UnknownCellDetector implements Detector {
+
+    public static final String NAME = "UnknownCell";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public long getBudgetMs() {
+        return 250;
+    }
+
+    @Override
+    public boolean accepts(RadioSnapshot snapshot) {
+        return snapshot.getKind() == RadioSnapshot.Kind.CELL_LOCATION
+                && snapshot.getCellLocation() instanceof GsmCellLocation;
+    }
+
+    @Override
+    public Finding analyze(DetectionContext context, RadioSnapshot snapshot) {
+        if (!context.getTinyDb().getBoolean("ocid_downloaded")) {
+            return Finding.clear(NAME);
+        }
+
+        int cellId = ((GsmCellLocation) snapshot.getCellLocation()).getCid();
+        if (context.getDbHelper().openCellExists(cellId)) {
+            return Finding.clear(NAME);
+        }
+
+        log.info("ALERT: Connected to unknown CID not in Import realm: {}", cellId);
+        return new Finding(NAME, Status.MEDIUM, context.getContext().getString(R.string.cell_id_doesnt_exist_in_db),
+                2, "CID not in Import realm");
+    }
+}
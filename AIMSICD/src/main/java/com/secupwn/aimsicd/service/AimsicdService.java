@@ -47,6 +47,7 @@ import com.secupwn.aimsicd.rilexecutor.RilExecutor;
 import com.secupwn.aimsicd.smsdetection.SmsDetector;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.GeoLocation;
+import com.secupwn.aimsicd.utils.TinyDB;
 
 import io.freefair.android.injection.app.InjectionService;
 import lombok.extern.slf4j.Slf4j;
@@ -120,6 +121,9 @@ public class AimsicdService extends InjectionService {
                 new Thread(runnable).start();
 
                 signalStrengthTracker.onSensorChanged();
+                if (mCellTracker != null) {
+                    mCellTracker.getRefreshScheduler().onMovement();
+                }
 
                 // check again in a while to see if GPS should be disabled
                 // this runnable also re-enables this movement sensor
@@ -149,6 +153,7 @@ public class AimsicdService extends InjectionService {
         mLocationTracker.stop();
         mAccelerometerMonitor.stop();
         mRilExecutor.stop();
+        TinyDB.getInstance().flush();
 
         if (SmsDetector.getSmsDetectionState()) {
             smsdetector.stopSmsDetection();
@@ -0,0 +1,320 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.os.Vibrator;
+import android.preference.PreferenceManager;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.model.Event;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.utils.Cell;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import lombok.Cleanup;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single path for the output of detections: {@link Event} rows and vibrations.
+ * <p>
+ * Alerts are grouped by detection type and serving cell. The first alert of a group is
+ * emitted, repeats within the group's suppression period are only counted. Every repeat
+ * that arrives after the period doubles it, up to {@link #MAX_SUPPRESSION_MS}; a group quiet
+ * for twice its period starts over at {@link #SUPPRESSION_MS}. A cell flapping between two
+ * areas thus logs a few events instead of one per handover.
+ * <p>
+ * Emitted events are written in one transaction on a background thread,
+ * {@link #FLUSH_DELAY_MS} after the first of them or as soon as {@link #MAX_PENDING} are
+ * waiting. Vibrations of all callers are limited to one per {@link #MIN_VIBRATION_INTERVAL_MS}.
+ * The status notification has its own rate limit, see {@link StatusNotifier}.
+ * <p>
+ * Initialize once with {@link #init(Context)}, like {@link com.secupwn.aimsicd.utils.TinyDB}.
+ */
+@Slf4j
+public final class AlertPipeline {
+
+    static final long SUPPRESSION_MS = TimeUnit.MINUTES.toMillis(1);
+    static final long MAX_SUPPRESSION_MS = TimeUnit.MINUTES.toMillis(30);
+    static final long FLUSH_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+    static final int MAX_PENDING = 32;
+    static final int MAX_GROUPS = 128;
+    static final long MIN_VIBRATION_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    static final int EVENT_VIBRATION_MS = 100;
+
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+
+    private Context context;
+    private SharedPreferences preferences;
+
+    /**
+     * Suppression state per type and cell, least recently raised groups are dropped first.
+     * Guarded by this
+     */
+    private final Map<String, Group> groups = new LinkedHashMap<String, Group>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Group> eldest) {
+            return size() > MAX_GROUPS;
+        }
+    };
+
+    // guarded by this
+    private final List<PendingEvent> pending = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private long lastVibration = -MIN_VIBRATION_INTERVAL_MS;
+    private long raised;
+    private long emitted;
+    private long vibrationsRequested;
+    private long vibrations;
+
+    //prevent direct initialisation
+    private AlertPipeline() {
+    }
+
+    public void init(Context appContext) {
+        context = appContext;
+        preferences = PreferenceManager.getDefaultSharedPreferences(appContext);
+    }
+
+    /**
+     * Raises a detection that is not tied to a subscription (e.g. a silent SMS) on the serving
+     * cell of the default subscription, see {@link CellTracker#getMonitorCell()}.
+     *
+     * @see #raise(int, String, Cell)
+     */
+    public boolean raise(int dfId, String dfDescription) {
+        return raise(dfId, dfDescription, CellTracker.getMonitorCell());
+    }
+
+    /**
+     * Raises a detection on the given cell.
+     *
+     * @param dfId          Detection id of the {@link Event}
+     * @param dfDescription Description of the {@link Event}
+     * @param cell          The serving cell of the subscription the detection was made on,
+     *                      its values are copied
+     * @return true if the alert was emitted, false if it was suppressed
+     */
+    public boolean raise(int dfId, String dfDescription, Cell cell) {
+        // skip CID/LAC of "-1" (due to crappy API, Roaming or Air-Plane Mode)
+        if (cell.getCellId() == -1 && cell.getLocationAreaCode() == -1) {
+            return false;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        String key = dfId + ":" + cell.getMobileCountryCode() + ":" + cell.getMobileNetworkCode()
+                + ":" + cell.getLocationAreaCode() + ":" + cell.getCellId();
+        synchronized (this) {
+            raised++;
+            Group group = groups.get(key);
+            if (group != null && now - group.lastEmitted < group.suppressionMs) {
+                group.suppressed++;
+                return false;
+            }
+            if (group == null) {
+                group = new Group();
+                groups.put(key, group);
+            } else if (now - group.lastEmitted >= 2 * group.suppressionMs) {
+                group.suppressionMs = SUPPRESSION_MS;
+            } else {
+                group.suppressionMs = Math.min(2 * group.suppressionMs, MAX_SUPPRESSION_MS);
+            }
+            if (group.suppressed > 0) {
+                log.info("Alert {} suppressed {} times since the last event", key, group.suppressed);
+            }
+            group.lastEmitted = now;
+            group.suppressed = 0;
+            emitted++;
+
+            pending.add(new PendingEvent(System.currentTimeMillis(), cell, dfId, dfDescription));
+            if (pending.size() >= MAX_PENDING) {
+                flush();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = writer.schedule(flushTask, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (isEventVibrationEnabled()) {
+            vibrate(EVENT_VIBRATION_MS);
+        }
+        return true;
+    }
+
+    /**
+     * Vibrates unless another vibration happened within {@link #MIN_VIBRATION_INTERVAL_MS}.
+     * Callers check the user's vibration preferences.
+     *
+     * @return true if the device vibrated
+     */
+    public boolean vibrate(int msec) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (this) {
+            vibrationsRequested++;
+            if (context == null || now - lastVibration < MIN_VIBRATION_INTERVAL_MS) {
+                return false;
+            }
+            lastVibration = now;
+            vibrations++;
+        }
+        ((Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE)).vibrate(msec);
+        return true;
+    }
+
+    /**
+     * Writes the pending events now, the write itself happens asynchronously.
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<PendingEvent> batch = new ArrayList<>(pending);
+        pending.clear();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                @Cleanup Realm realm = Realm.getDefaultInstance();
+                realm.executeTransaction(new Realm.Transaction() {
+                    @Override
+                    public void execute(Realm realm) {
+                        store(realm, batch);
+                    }
+                });
+                log.debug("Stored {} events", batch.size());
+            }
+        });
+    }
+
+    /**
+     * @return Number of alerts raised, see {@link #raise(int, String, Cell)}
+     */
+    public synchronized long getRaised() {
+        return raised;
+    }
+
+    /**
+     * @return Number of alerts emitted as {@link Event}
+     */
+    public synchronized long getEmitted() {
+        return emitted;
+    }
+
+    /**
+     * @return Number of alerts suppressed as repeats
+     */
+    public synchronized long getSuppressed() {
+        return raised - emitted;
+    }
+
+    public synchronized long getVibrationsRequested() {
+        return vibrationsRequested;
+    }
+
+    public synchronized long getVibrations() {
+        return vibrations;
+    }
+
+    public void logStats() {
+        log.info("Alerts: {} raised, {} emitted, {} suppressed; vibrations: {} requested, {} done",
+                getRaised(), getEmitted(), getSuppressed(), getVibrationsRequested(), getVibrations());
+    }
+
+    private boolean isEventVibrationEnabled() {
+        if (preferences == null) {
+            return false;
+        }
+        boolean vibrationEnabled = preferences.getBoolean(context.getString(R.string.pref_notification_vibrate_enable), true);
+        int thresholdLevel = Integer.valueOf(preferences.getString(context.getString(R.string.pref_notification_vibrate_min_level), String.valueOf(Status.MEDIUM.ordinal())));
+        return vibrationEnabled && Status.MEDIUM.ordinal() <= thresholdLevel;
+    }
+
+    /**
+     * Skips an event equal to the last stored one, like the single writes did before.
+     */
+    private static void store(Realm realm, List<PendingEvent> batch) {
+        RealmResults<Event> events = realm.where(Event.class).findAllSorted("timestamp", Sort.DESCENDING);
+        Event last = events.isEmpty() ? null : events.first();
+        for (PendingEvent p : batch) {
+            if (last != null && last.getCellId() == p.cellId && last.getLocationAreaCode() == p.locationAreaCode
+                    && last.getPrimaryScramblingCode() == p.primaryScramblingCode && last.getDfId() == p.dfId) {
+                continue;
+            }
+            Event event = realm.createObject(Event.class);
+            event.setTimestamp(p.timestamp);
+            event.setLocationAreaCode(p.locationAreaCode);
+            event.setCellId(p.cellId);
+            event.setPrimaryScramblingCode(p.primaryScramblingCode);
+            event.setLatitude(p.latitude);
+            event.setLongitude(p.longitude);
+            event.setAccuracy((float) p.accuracy);
+            event.setDfId(p.dfId);
+            event.setDfDescription(p.dfDescription);
+            last = event;
+            log.info("ToEventLog(): Added new event: id={} time={} cid={}", p.dfId, p.timestamp, p.cellId);
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private static final class Group {
+        long lastEmitted;
+        long suppressionMs = SUPPRESSION_MS;
+        int suppressed;
+    }
+
+    private static final class PendingEvent {
+        final long timestamp;
+        final int locationAreaCode;
+        final int cellId;
+        final int primaryScramblingCode;
+        final double latitude;
+        final double longitude;
+        final double accuracy;
+        final int dfId;
+        final String dfDescription;
+
+        PendingEvent(long timestamp, Cell cell, int dfId, String dfDescription) {
+            this.timestamp = timestamp;
+            this.locationAreaCode = cell.getLocationAreaCode();
+            this.cellId = cell.getCellId();
+            this.primaryScramblingCode = cell.getPrimaryScramblingCode(); //[UMTS,LTE]
+            this.latitude = cell.getLat();
+            this.longitude = cell.getLon();
+            this.accuracy = cell.getAccuracy();
+            this.dfId = dfId;
+            this.dfDescription = dfDescription;
+        }
+    }
+
+    private static class InstanceHolder {
+        private static final AlertPipeline INSTANCE = new AlertPipeline();
+    }
+
+    public static AlertPipeline getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+}
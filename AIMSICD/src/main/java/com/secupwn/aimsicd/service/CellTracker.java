@@ -5,36 +5,30 @@
  */
 package com.secupwn.aimsicd.service;
 
-import android.app.Notification;
-import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.location.Location;
 import android.os.Build;
-import android.os.Vibrator;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.NotificationManagerCompat;
-import android.telephony.CellInfo;
-import android.telephony.CellLocation;
-import android.telephony.NeighboringCellInfo;
 import android.telephony.PhoneStateListener;
 import android.telephony.ServiceState;
-import android.telephony.SignalStrength;
 import android.telephony.TelephonyManager;
-import android.telephony.cdma.CdmaCellLocation;
-import android.telephony.gsm.GsmCellLocation;
 
 import com.secupwn.aimsicd.AndroidIMSICatcherDetector;
 import com.secupwn.aimsicd.BuildConfig;
 import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.MeasureArchive;
+import com.secupwn.aimsicd.detection.DetectorEngine;
+import com.secupwn.aimsicd.detection.FemtocellDetector;
+import com.secupwn.aimsicd.detection.Finding;
+import com.secupwn.aimsicd.detection.ThreatAssessment;
 import com.secupwn.aimsicd.enums.Status;
-import com.secupwn.aimsicd.ui.activities.MainActivity;
+import com.secupwn.aimsicd.smsdetection.SmsDetector;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.Device;
-import com.secupwn.aimsicd.utils.DeviceApi18;
+import com.secupwn.aimsicd.utils.DeviceApi24;
 import com.secupwn.aimsicd.utils.Helpers;
 import com.secupwn.aimsicd.utils.Icon;
 import com.secupwn.aimsicd.utils.RealmHelper;
@@ -42,8 +36,8 @@ import com.secupwn.aimsicd.utils.TinyDB;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.realm.Realm;
 import lombok.Cleanup;
@@ -58,9 +52,10 @@ import lombok.extern.slf4j.Slf4j;
  * Issues:
  *
  *
- * Note:            The refresh rate is set in two different places:
+ * Note:            The refresh rate is set by setRefreshRate() from:
  *                      onSharedPreferenceChanged()
  *                      loadPreferences()
+ *                  and used as base interval by the RefreshScheduler.
  *
  *              For proper TinyDB implementation use something like:
  *              https://github.com/kcochibili/TinyDB--Android-Shared-Preferences-Turbo/issues/6
@@ -68,30 +63,24 @@ import lombok.extern.slf4j.Slf4j;
  *
  *
  *  ToDo:       Currently the automatic refresh rate is hard-coded to 15 seconds,
- *              in 2 different places above. We may consider have this more transparent
- *              in a static variable. It is also used in timerRunnable where it
- *              defaults to 25 seconds.
+ *              see RefreshScheduler.AUTO_BASE_INTERVAL_MS.
  *
  *              [x] Use TinyDB.java to simplify Shared Preferences usage
  */
 @Slf4j
 public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeListener {
 
-    @Getter
-    public static Cell monitorCell;
-    public static String OCID_API_KEY = null;   // see getOcidKey()
-    public static int PHONE_TYPE;               //
-    public static long REFRESH_RATE;            // [s] The DeviceInfo refresh rate (arrays.xml)
     public static final String SILENT_SMS = "SILENT_SMS_DETECTED";
 
     private boolean CELL_TABLE_CLEANSED; // default is FALSE for "boolean", and NULL for "Boolean".
 
     private final int NOTIFICATION_ID = 1;
-    @Getter
-    private final Device device = new Device();
-
+    private static final int MAX_NOTIFICATION_UPDATES_PER_SECOND = 2;
+    /**
+     * TelephonyIntents.ACTION_SIM_STATE_CHANGED, not part of the public API
+     */
+    private static final String ACTION_SIM_STATE_CHANGED = "android.intent.action.SIM_STATE_CHANGED";
     private static TelephonyManager tm;
-    private final SignalStrengthTracker signalStrengthTracker;
     private PhoneStateListener mPhoneStateListener;
     private SharedPreferences prefs;
     private TinyDB tinydb; // Used to simplify SharedPreferences usage above
@@ -99,33 +88,88 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
     //=====================================================
     //  Tracking and Alert Declarations
     //=====================================================
-    @Getter
-    private boolean monitoringCell;
-    @Getter
-    private boolean trackingCell;
     /**
-     * Tracking Femotcell Connections
-     * TODO: Consider REMOVAL!
-     *
-     * @return boolean indicating Femtocell Connection Tracking State
+     * The monitor cell, the OCID key, the phone type, the refresh rate and the tracking and
+     * alert flags, replaced as a whole on every change
      */
-    @Getter
-    private boolean trackingFemtocell;
-    private boolean femtoDetected;
-    private boolean changedLAC;
-    private boolean cellIdNotInOpenDb;
-    private boolean typeZeroSmsDetected;
-    private boolean emptyNeighborCellsList;
-    private boolean vibrateEnabled;
-    private int vibrateMinThreatLevel;
-    private LinkedBlockingQueue<NeighboringCellInfo> neighboringCellBlockingQueue;
+    private static final AtomicReference<TrackerState> state = new AtomicReference<>(TrackerState.INITIAL);
 
+    /**
+     * Preference keys, resolved once instead of on every read
+     */
+    private static final class Keys {
+        final String uiIcons;
+        final String femtoDetection;
+        final String enableCell;
+        final String enableCellMonitoring;
+        final String cellTableCleansed;
+        final String refresh;
+        final String ocid;
+        final String vibrateEnable;
+        final String vibrateMinLevel;
+        final String lastLatLon;
+
+        Keys(Context context) {
+            uiIcons = context.getString(R.string.pref_ui_icons_key);
+            femtoDetection = context.getString(R.string.pref_femto_detection_key);
+            enableCell = context.getString(R.string.pref_enable_cell_key);
+            enableCellMonitoring = context.getString(R.string.pref_enable_cell_monitoring_key);
+            cellTableCleansed = context.getString(R.string.pref_cell_table_cleansed);
+            refresh = context.getString(R.string.pref_refresh_key);
+            ocid = context.getString(R.string.pref_ocid_key);
+            vibrateEnable = context.getString(R.string.pref_notification_vibrate_enable);
+            vibrateMinLevel = context.getString(R.string.pref_notification_vibrate_min_level);
+            lastLatLon = context.getString(R.string.data_last_lat_lon);
+        }
+    }
+
+    private final Keys keys;
     private final RealmHelper dbHelper;
     private Context context;
+    private final StatusNotifier notifier;
+    @Getter
+    private final RefreshScheduler refreshScheduler;
+
+    /**
+     * Telephony and location callbacks only publish {@link RadioSnapshot}s here, all
+     * analysis and every change of the tracker state happens on the bus thread.
+     */
+    private final RadioSnapshotBus snapshotBus = new RadioSnapshotBus("RadioAnalysis");
+
+    /**
+     * The subscription of the default TelephonyManager, always present
+     */
+    private final SubscriptionTracker primary;
+
+    /**
+     * The other active SIM subscriptions (API 24 and above), sharing the threads and
+     * writers of the primary one
+     */
+    private final SubscriptionRegistry<SubscriptionTracker> secondary;
+    private final SubscriptionTracker.Shared shared;
+    private Object subscriptionsListener;
+    private volatile long callbackWindowMs = RadioCallbackCoalescer.DEFAULT_WINDOW_MS;
+
+    /**
+     * Saves the state of the default subscription for a warm restart
+     */
+    private final TrackerStateStore stateStore;
+    private RefreshScheduler.Subscription saveStateSubscription;
+    private RefreshScheduler.Subscription flushTimelineSubscription;
+
+    /**
+     * Only read and written on the main thread, by {@link #saveStatePoll}
+     */
+    private long lastStateSave = System.currentTimeMillis();
 
     public CellTracker(final Context context, SignalStrengthTracker sst) {
         this.context = context;
-        this.signalStrengthTracker = sst;
+        this.keys = new Keys(context);
+        state.set(TrackerState.INITIAL);
+        this.notifier = new StatusNotifier(context, NOTIFICATION_ID, MAX_NOTIFICATION_UPDATES_PER_SECOND);
+        this.refreshScheduler = new RefreshScheduler(context);
+        refreshScheduler.start();
+        snapshotBus.subscribe(analyzer);
 
         // Creating tinydb here to avoid: "TinyDb tinydb = new TinyDb(context);"
         // every time we need to use tinydb in this class.
@@ -134,15 +178,41 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
         // TelephonyManager provides system details
         tm = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
 
+        dbHelper = new RealmHelper(context);
+
+        shared = new SubscriptionTracker.Shared(context, snapshotBus, dbHelper, sst, tinydb, refreshScheduler);
+        primary = new SubscriptionTracker(shared, RadioSnapshot.DEFAULT_SUBSCRIPTION, tm);
+        primary.getDetectorEngine().addListener(assessmentListener);
+        secondary = new SubscriptionRegistry<>(subscriptionFactory);
+        stateStore = new TrackerStateStore(context);
+        stateStore.restore(primary.getDetectorEngine(), sst);
+
         // Shared Preferences
         prefs = context.getSharedPreferences(AimsicdService.SHARED_PREFERENCES_BASENAME, 0);
         prefs.registerOnSharedPreferenceChangeListener(this);
         loadPreferences();
         setNotification();
 
-        PHONE_TYPE = tm.getPhoneType(); // PHONE_TYPE_GSM/CDMA/SIP/NONE
-
-        dbHelper = new RealmHelper(context);
+        final int phoneType = tm.getPhoneType(); // PHONE_TYPE_GSM/CDMA/SIP/NONE
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withPhoneType(phoneType);
+            }
+        });
+
+        primary.start();
+        saveStateSubscription = refreshScheduler.subscribe(RefreshScheduler.Kind.BACKGROUND, saveStatePoll);
+        flushTimelineSubscription = refreshScheduler.subscribe(RefreshScheduler.Kind.BACKGROUND, flushTimelinePoll);
+        context.registerReceiver(simStateReceiver, new IntentFilter(ACTION_SIM_STATE_CHANGED));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            subscriptionsListener = DeviceApi24.addSubscriptionsListener(context, new Runnable() {
+                @Override
+                public void run() {
+                    updateSubscriptions();
+                }
+            });
+        }
 
         // Remove all but the last DBi_bts entry, after:
         // (a) starting CellTracker for the first time or
@@ -157,15 +227,223 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
                 public void onSuccess() {
                     SharedPreferences.Editor prefsEditor;
                     prefsEditor = prefs.edit();
-                    prefsEditor.putBoolean(context.getString(R.string.pref_cell_table_cleansed), true);
+                    prefsEditor.putBoolean(keys.cellTableCleansed, true);
                     prefsEditor.apply();
                 }
             });
         }
-        device.refreshDeviceInfo(tm, context); // Telephony Manager
-        monitorCell = new Cell();
+
+        // Move old measurements into the compact archive tier, see MeasureArchive
+        @Cleanup Realm archiveRealm = Realm.getDefaultInstance();
+        archiveRealm.executeTransactionAsync(MeasureArchive.archiveOlderThan(MeasureArchive.DEFAULT_ARCHIVE_AGE_DAYS));
+    }
+
+    /**
+     * @return The current state, never changes after it was returned
+     */
+    public static TrackerState getState() {
+        return state.get();
+    }
+
+    /**
+     * Replaces the state with {@code update} applied to it, retried if another writer got first.
+     *
+     * @return The new state
+     */
+    public static TrackerState updateState(TrackerState.Update update) {
+        while (true) {
+            TrackerState current = state.get();
+            TrackerState next = update.apply(current);
+            if (next == current || state.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * @return A copy of the serving cell of the default subscription, LAC and CID only
+     */
+    public static Cell getMonitorCell() {
+        return state.get().getMonitorCell();
+    }
+
+    static void setMonitorCell(final int locationAreaCode, final int cellId) {
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withMonitorCell(locationAreaCode, cellId);
+            }
+        });
+    }
+
+    /**
+     * @return The OpenCellID API key, "NA" or null if none is set
+     */
+    public static String getOcidApiKey() {
+        return state.get().getOcidApiKey();
+    }
+
+    /**
+     * @return true if an OpenCellID API key is set
+     */
+    public static boolean hasOcidApiKey() {
+        String ocidApiKey = getOcidApiKey();
+        return ocidApiKey != null && !ocidApiKey.equals("NA");
+    }
+
+    public static void setOcidApiKey(final String ocidApiKey) {
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withOcidApiKey(ocidApiKey);
+            }
+        });
+    }
+
+    public boolean isMonitoringCell() {
+        return state.get().isMonitoringCell();
+    }
+
+    public boolean isTrackingCell() {
+        return state.get().isTrackingCell();
+    }
+
+    /**
+     * Tracking Femotcell Connections
+     * TODO: Consider REMOVAL!
+     *
+     * @return boolean indicating Femtocell Connection Tracking State
+     */
+    public boolean isTrackingFemtocell() {
+        return state.get().isTrackingFemtocell();
+    }
+
+    /**
+     * @return The device state of the default subscription
+     */
+    public Device getDevice() {
+        return primary.getDevice();
+    }
+
+    /**
+     * @return The detectors of the default subscription
+     */
+    public DetectorEngine getDetectorEngine() {
+        return primary.getDetectorEngine();
+    }
+
+    /**
+     * @return All tracked subscriptions, the default one first
+     */
+    public List<SubscriptionTracker> getSubscriptions() {
+        List<SubscriptionTracker> subscriptions = new ArrayList<>();
+        subscriptions.add(primary);
+        subscriptions.addAll(secondary.values());
+        return subscriptions;
+    }
+
+    /**
+     * @return The most severe assessment of all subscriptions
+     */
+    public ThreatAssessment getAssessment() {
+        ThreatAssessment worst = primary.getDetectorEngine().getAssessment();
+        for (SubscriptionTracker subscription : secondary.values()) {
+            ThreatAssessment assessment = subscription.getDetectorEngine().getAssessment();
+            if (assessment.getStatus().ordinal() > worst.getStatus().ordinal()) {
+                worst = assessment;
+            }
+        }
+        return worst;
     }
 
+    /**
+     * Starts tracking subscriptions that became active besides the default one and stops
+     * tracking those that went away. Called on the main thread.
+     */
+    private void updateSubscriptions() {
+        List<Integer> active = DeviceApi24.getActiveSubscriptionIds(context);
+        active.remove(Integer.valueOf(DeviceApi24.getDefaultSubscriptionId()));
+        secondary.update(active);
+        log.info("Tracking {} subscription(s) besides the default one", secondary.size());
+    }
+
+    /**
+     * The SIM details of all subscriptions are re-read on their next refresh
+     */
+    private final BroadcastReceiver simStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            for (SubscriptionTracker subscription : getSubscriptions()) {
+                subscription.getDevice().invalidateSim();
+            }
+        }
+    };
+
+    /**
+     * Periodically on the timer thread and once on {@link #stop()}, so a killed service loses
+     * at most one interval
+     */
+    private final Runnable saveStateTask = new Runnable() {
+        @Override
+        public void run() {
+            stateStore.save(primary.getDetectorEngine(), shared.signalStrengthTracker);
+        }
+    };
+
+    /**
+     * Runs with the background tasks of the {@link RefreshScheduler}, so the saves are spaced
+     * out further while the screen is off, and hands the file write to the timer thread at
+     * most every {@link TrackerStateStore#SAVE_INTERVAL_MS}.
+     */
+    private final Runnable saveStatePoll = new Runnable() {
+        @Override
+        public void run() {
+            long now = System.currentTimeMillis();
+            if (now - lastStateSave >= TrackerStateStore.SAVE_INTERVAL_MS) {
+                lastStateSave = now;
+                shared.timerExecutor.execute(saveStateTask);
+            }
+        }
+    };
+
+    private final Runnable flushTimelineTask = new Runnable() {
+        @Override
+        public void run() {
+            shared.timeline.flushIfDue(System.currentTimeMillis());
+        }
+    };
+
+    /**
+     * Writes the closed serving cell intervals while the device stays on one cell, the
+     * timeline only checks its flush interval when an interval closes.
+     */
+    private final Runnable flushTimelinePoll = new Runnable() {
+        @Override
+        public void run() {
+            shared.timerExecutor.execute(flushTimelineTask);
+        }
+    };
+
+    private final SubscriptionRegistry.Factory<SubscriptionTracker> subscriptionFactory =
+            new SubscriptionRegistry.Factory<SubscriptionTracker>() {
+        @Override
+        public SubscriptionTracker create(int subscriptionId) {
+            SubscriptionTracker subscription = new SubscriptionTracker(shared, subscriptionId,
+                    DeviceApi24.createForSubscription(tm, subscriptionId));
+            subscription.getDetectorEngine().addListener(assessmentListener);
+            subscription.getCoalescer().setWindowMs(callbackWindowMs);
+            subscription.start();
+            subscription.setCellTracking(isTrackingCell());
+            return subscription;
+        }
+
+        @Override
+        public void release(SubscriptionTracker subscription) {
+            subscription.getDetectorEngine().removeListener(assessmentListener);
+            subscription.stop();
+        }
+    };
+
     /**
      * Description:     Cell Information Monitoring
      *                  TODO: What exactly are we monitoring here??
@@ -173,12 +451,16 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      *
      * @param monitor Enable/Disable monitoring
      */
-    public void setCellMonitoring(boolean monitor) {
+    public void setCellMonitoring(final boolean monitor) {
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withMonitoringCell(monitor);
+            }
+        });
         if (monitor) {
-            monitoringCell = true;
             Helpers.msgShort(context, context.getString(R.string.monitoring_cell_information));
         } else {
-            monitoringCell = false;
             Helpers.msgShort(context, context.getString(R.string.stopped_monitoring_cell_information));
         }
         setNotification();
@@ -195,9 +477,70 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
             stopTrackingFemto();
         }
         cancelNotification();
-        tm.listen(cellSignalListener, PhoneStateListener.LISTEN_NONE);
+        if (saveStateSubscription != null) {
+            saveStateSubscription.cancel();
+            saveStateSubscription = null;
+        }
+        if (flushTimelineSubscription != null) {
+            flushTimelineSubscription.cancel();
+            flushTimelineSubscription = null;
+        }
+        refreshScheduler.stop();
         prefs.unregisterOnSharedPreferenceChangeListener(this);
+        context.unregisterReceiver(simStateReceiver);
+        if (subscriptionsListener != null) {
+            DeviceApi24.removeSubscriptionsListener(context, subscriptionsListener);
+        }
+        secondary.clear();
+        primary.stop();
+        snapshotBus.shutdown();
+        saveStateTask.run();
+        shared.shutdown();
+        tinydb.flush();
+        AlertPipeline.getInstance().flush();
+        AlertPipeline.getInstance().logStats();
+    }
 
+    /**
+     * Registers a subscriber for all radio and location snapshots. Subscribers are called on
+     * the analysis thread after the tracker has processed the snapshot, so the tracker state
+     * they read is consistent with the snapshot.
+     */
+    public void subscribe(RadioSnapshotBus.Subscriber subscriber) {
+        snapshotBus.subscribe(subscriber);
+    }
+
+    public void unsubscribe(RadioSnapshotBus.Subscriber subscriber) {
+        snapshotBus.unsubscribe(subscriber);
+    }
+
+    /**
+     * Sets how long telephony callbacks are merged before they are analyzed, 0 analyzes
+     * every callback.
+     */
+    public void setCallbackWindow(long windowMs) {
+        callbackWindowMs = windowMs;
+        for (SubscriptionTracker subscription : getSubscriptions()) {
+            subscription.getCoalescer().setWindowMs(windowMs);
+        }
+    }
+
+    /**
+     * @return Number of telephony callbacks of all subscriptions merged into a later one
+     */
+    public long getAbsorbedCallbacks() {
+        long absorbed = 0;
+        for (SubscriptionTracker subscription : getSubscriptions()) {
+            absorbed += subscription.getCoalescer().getAbsorbed();
+        }
+        return absorbed;
+    }
+
+    /**
+     * @return Number of snapshots dropped because the analysis thread could not keep up
+     */
+    public long getDroppedSnapshots() {
+        return snapshotBus.getDropped();
     }
 
     /**
@@ -234,23 +577,19 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      *
      * @param track Enable/Disable tracking
      */
-    public void setCellTracking(boolean track) {
+    public void setCellTracking(final boolean track) {
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withTrackingCell(track);
+            }
+        });
+        for (SubscriptionTracker subscription : getSubscriptions()) {
+            subscription.setCellTracking(track);
+        }
         if (track) {
-            tm.listen(cellSignalListener,
-                    PhoneStateListener.LISTEN_CELL_LOCATION |         // gpsd_lat/lon ?
-                            PhoneStateListener.LISTEN_SIGNAL_STRENGTHS |      // rx_signal
-                            PhoneStateListener.LISTEN_DATA_ACTIVITY |         // No,In,Ou,IO,Do
-                            PhoneStateListener.LISTEN_DATA_CONNECTION_STATE | // Di,Ct,Cd,Su
-                            PhoneStateListener.LISTEN_CELL_INFO               // !? (Need API 17)
-            );
-            trackingCell = true;
             Helpers.msgShort(context, context.getString(R.string.tracking_cell_information));
         } else {
-            tm.listen(cellSignalListener, PhoneStateListener.LISTEN_NONE);
-            device.cell.setLon(0.0);
-            device.cell.setLat(0.0);
-            device.setCellInfo("[0,0]|nn|nn|"); //default entries into "locationinfo"::Connection
-            trackingCell = false;
             Helpers.msgShort(context, context.getString(R.string.stopped_tracking_cell_information));
         }
         setNotification();
@@ -270,356 +609,108 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      * @param key
      */
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        final String KEY_UI_ICONS = context.getString(R.string.pref_ui_icons_key);
-        final String FEMTO_DETECTION =  context.getString(R.string.pref_femto_detection_key);
-        final String REFRESH = context.getString(R.string.pref_refresh_key);
-        final String OCID_KEY = context.getString(R.string.pref_ocid_key);
-        final String VIBRATE_ENABLE = context.getString(R.string.pref_notification_vibrate_enable);
-        final String VIBRATE_MIN_LEVEL = context.getString(R.string.pref_notification_vibrate_min_level);
-
-        if (key.equals(KEY_UI_ICONS)) {
+        if (key.equals(keys.uiIcons)) {
             // Update Notification to display selected icon type
             setNotification();
-        } else if (key.equals(FEMTO_DETECTION)) {
-            boolean trackFemtoPref = sharedPreferences.getBoolean(FEMTO_DETECTION, false);
+        } else if (key.equals(keys.femtoDetection)) {
+            boolean trackFemtoPref = sharedPreferences.getBoolean(keys.femtoDetection, false);
             if (trackFemtoPref) {
                 startTrackingFemto();
             } else {
                 stopTrackingFemto();
             }
-        } else if (key.equals(REFRESH)) {
-            String refreshRate = sharedPreferences.getString(REFRESH, "1");
-            if (refreshRate.isEmpty()) {
-                refreshRate = "1"; // Set default to: 1 second
-            }
-
-            int rate = Integer.parseInt(refreshRate);
-            long t;
-            switch (rate) {
-                case 1:
-                    t = 15L; // Automatic refresh rate is 15 seconds
-                    break;
-                default:
-                    t = (long) rate; // Default is 1 sec (from above)
-                    break;
-            }
-            REFRESH_RATE = TimeUnit.SECONDS.toMillis(t);
-        } else if (key.equals(OCID_KEY)) {
+        } else if (key.equals(keys.refresh)) {
+            setRefreshRate(sharedPreferences.getString(keys.refresh, "1"));
+        } else if (key.equals(keys.ocid)) {
             getOcidKey();
-        } else if (key.equals(VIBRATE_ENABLE)) {
-            vibrateEnabled = sharedPreferences.getBoolean(VIBRATE_ENABLE, true);
-        } else if (key.equals(VIBRATE_MIN_LEVEL)) {
-            vibrateMinThreatLevel = Integer.valueOf(sharedPreferences.getString(VIBRATE_MIN_LEVEL, String.valueOf(Status.MEDIUM.ordinal())));
+        } else if (key.equals(keys.vibrateEnable) || key.equals(keys.vibrateMinLevel)) {
+            loadVibratePreferences(sharedPreferences);
         }
     }
 
     public void getOcidKey() {
-        final String OCID_KEY = context.getString(R.string.pref_ocid_key);
-        OCID_API_KEY = prefs.getString(OCID_KEY, BuildConfig.OPEN_CELLID_API_KEY);
-        if (OCID_API_KEY == null) {
-            OCID_API_KEY = "NA"; // avoid null api key
+        String ocidApiKey = prefs.getString(keys.ocid, BuildConfig.OPEN_CELLID_API_KEY);
+        if (ocidApiKey == null) {
+            ocidApiKey = "NA"; // avoid null api key
         }
+        setOcidApiKey(ocidApiKey);
     }
 
     /**
-     *  Description:    Updates Neighboring Cell details
-     *
-     *                  TODO: add more details...
-     *
-     *
+     * Returns the latest known neighboring cells without waiting for the modem and
+     * schedules a re-read, see {@link NeighborCellMonitor}.
      */
     public List<Cell> updateNeighboringCells() {
-        List<Cell> neighboringCells = new ArrayList<>();
-        List<NeighboringCellInfo> neighboringCellInfo = tm.getNeighboringCellInfo();
-        if (neighboringCellInfo == null) {
-            neighboringCellInfo = new ArrayList<>();
+        List<Cell> neighboringCells = primary.updateNeighboringCells();
+        for (SubscriptionTracker subscription : secondary.values()) {
+            subscription.updateNeighboringCells();
         }
 
-        Boolean nclp = tinydb.getBoolean("nc_list_present"); // NC list present? (default is false)
-
-        //if nclp = true then check for neighboringCellInfo
-        if (neighboringCellInfo != null && neighboringCellInfo.size() == 0 && nclp) {
-
-            log.info("NeighboringCellInfo is empty: start polling...");
-
-            // Try to poll the neighboring cells for a few seconds
-            neighboringCellBlockingQueue = new LinkedBlockingQueue<>(100); // TODO What is this ??
-
-            //LISTEN_CELL_INFO added in API 17
-            // TODO: See issue #555 (DeviceApi17.java is using API 18 CellInfoWcdma calls.
-            if (Build.VERSION.SDK_INT > 17) {
-                DeviceApi18.startListening(tm, phoneStatelistener);
-            } else {
-                tm.listen(phoneStatelistener,
-                        PhoneStateListener.LISTEN_CELL_LOCATION |
-                                PhoneStateListener.LISTEN_CELL_INFO |                // API 17
-                                PhoneStateListener.LISTEN_DATA_CONNECTION_STATE |
-                                PhoneStateListener.LISTEN_SERVICE_STATE |
-                                PhoneStateListener.LISTEN_SIGNAL_STRENGTHS);
-            }
-
-            // TODO: Consider removing ??
-            for (int i = 0; i < 10 && neighboringCellInfo.size() == 0; i++) {
-                try {
-                    log.debug("NeighboringCellInfo empty: trying {}", i);
-                    NeighboringCellInfo info = neighboringCellBlockingQueue.poll(1, TimeUnit.SECONDS);
-                    if (info == null) {
-                        neighboringCellInfo = tm.getNeighboringCellInfo();
-                        if (neighboringCellInfo != null) {
-                            if (neighboringCellInfo.size() > 0) {
-                                // Can we think of a better log message here?
-                                log.debug("NeighboringCellInfo found on {} try. (time based)", i);
-                                break;
-                            } else {
-                                continue;
-                            }
-                        }
-                    }
-                    List<NeighboringCellInfo> cellInfoList =
-                            new ArrayList<>(neighboringCellBlockingQueue.size() + 1);
-                    while (info != null) {
-                        cellInfoList.add(info);
-                        info = neighboringCellBlockingQueue.poll(1, TimeUnit.SECONDS);
-                    }
-                    neighboringCellInfo = cellInfoList;
-                } catch (InterruptedException e) {
-                    // TODO: Add a more valuable message here!
-                    log.error("", e);
-                }
-            }
-        }
-
-        //log.debug(mTAG + ": neighboringCellInfo size: " + neighboringCellInfo.size());
-
-        // Add NC list to DBi_measure:nc_list
-        for (NeighboringCellInfo neighborCell : neighboringCellInfo) {
-            log.info("NeighboringCellInfo - LAC:{} CID:{} PSC:{} RSSI:{}", neighborCell.getLac(), neighborCell.getCid(), neighborCell.getPsc(), neighborCell.getRssi());
-
-            final Cell cell = new Cell(
-                    neighborCell.getCid(),
-                    neighborCell.getLac(),
-                    neighborCell.getRssi(),
-                    neighborCell.getPsc(),
-                    neighborCell.getNetworkType(), false);
-            neighboringCells.add(cell);
+        for (Cell neighborCell : neighboringCells) {
+            log.info("NeighboringCellInfo - LAC:{} CID:{} PSC:{} RSSI:{}", neighborCell.getLocationAreaCode(),
+                    neighborCell.getCellId(), neighborCell.getPrimaryScramblingCode(), neighborCell.getRssi());
         }
         return neighboringCells;
     }
 
-
     /**
-     *  Description:    This snippet sets a global variable (SharedPreference) to indicate
-     *                  if Neighboring cells info CAN be obtained or has been obtained
-     *                  previously. If it has been and suddenly there are none, we can
-     *                  raise a flag of CID being suspicious.
-     *
-     *                  The logic is:
-     *
-     *                      IF NC has never been seen on device:
-     *                          - NC list is NOT supported on this AOS/HW, so we do nothing.
-     *                      IF NC has been seen before,
-     *                          - NC list IS supported on this AOS/HW, so we set:
-     *                              nc_list_present : "true"
-     *                      IF NC list has been seen before AND current CID doesn't provide
-     *                      one, we raise an alarm or flag.
-     *
-     *
-     *  Notes:      a)  Not sure where to place this test, but let's try it here..
-     *              b)  In TinyDB, the getBoolean() returns "false" by default, if empty.
-     *
-     *              c)   This will be called on every cell change (ref:  issue #346)
-     *              d)  *** https://github.com/CellularPrivacy/Android-IMSI-Catcher-Detector/issues/383
-     *
-     *  Issue:
-     *          [ ] We need a timer or "something" to reverse a positive detection once
-     *              we're out and away from the fake BTS cell.
-     *          [ ] We need to add this to EventLog
-     *          [ ] We need to add detection tickers etc...
-     *          [x] We need to use a global and persistent variable and not a system property
-     *
+     * {@link #updateNeighboringCells()} with the tower location of each neighbor and its
+     * distance to the serving cell, see {@link NeighborLocationResolver}. Queries the
+     * database, don't call it on the main thread.
      */
-    public void checkForNeighborCount(CellLocation location) {
-        log.info("CheckForNeighborCount()");
-
-        emptyNeighborCellsList = false;
-
-        Integer neighborCellsCount = 0;
-        if (tm != null && tm.getNeighboringCellInfo() != null) { // See # 383
-            neighborCellsCount = tm.getNeighboringCellInfo().size();
-        }
-        
-        // NC list present for that network type? (default is false)
-        String ncListVariableByType = "nc_list_present_" + tm.getNetworkType();
-        Boolean nclSupportedByNetwork = tinydb.getBoolean(ncListVariableByType);
-
-        if (neighborCellsCount > 0) {
-            log.debug("NeighboringCellInfo size: {}", neighborCellsCount);
-            if (!nclSupportedByNetwork)  {
-                log.debug("Setting {} to: true", ncListVariableByType);
-                tinydb.putBoolean(ncListVariableByType, true);
-            }
-        } else if (neighborCellsCount == 0 && nclSupportedByNetwork) {
-            // Detection 7a
-            log.info("ALERT: No neighboring cells detected for CID: {}", device.cell.getCellId());
-
-            emptyNeighborCellsList = true;
-
-            @Cleanup Realm realm = Realm.getDefaultInstance();
-            dbHelper.toEventLog(realm, 4, "No neighboring cells detected"); // (DF_id, DF_desc)
-        } else  {
-            // Todo: remove cid string when working.
-            log.debug("NC list not supported by this networkn type or not supported by AOS on this device. Nothing to do.");
-            log.debug("Setting {} to: false", ncListVariableByType);
-            tinydb.putBoolean(ncListVariableByType, false);
-        }
-        setNotification();
+    public List<NeighborLocationResolver.Resolution> resolveNeighboringCells() {
+        return shared.neighborLocationResolver.resolve(getDevice().cell, updateNeighboringCells());
     }
 
     /**
-     *          I removed the timer that activated this code and now the code will be run when
-     *          the cell changes so it will detect faster rather than using a timer that might
-     *          miss an imsi catcher, also says cpu rather than refreshing every x seconds.
-     *
-     *          original comments below from xLaMbChOpSx
-     *
-     *
-     *  Description:    (From xLaMbChOpSx commit comment)
-     *
-     *      Initial implementation for detection method 1 to compare the CID & LAC with the Cell
-     *      Information Table contents as an initial implementation for detection of a changed LAC,
-     *      once OCID issues (API key use etc) have been finalised this detection method can be
-     *      extended to include checking of external data.
-     *
-     *      REMOVED: refresh timer info
-     *
-     *      As I have no real way of testing this I require testing by other project members who
-     *      do have access to equipment or an environment where a changing LAC can be simulated
-     *      thus confirming the accuracy of this implementation.
-     *
-     *      Presently this will only invoke the MEDIUM threat level through the notification and
-     *      does not fully implement the capturing and score based method as per the issue details
-     *      once further testing is complete the alert and tracking of information can be refined.
-     *
-     *      See:
-     *        https://github.com/xLaMbChOpSx/Android-IMSI-Catcher-Detector/commit/43ae77e2a0cad10dfd50f92da5a998f9ece95b38
-     *        https://github.com/SecUpwN/Android-IMSI-Catcher-Detector/issues/91#issuecomment-64391732
-     *
-     *  Short explanation:
-     *
-     *                  This is a polling mechanism for getting the LAC/CID and location
-     *                  info for the currently connected cell.
-     *
-     *  Variables:
-     *                  FIXED: now updates on cell change rather than a timer
-     *                  There is a "timer" here (REFRESH_RATE), what exactly is it timing?
-     *                  "Every REFRESH_RATE seconds, get connected cell details."
-     *
-     *  Issues:     [ ] We shouldn't do any detection here!
-     *              [ ] We might wanna use a listener to do this?
-     *                  Are there any reasons why not using a listener?
-     *
-     *  ChangeLog:
-     *              2015-03-03  E:V:A           Changed getProp() to use TinyDB (SharedPreferences)
-     *              2015-0x-xx  banjaxbanjo     Update: ??? (hey dude what did you do?)
-     *
+     * @return When which cell served each subscription, e.g. for handover analysis
      */
-    public void compareLac(CellLocation location) {
-
-        @Cleanup Realm realm = Realm.getDefaultInstance();
-
-        switch (device.getPhoneId()) {
-
-            case TelephonyManager.PHONE_TYPE_NONE:
-            case TelephonyManager.PHONE_TYPE_SIP:
-            case TelephonyManager.PHONE_TYPE_GSM:
-                GsmCellLocation gsmCellLocation = (GsmCellLocation) location;
-                if (gsmCellLocation != null) {
-                    monitorCell.setLocationAreaCode(gsmCellLocation.getLac());
-                    monitorCell.setCellId(gsmCellLocation.getCid());
-
-                    // Check if LAC is ok
-                    boolean lacOK = dbHelper.checkLAC(realm, monitorCell);
-                    if (!lacOK) {
-                        changedLAC = true;
-                        dbHelper.toEventLog(realm, 1, "Changing LAC");
-
-                        // Detection Logs are made in checkLAC()
-                        vibrate(100, Status.MEDIUM);
-                    } else {
-                        changedLAC = false;
-                    }
-
-                    if (tinydb.getBoolean("ocid_downloaded")) {
-                        if (!dbHelper.openCellExists(realm, monitorCell.getCellId())) {
-                            dbHelper.toEventLog(realm, 2, "CID not in Import realm");
-
-                            log.info("ALERT: Connected to unknown CID not in Import realm: {}", monitorCell.getCellId());
-                            vibrate(100, Status.MEDIUM);
+    public ServingCellTimeline getServingCellTimeline() {
+        return shared.timeline;
+    }
 
-                            cellIdNotInOpenDb = true;
-                        } else {
-                            cellIdNotInOpenDb = false;
-                        }
-                    }
-                }
-                break;
-
-            case TelephonyManager.PHONE_TYPE_CDMA:
-                CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) location;
-                if (cdmaCellLocation != null) {
-                    monitorCell.setLocationAreaCode(cdmaCellLocation.getNetworkId());
-                    monitorCell.setCellId(cdmaCellLocation.getBaseStationId());
-
-                    boolean lacOK = dbHelper.checkLAC(realm, monitorCell);
-                    if (!lacOK) {
-                        changedLAC = true;
-                        /*dbHelper.insertEventLog(
-                                MiscUtils.getCurrentTimeStamp(),
-                                monitorCell.getLAC(),
-                                monitorCell.getCid(),
-                                monitorCell.getPSC(),//This is giving weird values like 21478364... is this right?
-                                String.valueOf(monitorCell.getLat()),
-                                String.valueOf(monitorCell.getLon()),
-                                (int)monitorCell.getAccuracy(),
-                                1,
-                                "Changing LAC"
-                        );*/
-                        dbHelper.toEventLog(realm, 1, "Changing LAC");
-                    } else {
-                        changedLAC = false;
-                    }
-                }
-        }
-        setNotification();
+    /**
+     * @return The component keeping the neighbor list of the default subscription up to date,
+     * e.g. to listen for changes
+     */
+    public NeighborCellMonitor getNeighborCellMonitor() {
+        return primary.getNeighborCellMonitor();
     }
 
     /**
      * Check device's current cell location's LAC against local database AND verify cell's CID
-     * exists in the OCID database.
-     *
-     * @see #compareLac(CellLocation)
+     * exists in the OCID database, by running the detectors on the current cell location.
      */
     public void compareLacAndOpenDb() {
-        compareLac(tm.getCellLocation());
+        for (SubscriptionTracker subscription : getSubscriptions()) {
+            subscription.publishCellLocation();
+        }
     }
 
-    // Where is this used?
-    private void handlePhoneStateChange() {
-        List<NeighboringCellInfo> neighboringCellInfo = tm.getNeighboringCellInfo();
-        if (neighboringCellInfo == null || neighboringCellInfo.size() == 0) {
-            return;
-        }
+    public void refreshDevice() {
+        primary.refreshDevice();
+    }
 
-        log.info("NeighboringCellInfo empty - event based polling succeeded!");
-        tm.listen(phoneStatelistener, PhoneStateListener.LISTEN_NONE);
-        if (neighboringCellInfo == null) {
-            neighboringCellInfo = new ArrayList<>();
+    /**
+     * @param refreshRate The refresh preference (pref_refresh_values): seconds, "0" for manual
+     *                    or "1" for automatic
+     */
+    private void setRefreshRate(String refreshRate) {
+        // Default to Automatic ("1")
+        if (refreshRate.isEmpty()) {
+            refreshRate = "1";
         }
-        neighboringCellBlockingQueue.addAll(neighboringCellInfo);
-    }
 
-    public void refreshDevice() {
-        device.refreshDeviceInfo(tm, context);
+        int rate = Integer.parseInt(refreshRate);
+        boolean automatic = rate == 1;
+        final long refreshRateMs = automatic ? RefreshScheduler.AUTO_BASE_INTERVAL_MS : TimeUnit.SECONDS.toMillis(rate);
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withRefreshRate(refreshRateMs);
+            }
+        });
+        refreshScheduler.setRefreshRate(refreshRateMs, automatic);
     }
 
     /**
@@ -634,29 +725,15 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      */
     private void loadPreferences() {
         // defaults are given by:  getBoolean(key, default if not exist)
-        boolean trackFemtoPref  = prefs.getBoolean(context.getString(R.string.pref_femto_detection_key), false);
-        boolean trackCellPref   = prefs.getBoolean(context.getString(R.string.pref_enable_cell_key), true);
-        boolean monitorCellPref = prefs.getBoolean(context.getString(R.string.pref_enable_cell_monitoring_key), true);
+        boolean trackFemtoPref  = prefs.getBoolean(keys.femtoDetection, false);
+        boolean trackCellPref   = prefs.getBoolean(keys.enableCell, true);
+        boolean monitorCellPref = prefs.getBoolean(keys.enableCellMonitoring, true);
 
-        CELL_TABLE_CLEANSED         = prefs.getBoolean(context.getString(R.string.pref_cell_table_cleansed), false);
-        String refreshRate = prefs.getString(context.getString(R.string.pref_refresh_key), "1");
-        this.vibrateEnabled = prefs.getBoolean(context.getString(R.string.pref_notification_vibrate_enable), true);
-        this.vibrateMinThreatLevel = Integer.valueOf(prefs.getString(context.getString(R.string.pref_notification_vibrate_min_level), String.valueOf(Status.MEDIUM.ordinal())));
+        CELL_TABLE_CLEANSED         = prefs.getBoolean(keys.cellTableCleansed, false);
+        String refreshRate = prefs.getString(keys.refresh, "1");
+        loadVibratePreferences(prefs);
 
-        // Default to Automatic ("1")
-        if (refreshRate.isEmpty()) {
-            refreshRate = "1";
-        }
-
-        int rate = Integer.parseInt(refreshRate);
-        long t;
-        if (rate == 1) {
-            t = 15L; // Automatic refresh rate is 15 seconds
-        } else {
-            t = ((long) rate); // Default is 1 sec (from above)
-        }
-
-        REFRESH_RATE = TimeUnit.SECONDS.toMillis(t);
+        setRefreshRate(refreshRate);
         getOcidKey();
 
         if (trackFemtoPref) {
@@ -671,244 +748,60 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
     }
 
 
-    /**
-     * Description:  TODO: add more info
-     *
-     *    This SEEM TO add entries to the "locationinfo" DB table in the ??
-     *
-     *    Issues:
-     *
-     *    [ ] We see that "Connection" items are messed up. What is the purpose of these?
-     *    [ ] TODO: CDMA has to extract the MCC and MNC using something like:
-     *
-     *      String mccMnc = phoneMgr.getNetworkOperator();
-     *      String cdmaMcc = "";
-     *      String cdmaMnc = "";
-     *      if (mccMnc != null && mccMnc.length() >= 5) {
-     *          cdmaMcc = mccMnc.substring(0, 3);
-     *          cdmaMnc = mccMnc.substring(3, 5);
-     }      }
-     *
-     *    ChangeLog:
-     *
-     *          2015-01-22  E:V:A   Changed what appears to be a typo in the character
-     *                              following getNetworkTypeName(), "|" to "]"
-     *          2015-01-24  E:V:A   FC WTF!? Changed back ^ to "|". (Where is this info parsed?)
-     *
-     */
-    private final PhoneStateListener cellSignalListener = new PhoneStateListener() {
-        public void onCellLocationChanged(CellLocation location) {
-
-            checkForNeighborCount(location);
-            compareLac(location);
-            refreshDevice();
-            device.setNetID(tm);
-            device.getNetworkTypeName();
-
-            switch (device.getPhoneId()) {
-
-                case TelephonyManager.PHONE_TYPE_NONE:
-                case TelephonyManager.PHONE_TYPE_SIP:
-                case TelephonyManager.PHONE_TYPE_GSM:
-                    GsmCellLocation gsmCellLocation = (GsmCellLocation) location;
-                    if (gsmCellLocation != null) {
-                        //TODO @EVA where are we sending this setCellInfo data?
-
-                        //TODO
-                        /*@EVA
-                            Is it a good idea to dump all cells to db because if we spot a known cell
-                            with different locationAreaCode then this will also be dump to db.
-
-                        */
-                        device.setCellInfo(
-                                gsmCellLocation.toString() +                // ??
-                                        device.getDataActivityTypeShort() + "|" +  // No,In,Ou,IO,Do
-                                        device.getDataStateShort() + "|" +         // Di,Ct,Cd,Su
-                                        device.getNetworkTypeName() + "|"          // HSPA,LTE etc
-                        );
-
-                        device.cell.setLocationAreaCode(gsmCellLocation.getLac());     // LAC
-                        device.cell.setCellId(gsmCellLocation.getCid());     // CID
-                        if (gsmCellLocation.getPsc() != -1) {
-                            device.cell.setPrimaryScramblingCode(gsmCellLocation.getPsc()); // PSC
-                        }
-
-                        /*
-                            Add cell if gps is not enabled
-                            when gps enabled lat lon will be updated
-                            by function below
-
-                         */
-                    }
-                    break;
-
-                case TelephonyManager.PHONE_TYPE_CDMA:
-                    CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) location;
-                    if (cdmaCellLocation != null) {
-                        device.setCellInfo(
-                                cdmaCellLocation.toString() +                       // ??
-                                        device.getDataActivityTypeShort() + "|" +  // No,In,Ou,IO,Do
-                                        device.getDataStateShort() + "|" +         // Di,Ct,Cd,Su
-                                        device.getNetworkTypeName() + "|"          // HSPA,LTE etc
-                        );
-                        device.cell.setLocationAreaCode(cdmaCellLocation.getNetworkId());      // NID
-                        device.cell.setCellId(cdmaCellLocation.getBaseStationId());  // BID
-                        device.cell.setSid(cdmaCellLocation.getSystemId());       // SID
-                        device.cell.setMobileNetworkCode(cdmaCellLocation.getSystemId());       // MNC <== BUG!??
-                        device.setNetworkName(tm.getNetworkOperatorName());        // ??
-                    }
+    private void loadVibratePreferences(SharedPreferences sharedPreferences) {
+        final boolean vibrateEnabled = sharedPreferences.getBoolean(keys.vibrateEnable, true);
+        final int vibrateMinThreatLevel = Integer.valueOf(sharedPreferences.getString(keys.vibrateMinLevel,
+                String.valueOf(Status.MEDIUM.ordinal())));
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withVibrate(vibrateEnabled, vibrateMinThreatLevel);
             }
+        });
+    }
 
-        }
-
-        /**
-         *  Description:  TODO: add more info
-         *
-         *  Issues:
-         *
-         *      [ ]     Getting and comparing signal strengths between different RATs can be very
-         *              tricky, since they all return different ranges of values. AOS doesn't
-         *              specify very clearly what exactly is returned, even though people have
-         *              a good idea, by trial and error.
-         *
-         *              See note in : SignalStrengthTracker.java
-         */
-        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
-            // Update Signal Strength
-            if (signalStrength.isGsm()) {
-                int dbm;
-                if (signalStrength.getGsmSignalStrength() <= 2 ||
-                        signalStrength.getGsmSignalStrength() == NeighboringCellInfo.UNKNOWN_RSSI) {
-                    // Unknown signal strength, get it another way
-                    String[] bits = signalStrength.toString().split(" ");
-                    dbm = Integer.parseInt(bits[9]);
-                } else {
-                    dbm = signalStrength.getGsmSignalStrength();
+    /**
+     * Routes each snapshot to the subscription it was reported for. Location snapshots
+     * apply to all subscriptions.
+     */
+    private final RadioSnapshotBus.Subscriber analyzer = new RadioSnapshotBus.Subscriber() {
+        @Override
+        public void onSnapshot(RadioSnapshot snapshot) {
+            if (snapshot.getKind() == RadioSnapshot.Kind.LOCATION) {
+                for (SubscriptionTracker subscription : getSubscriptions()) {
+                    subscription.process(snapshot);
                 }
-                device.setSignalDbm(dbm);
-            } else {
-                int evdoDbm = signalStrength.getEvdoDbm();
-                int cdmaDbm = signalStrength.getCdmaDbm();
-
-                // Use lowest signal to be conservative
-                device.setSignalDbm((cdmaDbm < evdoDbm) ? cdmaDbm : evdoDbm);
+                rememberLocation(snapshot.getLocation());
+                return;
             }
-            // Send it to signal tracker
-            signalStrengthTracker.registerSignalStrength(device.cell.getCellId(), device.getSignalDBm());
-            //signalStrengthTracker.isMysterious(device.cell.getCid(), device.getSignalDBm());
-        }
-
-        // In DB:   No,In,Ou,IO,Do
-        public void onDataActivity(int direction) {
-            switch (direction) {
-                case TelephonyManager.DATA_ACTIVITY_NONE:
-                    device.setDataActivityTypeShort("No");
-                    device.setDataActivityType("None");
-                    break;
-                case TelephonyManager.DATA_ACTIVITY_IN:
-                    device.setDataActivityTypeShort("In");
-                    device.setDataActivityType("In");
-                    break;
-                case TelephonyManager.DATA_ACTIVITY_OUT:
-                    device.setDataActivityTypeShort("Ou");
-                    device.setDataActivityType("Out");
-                    break;
-                case TelephonyManager.DATA_ACTIVITY_INOUT:
-                    device.setDataActivityTypeShort("IO");
-                    device.setDataActivityType("In-Out");
-                    break;
-                case TelephonyManager.DATA_ACTIVITY_DORMANT:
-                    device.setDataActivityTypeShort("Do");
-                    device.setDataActivityType("Dormant");
-                    break;
+            SubscriptionTracker subscription = secondary.route(snapshot, primary);
+            if (subscription == null) {
+                log.debug("Dropping {} of a removed subscription", snapshot);
+                return;
             }
+            subscription.process(snapshot);
         }
-
-        // In DB:   Di,Ct,Cd,Su
-        public void onDataConnectionStateChanged(int state) {
-            switch (state) {
-                case TelephonyManager.DATA_DISCONNECTED:
-                    device.setDataState("Disconnected");
-                    device.setDataStateShort("Di");
-                    break;
-                case TelephonyManager.DATA_CONNECTING:
-                    device.setDataState("Connecting");
-                    device.setDataStateShort("Ct");
-                    break;
-                case TelephonyManager.DATA_CONNECTED:
-                    device.setDataState("Connected");
-                    device.setDataStateShort("Cd");
-                    break;
-                case TelephonyManager.DATA_SUSPENDED:
-                    device.setDataState("Suspended");
-                    device.setDataStateShort("Su");
-                    break;
-            }
-        }
-
     };
 
     /**
-     * Add entries to the {@link com.secupwn.aimsicd.data.model.Measure Measure} realm
+     * Add entries to the {@link com.secupwn.aimsicd.data.model.Measure Measure} realm,
+     * the location is processed on the analysis thread.
      */
     public void onLocationChanged(Location loc) {
-        // TODO: See issue #555 (DeviceApi17.java is using API 18 CellInfoWcdma calls.
-        if (Build.VERSION.SDK_INT > 17) {
-            DeviceApi18.loadCellInfo(tm, device);
-        }
-
-        if (!device.cell.isValid()) {
-            CellLocation cellLocation = tm.getCellLocation();
-            if (cellLocation != null) {
-                switch (device.getPhoneId()) {
-
-                    case TelephonyManager.PHONE_TYPE_NONE:
-                    case TelephonyManager.PHONE_TYPE_SIP:
-                    case TelephonyManager.PHONE_TYPE_GSM:
-                        GsmCellLocation gsmCellLocation = (GsmCellLocation) cellLocation;
-                        device.cell.setCellId(gsmCellLocation.getCid()); // CID
-                        device.cell.setLocationAreaCode(gsmCellLocation.getLac()); // LAC
-                        device.cell.setPrimaryScramblingCode(gsmCellLocation.getPsc()); // PSC
-                        break;
-
-                    case TelephonyManager.PHONE_TYPE_CDMA:
-                        CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) cellLocation;
-                        device.cell.setCellId(cdmaCellLocation.getBaseStationId()); // BSID ??
-                        device.cell.setLocationAreaCode(cdmaCellLocation.getNetworkId());     // NID
-                        device.cell.setSid(cdmaCellLocation.getSystemId());      // SID
-                        device.cell.setMobileNetworkCode(cdmaCellLocation.getSystemId());      // MNC <== BUG!??
-
-                        break;
-                }
-            }
-        }
+        snapshotBus.publish(RadioSnapshot.location(loc));
+    }
 
-        if (loc != null &&
+    static boolean isValidLocation(Location loc) {
+        return loc != null &&
                 (Double.doubleToRawLongBits(loc.getLatitude()) != 0
-                        && Double.doubleToRawLongBits(loc.getLongitude()) != 0)) {
-
-
-            device.cell.setLon(loc.getLongitude());       // gpsd_lon
-            device.cell.setLat(loc.getLatitude());        // gpsd_lat
-            device.cell.setSpeed(loc.getSpeed());         // speed        // TODO: Remove, we're not using it!
-            device.cell.setAccuracy(loc.getAccuracy());   // gpsd_accu
-            device.cell.setBearing(loc.getBearing());     // -- [deg]??   // TODO: Remove, we're not using it!
-            device.setLastLocation(loc);                   //
+                        && Double.doubleToRawLongBits(loc.getLongitude()) != 0);
+    }
 
-            // Store last known location in preference
-            SharedPreferences.Editor prefsEditor;
-            prefsEditor = prefs.edit();
-            prefsEditor.putString(context.getString(R.string.data_last_lat_lon),
+    private void rememberLocation(Location loc) {
+        if (isValidLocation(loc)) {
+            // Store last known location in preference, written with the next TinyDB flush
+            tinydb.putString(keys.lastLatLon,
                     String.valueOf(loc.getLatitude()) + ":" + String.valueOf(loc.getLongitude()));
-            prefsEditor.apply();
-
-            // This only logs a BTS if we have GPS lock
-            // TODO: Is correct behaviour? We should consider logging all cells, even without GPS.
-            if (trackingCell) {
-                // This also checks that the locationAreaCode are cid are not in DB before inserting
-                @Cleanup Realm realm = Realm.getDefaultInstance();
-                dbHelper.insertBTS(realm, device.cell);
-            }
         }
     }
 
@@ -916,7 +809,7 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      * Cancel and remove the persistent notification
      */
     public void cancelNotification() {
-        NotificationManagerCompat.from(context).cancel(NOTIFICATION_ID);
+        notifier.cancel();
     }
 
     /**
@@ -948,28 +841,27 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      */
     void setNotification() {
         String tickerText;
+        Device device = getDevice();
         String contentText = "Phone Type " + device.getPhoneType();
 
-        if (femtoDetected || typeZeroSmsDetected) {
-            getApplication().setCurrentStatus(Status.DANGER, vibrateEnabled, vibrateMinThreatLevel);
-        } else if (changedLAC) {
-            getApplication().setCurrentStatus(Status.MEDIUM, vibrateEnabled, vibrateMinThreatLevel);
-            contentText = context.getString(R.string.hostile_service_area_changing_lac_detected);
-        } else if (emptyNeighborCellsList) {
-            getApplication().setCurrentStatus(Status.MEDIUM, vibrateEnabled, vibrateMinThreatLevel);
-            contentText = context.getString(R.string.cell_doesnt_provide_any_neighbors);
-        } else if (cellIdNotInOpenDb) {
-            getApplication().setCurrentStatus(Status.MEDIUM, vibrateEnabled, vibrateMinThreatLevel);
-            contentText = context.getString(R.string.cell_id_doesnt_exist_in_db);
-        } else if (trackingFemtocell || trackingCell || monitoringCell) {
+        ThreatAssessment assessment = getAssessment();
+        Finding threat = assessment.getTopFinding();
+        TrackerState current = getState();
+        boolean vibrateEnabled = current.isVibrateEnabled();
+        int vibrateMinThreatLevel = current.getVibrateMinThreatLevel();
+
+        if (threat != null) {
+            getApplication().setCurrentStatus(assessment.getStatus(), vibrateEnabled, vibrateMinThreatLevel);
+            contentText = threat.getMessage();
+        } else if (current.isActive()) {
             getApplication().setCurrentStatus(Status.OK, vibrateEnabled, vibrateMinThreatLevel);
-            if (trackingFemtocell) {
+            if (current.isTrackingFemtocell()) {
                 contentText = context.getString(R.string.femtocell_detection_active);
             } else
-            if (trackingCell) {
+            if (current.isTrackingCell()) {
                 contentText = context.getString(R.string.cell_tracking_active);
             } 
-            if (monitoringCell) {
+            if (current.isMonitoringCell()) {
                 contentText = context.getString(R.string.cell_monitoring_active);
             } else {
                 getApplication().setCurrentStatus(Status.IDLE, vibrateEnabled, vibrateMinThreatLevel);
@@ -980,6 +872,7 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
 
 
         Status status = getApplication().getStatus();
+        refreshScheduler.setThreatStatus(assessment.getStatus());
             switch (status) {
                 case IDLE: // GRAY
                     contentText = context.getString(R.string.phone_type) + device.getPhoneType();
@@ -991,69 +884,42 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
                     break;
 
                 case MEDIUM: // YELLOW
+                case HIGH: // ORANGE
                     // Initialize tickerText as the app name string
                     // See multiple detection comments above.
                     tickerText = context.getResources().getString(R.string.app_name_short);
-                    if (changedLAC) {
-                        //Append changing LAC text
-                        contentText = context.getString(R.string.hostile_service_area_changing_lac_detected);
-                        tickerText += " - " + contentText;
-                    } else if (emptyNeighborCellsList) {
-                        //According to #264
-                        contentText = context.getString(R.string.cell_doesnt_provide_any_neighbors);
-                        tickerText += " - " + contentText;
-                    } else if (cellIdNotInOpenDb) {
-                        //Append Cell ID not existing in external db text
-                        contentText = context.getString(R.string.cell_id_doesnt_exist_in_db);
+                    if (threat != null) {
+                        // Append the text of the detection, e.g. changing LAC or #264
                         tickerText += " - " + contentText;
                     }
                     break;
 
                 case DANGER: // RED
                     tickerText = context.getResources().getString(R.string.app_name_short) + " - " + context.getString(R.string.alert_threat_detected); // Hmm, this is vague!
-                    if (femtoDetected) {
-                        contentText = context.getString(R.string.alert_femtocell_connection_detected);
-                    } else if (typeZeroSmsDetected) {
-                        contentText = context.getString(R.string.alert_silent_sms_detected);
-                    }
-
                     break;
                 default:
                     tickerText = context.getResources().getString(R.string.main_app_name);
                     break;
             }
 
-            // TODO: Explanation (see above)
-            Intent notificationIntent = new Intent(context, MainActivity.class);
-            notificationIntent.putExtra("silent_sms", typeZeroSmsDetected);
-        notificationIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_FROM_BACKGROUND);
-            PendingIntent contentIntent = PendingIntent.getActivity(
-                    context, NOTIFICATION_ID, notificationIntent, PendingIntent.FLAG_CANCEL_CURRENT);
-            String iconType = prefs.getString(context.getString(R.string.pref_ui_icons_key), "SENSE").toUpperCase();
-            int iconResId = Icon.getIcon(Icon.Type.valueOf(iconType), status);
-            Bitmap largeIcon = BitmapFactory.decodeResource(context.getResources(), iconResId);
-
-        int color = context.getResources().getColor(status.getColor());
-
-            Notification notification = new NotificationCompat.Builder(context)
-                    .setSmallIcon(R.drawable.tower48)
-                    .setColor(color)
-                    .setLargeIcon(largeIcon)
-                    .setTicker(tickerText)
-                    .setContentTitle(context.getString(R.string.status) + " " + context.getString(status.getName()))
-                    .setContentInfo(context.getResources().getString(R.string.app_name_short))
-                    .setContentText(contentText)
-                    .setOngoing(true)
-                    .setAutoCancel(false)
-                    .setContentIntent(contentIntent)
-                    .build();
-
-        NotificationManagerCompat
-                .from(context)
-                .notify(NOTIFICATION_ID, notification);
-
+        String iconType = tinydb.getString(keys.uiIcons, "SENSE").toUpperCase();
+        notifier.update(new StatusNotifier.Content(status, Icon.Type.valueOf(iconType),
+                tickerText, contentText, assessment.isDetected(SmsDetector.DETECTOR_NAME)));
     }
 
+    private final DetectorEngine.Listener assessmentListener = new DetectorEngine.Listener() {
+        @Override
+        public void onAssessmentChanged(ThreatAssessment previous, ThreatAssessment current) {
+            if (current.isDetected(FemtocellDetector.NAME) && !previous.isDetected(FemtocellDetector.NAME)) {
+                Helpers.msgShort(context, context.getString(R.string.alert_femtocell_tracking_detected));
+            }
+            if (current.getStatus().ordinal() > previous.getStatus().ordinal()) {
+                vibrate(100, current.getStatus());
+            }
+            setNotification();
+        }
+    };
+
     private AndroidIMSICatcherDetector getApplication() {
         return AndroidIMSICatcherDetector.getInstance();
     }
@@ -1063,9 +929,10 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
      * and act appropriately
      * */
     private void vibrate(int msec, Status threatLevel) {
-        if (vibrateEnabled && (threatLevel == null || threatLevel.ordinal() >= vibrateMinThreatLevel)) {
-            Vibrator v = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
-            v.vibrate(msec);
+        TrackerState current = getState();
+        if (current.isVibrateEnabled()
+                && (threatLevel == null || threatLevel.ordinal() >= current.getVibrateMinThreatLevel())) {
+            AlertPipeline.getInstance().vibrate(msec);
         }
     }
 
@@ -1084,16 +951,21 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
     public void startTrackingFemto() {
 
         /* Check if it is a CDMA phone */
-        if (device.getPhoneId() != TelephonyManager.PHONE_TYPE_CDMA) {
+        if (getDevice().getPhoneId() != TelephonyManager.PHONE_TYPE_CDMA) {
             Helpers.msgShort(context, context.getString(R.string.femtocell_only_on_cdma_devices));
             return;
         }
 
-        trackingFemtocell = true;
+        updateState(new TrackerState.Update() {
+            @Override
+            public TrackerState apply(TrackerState state) {
+                return state.withTrackingFemtocell(true);
+            }
+        });
         mPhoneStateListener = new PhoneStateListener() {
             public void onServiceStateChanged(ServiceState s) {
                 log.debug(context.getString(R.string.service_state_changed));
-                getServiceStateInfo(s);
+                primary.onCallback(RadioSnapshot.serviceState(s));
             }
         };
         tm.listen(mPhoneStateListener, PhoneStateListener.LISTEN_CELL_LOCATION);
@@ -1107,131 +979,19 @@ public class CellTracker implements SharedPreferences.OnSharedPreferenceChangeLi
     public void stopTrackingFemto() {
         if (mPhoneStateListener != null) {
             tm.listen(mPhoneStateListener, PhoneStateListener.LISTEN_NONE);
-            trackingFemtocell = false;
+            updateState(new TrackerState.Update() {
+                @Override
+                public TrackerState apply(TrackerState state) {
+                    return state.withTrackingFemtocell(false);
+                }
+            });
+            primary.getDetectorEngine().report(Finding.clear(FemtocellDetector.NAME));
             setNotification();
             log.debug(context.getString(R.string.stopped_tracking_femtocell));
         }
     }
 
-    private void getServiceStateInfo(ServiceState s) {
-        if (s != null) {
-            if (IsConnectedToCdmaFemto(s)) {
-                Helpers.msgShort(context, context.getString(R.string.alert_femtocell_tracking_detected));
-                femtoDetected = true;
-                setNotification();
-                //toggleRadio();
-            } else {
-                femtoDetected = false;
-                setNotification();
-            }
-        }
-    }
-
-    private boolean IsConnectedToCdmaFemto(ServiceState s) {
-        if (s == null) {
-            return false;
-        }
-
-        /* Get International Roaming indicator
-         * if indicator is not 0 return false
-         */
-
-        /* Get the radio technology */
-        int networkType = device.cell.getNetType();
-
-        /* Check if it is EvDo network */
-        boolean evDoNetwork = isEvDoNetwork(networkType);
-
-        /* If it is not an evDo network check the network ID range.
-         * If it is connected to Femtocell, the NID should be between [0xfa, 0xff)
-         */
-        if (!evDoNetwork) {
-            /* get network ID */
-            if (tm != null) {
-                CdmaCellLocation c = (CdmaCellLocation) tm.getCellLocation();
-
-                if (c != null) {
-                    int networkID = c.getNetworkId();
-                    int FEMTO_NID_MAX = 0xff;
-                    int FEMTO_NID_MIN = 0xfa;
-                    return !((networkID < FEMTO_NID_MIN) || (networkID >= FEMTO_NID_MAX));
-
-                } else {
-                    log.debug("Cell location info is null.");
-                    return false;
-                }
-            } else {
-                log.debug("Telephony Manager is null.");
-                return false;
-            }
-        } else { /* if it is an evDo network */
-            /* get network ID */
-            if (tm != null) {
-                CdmaCellLocation c = (CdmaCellLocation) tm.getCellLocation();
-
-                if (c != null) {
-                    int networkID = c.getNetworkId();
-
-                    int FEMTO_NID_MAX = 0xff;
-                    int FEMTO_NID_MIN = 0xfa;
-                    return !((networkID < FEMTO_NID_MIN) || (networkID >= FEMTO_NID_MAX));
-                } else {
-                    log.debug("Cell location info is null.");
-                    return false;
-                }
-            } else {
-                log.debug("Telephony Manager is null.");
-                return false;
-            }
-        }
-
-    }
-
-    /**
-     * Confirmation of connection to an EVDO Network
-     *
-     * @return EVDO network connection returns TRUE
-     */
-    private boolean isEvDoNetwork(int networkType) {
-        return (networkType == TelephonyManager.NETWORK_TYPE_EVDO_0) ||
-                (networkType == TelephonyManager.NETWORK_TYPE_EVDO_A) ||
-                (networkType == TelephonyManager.NETWORK_TYPE_EVDO_B) ||
-                (networkType == TelephonyManager.NETWORK_TYPE_EHRPD);
-    }
-
     //=================================================================================================
     // END Femtocatcher code
     //=================================================================================================
-
-    final PhoneStateListener phoneStatelistener = new PhoneStateListener() {
-        private void handle() {
-            handlePhoneStateChange();
-        }
-        @Override
-        public void onServiceStateChanged(ServiceState serviceState) {
-            handle();
-        }
-        @Override
-        public void onDataConnectionStateChanged(int state) {
-            handle();
-        }
-        @Override
-        public void onDataConnectionStateChanged(int state, int networkType) {
-            handle();
-        }
-        @Override
-        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
-            handle();
-        }
-        @Override
-        public void onCellInfoChanged(List<CellInfo> cellInfo) {
-            handle();
-        }
-
-        @Override
-        public void onCellLocationChanged(CellLocation location) {
-            handle();
-        }
-
-    };
 }
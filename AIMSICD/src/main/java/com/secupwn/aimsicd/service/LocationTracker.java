@@ -7,7 +7,6 @@ package com.secupwn.aimsicd.service;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
@@ -19,6 +18,7 @@ import com.secupwn.aimsicd.data.model.GpsLocation;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.GeoLocation;
 import com.secupwn.aimsicd.utils.RealmHelper;
+import com.secupwn.aimsicd.utils.TinyDB;
 import com.secupwn.aimsicd.utils.TruncatedLocation;
 
 import io.realm.Realm;
@@ -35,7 +35,6 @@ public final class LocationTracker {
     public static final long MOVEMENT_THRESHOLD_MS = 20 * 1000;
 
     private AimsicdService context;
-    private SharedPreferences prefs;
     private static LocationManager lm;
     private LocationListener mLocationListener;
     private LocationListener extLocationListener;
@@ -51,8 +50,6 @@ public final class LocationTracker {
 
         lm = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
         mLocationListener = new MyLocationListener();
-        prefs = context.getSharedPreferences(
-                AimsicdService.SHARED_PREFERENCES_BASENAME, 0);
         mDbHelper = new RealmHelper(context);
     }
 
@@ -122,7 +119,8 @@ public final class LocationTracker {
                 TruncatedLocation TruncatedLocation = new TruncatedLocation(location);
                 loc = GeoLocation.fromDegrees(TruncatedLocation.getLatitude(), TruncatedLocation.getLongitude());
             } else {
-                String coords = prefs.getString(context.getString(R.string.data_last_lat_lon), null);
+                // through TinyDB, the last location may not be flushed yet
+                String coords = TinyDB.getInstance().getString(context.getString(R.string.data_last_lat_lon), null);
                 if (coords != null) {
                     String[] coord = coords.split(":");
                     loc = GeoLocation.fromDegrees(Double.valueOf(coord[0]), Double.valueOf(coord[1]));
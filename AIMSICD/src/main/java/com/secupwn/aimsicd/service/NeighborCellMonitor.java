@@ -0,0 +1,253 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.telephony.CellInfo;
+import android.telephony.CellLocation;
+import android.telephony.NeighboringCellInfo;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.TelephonyManager;
+
+import com.secupwn.aimsicd.utils.Cell;
+import com.secupwn.aimsicd.utils.CellInfoSource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the latest list of neighboring cells up to date from telephony callbacks.
+ * <p>
+ * Callbacks that report a change of the cells (cell info, cell location, service state)
+ * schedule a re-read of the neighbors on a background thread; signal strength and data
+ * callbacks, which arrive every few seconds, don't. They are taken from the shared
+ * {@link CellInfoSource} snapshot; only when it holds no neighbors (older devices and
+ * modems) the deprecated {@link TelephonyManager#getNeighboringCellInfo()} is read.
+ * Since such modems don't report neighbor changes by callback, the list is also re-read at
+ * the {@link RefreshScheduler.Kind#BACKGROUND} interval, which is stretched while the
+ * screen is off. Bursts of callbacks are coalesced into at most one read per
+ * {@link #MIN_REFRESH_INTERVAL_MS}.
+ * Readers get the last known list immediately from {@link #getNeighbors()}, together with
+ * the time it was read, instead of waiting for the modem.
+ */
+@Slf4j
+public class NeighborCellMonitor {
+
+    /**
+     * Receives the neighbor lists read by the monitor, called on the monitor thread.
+     */
+    public interface Listener {
+        /**
+         * Called after every read, also if the cells did not change
+         */
+        void onNeighborsRead(Neighbors neighbors);
+
+        /**
+         * Called after {@link #onNeighborsRead} when the set of neighboring cells changed
+         */
+        void onNeighborsChanged(Neighbors neighbors);
+    }
+
+    /**
+     * Immutable result of one read of the neighbor list.
+     */
+    @Getter
+    public static final class Neighbors {
+
+        static final Neighbors NONE = new Neighbors(Collections.<Cell>emptyList(), 0);
+
+        private final List<Cell> cells;
+
+        /**
+         * Wall clock time of the read in milliseconds, 0 if the list was never read
+         */
+        private final long time;
+
+        Neighbors(List<Cell> cells, long time) {
+            this.cells = Collections.unmodifiableList(cells);
+            this.time = time;
+        }
+
+        /**
+         * @return true if the list has been read within the last {@code maxAgeMs} milliseconds
+         */
+        public boolean isFresh(long maxAgeMs) {
+            return time != 0 && System.currentTimeMillis() - time <= maxAgeMs;
+        }
+    }
+
+    static final long MIN_REFRESH_INTERVAL_MS = 1000;
+
+    private final TelephonyManager tm;
+    private final ScheduledExecutorService executor;
+    private final CellInfoSource cellInfoSource;
+    private final RefreshScheduler scheduler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private volatile Neighbors neighbors = Neighbors.NONE;
+    private volatile long lastRefresh;
+    private volatile boolean listening;
+    private RefreshScheduler.Subscription pollSubscription;
+
+    /**
+     * Must be created on a thread with a looper, the telephony callbacks are delivered there.
+     * Without a {@link RefreshScheduler} the list is only re-read on callbacks.
+     */
+    public NeighborCellMonitor(TelephonyManager tm) {
+        this(tm, Executors.newSingleThreadScheduledExecutor(), new CellInfoSource(tm), null);
+    }
+
+    /**
+     * @param executor       Reads the neighbor list, may be shared by the monitors of several subscriptions
+     * @param cellInfoSource The cell info of the same subscription, shared with the other consumers
+     * @param scheduler      Runs the background re-reads, null to re-read on callbacks only
+     */
+    public NeighborCellMonitor(TelephonyManager tm, ScheduledExecutorService executor,
+                               CellInfoSource cellInfoSource, RefreshScheduler scheduler) {
+        this.tm = tm;
+        this.executor = executor;
+        this.cellInfoSource = cellInfoSource;
+        this.scheduler = scheduler;
+    }
+
+    public void start() {
+        if (listening) {
+            return;
+        }
+        listening = true;
+        tm.listen(phoneStateListener,
+                PhoneStateListener.LISTEN_CELL_LOCATION |
+                        PhoneStateListener.LISTEN_CELL_INFO |                // API 17
+                        PhoneStateListener.LISTEN_SERVICE_STATE);
+        if (scheduler != null) {
+            // also runs the first read
+            pollSubscription = scheduler.subscribe(RefreshScheduler.Kind.BACKGROUND, pollTask);
+        } else {
+            requestRefresh();
+        }
+    }
+
+    public void stop() {
+        listening = false;
+        tm.listen(phoneStateListener, PhoneStateListener.LISTEN_NONE);
+        if (pollSubscription != null) {
+            pollSubscription.cancel();
+            pollSubscription = null;
+        }
+    }
+
+    /**
+     * @return The last read neighbor list, never blocks
+     */
+    public Neighbors getNeighbors() {
+        return neighbors;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Schedules a re-read of the neighbor list unless one is already pending.
+     */
+    public void requestRefresh() {
+        if (!refreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = Math.max(0, lastRefresh + MIN_REFRESH_INTERVAL_MS - System.currentTimeMillis());
+        executor.schedule(refresh, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private final Runnable pollTask = new Runnable() {
+        @Override
+        public void run() {
+            requestRefresh();
+        }
+    };
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            refreshScheduled.set(false);
+            lastRefresh = System.currentTimeMillis();
+
+            List<Cell> cells;
+            try {
+                cells = cellInfoSource.get().getNeighbors();
+                if (cells.isEmpty()) {
+                    cells = readNeighboringCellInfo();
+                }
+            } catch (RuntimeException e) {
+                log.error("Unable to read neighboring cells", e);
+                return;
+            }
+
+            Neighbors previous = neighbors;
+            Neighbors current = new Neighbors(cells, lastRefresh);
+            neighbors = current;
+
+            for (Listener listener : listeners) {
+                listener.onNeighborsRead(current);
+            }
+            if (!new HashSet<>(previous.getCells()).equals(new HashSet<>(cells))) {
+                log.debug("Neighboring cells changed: {} -> {}", previous.getCells().size(), cells.size());
+                for (Listener listener : listeners) {
+                    listener.onNeighborsChanged(current);
+                }
+            }
+        }
+    };
+
+    private List<Cell> readNeighboringCellInfo() {
+        List<NeighboringCellInfo> infos = tm.getNeighboringCellInfo();
+        List<Cell> cells = new ArrayList<>();
+        if (infos != null) {
+            for (NeighboringCellInfo info : infos) {
+                cells.add(new Cell(
+                        info.getCid(),
+                        info.getLac(),
+                        info.getRssi(),
+                        info.getPsc(),
+                        info.getNetworkType(), false));
+            }
+        }
+        return cells;
+    }
+
+    private final PhoneStateListener phoneStateListener = new PhoneStateListener() {
+        @Override
+        public void onServiceStateChanged(ServiceState serviceState) {
+            requestRefresh();
+        }
+
+
+        @Override
+        public void onCellInfoChanged(List<CellInfo> cellInfo) {
+            cellInfoSource.update(cellInfo);
+            requestRefresh();
+        }
+
+        @Override
+        public void onCellLocationChanged(CellLocation location) {
+            requestRefresh();
+        }
+    };
+}
@@ -0,0 +1,160 @@
+package com.secupwn.aimsicd.service;
+
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+import com.secupwn.aimsicd.data.model.NeighborObservation;
+import com.secupwn.aimsicd.utils.Cell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import lombok.Cleanup;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records which neighboring cells are seen next to which serving cell.
+ * <p>
+ * Sightings are aggregated in memory per (serving cell, neighbor, interval), so polling the
+ * neighbor list every few seconds results in one {@link NeighborObservation} row per
+ * neighbor and interval. Pending rows are written in one transaction on a background
+ * thread when the interval ends, the buffer is full or the recorder is flushed.
+ */
+@Slf4j
+public class NeighborCellRecorder {
+
+    static final long INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    static final int MAX_PENDING = 128;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private final Map<String, Pending> pending = new HashMap<>();
+    private long currentInterval;
+
+    /**
+     * @param serving   The cell the device is camped on, its location is used as the current fix
+     * @param neighbors The neighbors of one read of the {@link NeighborCellMonitor}
+     */
+    public synchronized void record(Cell serving, List<Cell> neighbors, long now) {
+        if (serving == null || !serving.isValid() || neighbors.isEmpty()) {
+            return;
+        }
+        long interval = now - now % INTERVAL_MS;
+        if (interval != currentInterval) {
+            flush();
+            currentInterval = interval;
+        }
+
+        for (Cell neighbor : neighbors) {
+            long neighborKey = NeighborObservation.neighborKey(neighbor.getLocationAreaCode(),
+                    neighbor.getCellId(), neighbor.getPrimaryScramblingCode());
+            String key = serving.getLocationAreaCode() + ":" + serving.getCellId() + ":" + neighborKey;
+
+            Pending p = pending.get(key);
+            if (p == null) {
+                p = new Pending(serving, neighbor, neighborKey, interval);
+                pending.put(key, p);
+            }
+            p.samples++;
+            p.rssiSum += neighbor.getRssi();
+            p.timeLast = now;
+            if (serving.getLat() != 0.0 || serving.getLon() != 0.0) {
+                p.latitudeE6 = GeoFixedPoint.toFixed(serving.getLat());
+                p.longitudeE6 = GeoFixedPoint.toFixed(serving.getLon());
+            }
+        }
+
+        if (pending.size() >= MAX_PENDING) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all pending observations, the write itself happens asynchronously.
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Pending> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                @Cleanup Realm realm = Realm.getDefaultInstance();
+                realm.executeTransaction(new Realm.Transaction() {
+                    @Override
+                    public void execute(Realm realm) {
+                        merge(realm, batch);
+                    }
+                });
+                log.debug("Stored {} neighbor observations", batch.size());
+            }
+        });
+    }
+
+    /**
+     * A flush can hit the same interval twice (full buffer), so rows are merged rather
+     * than always created.
+     */
+    private static void merge(Realm realm, Collection<Pending> batch) {
+        for (Pending p : batch) {
+            NeighborObservation observation = realm.where(NeighborObservation.class)
+                    .equalTo("servingCellId", p.servingCellId)
+                    .equalTo("servingLocationAreaCode", p.servingLocationAreaCode)
+                    .equalTo("neighborKey", p.neighborKey)
+                    .equalTo("intervalStart", p.intervalStart)
+                    .findFirst();
+            if (observation == null) {
+                observation = realm.createObject(NeighborObservation.class);
+                observation.setServingCellId(p.servingCellId);
+                observation.setServingLocationAreaCode(p.servingLocationAreaCode);
+                observation.setNeighborKey(p.neighborKey);
+                observation.setLocationAreaCode(p.locationAreaCode);
+                observation.setCellId(p.cellId);
+                observation.setPrimaryScramblingCode(p.primaryScramblingCode);
+                observation.setRadioAccessTechnology(p.radioAccessTechnology);
+                observation.setIntervalStart(p.intervalStart);
+            }
+            observation.setSamples(observation.getSamples() + p.samples);
+            observation.setRssiSum(observation.getRssiSum() + p.rssiSum);
+            observation.setTimeLast(p.timeLast);
+            if (p.latitudeE6 != 0 || p.longitudeE6 != 0) {
+                observation.setLatitudeE6(p.latitudeE6);
+                observation.setLongitudeE6(p.longitudeE6);
+            }
+        }
+    }
+
+    private static final class Pending {
+        final int servingLocationAreaCode;
+        final int servingCellId;
+        final long neighborKey;
+        final int locationAreaCode;
+        final int cellId;
+        final int primaryScramblingCode;
+        final int radioAccessTechnology;
+        final long intervalStart;
+        int samples;
+        long rssiSum;
+        long timeLast;
+        int latitudeE6;
+        int longitudeE6;
+
+        Pending(Cell serving, Cell neighbor, long neighborKey, long intervalStart) {
+            this.servingLocationAreaCode = serving.getLocationAreaCode();
+            this.servingCellId = serving.getCellId();
+            this.neighborKey = neighborKey;
+            this.locationAreaCode = neighbor.getLocationAreaCode();
+            this.cellId = neighbor.getCellId();
+            this.primaryScramblingCode = neighbor.getPrimaryScramblingCode();
+            this.radioAccessTechnology = neighbor.getNetType();
+            this.intervalStart = intervalStart;
+        }
+    }
+}
@@ -0,0 +1,477 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import com.secupwn.aimsicd.data.GeoFixedPoint;
+import com.secupwn.aimsicd.data.ReferenceRealm;
+import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
+import com.secupwn.aimsicd.data.model.Import;
+import com.secupwn.aimsicd.utils.Cell;
+import com.secupwn.aimsicd.utils.GeoLocation;
+import com.secupwn.aimsicd.utils.ImportTask;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmModel;
+import io.realm.RealmQuery;
+import lombok.Cleanup;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds the tower locations of a whole neighbor set at once.
+ * <p>
+ * Cells not in the cache are looked up with one query against the local
+ * {@link BaseTransceiverStation} index, cells still unknown with one query against the
+ * {@link Import} reference data, so 20 neighbors cost at most two queries instead of 20 per
+ * store. Cells with a CID match on LAC and CID; UMTS neighbors reported with a PSC only
+ * match cells with that PSC in the serving LAC, the one closest to the serving cell wins.
+ * All matches are restricted to the MCC/MNC of the cell, a neighbor without them is taken
+ * to be on the network of the serving cell; the same LAC and CID are reused by other
+ * operators and countries.
+ * <p>
+ * Results, also misses, are cached per (serving cell, MCC/MNC, LAC and CID or PSC) for
+ * {@link #TTL_MS}, so newly imported reference data shows up after a while.
+ * Runs database queries, don't call it on the main thread.
+ */
+@Slf4j
+public class NeighborLocationResolver {
+
+    static final int MAX_ENTRIES = 512;
+    static final long TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    public enum Source {
+        /**
+         * A cell the device has seen itself, see {@link BaseTransceiverStation}
+         */
+        LOCAL,
+        /**
+         * The downloaded OpenCellID data, see {@link Import}
+         */
+        REFERENCE,
+        NONE
+    }
+
+    /**
+     * The location of one neighbor
+     */
+    @Getter
+    public static final class Resolution {
+        private final Cell cell;
+        private final Source source;
+        private final double latitude;
+        private final double longitude;
+
+        /**
+         * Great circle distance in km to the serving cell's tower, or to the device if the
+         * tower is unknown. NaN if either location is unknown.
+         */
+        private final double distanceKm;
+
+        Resolution(Cell cell, Source source, double latitude, double longitude, double distanceKm) {
+            this.cell = cell;
+            this.source = source;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.distanceKm = distanceKm;
+        }
+
+        public boolean isResolved() {
+            return source != Source.NONE;
+        }
+    }
+
+    /**
+     * Least recently used entries are dropped first, guarded by this
+     */
+    private final Map<String, Location> cache = new LinkedHashMap<String, Location>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Location> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    // guarded by this
+    private long queries;
+    private long hits;
+    private long lookups;
+
+    /**
+     * @param serving   The serving cell, its location (if set) is used when its tower is unknown
+     * @param neighbors The neighbors seen with it
+     * @return One resolution per neighbor, in the same order
+     */
+    public List<Resolution> resolve(Cell serving, List<Cell> neighbors) {
+        long now = System.currentTimeMillis();
+        String servingKey = serving == null ? "-" : mobileCountryCode(serving, null) + ":"
+                + mobileNetworkCode(serving, null) + ":" + serving.getLocationAreaCode() + ":" + serving.getCellId();
+
+        List<Cell> cells = new ArrayList<>(neighbors.size() + 1);
+        List<String> keys = new ArrayList<>(neighbors.size() + 1);
+        if (serving != null) {
+            cells.add(serving);
+            keys.add(key("", serving, serving));
+        }
+        for (Cell neighbor : neighbors) {
+            cells.add(neighbor);
+            keys.add(key(servingKey, neighbor, serving));
+        }
+
+        Map<String, Location> locations = new HashMap<>();
+        List<Cell> missing = new ArrayList<>();
+        List<String> missingKeys = new ArrayList<>();
+        synchronized (this) {
+            for (int i = 0; i < cells.size(); i++) {
+                String key = keys.get(i);
+                if (key == null || locations.containsKey(key)) {
+                    continue;
+                }
+                Location location = cache.get(key);
+                if (location != null && now - location.time < TTL_MS) {
+                    hits++;
+                    locations.put(key, location);
+                } else if (!missingKeys.contains(key)) {
+                    missing.add(cells.get(i));
+                    missingKeys.add(key);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            boolean servingMissing = serving != null && missing.get(0) == serving;
+            Location[] found = lookup(serving, servingMissing ? null : locations.get(keys.get(0)), missing, now);
+            synchronized (this) {
+                lookups += missing.size();
+                for (int i = 0; i < found.length; i++) {
+                    cache.put(missingKeys.get(i), found[i]);
+                    locations.put(missingKeys.get(i), found[i]);
+                }
+            }
+        }
+
+        Location reference = serving == null ? null : locations.get(keys.get(0));
+        if ((reference == null || reference.source == Source.NONE) && serving != null
+                && (serving.getLat() != 0.0 || serving.getLon() != 0.0)) {
+            reference = new Location(Source.NONE, GeoFixedPoint.toFixed(serving.getLat()),
+                    GeoFixedPoint.toFixed(serving.getLon()), now);
+        }
+
+        List<Resolution> resolutions = new ArrayList<>(neighbors.size());
+        for (int i = serving == null ? 0 : 1; i < cells.size(); i++) {
+            Location location = keys.get(i) == null ? null : locations.get(keys.get(i));
+            if (location == null || location.source == Source.NONE) {
+                resolutions.add(new Resolution(cells.get(i), Source.NONE, 0.0, 0.0, Double.NaN));
+            } else {
+                double distance = reference == null ? Double.NaN : distanceKm(reference, location);
+                resolutions.add(new Resolution(cells.get(i), location.source,
+                        GeoFixedPoint.toDegrees(location.latitudeE6),
+                        GeoFixedPoint.toDegrees(location.longitudeE6), distance));
+            }
+        }
+        return resolutions;
+    }
+
+    /**
+     * @return Number of database queries
+     */
+    public synchronized long getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return Number of cells served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of cells looked up in the database
+     */
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * The serving cell, if part of {@code cells}, comes first and is resolved before the
+     * neighbors matched by PSC.
+     *
+     * @param servingLocation The cached location of the serving cell if it isn't part of {@code cells}
+     * @return The location of each cell, {@link Source#NONE} if it is unknown
+     */
+    private Location[] lookup(Cell serving, Location servingLocation, List<Cell> cells, long now) {
+        Location[] found = new Location[cells.size()];
+        int servingLac = serving == null ? Integer.MAX_VALUE : serving.getLocationAreaCode();
+
+        @Cleanup Realm realm = Realm.getDefaultInstance();
+        List<Candidate> candidates = new ArrayList<>();
+        RealmQuery<BaseTransceiverStation> local = where(realm.where(BaseTransceiverStation.class), cells, serving);
+        if (local != null) {
+            countQuery();
+            for (BaseTransceiverStation bts : local.findAll()) {
+                candidates.add(new Candidate(Source.LOCAL, bts.getMobileCountryCode(), bts.getMobileNetworkCode(),
+                        bts.getLocationAreaCode(), bts.getCellId(), bts.getPrimaryScramblingCode(),
+                        bts.getLatitudeE6(), bts.getLongitudeE6()));
+            }
+        }
+        int servingIndex = serving != null && cells.get(0) == serving ? 0 : -1;
+        if (servingLocation != null && servingLocation.source == Source.NONE) {
+            servingLocation = null;
+        }
+        int unresolved = match(cells, candidates, serving, servingLac, servingIndex, servingLocation, found, now);
+
+        if (unresolved > 0) {
+            List<Cell> remaining = new ArrayList<>(unresolved);
+            for (int i = 0; i < cells.size(); i++) {
+                if (found[i] == null) {
+                    remaining.add(cells.get(i));
+                }
+            }
+            @Cleanup Realm reference = ReferenceRealm.getInstance();
+            RealmQuery<Import> imported = where(reference.where(Import.class), remaining, serving);
+            if (imported != null) {
+                countQuery();
+                candidates.clear();
+                for (Import cell : imported.findAll()) {
+                    candidates.add(new Candidate(Source.REFERENCE, cell.getMobileCountryCode(), cell.getMobileNetworkCode(),
+                            cell.getLocationAreaCode(), cell.getCellId(), cell.getPrimaryScramblingCode(),
+                            cell.getLatitudeE6(), cell.getLongitudeE6()));
+                }
+                if (servingIndex == 0 && found[0] != null) {
+                    servingLocation = found[0];
+                }
+                match(cells, candidates, serving, servingLac, servingIndex, servingLocation, found, now);
+            }
+        }
+
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] == null) {
+                found[i] = new Location(Source.NONE, 0, 0, now);
+            }
+        }
+        log.debug("Resolved neighbor locations of {} cells, {} queries so far", cells.size(), getQueries());
+        return found;
+    }
+
+    /**
+     * Fills the unresolved entries of {@code found} from the candidates.
+     *
+     * @param servingIndex    Index of the serving cell in {@code cells}, -1 if not included
+     * @param servingLocation Picks among the cells matched by PSC, null if unknown
+     * @return Number of entries still unresolved
+     */
+    private static int match(List<Cell> cells, List<Candidate> candidates, Cell serving, int servingLac,
+                             int servingIndex, Location servingLocation, Location[] found, long now) {
+        int unresolved = 0;
+        for (int i = 0; i < cells.size(); i++) {
+            if (found[i] != null) {
+                continue;
+            }
+            Cell cell = cells.get(i);
+            int mobileCountryCode = mobileCountryCode(cell, serving);
+            int mobileNetworkCode = mobileNetworkCode(cell, serving);
+            Candidate best = null;
+            if (hasCellId(cell)) {
+                for (Candidate candidate : candidates) {
+                    if (candidate.cellId == cell.getCellId()
+                            && candidate.locationAreaCode == cell.getLocationAreaCode()
+                            && candidate.isOn(mobileCountryCode, mobileNetworkCode)) {
+                        best = candidate;
+                        break;
+                    }
+                }
+            } else {
+                double bestDistance = Double.MAX_VALUE;
+                for (Candidate candidate : candidates) {
+                    if (candidate.primaryScramblingCode != cell.getPrimaryScramblingCode()
+                            || candidate.locationAreaCode != servingLac
+                            || !candidate.isOn(mobileCountryCode, mobileNetworkCode)) {
+                        continue;
+                    }
+                    double distance = servingLocation == null ? 0 : distanceKm(servingLocation, candidate.location);
+                    if (best == null || distance < bestDistance) {
+                        best = candidate;
+                        bestDistance = distance;
+                    }
+                }
+            }
+            if (best != null) {
+                found[i] = new Location(best.location.source, best.location.latitudeE6, best.location.longitudeE6, now);
+                if (i == servingIndex) {
+                    servingLocation = found[i];
+                }
+            } else {
+                unresolved++;
+            }
+        }
+        return unresolved;
+    }
+
+    /**
+     * @return The query for all cells, null if none of them can be looked up. Restricted to
+     * the networks of the cells if all of them are known, {@link #match} checks each cell's.
+     */
+    private static <E extends RealmModel> RealmQuery<E> where(RealmQuery<E> query, List<Cell> cells, Cell serving) {
+        int servingLac = serving == null ? Integer.MAX_VALUE : serving.getLocationAreaCode();
+        List<Integer> cellIds = new ArrayList<>();
+        List<Integer> scramblingCodes = new ArrayList<>();
+        Set<Integer> countryCodes = new HashSet<>();
+        Set<Integer> networkCodes = new HashSet<>();
+        for (Cell cell : cells) {
+            if (hasCellId(cell)) {
+                cellIds.add(cell.getCellId());
+            } else if (cell.getPrimaryScramblingCode() != Integer.MAX_VALUE && servingLac != Integer.MAX_VALUE) {
+                scramblingCodes.add(cell.getPrimaryScramblingCode());
+            } else {
+                continue;
+            }
+            countryCodes.add(mobileCountryCode(cell, serving));
+            networkCodes.add(mobileNetworkCode(cell, serving));
+        }
+        if (cellIds.isEmpty() && scramblingCodes.isEmpty()) {
+            return null;
+        }
+
+        if (!countryCodes.contains(Integer.MAX_VALUE)) {
+            query.in("mobileCountryCode", countryCodes.toArray(new Integer[countryCodes.size()]));
+        }
+        if (!networkCodes.contains(Integer.MAX_VALUE)) {
+            query.in("mobileNetworkCode", networkCodes.toArray(new Integer[networkCodes.size()]));
+        }
+        query.beginGroup();
+        if (!cellIds.isEmpty()) {
+            query.in("cellId", cellIds.toArray(new Integer[cellIds.size()]));
+        }
+        if (!cellIds.isEmpty() && !scramblingCodes.isEmpty()) {
+            query.or();
+        }
+        if (!scramblingCodes.isEmpty()) {
+            query.beginGroup()
+                    .equalTo("locationAreaCode", servingLac)
+                    .in("primaryScramblingCode", scramblingCodes.toArray(new Integer[scramblingCodes.size()]))
+                    .endGroup();
+        }
+        return query.endGroup()
+                .beginGroup()
+                .notEqualTo("latitudeE6", 0)
+                .or()
+                .notEqualTo("longitudeE6", 0)
+                .endGroup();
+    }
+
+    /**
+     * @return The cache key of a cell, null if it has neither a CID nor a PSC
+     */
+    private static String key(String servingKey, Cell cell, Cell serving) {
+        String network = mobileCountryCode(cell, serving) + ":" + mobileNetworkCode(cell, serving);
+        if (hasCellId(cell)) {
+            return servingKey + "/" + network + ":" + cell.getLocationAreaCode() + ":" + cell.getCellId();
+        } else if (cell.getPrimaryScramblingCode() != Integer.MAX_VALUE) {
+            return servingKey + "/" + network + ":psc:" + cell.getPrimaryScramblingCode();
+        }
+        return null;
+    }
+
+    /**
+     * @param serving Provides the MCC if the cell doesn't report one, may be null
+     * @return The MCC of the cell, {@link Integer#MAX_VALUE} if unknown
+     */
+    private static int mobileCountryCode(Cell cell, Cell serving) {
+        if (isKnown(cell.getMobileCountryCode())) {
+            return cell.getMobileCountryCode();
+        }
+        if (serving != null && isKnown(serving.getMobileCountryCode())) {
+            return serving.getMobileCountryCode();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @see #mobileCountryCode(Cell, Cell)
+     */
+    private static int mobileNetworkCode(Cell cell, Cell serving) {
+        if (isKnown(cell.getMobileNetworkCode())) {
+            return cell.getMobileNetworkCode();
+        }
+        if (serving != null && isKnown(serving.getMobileNetworkCode())) {
+            return serving.getMobileNetworkCode();
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Neighbor lists report unknown codes as {@link Integer#MAX_VALUE}, some devices as -1
+     */
+    private static boolean isKnown(int code) {
+        return code != Integer.MAX_VALUE && code >= 0;
+    }
+
+    private static boolean hasCellId(Cell cell) {
+        return cell.getCellId() != Integer.MAX_VALUE && cell.getCellId() != -1
+                && cell.getLocationAreaCode() != Integer.MAX_VALUE;
+    }
+
+    private static double distanceKm(Location a, Location b) {
+        GeoLocation from = GeoLocation.fromDegrees(GeoFixedPoint.toDegrees(a.latitudeE6), GeoFixedPoint.toDegrees(a.longitudeE6));
+        GeoLocation to = GeoLocation.fromDegrees(GeoFixedPoint.toDegrees(b.latitudeE6), GeoFixedPoint.toDegrees(b.longitudeE6));
+        double distance = from.distanceTo(to, ImportTask.EARTH_RADIUS);
+        // acos of a value rounded above 1 for (nearly) equal points
+        return Double.isNaN(distance) ? 0 : distance;
+    }
+
+    private synchronized void countQuery() {
+        queries++;
+    }
+
+    private static final class Location {
+        final Source source;
+        final int latitudeE6;
+        final int longitudeE6;
+        final long time;
+
+        Location(Source source, int latitudeE6, int longitudeE6, long time) {
+            this.source = source;
+            this.latitudeE6 = latitudeE6;
+            this.longitudeE6 = longitudeE6;
+            this.time = time;
+        }
+    }
+
+    private static final class Candidate {
+        final int mobileCountryCode;
+        final int mobileNetworkCode;
+        final int locationAreaCode;
+        final int cellId;
+        final int primaryScramblingCode;
+        final Location location;
+
+        Candidate(Source source, int mobileCountryCode, int mobileNetworkCode, int locationAreaCode, int cellId,
+                  int primaryScramblingCode, int latitudeE6, int longitudeE6) {
+            this.mobileCountryCode = mobileCountryCode;
+            this.mobileNetworkCode = mobileNetworkCode;
+            this.locationAreaCode = locationAreaCode;
+            this.cellId = cellId;
+            this.primaryScramblingCode = primaryScramblingCode;
+            this.location = new Location(source, latitudeE6, longitudeE6, 0);
+        }
+
+        /**
+         * @return true if the candidate is on that network, unknown codes match any
+         */
+        boolean isOn(int mobileCountryCode, int mobileNetworkCode) {
+            return (mobileCountryCode == Integer.MAX_VALUE || this.mobileCountryCode == mobileCountryCode)
+                    && (mobileNetworkCode == Integer.MAX_VALUE || this.mobileNetworkCode == mobileNetworkCode);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.telephony.CellLocation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Merges the bursts of telephony callbacks fired around a handover before they reach the
+ * {@link RadioSnapshotBus}.
+ * <p>
+ * The first callback opens a window of {@link #getWindowMs()}. Until it closes, every
+ * distinct cell location is kept in order, a location equal to the one before it is
+ * dropped; of the other {@link RadioSnapshot.Kind}s only the latest snapshot is kept. When
+ * the window closes the remaining snapshots are published together, cell locations first
+ * so that the signal strength is attributed to the new cell. The heavy work done per cell
+ * location (device refresh, database lookups, detectors) thus runs once per transition
+ * instead of once per callback, while a cell seen only briefly (e.g. a ping-pong
+ * handover) still reaches the detectors.
+ * <p>
+ * A window of 0 publishes every callback right away.
+ */
+@Slf4j
+public final class RadioCallbackCoalescer {
+
+    static final long DEFAULT_WINDOW_MS = 500;
+
+    private static final RadioSnapshot.Kind[] KINDS = RadioSnapshot.Kind.values();
+
+    private final RadioSnapshotBus bus;
+    private final int subscriptionId;
+    private final ScheduledExecutorService executor;
+    private final RadioSnapshot[] pending = new RadioSnapshot[KINDS.length];
+    /**
+     * The distinct cell locations of the open window, in the order received
+     */
+    private final List<RadioSnapshot> pendingLocations = new ArrayList<>();
+
+    // guarded by this
+    private long windowMs;
+    private ScheduledFuture<?> scheduledFlush;
+    private long received;
+    private long published;
+    private long bursts;
+
+    /**
+     * @param executor Closes the windows, shared with other users
+     */
+    public RadioCallbackCoalescer(RadioSnapshotBus bus, int subscriptionId,
+                                  ScheduledExecutorService executor, long windowMs) {
+        this.bus = bus;
+        this.subscriptionId = subscriptionId;
+        this.executor = executor;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Takes a snapshot of a telephony callback, safe to call from any thread.
+     */
+    public void offer(RadioSnapshot snapshot) {
+        RadioSnapshot tagged = snapshot.withSubscription(subscriptionId);
+        synchronized (this) {
+            received++;
+            if (windowMs > 0) {
+                if (tagged.getKind() == RadioSnapshot.Kind.CELL_LOCATION) {
+                    offerLocation(tagged);
+                } else {
+                    pending[tagged.getKind().ordinal()] = tagged;
+                }
+                if (scheduledFlush == null) {
+                    scheduledFlush = executor.schedule(flushTask, windowMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+            published++;
+        }
+        bus.publish(tagged);
+    }
+
+    /**
+     * Publishes what the open window holds now.
+     */
+    public void flush() {
+        List<RadioSnapshot> batch = new ArrayList<>();
+        synchronized (this) {
+            if (scheduledFlush != null) {
+                scheduledFlush.cancel(false);
+                scheduledFlush = null;
+            }
+            // cell locations first, then Kind order
+            batch.addAll(pendingLocations);
+            pendingLocations.clear();
+            for (int i = 0; i < pending.length; i++) {
+                if (pending[i] != null) {
+                    batch.add(pending[i]);
+                    pending[i] = null;
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            published += batch.size();
+            bursts++;
+        }
+        for (RadioSnapshot snapshot : batch) {
+            bus.publish(snapshot);
+        }
+    }
+
+    /**
+     * Discards the open window.
+     */
+    public synchronized void cancel() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = null;
+        }
+        pendingLocations.clear();
+    }
+
+    public synchronized long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Takes effect with the next window, 0 disables coalescing.
+     */
+    public void setWindowMs(long windowMs) {
+        synchronized (this) {
+            this.windowMs = Math.max(0, windowMs);
+            if (this.windowMs > 0) {
+                return;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return Number of callbacks taken
+     */
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return Number of snapshots published to the bus
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * @return Number of callbacks merged into a later one of the same window or repeating
+     * the cell location before them
+     */
+    public synchronized long getAbsorbed() {
+        return received - published - countPending();
+    }
+
+    /**
+     * @return Number of windows closed
+     */
+    public synchronized long getBursts() {
+        return bursts;
+    }
+
+    public void logStats() {
+        log.info("Callbacks of subscription {}: {} received, {} absorbed, {} published in {} windows",
+                subscriptionId, getReceived(), getAbsorbed(), getPublished(), getBursts());
+    }
+
+    /**
+     * Keeps the location unless it equals the previous one of the window
+     */
+    private void offerLocation(RadioSnapshot snapshot) {
+        if (!pendingLocations.isEmpty()) {
+            CellLocation previous = pendingLocations.get(pendingLocations.size() - 1).getCellLocation();
+            CellLocation location = snapshot.getCellLocation();
+            if (previous == null ? location == null : previous.equals(location)) {
+                return;
+            }
+        }
+        pendingLocations.add(snapshot);
+    }
+
+    private int countPending() {
+        int count = pendingLocations.size();
+        for (RadioSnapshot snapshot : pending) {
+            if (snapshot != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+}
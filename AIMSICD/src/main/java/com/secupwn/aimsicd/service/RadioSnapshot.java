@@ -0,0 +1,134 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.location.Location;
+import android.telephony.CellLocation;
+import android.telephony.ServiceState;
+import android.telephony.SignalStrength;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * One radio or location event as delivered by the framework, captured without any
+ * processing so that the callback delivering it returns immediately.
+ * <p>
+ * Snapshots are immutable. The framework objects they carry ({@link CellLocation},
+ * {@link SignalStrength}, {@link ServiceState}) are fresh instances per callback and are never modified,
+ * {@link Location}s are copied.
+ *
+ * @see RadioSnapshotBus
+ */
+@Getter
+public final class RadioSnapshot {
+
+    public enum Kind {
+        CELL_LOCATION,
+        SIGNAL_STRENGTH,
+        DATA_ACTIVITY,
+        DATA_CONNECTION_STATE,
+        SERVICE_STATE,
+        LOCATION
+    }
+
+    /**
+     * Subscription of snapshots taken from the default {@link android.telephony.TelephonyManager}
+     * and of location snapshots, which apply to all subscriptions
+     */
+    public static final int DEFAULT_SUBSCRIPTION = -1;
+
+    private static final AtomicLong sequenceCounter = new AtomicLong();
+
+    private final Kind kind;
+
+    /**
+     * The SIM subscription the event was reported for, see {@link SubscriptionTracker}
+     */
+    private final int subscriptionId;
+
+    /**
+     * Increases by one for every snapshot taken, gaps seen by a subscriber are dropped snapshots
+     */
+    private final long sequence;
+
+    /**
+     * Wall clock time of the callback in milliseconds
+     */
+    private final long time;
+
+    private final CellLocation cellLocation;
+    private final SignalStrength signalStrength;
+    private final ServiceState serviceState;
+    private final Location location;
+
+    /**
+     * Data activity or data connection state, depending on {@link #kind}
+     */
+    private final int state;
+
+    private RadioSnapshot(Kind kind, CellLocation cellLocation, SignalStrength signalStrength,
+                          ServiceState serviceState, Location location, int state) {
+        this.kind = kind;
+        this.subscriptionId = DEFAULT_SUBSCRIPTION;
+        this.sequence = sequenceCounter.incrementAndGet();
+        this.time = System.currentTimeMillis();
+        this.cellLocation = cellLocation;
+        this.signalStrength = signalStrength;
+        this.serviceState = serviceState;
+        this.location = location;
+        this.state = state;
+    }
+
+    private RadioSnapshot(RadioSnapshot snapshot, int subscriptionId) {
+        this.kind = snapshot.kind;
+        this.subscriptionId = subscriptionId;
+        this.sequence = snapshot.sequence;
+        this.time = snapshot.time;
+        this.cellLocation = snapshot.cellLocation;
+        this.signalStrength = snapshot.signalStrength;
+        this.serviceState = snapshot.serviceState;
+        this.location = snapshot.location;
+        this.state = snapshot.state;
+    }
+
+    public static RadioSnapshot cellLocation(CellLocation cellLocation) {
+        return new RadioSnapshot(Kind.CELL_LOCATION, cellLocation, null, null, null, 0);
+    }
+
+    public static RadioSnapshot signalStrength(SignalStrength signalStrength) {
+        return new RadioSnapshot(Kind.SIGNAL_STRENGTH, null, signalStrength, null, null, 0);
+    }
+
+    public static RadioSnapshot dataActivity(int direction) {
+        return new RadioSnapshot(Kind.DATA_ACTIVITY, null, null, null, null, direction);
+    }
+
+    public static RadioSnapshot dataConnectionState(int state) {
+        return new RadioSnapshot(Kind.DATA_CONNECTION_STATE, null, null, null, null, state);
+    }
+
+    public static RadioSnapshot serviceState(ServiceState serviceState) {
+        return new RadioSnapshot(Kind.SERVICE_STATE, null, null, serviceState, null, 0);
+    }
+
+    public static RadioSnapshot location(Location location) {
+        return new RadioSnapshot(Kind.LOCATION, null, null, null, location == null ? null : new Location(location), 0);
+    }
+
+    /**
+     * @return This snapshot as reported for the given subscription, with the same sequence and time
+     */
+    public RadioSnapshot withSubscription(int subscriptionId) {
+        return subscriptionId == this.subscriptionId ? this : new RadioSnapshot(this, subscriptionId);
+    }
+
+    @Override
+    public String toString() {
+        return "RadioSnapshot{" + kind + " sub=" + subscriptionId + " #" + sequence + " @" + time + "}";
+    }
+}
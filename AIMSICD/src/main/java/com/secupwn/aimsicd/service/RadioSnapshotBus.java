@@ -0,0 +1,135 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded ring buffer of {@link RadioSnapshot}s with a single consumer thread.
+ * <p>
+ * {@link #publish(RadioSnapshot)} never blocks: when the analysis thread falls behind the
+ * oldest snapshot is overwritten and counted as dropped. The analysis thread hands every
+ * snapshot to the {@link Subscriber}s in subscription order, so subscribers never run
+ * concurrently with each other and see the events in the order they happened.
+ */
+@Slf4j
+public final class RadioSnapshotBus {
+
+    /**
+     * Receives snapshots on the analysis thread, implementations must not block for long.
+     */
+    public interface Subscriber {
+        void onSnapshot(RadioSnapshot snapshot);
+    }
+
+    static final int DEFAULT_CAPACITY = 64;
+
+    private final RadioSnapshot[] ring;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+
+    // guarded by ring
+    private int head;
+    private int size;
+    private long dropped;
+    private boolean running = true;
+
+    public RadioSnapshotBus(String name) {
+        this(name, DEFAULT_CAPACITY);
+    }
+
+    public RadioSnapshotBus(String name, int capacity) {
+        ring = new RadioSnapshot[capacity];
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatchLoop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Queues a snapshot for the analysis thread, safe to call from any thread.
+     */
+    public void publish(RadioSnapshot snapshot) {
+        synchronized (ring) {
+            if (!running) {
+                return;
+            }
+            if (size == ring.length) {
+                // overwrite the oldest
+                head = (head + 1) % ring.length;
+                size--;
+                dropped++;
+            }
+            ring[(head + size) % ring.length] = snapshot;
+            size++;
+            ring.notify();
+        }
+    }
+
+    /**
+     * @return Number of snapshots overwritten because the analysis thread was behind
+     */
+    public long getDropped() {
+        synchronized (ring) {
+            return dropped;
+        }
+    }
+
+    /**
+     * Stops the analysis thread, queued snapshots are discarded.
+     */
+    public void shutdown() {
+        synchronized (ring) {
+            running = false;
+            ring.notify();
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            RadioSnapshot snapshot;
+            synchronized (ring) {
+                while (running && size == 0) {
+                    try {
+                        ring.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                snapshot = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+            }
+
+            for (Subscriber subscriber : subscribers) {
+                try {
+                    subscriber.onSnapshot(snapshot);
+                } catch (RuntimeException e) {
+                    log.error("Subscriber failed on " + snapshot, e);
+                }
+            }
+        }
+    }
+}
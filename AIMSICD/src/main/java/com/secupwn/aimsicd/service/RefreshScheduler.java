@@ -0,0 +1,309 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+
+import com.secupwn.aimsicd.enums.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs all periodic refreshes and polls, at intervals adapted to the situation instead of
+ * one fixed refresh rate per component.
+ * <p>
+ * Components {@link #subscribe(Kind, Runnable)} a task and cancel the returned
+ * {@link Subscription}, they don't run timers of their own. Tasks run on the main thread.
+ * <p>
+ * In "Automatic" mode the interval starts at {@link #AUTO_BASE_INTERVAL_MS} and is
+ * <ul>
+ *     <li>shortened while the device moves (cells change) and while a threat is assessed,</li>
+ *     <li>stretched on low battery when not charging,</li>
+ *     <li>stretched for background tasks while no UI is visible or the screen is off.</li>
+ * </ul>
+ * UI tasks are paused while the screen is off. A refresh rate chosen by the user is used
+ * as is for UI tasks, "Manual" disables their periodic runs.
+ */
+@Slf4j
+public class RefreshScheduler {
+
+    public enum Kind {
+        /**
+         * Refreshes something the user looks at. Subscribe while it is visible only, this is
+         * how the scheduler knows whether the UI is visible.
+         */
+        UI,
+        /**
+         * Polls in the background
+         */
+        BACKGROUND
+    }
+
+    public interface Subscription {
+        void cancel();
+    }
+
+    static final long AUTO_BASE_INTERVAL_MS = 15 * 1000;
+    static final long MIN_INTERVAL_MS = 2 * 1000;
+    static final long MAX_INTERVAL_MS = 5 * 60 * 1000;
+    static final int LOW_BATTERY_PERCENT = 15;
+
+    /**
+     * Interval returned for tasks that shouldn't run at the moment
+     */
+    public static final long PAUSED = -1;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Entry> entries = new ArrayList<>();
+
+    private long refreshRate = AUTO_BASE_INTERVAL_MS;
+    private boolean automatic = true;
+    private long lastMovementTime;
+    private boolean screenOn = true;
+    private boolean batteryLow;
+    private boolean charging;
+    private Status threat = Status.IDLE;
+    private boolean started;
+
+    public RefreshScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Starts listening for screen and battery changes.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        screenOn = ((PowerManager) context.getSystemService(Context.POWER_SERVICE)).isScreenOn();
+
+        IntentFilter screenFilter = new IntentFilter(Intent.ACTION_SCREEN_ON);
+        screenFilter.addAction(Intent.ACTION_SCREEN_OFF);
+        context.registerReceiver(screenReceiver, screenFilter);
+
+        Intent battery = context.registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            updateBattery(battery);
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        context.unregisterReceiver(screenReceiver);
+        context.unregisterReceiver(batteryReceiver);
+        for (Entry entry : entries) {
+            handler.removeCallbacks(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Runs {@code task} now and then periodically until the subscription is cancelled.
+     */
+    public synchronized Subscription subscribe(Kind kind, Runnable task) {
+        Entry entry = new Entry(kind, task);
+        entries.add(entry);
+        if (kind == Kind.UI) {
+            // background intervals depend on the UI being visible
+            rescheduleAll();
+        } else {
+            schedule(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @param refreshRate The user's refresh rate in milliseconds, 0 for manual refresh
+     * @param automatic   Whether the rate is the "Automatic" setting and may be adapted
+     */
+    public synchronized void setRefreshRate(long refreshRate, boolean automatic) {
+        if (this.refreshRate != refreshRate || this.automatic != automatic) {
+            this.refreshRate = refreshRate;
+            this.automatic = automatic;
+            rescheduleAll();
+        }
+    }
+
+    /**
+     * Called when the {@link AccelerometerMonitor} detects movement.
+     */
+    public synchronized void onMovement() {
+        boolean wasMoving = isMoving();
+        lastMovementTime = System.currentTimeMillis();
+        if (!wasMoving) {
+            rescheduleAll();
+        }
+    }
+
+    /**
+     * Called when the threat level of the current cell changes.
+     */
+    public synchronized void setThreatStatus(Status status) {
+        if (status != threat) {
+            threat = status;
+            rescheduleAll();
+        }
+    }
+
+    /**
+     * @return The current interval of tasks of that kind in milliseconds or {@link #PAUSED}
+     */
+    public synchronized long getInterval(Kind kind) {
+        if (kind == Kind.UI) {
+            if (refreshRate == 0 || !screenOn) {
+                return PAUSED;
+            }
+            if (!automatic) {
+                return refreshRate;
+            }
+        }
+
+        long interval = automatic || refreshRate == 0 ? AUTO_BASE_INTERVAL_MS : refreshRate;
+        if (isMoving()) {
+            interval /= 3;
+        }
+        if (threat.ordinal() >= Status.HIGH.ordinal()) {
+            interval /= 4;
+        } else if (threat == Status.MEDIUM) {
+            interval /= 2;
+        }
+        if (batteryLow && !charging) {
+            interval *= 2;
+        }
+        if (kind == Kind.BACKGROUND) {
+            if (!isUiVisible()) {
+                interval *= 2;
+            }
+            if (!screenOn) {
+                interval *= 4;
+            }
+        }
+        return Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval));
+    }
+
+    private boolean isMoving() {
+        return lastMovementTime != 0
+                && System.currentTimeMillis() - lastMovementTime < AccelerometerMonitor.MOVEMENT_THRESHOLD_MS;
+    }
+
+    private boolean isUiVisible() {
+        for (Entry entry : entries) {
+            if (entry.kind == Kind.UI) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void unsubscribe(Entry entry) {
+        handler.removeCallbacks(entry);
+        if (entries.remove(entry) && entry.kind == Kind.UI) {
+            rescheduleAll();
+        }
+    }
+
+    private void rescheduleAll() {
+        for (Entry entry : entries) {
+            schedule(entry);
+        }
+    }
+
+    private void schedule(Entry entry) {
+        handler.removeCallbacks(entry);
+        long interval = getInterval(entry.kind);
+        if (interval == PAUSED) {
+            return;
+        }
+        long delay = Math.max(0, entry.lastRun + interval - System.currentTimeMillis());
+        handler.postDelayed(entry, delay);
+    }
+
+    private synchronized void updateBattery(Intent battery) {
+        int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        boolean low = level >= 0 && scale > 0 && level * 100 / scale <= LOW_BATTERY_PERCENT;
+        boolean plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        if (low != batteryLow || plugged != charging) {
+            batteryLow = low;
+            charging = plugged;
+            log.debug("Battery low: {}, charging: {}", low, plugged);
+            rescheduleAll();
+        }
+    }
+
+    private synchronized void setScreenOn(boolean on) {
+        if (on != screenOn) {
+            screenOn = on;
+            rescheduleAll();
+        }
+    }
+
+    private final BroadcastReceiver screenReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            setScreenOn(Intent.ACTION_SCREEN_ON.equals(intent.getAction()));
+        }
+    };
+
+    private final BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            updateBattery(intent);
+        }
+    };
+
+    private final class Entry implements Subscription, Runnable {
+        private final Kind kind;
+        private final Runnable task;
+        private long lastRun;
+
+        Entry(Kind kind, Runnable task) {
+            this.kind = kind;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (RefreshScheduler.this) {
+                if (!entries.contains(this)) {
+                    return;
+                }
+                lastRun = System.currentTimeMillis();
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("Scheduled refresh failed", e);
+            }
+            synchronized (RefreshScheduler.this) {
+                if (entries.contains(this)) {
+                    schedule(this);
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.util.SparseArray;
+
+import com.secupwn.aimsicd.data.model.ServingCellInterval;
+import com.secupwn.aimsicd.utils.Cell;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.Sort;
+import lombok.Cleanup;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Which cell each subscription was camped on and when, run-length encoded.
+ * <p>
+ * Consecutive reports of the same cell with the same RAT extend one open {@link Interval}
+ * (start, end, signal min/max/sum); a different cell, RAT or a silence longer than
+ * {@link #MAX_GAP_MS} closes it. Closed intervals stay in memory (the last
+ * {@link #MAX_HISTORY}) and are written as {@link ServingCellInterval}s in batches of
+ * {@link #BATCH_SIZE}, at the latest after {@link #FLUSH_INTERVAL_MS} as long as
+ * {@link #flushIfDue(long)} is called periodically.
+ * <p>
+ * Handover and ping-pong analysis runs over a few intervals per cell change instead of
+ * every {@link com.secupwn.aimsicd.data.model.Measure Measure}, see
+ * {@link #countHandovers(List)} and {@link #countPingPongs(List, long)}.
+ */
+@Slf4j
+public class ServingCellTimeline {
+
+    static final long MAX_GAP_MS = TimeUnit.MINUTES.toMillis(30);
+    static final long FLUSH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    static final int BATCH_SIZE = 64;
+    static final int MAX_HISTORY = 1024;
+
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    private static final Comparator<Interval> BY_START = new Comparator<Interval>() {
+        @Override
+        public int compare(Interval lhs, Interval rhs) {
+            return lhs.start < rhs.start ? -1 : (lhs.start == rhs.start ? 0 : 1);
+        }
+    };
+
+    /**
+     * One stay on a cell, immutable
+     */
+    @Getter
+    public static final class Interval {
+        private final int subscriptionId;
+        private final int mobileCountryCode;
+        private final int mobileNetworkCode;
+        private final int locationAreaCode;
+        private final int cellId;
+        private final int primaryScramblingCode;
+        private final int radioAccessTechnology;
+        private final long start;
+        private final long end;
+        private final int samples;
+        private final int signalMin;
+        private final int signalMax;
+        private final long signalSum;
+
+        Interval(int subscriptionId, int mobileCountryCode, int mobileNetworkCode, int locationAreaCode,
+                 int cellId, int primaryScramblingCode, int radioAccessTechnology, long start, long end,
+                 int samples, int signalMin, int signalMax, long signalSum) {
+            this.subscriptionId = subscriptionId;
+            this.mobileCountryCode = mobileCountryCode;
+            this.mobileNetworkCode = mobileNetworkCode;
+            this.locationAreaCode = locationAreaCode;
+            this.cellId = cellId;
+            this.primaryScramblingCode = primaryScramblingCode;
+            this.radioAccessTechnology = radioAccessTechnology;
+            this.start = start;
+            this.end = end;
+            this.samples = samples;
+            this.signalMin = signalMin;
+            this.signalMax = signalMax;
+            this.signalSum = signalSum;
+        }
+
+        Interval(ServingCellInterval row) {
+            this(row.getSubscriptionId(), row.getMobileCountryCode(), row.getMobileNetworkCode(),
+                    row.getLocationAreaCode(), row.getCellId(), row.getPrimaryScramblingCode(),
+                    row.getRadioAccessTechnology(), row.getTimeStart(), row.getTimeEnd(),
+                    row.getSamples(), row.getSignalMin(), row.getSignalMax(), row.getSignalSum());
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+
+        public int getAverageSignal() {
+            return samples == 0 ? 0 : (int) (signalSum / samples);
+        }
+
+        /**
+         * @return true if both intervals are on the same cell, regardless of the RAT
+         */
+        public boolean isSameCell(Interval other) {
+            return cellId == other.cellId
+                    && locationAreaCode == other.locationAreaCode
+                    && mobileNetworkCode == other.mobileNetworkCode
+                    && mobileCountryCode == other.mobileCountryCode;
+        }
+
+        @Override
+        public String toString() {
+            return "Interval{sub=" + subscriptionId + " " + locationAreaCode + ":" + cellId
+                    + " rat=" + radioAccessTechnology + " " + start + ".." + end + "}";
+        }
+    }
+
+    /**
+     * The open interval of a subscription, extended in place
+     */
+    private static final class Run {
+        final int mobileCountryCode;
+        final int mobileNetworkCode;
+        final int locationAreaCode;
+        final int cellId;
+        final int primaryScramblingCode;
+        final int radioAccessTechnology;
+        final long start;
+        long end;
+        int samples;
+        int signalMin = Integer.MAX_VALUE;
+        int signalMax = Integer.MIN_VALUE;
+        long signalSum;
+
+        Run(Cell cell, long now) {
+            mobileCountryCode = cell.getMobileCountryCode();
+            mobileNetworkCode = cell.getMobileNetworkCode();
+            locationAreaCode = cell.getLocationAreaCode();
+            cellId = cell.getCellId();
+            primaryScramblingCode = cell.getPrimaryScramblingCode();
+            radioAccessTechnology = cell.getNetType();
+            start = now;
+            end = now;
+        }
+
+        boolean continues(Cell cell, long now) {
+            return cell.getCellId() == cellId
+                    && cell.getLocationAreaCode() == locationAreaCode
+                    && cell.getMobileNetworkCode() == mobileNetworkCode
+                    && cell.getMobileCountryCode() == mobileCountryCode
+                    && cell.getNetType() == radioAccessTechnology
+                    && now - end <= MAX_GAP_MS;
+        }
+
+        Interval toInterval(int subscriptionId) {
+            return new Interval(subscriptionId, mobileCountryCode, mobileNetworkCode, locationAreaCode,
+                    cellId, primaryScramblingCode, radioAccessTechnology, start, end, samples,
+                    samples == 0 ? 0 : signalMin, samples == 0 ? 0 : signalMax, signalSum);
+        }
+    }
+
+    private final SparseArray<Run> open = new SparseArray<>();
+    private final ArrayDeque<Interval> history = new ArrayDeque<>();
+    private final List<Interval> pending = new ArrayList<>();
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Records that the subscription is camped on the cell at the given time. An invalid cell
+     * (no service) closes the open interval.
+     */
+    public synchronized void onServingCell(int subscriptionId, Cell cell, long now) {
+        current(subscriptionId, cell, now);
+    }
+
+    /**
+     * Records a signal strength sample of the serving cell.
+     */
+    public synchronized void onSignal(int subscriptionId, Cell cell, int signal, long now) {
+        Run run = current(subscriptionId, cell, now);
+        if (run != null) {
+            run.samples++;
+            run.signalSum += signal;
+            run.signalMin = Math.min(run.signalMin, signal);
+            run.signalMax = Math.max(run.signalMax, signal);
+        }
+    }
+
+    /**
+     * @return The intervals of all subscriptions overlapping [from, to] that are still held in
+     * memory, including the open ones, ordered by start
+     */
+    public synchronized List<Interval> getRecent(long from, long to) {
+        List<Interval> result = new ArrayList<>();
+        for (Interval interval : history) {
+            if (interval.end >= from && interval.start <= to) {
+                result.add(interval);
+            }
+        }
+        for (int i = 0; i < open.size(); i++) {
+            Run run = open.valueAt(i);
+            if (run.end >= from && run.start <= to) {
+                result.add(run.toInterval(open.keyAt(i)));
+            }
+        }
+        Collections.sort(result, BY_START);
+        return result;
+    }
+
+    /**
+     * @return The intervals of all subscriptions overlapping [from, to], stored or in memory,
+     * ordered by start
+     */
+    public List<Interval> query(Realm realm, long from, long to) {
+        List<Interval> result = getRecent(from, to);
+        Set<String> known = new HashSet<>();
+        for (Interval interval : result) {
+            known.add(interval.subscriptionId + "@" + interval.start);
+        }
+        for (ServingCellInterval row : realm.where(ServingCellInterval.class)
+                .lessThanOrEqualTo("timeStart", to)
+                .greaterThanOrEqualTo("timeEnd", from)
+                .findAllSorted("timeStart", Sort.ASCENDING)) {
+            if (!known.contains(row.getSubscriptionId() + "@" + row.getTimeStart())) {
+                result.add(new Interval(row));
+            }
+        }
+        Collections.sort(result, BY_START);
+        return result;
+    }
+
+    /**
+     * Closes the open intervals and writes everything pending.
+     */
+    public synchronized void close() {
+        for (int i = 0; i < open.size(); i++) {
+            closeRun(open.keyAt(i), open.valueAt(i));
+        }
+        open.clear();
+        flush();
+    }
+
+    /**
+     * Writes the closed intervals not stored yet if the last write is
+     * {@link #FLUSH_INTERVAL_MS} ago, so they are stored while the device stays on one cell.
+     */
+    public synchronized void flushIfDue(long now) {
+        if (now - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the closed intervals not stored yet, the write itself happens asynchronously.
+     */
+    public synchronized void flush() {
+        lastFlush = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Interval> batch = new ArrayList<>(pending);
+        pending.clear();
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                @Cleanup Realm realm = Realm.getDefaultInstance();
+                realm.executeTransaction(new Realm.Transaction() {
+                    @Override
+                    public void execute(Realm realm) {
+                        for (Interval interval : batch) {
+                            store(realm, interval);
+                        }
+                    }
+                });
+                log.debug("Stored {} serving cell intervals", batch.size());
+            }
+        });
+    }
+
+    /**
+     * Counts the cell changes of each subscription, a change of the RAT only or a gap on the
+     * same cell is not a handover.
+     *
+     * @param intervals Ordered by start, e.g. from {@link #query(Realm, long, long)}
+     */
+    public static int countHandovers(List<Interval> intervals) {
+        int handovers = 0;
+        Map<Integer, Interval> last = new HashMap<>();
+        for (Interval interval : intervals) {
+            Interval previous = last.put(interval.subscriptionId, interval);
+            if (previous != null && !previous.isSameCell(interval)) {
+                handovers++;
+            }
+        }
+        return handovers;
+    }
+
+    /**
+     * Counts A &rarr; B &rarr; A sequences where the stay on B was at most {@code maxDwellMs},
+     * typical for a device pulled away from its cell for a short time.
+     *
+     * @param intervals Ordered by start, e.g. from {@link #query(Realm, long, long)}
+     */
+    public static int countPingPongs(List<Interval> intervals, long maxDwellMs) {
+        int pingPongs = 0;
+        // the last two distinct cells of each subscription, [0] = before [1]
+        Map<Integer, Interval[]> last = new HashMap<>();
+        for (Interval interval : intervals) {
+            Interval[] cells = last.get(interval.subscriptionId);
+            if (cells == null) {
+                last.put(interval.subscriptionId, new Interval[]{null, interval});
+                continue;
+            }
+            if (cells[1].isSameCell(interval)) {
+                // keep the first interval on the cell, its start is where the stay began
+                continue;
+            }
+            if (cells[0] != null && cells[0].isSameCell(interval)
+                    && interval.start - cells[1].start <= maxDwellMs) {
+                pingPongs++;
+            }
+            cells[0] = cells[1];
+            cells[1] = interval;
+        }
+        return pingPongs;
+    }
+
+    private Run current(int subscriptionId, Cell cell, long now) {
+        Run run = open.get(subscriptionId);
+        if (run != null && cell != null && cell.isValid() && run.continues(cell, now)) {
+            run.end = now;
+            return run;
+        }
+        if (run != null) {
+            closeRun(subscriptionId, run);
+            open.remove(subscriptionId);
+        }
+        if (cell == null || !cell.isValid()) {
+            return null;
+        }
+        run = new Run(cell, now);
+        open.put(subscriptionId, run);
+        return run;
+    }
+
+    private void closeRun(int subscriptionId, Run run) {
+        Interval interval = run.toInterval(subscriptionId);
+        history.addLast(interval);
+        if (history.size() > MAX_HISTORY) {
+            history.removeFirst();
+        }
+        pending.add(interval);
+        if (pending.size() >= BATCH_SIZE || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MS) {
+            flush();
+        }
+    }
+
+    private static void store(Realm realm, Interval interval) {
+        ServingCellInterval row = realm.createObject(ServingCellInterval.class);
+        row.setSubscriptionId(interval.subscriptionId);
+        row.setMobileCountryCode(interval.mobileCountryCode);
+        row.setMobileNetworkCode(interval.mobileNetworkCode);
+        row.setLocationAreaCode(interval.locationAreaCode);
+        row.setCellId(interval.cellId);
+        row.setPrimaryScramblingCode(interval.primaryScramblingCode);
+        row.setRadioAccessTechnology(interval.radioAccessTechnology);
+        row.setTimeStart(interval.start);
+        row.setTimeEnd(interval.end);
+        row.setSamples(interval.samples);
+        row.setSignalMin(interval.signalMin);
+        row.setSignalMax(interval.signalMax);
+        row.setSignalSum(interval.signalSum);
+    }
+}
@@ -0,0 +1,99 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.telephony.NeighboringCellInfo;
+import android.telephony.SignalStrength;
+
+import java.lang.reflect.Method;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Extracts the signal strength of the serving cell from a {@link SignalStrength}.
+ * <p>
+ * When the GSM signal strength is unknown the LTE RSRP is used, which is only available
+ * through the hidden {@code getLteRsrp()}. The method is looked up once; invoking it with a
+ * shared empty argument array returns a cached {@link Integer} for all valid RSRP values, so
+ * decoding doesn't allocate. Without the method the value is read from {@code toString()}
+ * (9th field) without splitting it.
+ */
+@Slf4j
+public final class SignalDecoder {
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final int LTE_RSRP_FIELD = 9;
+    private static final Method GET_LTE_RSRP = findMethod("getLteRsrp");
+
+    private SignalDecoder() {
+    }
+
+    /**
+     * @return The signal strength as used by {@link Device#setSignalDbm(int)}: GSM in ASU,
+     * LTE RSRP in dBm if GSM is unknown, and the lower of the CDMA and EvDo dBm otherwise
+     */
+    public static int decodeDbm(SignalStrength signalStrength) {
+        if (signalStrength.isGsm()) {
+            int gsm = signalStrength.getGsmSignalStrength();
+            if (gsm <= 2 || gsm == NeighboringCellInfo.UNKNOWN_RSSI) {
+                // Unknown signal strength, get it another way
+                return lteRsrp(signalStrength);
+            }
+            return gsm;
+        }
+        int evdoDbm = signalStrength.getEvdoDbm();
+        int cdmaDbm = signalStrength.getCdmaDbm();
+
+        // Use lowest signal to be conservative
+        return cdmaDbm < evdoDbm ? cdmaDbm : evdoDbm;
+    }
+
+    static int lteRsrp(SignalStrength signalStrength) {
+        if (GET_LTE_RSRP != null) {
+            try {
+                return (Integer) GET_LTE_RSRP.invoke(signalStrength, NO_ARGS);
+            } catch (Exception e) {
+                log.debug("getLteRsrp() failed, falling back to toString()", e);
+            }
+        }
+        return parseField(signalStrength.toString(), LTE_RSRP_FIELD);
+    }
+
+    /**
+     * Parses the n-th space separated field (0 being "SignalStrength:") as integer.
+     */
+    static int parseField(String s, int field) {
+        int length = s.length();
+        int i = 0;
+        for (int f = 0; f < field && i < length; i++) {
+            if (s.charAt(i) == ' ') {
+                f++;
+            }
+        }
+        boolean negative = i < length && s.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        int value = 0;
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static Method findMethod(String name) {
+        try {
+            return SignalStrength.class.getMethod(name);
+        } catch (NoSuchMethodException | RuntimeException e) {
+            log.info("SignalStrength.{}() not available", name);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The last {@link #CAPACITY} signal strength samples of one cell in primitive arrays.
+ * <p>
+ * Besides the ring itself a value histogram and the least squares sums are maintained on
+ * every add, so percentiles (a scan over a fixed number of bins) and the slope are available
+ * without sorting or iterating the samples. Nothing is allocated after construction.
+ * Values outside [{@link #MIN_VALUE}, {@link #MAX_VALUE}] are clamped.
+ * <p>
+ * Not thread safe, callers synchronize on the ring.
+ */
+public final class SignalSampleRing {
+
+    static final int CAPACITY = 64;
+    static final int MIN_VALUE = -160;
+    static final int MAX_VALUE = 95;
+
+    private final int[] values = new int[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final int[] histogram = new int[MAX_VALUE - MIN_VALUE + 1];
+    private int head;
+    private int size;
+
+    // least squares sums, times in seconds relative to baseTime
+    private long baseTime;
+    private double sumT;
+    private double sumV;
+    private double sumTT;
+    private double sumTV;
+
+    public void add(long time, int value) {
+        value = Math.max(MIN_VALUE, Math.min(MAX_VALUE, value));
+        if (size == 0) {
+            baseTime = time;
+        }
+        if (size == CAPACITY) {
+            remove(times[head], values[head]);
+            head = (head + 1) % CAPACITY;
+            size--;
+        }
+        int index = (head + size) % CAPACITY;
+        values[index] = value;
+        times[index] = time;
+        size++;
+
+        histogram[value - MIN_VALUE]++;
+        double t = (time - baseTime) / 1000.0;
+        sumT += t;
+        sumV += value;
+        sumTT += t * t;
+        sumTV += t * value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The most recent sample, 0 if empty
+     */
+    public int latest() {
+        return size == 0 ? 0 : values[(head + size - 1) % CAPACITY];
+    }
+
+    public long latestTime() {
+        return size == 0 ? 0 : times[(head + size - 1) % CAPACITY];
+    }
+
+    public double mean() {
+        return size == 0 ? 0 : sumV / size;
+    }
+
+    public int median() {
+        return percentile(50);
+    }
+
+    /**
+     * @param percentile Between 0 and 100, e.g. 10 for p10
+     * @return The smallest sample value with at least {@code percentile}% of the samples
+     * less or equal to it, 0 if empty
+     */
+    public int percentile(int percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        int rank = Math.max(1, (size * percentile + 99) / 100);
+        int seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i + MIN_VALUE;
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * @return Least squares slope of the samples in value units per second, 0 with less than two samples
+     */
+    public double slope() {
+        if (size < 2) {
+            return 0;
+        }
+        double denominator = size * sumTT - sumT * sumT;
+        if (denominator == 0) {
+            return 0;
+        }
+        return (size * sumTV - sumT * sumV) / denominator;
+    }
+
+    /**
+     * Writes the samples oldest first.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeByte(size);
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % CAPACITY;
+            out.writeLong(times[index]);
+            out.writeShort(values[index]);
+        }
+    }
+
+    /**
+     * Adds the samples written by {@link #writeState(DataOutput)}.
+     */
+    public void readState(DataInput in) throws IOException {
+        int count = in.readUnsignedByte();
+        for (int i = 0; i < count; i++) {
+            long time = in.readLong();
+            add(time, in.readShort());
+        }
+    }
+
+    private void remove(long time, int value) {
+        histogram[value - MIN_VALUE]--;
+        double t = (time - baseTime) / 1000.0;
+        sumT -= t;
+        sumV -= value;
+        sumTT -= t * t;
+        sumTV -= t * value;
+    }
+}
@@ -6,9 +6,13 @@
 package com.secupwn.aimsicd.service;
 
 import android.content.Context;
+import android.util.SparseArray;
 
 import com.secupwn.aimsicd.utils.RealmHelper;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.HashMap;
 
 import io.realm.Realm;
@@ -49,12 +53,14 @@ public class SignalStrengthTracker {
     private static int maximumNumberOfDaysSaved     = 60;       // [days] = 2 months
     private static int mysteriousSignalDifference   = 10;       // [dBm] or [ASU]?
     private static int sleepTimeBetweenCleanup      = 3600;     // [seconds] Once per hour
+    private static int maximumNumberOfSampledCells  = 32;       // recent samples are kept for so many cells
 
     private Long lastRegistrationTime;  // Timestamp for last registration to DB
     private Long lastCleanupTime;       // Timestamp for last cleanup of DB
     private HashMap<Integer, Integer> averageSignalCache = new HashMap<>();
     private long lastMovementDetected = 0l; // ??
     private RealmHelper mDbHelper;
+    private final SparseArray<SignalSampleRing> recentSamples = new SparseArray<>();
 
     public SignalStrengthTracker(Context context) {
         lastMovementDetected = System.currentTimeMillis();
@@ -80,8 +86,10 @@ public class SignalStrengthTracker {
         // TODO: We probably need to convert this into seconds for easy use in DB
         long now = System.currentTimeMillis(); // [ms]
 
+        addSample(cellID, now, signalStrength);
+
         if (deviceIsMoving()) {
-            log.info("Ignored signal sample for CID: {} due to device movement. Waiting for {} ms.", cellID, (minimumIdleTime * 1000) - (now - lastMovementDetected));
+            log.debug("Ignored signal sample for CID: {} due to device movement. Waiting for {} ms.", cellID, (minimumIdleTime * 1000) - (now - lastMovementDetected));
             return;
         }
 
@@ -103,6 +111,91 @@ public class SignalStrengthTracker {
         }
     }
 
+    /**
+     * Recent signal strength samples of a cell, regardless of device movement.
+     * Synchronize on the returned ring while reading it.
+     *
+     * @param cellID
+     * @return The samples or null if none were registered for that cell (recently)
+     */
+    public SignalSampleRing getRecentSamples(int cellID) {
+        synchronized (recentSamples) {
+            return recentSamples.get(cellID);
+        }
+    }
+
+    /**
+     * Writes the recent samples of all cells.
+     *
+     * @see TrackerStateStore
+     */
+    public void writeState(DataOutput out) throws IOException {
+        synchronized (recentSamples) {
+            out.writeShort(recentSamples.size());
+            for (int i = 0; i < recentSamples.size(); i++) {
+                SignalSampleRing ring = recentSamples.valueAt(i);
+                out.writeInt(recentSamples.keyAt(i));
+                synchronized (ring) {
+                    ring.writeState(out);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the recent samples with those written by {@link #writeState(DataOutput)}.
+     */
+    public void readState(DataInput in) throws IOException {
+        SparseArray<SignalSampleRing> restored = new SparseArray<>();
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            int cellID = in.readInt();
+            SignalSampleRing ring = new SignalSampleRing();
+            ring.readState(in);
+            restored.put(cellID, ring);
+        }
+        synchronized (recentSamples) {
+            recentSamples.clear();
+            for (int i = 0; i < restored.size() && i < maximumNumberOfSampledCells; i++) {
+                recentSamples.put(restored.keyAt(i), restored.valueAt(i));
+            }
+        }
+    }
+
+    private void addSample(int cellID, long now, int signalStrength) {
+        SignalSampleRing ring;
+        synchronized (recentSamples) {
+            ring = recentSamples.get(cellID);
+            if (ring == null) {
+                if (recentSamples.size() >= maximumNumberOfSampledCells) {
+                    evictOldestSamples();
+                }
+                ring = new SignalSampleRing();
+                recentSamples.put(cellID, ring);
+            }
+        }
+        synchronized (ring) {
+            ring.add(now, signalStrength);
+        }
+    }
+
+    private void evictOldestSamples() {
+        int oldest = 0;
+        long oldestTime = Long.MAX_VALUE;
+        for (int i = 0; i < recentSamples.size(); i++) {
+            SignalSampleRing ring = recentSamples.valueAt(i);
+            long time;
+            synchronized (ring) {
+                time = ring.latestTime();
+            }
+            if (time < oldestTime) {
+                oldestTime = time;
+                oldest = i;
+            }
+        }
+        recentSamples.removeAt(oldest);
+    }
+
     /**
      *  Remove Signal Strength data from DB, that is older than N days:
      *  (days * number of seconds in a day) * seconds to milliseconds
@@ -0,0 +1,213 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.app.Notification;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+import android.util.SparseArray;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.ui.activities.MainActivity;
+import com.secupwn.aimsicd.utils.Icon;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Posts the persistent status notification.
+ * <p>
+ * Updates equal to the content already shown are skipped. Other updates are limited to
+ * {@code maxUpdatesPerSecond}; an update arriving too early replaces any pending one and is
+ * posted when the interval has passed, so a burst ends with the latest content shown.
+ * A change to an alarm level ({@link Status#MEDIUM} or higher) is always posted immediately.
+ * Decoded large icons are cached, they only depend on the icon type and the status.
+ */
+@Slf4j
+public class StatusNotifier {
+
+    /**
+     * Everything the notification shows, two equal contents give the same notification.
+     */
+    @Getter
+    public static final class Content {
+
+        private final Status status;
+        private final Icon.Type iconType;
+        private final String tickerText;
+        private final String contentText;
+        private final boolean silentSms;
+
+        public Content(Status status, Icon.Type iconType, String tickerText, String contentText, boolean silentSms) {
+            this.status = status;
+            this.iconType = iconType;
+            this.tickerText = tickerText;
+            this.contentText = contentText;
+            this.silentSms = silentSms;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Content)) {
+                return false;
+            }
+            Content other = (Content) o;
+            return status == other.status
+                    && iconType == other.iconType
+                    && silentSms == other.silentSms
+                    && equal(tickerText, other.tickerText)
+                    && equal(contentText, other.contentText);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = status.hashCode();
+            result = 31 * result + iconType.hashCode();
+            result = 31 * result + (tickerText == null ? 0 : tickerText.hashCode());
+            result = 31 * result + (contentText == null ? 0 : contentText.hashCode());
+            return 31 * result + (silentSms ? 1 : 0);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final Context context;
+    private final int notificationId;
+    private final long minIntervalMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final SparseArray<Bitmap> largeIcons = new SparseArray<>();
+
+    // guarded by this
+    private Content posted;
+    private Content pending;
+    private long lastPostTime;
+
+    @Getter
+    private volatile int postedCount;
+    @Getter
+    private volatile int skippedCount;
+    @Getter
+    private volatile int coalescedCount;
+
+    public StatusNotifier(Context context, int notificationId, int maxUpdatesPerSecond) {
+        this.context = context;
+        this.notificationId = notificationId;
+        this.minIntervalMs = 1000 / maxUpdatesPerSecond;
+    }
+
+    /**
+     * Shows the given content, now or when the rate limit allows it. Safe to call from any thread.
+     */
+    public synchronized void update(Content content) {
+        if (content.equals(pending != null ? pending : posted)) {
+            skippedCount++;
+            return;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        boolean alarm = content.getStatus().ordinal() >= Status.MEDIUM.ordinal()
+                && (posted == null || posted.getStatus() != content.getStatus());
+        if (alarm || now - lastPostTime >= minIntervalMs) {
+            if (pending != null) {
+                handler.removeCallbacks(postPending);
+                pending = null;
+            }
+            post(content, now);
+            return;
+        }
+
+        if (pending == null) {
+            handler.postDelayed(postPending, lastPostTime + minIntervalMs - now);
+        } else {
+            coalescedCount++;
+        }
+        pending = content;
+    }
+
+    /**
+     * Removes the notification and forgets the posted content.
+     */
+    public synchronized void cancel() {
+        handler.removeCallbacks(postPending);
+        pending = null;
+        posted = null;
+        NotificationManagerCompat.from(context).cancel(notificationId);
+    }
+
+    private final Runnable postPending = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (StatusNotifier.this) {
+                if (pending != null) {
+                    Content content = pending;
+                    pending = null;
+                    if (!content.equals(posted)) {
+                        post(content, SystemClock.elapsedRealtime());
+                    }
+                }
+            }
+        }
+    };
+
+    private void post(Content content, long now) {
+        Status status = content.getStatus();
+
+        // SINGLE_TOP brings a running MainActivity to the front instead of stacking a new one.
+        // FLAG_UPDATE_CURRENT swaps the extras of the existing PendingIntent (one per notification
+        // id), so a tap always opens the app with the silent SMS state of the latest post.
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        notificationIntent.putExtra("silent_sms", content.isSilentSms());
+        notificationIntent.addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP | Intent.FLAG_FROM_BACKGROUND);
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                context, notificationId, notificationIntent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+        int color = context.getResources().getColor(status.getColor());
+
+        Notification notification = new NotificationCompat.Builder(context)
+                .setSmallIcon(R.drawable.tower48)
+                .setColor(color)
+                .setLargeIcon(largeIcon(Icon.getIcon(content.getIconType(), status)))
+                .setTicker(content.getTickerText())
+                .setContentTitle(context.getString(R.string.status) + " " + context.getString(status.getName()))
+                .setContentInfo(context.getResources().getString(R.string.app_name_short))
+                .setContentText(content.getContentText())
+                .setOngoing(true)
+                .setAutoCancel(false)
+                .setContentIntent(contentIntent)
+                .build();
+
+        NotificationManagerCompat
+                .from(context)
+                .notify(notificationId, notification);
+
+        posted = content;
+        lastPostTime = now;
+        postedCount++;
+    }
+
+    private Bitmap largeIcon(int resId) {
+        Bitmap bitmap = largeIcons.get(resId);
+        if (bitmap == null) {
+            bitmap = BitmapFactory.decodeResource(context.getResources(), resId);
+            largeIcons.put(resId, bitmap);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,92 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Keeps one object per active subscription, e.g. a {@link SubscriptionTracker}.
+ * <p>
+ * {@link #update(Collection)} creates the objects of new subscriptions and releases those of
+ * subscriptions that went away, objects of subscriptions that stay active are kept with their
+ * state. Lookups don't lock, so the analysis thread can route snapshots while the set changes.
+ */
+public final class SubscriptionRegistry<T> {
+
+    public interface Factory<T> {
+        T create(int subscriptionId);
+
+        void release(T value);
+    }
+
+    private final Factory<T> factory;
+    private final Map<Integer, T> entries = new ConcurrentSkipListMap<>();
+
+    public SubscriptionRegistry(Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * @param active The ids of all currently active subscriptions
+     */
+    public synchronized void update(Collection<Integer> active) {
+        Iterator<Map.Entry<Integer, T>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, T> entry = it.next();
+            if (!active.contains(entry.getKey())) {
+                it.remove();
+                factory.release(entry.getValue());
+            }
+        }
+        for (Integer id : active) {
+            if (!entries.containsKey(id)) {
+                entries.put(id, factory.create(id));
+            }
+        }
+    }
+
+    /**
+     * @return The object of the subscription or null if it isn't active (anymore)
+     */
+    public T get(int subscriptionId) {
+        return entries.get(subscriptionId);
+    }
+
+    /**
+     * @param defaultValue The object of {@link RadioSnapshot#DEFAULT_SUBSCRIPTION}
+     * @return The object of the subscription the snapshot was reported for, null if that
+     * subscription isn't active anymore
+     */
+    public T route(RadioSnapshot snapshot, T defaultValue) {
+        if (snapshot.getSubscriptionId() == RadioSnapshot.DEFAULT_SUBSCRIPTION) {
+            return defaultValue;
+        }
+        return entries.get(snapshot.getSubscriptionId());
+    }
+
+    /**
+     * @return The objects of all active subscriptions, ordered by subscription id
+     */
+    public List<T> values() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Releases all objects.
+     */
+    public synchronized void clear() {
+        update(new ArrayList<Integer>());
+    }
+}
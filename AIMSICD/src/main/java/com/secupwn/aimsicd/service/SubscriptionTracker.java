@@ -0,0 +1,532 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.content.Context;
+import android.location.Location;
+import android.telephony.CellLocation;
+import android.telephony.PhoneStateListener;
+import android.telephony.ServiceState;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyManager;
+import android.telephony.cdma.CdmaCellLocation;
+import android.telephony.gsm.GsmCellLocation;
+
+import com.secupwn.aimsicd.detection.CellLocations;
+import com.secupwn.aimsicd.detection.DetectionContext;
+import com.secupwn.aimsicd.detection.DetectorEngine;
+import com.secupwn.aimsicd.detection.FemtocellDetector;
+import com.secupwn.aimsicd.detection.LacChangeDetector;
+import com.secupwn.aimsicd.detection.NeighborListDetector;
+import com.secupwn.aimsicd.detection.SignalStrengthDetector;
+import com.secupwn.aimsicd.detection.UnknownCellDetector;
+import com.secupwn.aimsicd.utils.Cell;
+import com.secupwn.aimsicd.utils.CellInfoSource;
+import com.secupwn.aimsicd.utils.Device;
+import com.secupwn.aimsicd.utils.RealmHelper;
+import com.secupwn.aimsicd.utils.TinyDB;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.realm.Realm;
+import lombok.Cleanup;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Tracks the serving cell, the neighboring cells and the detector state of one SIM
+ * subscription.
+ * <p>
+ * Each subscription has its own telephony listener, {@link Device}, {@link NeighborCellMonitor}
+ * and {@link DetectorEngine}. Everything that costs CPU or writes to the database is
+ * {@link Shared} between the subscriptions: the analysis thread, the detector threads, the
+ * neighbor reader thread, the neighbor recorder, the serving-cell timeline and the signal
+ * strength cache. A second SIM
+ * therefore adds its events to the same queues instead of doubling the threads and writers.
+ * <p>
+ * The state is only modified on the analysis thread, see {@link #process(RadioSnapshot)}.
+ */
+@Slf4j
+public class SubscriptionTracker {
+
+    /**
+     * What all subscriptions use together, created once by the {@link CellTracker}
+     */
+    static final class Shared {
+        final Context context;
+        final RadioSnapshotBus snapshotBus;
+        final RealmHelper dbHelper;
+        final SignalStrengthTracker signalStrengthTracker;
+        final TinyDB tinyDb;
+        final RefreshScheduler refreshScheduler;
+        final NeighborCellRecorder neighborRecorder = new NeighborCellRecorder();
+        final NeighborLocationResolver neighborLocationResolver = new NeighborLocationResolver();
+        final ServingCellTimeline timeline = new ServingCellTimeline();
+        final ExecutorService detectorExecutor;
+        /**
+         * Reads the neighbors and closes the callback windows
+         */
+        final ScheduledExecutorService timerExecutor;
+
+        Shared(Context context, RadioSnapshotBus snapshotBus, RealmHelper dbHelper,
+               SignalStrengthTracker signalStrengthTracker, TinyDB tinyDb, RefreshScheduler refreshScheduler) {
+            this(context, snapshotBus, dbHelper, signalStrengthTracker, tinyDb, refreshScheduler,
+                    DetectorEngine.newExecutor(), Executors.newSingleThreadScheduledExecutor());
+        }
+
+        /**
+         * @param detectorExecutor Runs the detectors of all subscriptions
+         * @param timerExecutor    Reads the neighbors and closes the callback windows of all subscriptions
+         */
+        Shared(Context context, RadioSnapshotBus snapshotBus, RealmHelper dbHelper,
+               SignalStrengthTracker signalStrengthTracker, TinyDB tinyDb, RefreshScheduler refreshScheduler,
+               ExecutorService detectorExecutor, ScheduledExecutorService timerExecutor) {
+            this.context = context;
+            this.snapshotBus = snapshotBus;
+            this.dbHelper = dbHelper;
+            this.signalStrengthTracker = signalStrengthTracker;
+            this.tinyDb = tinyDb;
+            this.refreshScheduler = refreshScheduler;
+            this.detectorExecutor = detectorExecutor;
+            this.timerExecutor = timerExecutor;
+        }
+
+        void shutdown() {
+            neighborRecorder.flush();
+            timeline.close();
+            detectorExecutor.shutdownNow();
+            timerExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * The subscription id or {@link RadioSnapshot#DEFAULT_SUBSCRIPTION}
+     */
+    @Getter
+    private final int subscriptionId;
+
+    @Getter
+    private final TelephonyManager telephonyManager;
+
+    @Getter
+    private final Device device = new Device();
+
+    @Getter
+    private final DetectorEngine detectorEngine;
+
+    @Getter
+    private final NeighborCellMonitor neighborCellMonitor;
+
+    /**
+     * Merges the callback bursts of this subscription, see {@link #onCallback(RadioSnapshot)}
+     */
+    @Getter
+    private final RadioCallbackCoalescer coalescer;
+
+    /**
+     * One {@link TelephonyManager#getAllCellInfo()} read per window for the device refresh,
+     * the location processing and the neighbor monitor
+     */
+    @Getter
+    private final CellInfoSource cellInfoSource;
+
+    private final Shared shared;
+
+    private final NeighborListDetector neighborListDetector = new NeighborListDetector();
+
+    /**
+     * The cell location the {@link NeighborListDetector} could not check yet because the
+     * neighbors were not re-read since, see {@link #neighborListener}
+     */
+    private final AtomicReference<RadioSnapshot> awaitingNeighbors = new AtomicReference<>();
+
+    /**
+     * @see #isTrackingCell()
+     */
+    private volatile boolean trackingCell;
+
+    SubscriptionTracker(Shared shared, int subscriptionId, TelephonyManager tm) {
+        this.shared = shared;
+        this.subscriptionId = subscriptionId;
+        this.telephonyManager = tm;
+
+        cellInfoSource = new CellInfoSource(tm);
+        device.setCellInfoSource(cellInfoSource);
+        neighborCellMonitor = new NeighborCellMonitor(tm, shared.timerExecutor, cellInfoSource, shared.refreshScheduler);
+        neighborCellMonitor.addListener(neighborListener);
+
+        detectorEngine = new DetectorEngine(new DetectionContext(shared.context, tm, device, shared.dbHelper,
+                shared.signalStrengthTracker, shared.tinyDb, neighborCellMonitor), shared.detectorExecutor);
+        detectorEngine.register(new LacChangeDetector());
+        detectorEngine.register(neighborListDetector);
+        detectorEngine.register(new UnknownCellDetector());
+        detectorEngine.register(new SignalStrengthDetector());
+        detectorEngine.register(new FemtocellDetector());
+
+        coalescer = new RadioCallbackCoalescer(shared.snapshotBus, subscriptionId, shared.timerExecutor,
+                RadioCallbackCoalescer.DEFAULT_WINDOW_MS);
+        device.refreshDeviceInfo(tm, shared.context);
+    }
+
+    /**
+     * @return true for the subscription of the default TelephonyManager, which also feeds
+     * {@link CellTracker#getMonitorCell()}
+     */
+    public boolean isDefault() {
+        return subscriptionId == RadioSnapshot.DEFAULT_SUBSCRIPTION;
+    }
+
+    /**
+     * @return true while radio events are tracked and cells are logged to the database
+     */
+    public boolean isTrackingCell() {
+        return trackingCell;
+    }
+
+    /**
+     * Must be called on a thread with a looper, the telephony callbacks are delivered there.
+     */
+    void start() {
+        neighborCellMonitor.start();
+    }
+
+    void stop() {
+        setCellTracking(false);
+        neighborCellMonitor.stop();
+        coalescer.cancel();
+        coalescer.logStats();
+        detectorEngine.logStats();
+        detectorEngine.shutdown();
+    }
+
+    void setCellTracking(boolean track) {
+        if (track) {
+            telephonyManager.listen(cellSignalListener,
+                    PhoneStateListener.LISTEN_CELL_LOCATION |         // gpsd_lat/lon ?
+                            PhoneStateListener.LISTEN_SIGNAL_STRENGTHS |      // rx_signal
+                            PhoneStateListener.LISTEN_DATA_ACTIVITY |         // No,In,Ou,IO,Do
+                            PhoneStateListener.LISTEN_DATA_CONNECTION_STATE | // Di,Ct,Cd,Su
+                            PhoneStateListener.LISTEN_SERVICE_STATE |         // operator, roaming
+                            PhoneStateListener.LISTEN_CELL_INFO               // !? (Need API 17)
+            );
+        } else {
+            telephonyManager.listen(cellSignalListener, PhoneStateListener.LISTEN_NONE);
+            device.cell.setLon(0.0);
+            device.cell.setLat(0.0);
+            device.setCellInfo("[0,0]|nn|nn|"); //default entries into "locationinfo"::Connection
+        }
+        trackingCell = track;
+    }
+
+    /**
+     * Re-runs the detectors on the current cell location of this subscription.
+     */
+    void publishCellLocation() {
+        publish(RadioSnapshot.cellLocation(telephonyManager.getCellLocation()));
+    }
+
+    /**
+     * Re-reads all device details, also those that rarely change, see {@link Device#refresh}
+     */
+    void refreshDevice() {
+        device.refreshDeviceInfo(telephonyManager, shared.context);
+    }
+
+    /**
+     * Returns the latest known neighboring cells without waiting for the modem and
+     * schedules a re-read, see {@link NeighborCellMonitor}.
+     */
+    List<Cell> updateNeighboringCells() {
+        neighborCellMonitor.requestRefresh();
+        return neighborCellMonitor.getNeighbors().getCells();
+    }
+
+    void publish(RadioSnapshot snapshot) {
+        shared.snapshotBus.publish(snapshot.withSubscription(subscriptionId));
+    }
+
+    /**
+     * Publishes the snapshot of a telephony callback once its burst is over, see
+     * {@link RadioCallbackCoalescer}.
+     */
+    void onCallback(RadioSnapshot snapshot) {
+        coalescer.offer(snapshot);
+    }
+
+    /**
+     * Updates the state of this subscription from the snapshot and runs the detectors on it,
+     * called on the analysis thread only.
+     */
+    void process(RadioSnapshot snapshot) {
+        // update the tracker state first, detectors read it
+        switch (snapshot.getKind()) {
+            case CELL_LOCATION:
+                onCellLocationChanged(snapshot.getCellLocation());
+                shared.timeline.onServingCell(subscriptionId, device.cell, snapshot.getTime());
+                if (neighborCellMonitor.getNeighbors().getTime() < snapshot.getTime()) {
+                    awaitingNeighbors.set(snapshot);
+                }
+                break;
+            case SIGNAL_STRENGTH:
+                onSignalStrengthsChanged(snapshot.getSignalStrength());
+                shared.timeline.onSignal(subscriptionId, device.cell, device.getSignalDBm(), snapshot.getTime());
+                break;
+            case DATA_ACTIVITY:
+                onDataActivity(snapshot.getState());
+                break;
+            case DATA_CONNECTION_STATE:
+                onDataConnectionStateChanged(snapshot.getState());
+                break;
+            case LOCATION:
+                processLocation(snapshot.getLocation());
+                break;
+            default:
+                break;
+        }
+        detectorEngine.process(snapshot);
+    }
+
+    /**
+     * Records every neighbor read against the serving cell, also while no UI is shown, and
+     * re-runs the {@link NeighborListDetector} on the first read after a cell change
+     */
+    private final NeighborCellMonitor.Listener neighborListener = new NeighborCellMonitor.Listener() {
+        @Override
+        public void onNeighborsRead(NeighborCellMonitor.Neighbors neighbors) {
+            shared.neighborRecorder.record(device.cell, neighbors.getCells(), neighbors.getTime());
+
+            RadioSnapshot cellLocation = awaitingNeighbors.get();
+            if (cellLocation != null && neighbors.getTime() >= cellLocation.getTime()
+                    && awaitingNeighbors.compareAndSet(cellLocation, null)) {
+                detectorEngine.rerun(neighborListDetector, cellLocation);
+            }
+        }
+
+        @Override
+        public void onNeighborsChanged(NeighborCellMonitor.Neighbors neighbors) {
+        }
+    };
+
+    private final PhoneStateListener cellSignalListener = new PhoneStateListener() {
+        @Override
+        public void onCellLocationChanged(CellLocation location) {
+            onCallback(RadioSnapshot.cellLocation(location));
+        }
+
+        @Override
+        public void onSignalStrengthsChanged(SignalStrength signalStrength) {
+            onCallback(RadioSnapshot.signalStrength(signalStrength));
+        }
+
+        @Override
+        public void onDataActivity(int direction) {
+            onCallback(RadioSnapshot.dataActivity(direction));
+        }
+
+        @Override
+        public void onDataConnectionStateChanged(int state) {
+            onCallback(RadioSnapshot.dataConnectionState(state));
+        }
+
+        @Override
+        public void onServiceStateChanged(ServiceState serviceState) {
+            // only re-read on the next refresh, nothing to analyze
+            device.invalidateNetwork();
+        }
+    };
+
+    private void onCellLocationChanged(CellLocation location) {
+        Cell serving = CellLocations.toCell(location);
+        if (serving != null && isDefault()) {
+            CellTracker.setMonitorCell(serving.getLocationAreaCode(), serving.getCellId());
+        }
+
+        // RAT first, a change invalidates the network details
+        device.setNetID(telephonyManager);
+        device.refresh(telephonyManager, shared.context);
+
+        switch (device.getPhoneId()) {
+
+            case TelephonyManager.PHONE_TYPE_NONE:
+            case TelephonyManager.PHONE_TYPE_SIP:
+            case TelephonyManager.PHONE_TYPE_GSM:
+                GsmCellLocation gsmCellLocation = (GsmCellLocation) location;
+                if (gsmCellLocation != null) {
+                    //TODO @EVA where are we sending this setCellInfo data?
+
+                    //TODO
+                    /*@EVA
+                        Is it a good idea to dump all cells to db because if we spot a known cell
+                        with different locationAreaCode then this will also be dump to db.
+
+                    */
+                    device.setCellInfo(
+                            gsmCellLocation.toString() +                // ??
+                                    device.getDataActivityTypeShort() + "|" +  // No,In,Ou,IO,Do
+                                    device.getDataStateShort() + "|" +         // Di,Ct,Cd,Su
+                                    device.getNetworkTypeName() + "|"          // HSPA,LTE etc
+                    );
+
+                    device.cell.setLocationAreaCode(gsmCellLocation.getLac());     // LAC
+                    device.cell.setCellId(gsmCellLocation.getCid());     // CID
+                    if (gsmCellLocation.getPsc() != -1) {
+                        device.cell.setPrimaryScramblingCode(gsmCellLocation.getPsc()); // PSC
+                    }
+
+                    /*
+                        Add cell if gps is not enabled
+                        when gps enabled lat lon will be updated
+                        by function below
+
+                     */
+                }
+                break;
+
+            case TelephonyManager.PHONE_TYPE_CDMA:
+                CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) location;
+                if (cdmaCellLocation != null) {
+                    device.setCellInfo(
+                            cdmaCellLocation.toString() +                       // ??
+                                    device.getDataActivityTypeShort() + "|" +  // No,In,Ou,IO,Do
+                                    device.getDataStateShort() + "|" +         // Di,Ct,Cd,Su
+                                    device.getNetworkTypeName() + "|"          // HSPA,LTE etc
+                    );
+                    device.cell.setLocationAreaCode(cdmaCellLocation.getNetworkId());      // NID
+                    device.cell.setCellId(cdmaCellLocation.getBaseStationId());  // BID
+                    device.cell.setSid(cdmaCellLocation.getSystemId());       // SID
+                    device.cell.setMobileNetworkCode(cdmaCellLocation.getSystemId());       // MNC <== BUG!??
+                    device.setNetworkName(telephonyManager.getNetworkOperatorName());        // ??
+                }
+        }
+
+    }
+
+    /**
+     *  Description:  TODO: add more info
+     *
+     *  Issues:
+     *
+     *      [ ]     Getting and comparing signal strengths between different RATs can be very
+     *              tricky, since they all return different ranges of values. AOS doesn't
+     *              specify very clearly what exactly is returned, even though people have
+     *              a good idea, by trial and error.
+     *
+     *              See note in : SignalStrengthTracker.java
+     */
+    private void onSignalStrengthsChanged(SignalStrength signalStrength) {
+        // Update Signal Strength
+        device.setSignalDbm(SignalDecoder.decodeDbm(signalStrength));
+        // Send it to signal tracker
+        shared.signalStrengthTracker.registerSignalStrength(device.cell.getCellId(), device.getSignalDBm());
+    }
+
+    // In DB:   No,In,Ou,IO,Do
+    private void onDataActivity(int direction) {
+        switch (direction) {
+            case TelephonyManager.DATA_ACTIVITY_NONE:
+                device.setDataActivityTypeShort("No");
+                device.setDataActivityType("None");
+                break;
+            case TelephonyManager.DATA_ACTIVITY_IN:
+                device.setDataActivityTypeShort("In");
+                device.setDataActivityType("In");
+                break;
+            case TelephonyManager.DATA_ACTIVITY_OUT:
+                device.setDataActivityTypeShort("Ou");
+                device.setDataActivityType("Out");
+                break;
+            case TelephonyManager.DATA_ACTIVITY_INOUT:
+                device.setDataActivityTypeShort("IO");
+                device.setDataActivityType("In-Out");
+                break;
+            case TelephonyManager.DATA_ACTIVITY_DORMANT:
+                device.setDataActivityTypeShort("Do");
+                device.setDataActivityType("Dormant");
+                break;
+        }
+    }
+
+    // In DB:   Di,Ct,Cd,Su
+    private void onDataConnectionStateChanged(int state) {
+        switch (state) {
+            case TelephonyManager.DATA_DISCONNECTED:
+                device.setDataState("Disconnected");
+                device.setDataStateShort("Di");
+                break;
+            case TelephonyManager.DATA_CONNECTING:
+                device.setDataState("Connecting");
+                device.setDataStateShort("Ct");
+                break;
+            case TelephonyManager.DATA_CONNECTED:
+                device.setDataState("Connected");
+                device.setDataStateShort("Cd");
+                break;
+            case TelephonyManager.DATA_SUSPENDED:
+                device.setDataState("Suspended");
+                device.setDataStateShort("Su");
+                break;
+        }
+    }
+
+    /**
+     * Add entries to the {@link com.secupwn.aimsicd.data.model.Measure Measure} realm
+     */
+    private void processLocation(Location loc) {
+        device.loadCellInfo(telephonyManager);
+
+        if (!device.cell.isValid()) {
+            CellLocation cellLocation = telephonyManager.getCellLocation();
+            if (cellLocation != null) {
+                switch (device.getPhoneId()) {
+
+                    case TelephonyManager.PHONE_TYPE_NONE:
+                    case TelephonyManager.PHONE_TYPE_SIP:
+                    case TelephonyManager.PHONE_TYPE_GSM:
+                        GsmCellLocation gsmCellLocation = (GsmCellLocation) cellLocation;
+                        device.cell.setCellId(gsmCellLocation.getCid()); // CID
+                        device.cell.setLocationAreaCode(gsmCellLocation.getLac()); // LAC
+                        device.cell.setPrimaryScramblingCode(gsmCellLocation.getPsc()); // PSC
+                        break;
+
+                    case TelephonyManager.PHONE_TYPE_CDMA:
+                        CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) cellLocation;
+                        device.cell.setCellId(cdmaCellLocation.getBaseStationId()); // BSID ??
+                        device.cell.setLocationAreaCode(cdmaCellLocation.getNetworkId());     // NID
+                        device.cell.setSid(cdmaCellLocation.getSystemId());      // SID
+                        device.cell.setMobileNetworkCode(cdmaCellLocation.getSystemId());      // MNC <== BUG!??
+
+                        break;
+                }
+            }
+        }
+
+        if (CellTracker.isValidLocation(loc)) {
+            device.cell.setLon(loc.getLongitude());       // gpsd_lon
+            device.cell.setLat(loc.getLatitude());        // gpsd_lat
+            device.cell.setSpeed(loc.getSpeed());         // speed        // TODO: Remove, we're not using it!
+            device.cell.setAccuracy(loc.getAccuracy());   // gpsd_accu
+            device.cell.setBearing(loc.getBearing());     // -- [deg]??   // TODO: Remove, we're not using it!
+            device.setLastLocation(loc);                   //
+
+            // This only logs a BTS if we have GPS lock
+            // TODO: Is correct behaviour? We should consider logging all cells, even without GPS.
+            if (trackingCell) {
+                // This also checks that the locationAreaCode are cid are not in DB before inserting
+                @Cleanup Realm realm = Realm.getDefaultInstance();
+                shared.dbHelper.insertBTS(realm, device.cell);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionTracker{" + subscriptionId + ", " + device.cell + "}";
+    }
+}
@@ -0,0 +1,154 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import com.secupwn.aimsicd.enums.Status;
+import com.secupwn.aimsicd.utils.Cell;
+
+import lombok.Getter;
+
+/**
+ * The settings and flags of the {@link CellTracker} that are read from the UI, the service,
+ * background tasks and the analysis thread, as one immutable value.
+ * <p>
+ * The current state is published by {@link CellTracker#getState()}. Readers take it once and
+ * read all values they need from that instance, they never see a half-applied change.
+ * Writers create a modified copy with the {@code with...} methods and publish it with
+ * {@link CellTracker#updateState(Update)}.
+ */
+@Getter
+public final class TrackerState {
+
+    /**
+     * Turns one state into the next, may be called more than once when writers race
+     */
+    public interface Update {
+        TrackerState apply(TrackerState state);
+    }
+
+    static final TrackerState INITIAL = new TrackerState(Integer.MAX_VALUE, Integer.MAX_VALUE, null, 0, 0,
+            false, false, false, true, Status.MEDIUM.ordinal());
+
+    /**
+     * LAC of the serving cell of the default subscription, see {@link #getMonitorCell()}
+     */
+    private final int monitorLocationAreaCode;
+
+    /**
+     * CID of the serving cell of the default subscription
+     */
+    private final int monitorCellId;
+
+    /**
+     * The OpenCellID API key, "NA" if none is set
+     */
+    private final String ocidApiKey;
+
+    /**
+     * PHONE_TYPE_GSM/CDMA/SIP/NONE of the default TelephonyManager
+     */
+    private final int phoneType;
+
+    /**
+     * The refresh rate in milliseconds, see {@link RefreshScheduler}
+     */
+    private final long refreshRate;
+
+    private final boolean monitoringCell;
+    private final boolean trackingCell;
+
+    /**
+     * Tracking Femotcell Connections
+     * TODO: Consider REMOVAL!
+     */
+    private final boolean trackingFemtocell;
+
+    private final boolean vibrateEnabled;
+    private final int vibrateMinThreatLevel;
+
+    private TrackerState(int monitorLocationAreaCode, int monitorCellId, String ocidApiKey, int phoneType,
+                         long refreshRate, boolean monitoringCell, boolean trackingCell,
+                         boolean trackingFemtocell, boolean vibrateEnabled, int vibrateMinThreatLevel) {
+        this.monitorLocationAreaCode = monitorLocationAreaCode;
+        this.monitorCellId = monitorCellId;
+        this.ocidApiKey = ocidApiKey;
+        this.phoneType = phoneType;
+        this.refreshRate = refreshRate;
+        this.monitoringCell = monitoringCell;
+        this.trackingCell = trackingCell;
+        this.trackingFemtocell = trackingFemtocell;
+        this.vibrateEnabled = vibrateEnabled;
+        this.vibrateMinThreatLevel = vibrateMinThreatLevel;
+    }
+
+    /**
+     * @return A new {@link Cell} holding the LAC and CID of the serving cell
+     */
+    public Cell getMonitorCell() {
+        Cell cell = new Cell();
+        cell.setLocationAreaCode(monitorLocationAreaCode);
+        cell.setCellId(monitorCellId);
+        return cell;
+    }
+
+    /**
+     * @return true if any of tracking, monitoring or femtocell tracking is enabled
+     */
+    public boolean isActive() {
+        return trackingFemtocell || trackingCell || monitoringCell;
+    }
+
+    public TrackerState withMonitorCell(int locationAreaCode, int cellId) {
+        if (locationAreaCode == monitorLocationAreaCode && cellId == monitorCellId) {
+            return this;
+        }
+        return new TrackerState(locationAreaCode, cellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withOcidApiKey(String ocidApiKey) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withPhoneType(int phoneType) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withRefreshRate(long refreshRate) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withMonitoringCell(boolean monitoringCell) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withTrackingCell(boolean trackingCell) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withTrackingFemtocell(boolean trackingFemtocell) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    public TrackerState withVibrate(boolean vibrateEnabled, int vibrateMinThreatLevel) {
+        return new TrackerState(monitorLocationAreaCode, monitorCellId, ocidApiKey, phoneType, refreshRate,
+                monitoringCell, trackingCell, trackingFemtocell, vibrateEnabled, vibrateMinThreatLevel);
+    }
+
+    @Override
+    public String toString() {
+        return "TrackerState{monitorCell=" + monitorLocationAreaCode + ":" + monitorCellId
+                + ", phoneType=" + phoneType + ", refreshRate=" + refreshRate
+                + ", monitoring=" + monitoringCell + ", tracking=" + trackingCell
+                + ", femto=" + trackingFemtocell + "}";
+    }
+}
@@ -0,0 +1,129 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.service;
+
+import android.content.Context;
+import android.support.v4.util.AtomicFile;
+
+import com.secupwn.aimsicd.detection.DetectorEngine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the in-memory state of the {@link CellTracker} in a small binary file, so a restarted
+ * service (after boot or after the OS killed it) continues where the last one stopped instead
+ * of starting cold.
+ * <p>
+ * Stored are the serving cell of the default subscription, the event cells and the scorer
+ * evidence of its {@link DetectorEngine} and the recent samples of the
+ * {@link SignalStrengthTracker}. The file starts with a magic number and {@link #VERSION};
+ * a file of another version, older than {@link #MAX_AGE_MS} or unreadable is deleted and the
+ * service starts cold. Writes go through an {@link AtomicFile}, a crash during a write leaves
+ * the previous file.
+ */
+@Slf4j
+public final class TrackerStateStore {
+
+    static final String FILE_NAME = "tracker_state.bin";
+
+    /**
+     * Increment whenever the layout of any written state changes
+     */
+    static final int VERSION = 1;
+
+    static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(12);
+    /**
+     * Minimum time between two periodic saves
+     */
+    static final long SAVE_INTERVAL_MS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final int MAGIC = 0x41494d53; // "AIMS"
+
+    private final AtomicFile file;
+
+    public TrackerStateStore(Context context) {
+        file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    /**
+     * Writes the current state, failures are logged.
+     */
+    public synchronized void save(DetectorEngine engine, SignalStrengthTracker sst) {
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+
+            TrackerState state = CellTracker.getState();
+            out.writeInt(state.getMonitorLocationAreaCode());
+            out.writeInt(state.getMonitorCellId());
+            engine.writeState(out);
+            sst.writeState(out);
+
+            out.flush();
+            file.finishWrite(stream);
+            log.debug("Saved tracker state, {} bytes", out.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save tracker state", e);
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    /**
+     * Restores the state written by {@link #save(DetectorEngine, SignalStrengthTracker)}.
+     *
+     * @return true if the state was restored, false if the service starts cold
+     */
+    public synchronized boolean restore(DetectorEngine engine, SignalStrengthTracker sst) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a tracker state file");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                log.info("Discarding tracker state of version {}", version);
+                file.delete();
+                return false;
+            }
+            long age = System.currentTimeMillis() - in.readLong();
+            if (age < 0 || age > MAX_AGE_MS) {
+                log.info("Discarding tracker state saved {} ms ago", age);
+                file.delete();
+                return false;
+            }
+
+            int locationAreaCode = in.readInt();
+            int cellId = in.readInt();
+            engine.readState(in);
+            sst.readState(in);
+            CellTracker.setMonitorCell(locationAreaCode, cellId);
+            log.info("Restored tracker state saved {} s ago", TimeUnit.MILLISECONDS.toSeconds(age));
+            return true;
+        } catch (FileNotFoundException e) {
+            return false;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Discarding unreadable tracker state", e);
+            file.delete();
+            return false;
+        }
+    }
+}
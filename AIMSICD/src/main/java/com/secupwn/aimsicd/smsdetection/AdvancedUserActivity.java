@@ -67,6 +67,7 @@ public class AdvancedUserActivity extends InjectionAppCompatActivity {
                         detectionString.deleteFromRealm();
                     }
                 });
+                SmsDetector.invalidateDetectionStrings();
 
                 Toast.makeText(getApplicationContext(),
                         getString(R.string.deleted) + ": " + string, Toast.LENGTH_SHORT).show();
@@ -97,6 +98,7 @@ public class AdvancedUserActivity extends InjectionAppCompatActivity {
                                     Toast.LENGTH_SHORT).show();
                         }
                     });
+                    SmsDetector.invalidateDetectionStrings();
                 }
             }
         });
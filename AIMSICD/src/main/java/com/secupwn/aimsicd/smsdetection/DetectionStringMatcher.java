@@ -0,0 +1,201 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.smsdetection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds which of a set of detection strings occurs in a logcat line, in one pass over the
+ * line regardless of the number of strings (Aho-Corasick).
+ * <p>
+ * The strings are compiled into a deterministic automaton over the characters they use; a
+ * character not used by any string leads back to the start state. Each state knows the
+ * first added string ending in it or in any of its suffixes, so {@link #match(CharSequence)}
+ * returns the same result as testing the strings with {@link String#contains} in the order
+ * they were added, but never reads a character twice.
+ * <p>
+ * Immutable and thread safe once built.
+ */
+public final class DetectionStringMatcher {
+
+    /**
+     * Returned by {@link #match(CharSequence)} if no string occurs
+     */
+    public static final int NO_MATCH = 0;
+
+    private static final int ASCII = 128;
+    private static final int NONE = Integer.MAX_VALUE;
+
+    /**
+     * Alphabet index of each ASCII character, -1 if no string uses it
+     */
+    private final int[] asciiIndex;
+    private final Map<Character, Integer> otherIndex;
+    private final int alphabetSize;
+
+    /**
+     * Next state for each state and alphabet index
+     */
+    private final int[] transitions;
+
+    /**
+     * Smallest index of a string found when reaching each state, {@link #NONE} if none
+     */
+    private final int[] firstMatch;
+    private final int[] values;
+
+    private DetectionStringMatcher(int[] asciiIndex, Map<Character, Integer> otherIndex, int alphabetSize,
+                                   int[] transitions, int[] firstMatch, int[] values) {
+        this.asciiIndex = asciiIndex;
+        this.otherIndex = otherIndex;
+        this.alphabetSize = alphabetSize;
+        this.transitions = transitions;
+        this.firstMatch = firstMatch;
+        this.values = values;
+    }
+
+    /**
+     * @return The value of the first added string occurring in the line, {@link #NO_MATCH} if none
+     */
+    public int match(CharSequence line) {
+        int state = 0;
+        int best = NONE;
+        for (int i = 0, length = line.length(); i < length; i++) {
+            char c = line.charAt(i);
+            int index;
+            if (c < ASCII) {
+                index = asciiIndex[c];
+            } else {
+                Integer other = otherIndex.get(c);
+                index = other == null ? -1 : other;
+            }
+            state = index < 0 ? 0 : transitions[state * alphabetSize + index];
+            if (firstMatch[state] < best) {
+                best = firstMatch[state];
+                if (best == 0) {
+                    break;
+                }
+            }
+        }
+        return best == NONE ? NO_MATCH : values[best];
+    }
+
+    /**
+     * @return Number of states of the automaton
+     */
+    public int size() {
+        return firstMatch.length;
+    }
+
+    public static final class Builder {
+
+        private final List<String> strings = new ArrayList<>();
+        private final List<Integer> values = new ArrayList<>();
+
+        /**
+         * Adds a string, strings added earlier win if several occur in a line.
+         * Empty strings are ignored.
+         *
+         * @param value Returned by {@link #match(CharSequence)} for the string, not {@link #NO_MATCH}
+         */
+        public Builder add(String string, int value) {
+            if (value == NO_MATCH) {
+                throw new IllegalArgumentException("Value " + NO_MATCH + " is reserved for no match");
+            }
+            if (string != null && !string.isEmpty()) {
+                strings.add(string);
+                values.add(value);
+            }
+            return this;
+        }
+
+        public DetectionStringMatcher build() {
+            int[] asciiIndex = new int[ASCII];
+            Arrays.fill(asciiIndex, -1);
+            Map<Character, Integer> otherIndex = new HashMap<>();
+            int alphabetSize = 0;
+            int maxStates = 1;
+            for (String string : strings) {
+                maxStates += string.length();
+                for (int i = 0; i < string.length(); i++) {
+                    char c = string.charAt(i);
+                    if (c < ASCII) {
+                        if (asciiIndex[c] < 0) {
+                            asciiIndex[c] = alphabetSize++;
+                        }
+                    } else if (!otherIndex.containsKey(c)) {
+                        otherIndex.put(c, alphabetSize++);
+                    }
+                }
+            }
+            int stride = Math.max(alphabetSize, 1);
+
+            // trie, -1 for a missing edge
+            int[] trie = new int[maxStates * stride];
+            Arrays.fill(trie, -1);
+            int[] firstMatch = new int[maxStates];
+            Arrays.fill(firstMatch, NONE);
+            int states = 1;
+            for (int s = 0; s < strings.size(); s++) {
+                String string = strings.get(s);
+                int state = 0;
+                for (int i = 0; i < string.length(); i++) {
+                    char c = string.charAt(i);
+                    int index = c < ASCII ? asciiIndex[c] : otherIndex.get(c);
+                    int next = trie[state * stride + index];
+                    if (next < 0) {
+                        next = states++;
+                        trie[state * stride + index] = next;
+                    }
+                    state = next;
+                }
+                firstMatch[state] = Math.min(firstMatch[state], s);
+            }
+
+            // breadth first: failure links, completed transitions and inherited matches
+            int[] transitions = new int[states * stride];
+            int[] failure = new int[states];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            for (int index = 0; index < alphabetSize; index++) {
+                int child = trie[index];
+                if (child < 0) {
+                    transitions[index] = 0;
+                } else {
+                    transitions[index] = child;
+                    failure[child] = 0;
+                    queue.add(child);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                firstMatch[state] = Math.min(firstMatch[state], firstMatch[failure[state]]);
+                for (int index = 0; index < alphabetSize; index++) {
+                    int child = trie[state * stride + index];
+                    int fallback = transitions[failure[state] * stride + index];
+                    if (child < 0) {
+                        transitions[state * stride + index] = fallback;
+                    } else {
+                        transitions[state * stride + index] = child;
+                        failure[child] = fallback;
+                        queue.add(child);
+                    }
+                }
+            }
+
+            int[] valueArray = new int[values.size()];
+            for (int i = 0; i < valueArray.length; i++) {
+                valueArray[i] = values.get(i);
+            }
+            return new DetectionStringMatcher(asciiIndex, otherIndex, stride, transitions,
+                    Arrays.copyOf(firstMatch, states), valueArray);
+        }
+    }
+}
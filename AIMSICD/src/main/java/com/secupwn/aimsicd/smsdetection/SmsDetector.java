@@ -19,7 +19,11 @@ import com.secupwn.aimsicd.R;
 import com.secupwn.aimsicd.data.model.GpsLocation;
 import com.secupwn.aimsicd.data.model.SmsData;
 import com.secupwn.aimsicd.data.model.SmsDetectionString;
+import com.secupwn.aimsicd.detection.Finding;
+import com.secupwn.aimsicd.enums.Status;
 import com.secupwn.aimsicd.service.AimsicdService;
+import com.secupwn.aimsicd.service.CellTracker;
+import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.MiscUtils;
 import com.secupwn.aimsicd.utils.RealmHelper;
 
@@ -30,6 +34,7 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.realm.Realm;
 import lombok.Cleanup;
@@ -73,6 +78,11 @@ public final class SmsDetector extends Thread {
     private RealmHelper mDbAdapter;
     private Context mContext;
     private static final int TYPE0 = 1, MWI = 2, WAP = 3;
+
+    /**
+     * Name of the Type-0 SMS finding reported to the {@link com.secupwn.aimsicd.detection.DetectorEngine}
+     */
+    public static final String DETECTOR_NAME = "SilentSms";
     // TODO: replace this with retrieval from AIMSICDDbAdapter
     private static final int LOGCAT_BUFFER_MAX_SIZE = 100;
 
@@ -84,6 +94,17 @@ public final class SmsDetector extends Thread {
 
     private static boolean isRunning = false;
 
+    /**
+     * Incremented whenever the detection strings change, see {@link #invalidateDetectionStrings()}
+     */
+    private static final AtomicInteger detectionStringsVersion = new AtomicInteger();
+
+    /**
+     * The detection strings compiled for {@link #checkForSms(String)}, only used by this thread
+     */
+    private DetectionStringMatcher matcher;
+    private int matcherVersion;
+
     public SmsDetector(Context context) {
         mContext = context;
         mDbAdapter = new RealmHelper(context);
@@ -97,6 +118,14 @@ public final class SmsDetector extends Thread {
         SmsDetector.isRunning = isRunning;
     }
 
+    /**
+     * Makes a running detector reload the {@link SmsDetectionString}s before checking the
+     * next line, call after changing them.
+     */
+    public static void invalidateDetectionStrings() {
+        detectionStringsVersion.incrementAndGet();
+    }
+
     public void startPopUpInfo(SmsType smsType) {
         MiscUtils.showNotification(
                 mContext,
@@ -244,34 +273,68 @@ public final class SmsDetector extends Thread {
     }
 
     private int checkForSms(String line) {
+        if (line == null) {
+            return 0;
+        }
 
-        Realm realm = Realm.getDefaultInstance();
+        //0 - null 1 = TYPE0, 2 = MWI, 3 = WAPPUSH
+        switch (getMatcher().match(line)) {
+            case TYPE0:
+                log.info("TYPE0 detected");
+                return TYPE0;
+            case MWI:
+                log.info("MWI detected");
+                return MWI;
+            case WAP:
+                log.info("WAPPUSH detected");
+                return WAP;
+            default:
+                // This is currently unused, but keeping as an example of possible data contents
+                // else if (line.contains("BroadcastReceiver action: android.provider.Telephony.SMS_RECEIVED")) {
+                // log.info("SMS found");
+                // return 0;
+                // }
+                return 0;
+        }
+    }
 
+    /**
+     * @return The matcher for the current detection strings, rebuilt only after they changed
+     */
+    private DetectionStringMatcher getMatcher() {
+        int version = detectionStringsVersion.get();
+        if (matcher == null || matcherVersion != version) {
+            matcher = loadMatcher();
+            matcherVersion = version;
+        }
+        return matcher;
+    }
 
-        //0 - null 1 = TYPE0, 2 = MWI, 3 = WAPPUSH
+    private static DetectionStringMatcher loadMatcher() {
+        @Cleanup Realm realm = Realm.getDefaultInstance();
+        DetectionStringMatcher.Builder builder = new DetectionStringMatcher.Builder();
+        int count = 0;
         for (SmsDetectionString detectionString : realm.where(SmsDetectionString.class).findAll()) {
-            //looping through detection strings to see does logcat line match
-            if (line.contains(detectionString.getDetectionString())) {
-                if ("TYPE0".equalsIgnoreCase(detectionString.getSmsType())) {
-                    log.info("TYPE0 detected");
-                    return TYPE0;
-                } else if ("MWI".equalsIgnoreCase(detectionString.getSmsType())) {
-                    log.info("MWI detected");
-                    return MWI;
-                } else if ("WAPPUSH".equalsIgnoreCase(detectionString.getSmsType())) {
-                    log.info("WAPPUSH detected");
-                    return WAP;
-                }
-
+            int type = toSmsType(detectionString.getSmsType());
+            // strings of other types (e.g. FLASH) are stored but not detected
+            if (type != 0) {
+                builder.add(detectionString.getDetectionString(), type);
+                count++;
             }
-            // This is currently unused, but keeping as an example of possible data contents
-            // else if (line.contains("BroadcastReceiver action: android.provider.Telephony.SMS_RECEIVED")) {
-            // log.info("SMS found");
-            // return 0;
-            // }
         }
-        realm.close();
+        DetectionStringMatcher result = builder.build();
+        log.debug("Compiled {} detection strings into {} states", count, result.size());
+        return result;
+    }
 
+    private static int toSmsType(String smsType) {
+        if ("TYPE0".equalsIgnoreCase(smsType)) {
+            return TYPE0;
+        } else if ("MWI".equalsIgnoreCase(smsType)) {
+            return MWI;
+        } else if ("WAPPUSH".equalsIgnoreCase(smsType)) {
+            return WAP;
+        }
         return 0;
     }
 
@@ -296,7 +359,11 @@ public final class SmsDetector extends Thread {
 
             realm.commitTransaction();
 
-            mDbAdapter.toEventLog(realm, 3, "Detected Type-0 SMS");
+            mDbAdapter.toEventLog(3, "Detected Type-0 SMS");
+            if (mBound) {
+                mAIMSICDService.getCellTracker().getDetectorEngine().report(new Finding(DETECTOR_NAME,
+                        Status.DANGER, mContext.getString(R.string.alert_silent_sms_detected)));
+            }
             startPopUpInfo(SmsType.SILENT);
         } else {
             log.debug("Detected Sms already logged");
@@ -324,7 +391,7 @@ public final class SmsDetector extends Thread {
 
             realm.commitTransaction();
 
-            mDbAdapter.toEventLog(realm, 4, "Detected MWI SMS");
+            mDbAdapter.toEventLog(4, "Detected MWI SMS");
             startPopUpInfo(SmsType.MWI);
         } else {
             log.debug("Detected Sms already logged");
@@ -352,7 +419,7 @@ public final class SmsDetector extends Thread {
 
             realm.commitTransaction();
 
-            mDbAdapter.toEventLog(realm, 6, "Detected WAPPUSH SMS");
+            mDbAdapter.toEventLog(6, "Detected WAPPUSH SMS");
             startPopUpInfo(SmsType.WAP_PUSH);
         } else {
             log.debug("Detected SMS already logged");
@@ -360,8 +427,9 @@ public final class SmsDetector extends Thread {
     }
 
     private void setCurrentLocationData(Realm realm, SmsData capturedSms) {
-        capturedSms.setLocationAreaCode(mAIMSICDService.getCellTracker().getMonitorCell().getLocationAreaCode());
-        capturedSms.setCellId(mAIMSICDService.getCellTracker().getMonitorCell().getCellId());
+        Cell monitorCell = CellTracker.getMonitorCell();
+        capturedSms.setLocationAreaCode(monitorCell.getLocationAreaCode());
+        capturedSms.setCellId(monitorCell.getCellId());
         capturedSms.setRadioAccessTechnology(mAIMSICDService.getCell().getRat());
         boolean isRoaming = false;
 
@@ -44,12 +44,14 @@ import com.secupwn.aimsicd.ui.fragments.DbViewerFragment;
 import com.secupwn.aimsicd.ui.fragments.DeviceFragment;
 import com.secupwn.aimsicd.ui.fragments.MapFragment;
 import com.secupwn.aimsicd.utils.AsyncResponse;
+import com.secupwn.aimsicd.utils.BackupTask;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.GeoLocation;
 import com.secupwn.aimsicd.utils.Helpers;
 import com.secupwn.aimsicd.utils.Icon;
 import com.secupwn.aimsicd.utils.LocationServices;
 import com.secupwn.aimsicd.utils.RequestTask;
+import com.secupwn.aimsicd.utils.TinyDB;
 
 import java.util.List;
 
@@ -83,6 +85,7 @@ public class MainActivity extends BaseActivity implements AsyncResponse {
     private DrawerMenuActivityConfiguration mNavConf;
 
     private static final int ACTIVITY_RESULT_SELECT_CELLTOWERS = 1;
+    private static final int ACTIVITY_RESULT_SELECT_BACKUP = 2;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -258,6 +261,14 @@ public class MainActivity extends BaseActivity implements AsyncResponse {
             Helpers.askAndDeleteDb(this);
 
 
+        } else if (selectedItem.getId() == DrawerMenu.ID.DATABASE_SETTINGS.BACKUP_DB) {
+            Helpers.msgShort(this, getString(R.string.backup_db_running));
+            new BackupTask(this, null).execute();
+        } else if (selectedItem.getId() == DrawerMenu.ID.DATABASE_SETTINGS.RESTORE_DB) {
+            Intent pickFileIntent = new Intent(Intent.ACTION_GET_CONTENT);
+            pickFileIntent.setType("*/*");
+            pickFileIntent.addCategory(Intent.CATEGORY_OPENABLE);
+            startActivityForResult(pickFileIntent, ACTIVITY_RESULT_SELECT_BACKUP);
         } else if (selectedItem.getId() == DrawerMenu.ID.APPLICATION.DOWNLOAD_LOCAL_BTS_DATA) {
             downloadBtsDataIfApiKeyAvailable();
         } else if (selectedItem.getId() == DrawerMenu.ID.APPLICATION.IMPORT_CELL_TOWERS_DATA) {
@@ -299,9 +310,29 @@ public class MainActivity extends BaseActivity implements AsyncResponse {
                 log.debug("Chosen file: {}", data.getDataString());
                 importCellTowersData(data.getData());
             }
+        } else if (requestCode == ACTIVITY_RESULT_SELECT_BACKUP) {
+            if (resultCode == RESULT_OK) {
+                log.debug("Chosen backup: {}", data.getDataString());
+                askAndRestoreBackup(data.getData());
+            }
         }
     }
 
+    private void askAndRestoreBackup(final Uri backupFile) {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.restore_database)
+                .setMessage(R.string.restore_database_question)
+                .setNegativeButton(R.string.open_cell_id_button_cancel, null)
+                .setPositiveButton(R.string.open_cell_id_button_ok, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        Helpers.msgShort(MainActivity.this, getString(R.string.restore_db_running));
+                        new BackupTask(MainActivity.this, backupFile).execute();
+                    }
+                })
+                .show();
+    }
+
     private void openFragment(Fragment fragment) {
         FragmentTransaction transaction = getSupportFragmentManager().beginTransaction();
         transaction.setTransition(FragmentTransaction.TRANSIT_FRAGMENT_OPEN);
@@ -311,7 +342,7 @@ public class MainActivity extends BaseActivity implements AsyncResponse {
     }
 
     private void downloadBtsDataIfApiKeyAvailable() {
-        if (CellTracker.OCID_API_KEY != null && !CellTracker.OCID_API_KEY.equals("NA")) {
+        if (CellTracker.hasOcidApiKey()) {
 
             Cell cell = new Cell();
             TelephonyManager tm = (TelephonyManager) getSystemService(Context.TELEPHONY_SERVICE);
@@ -484,6 +515,7 @@ public class MainActivity extends BaseActivity implements AsyncResponse {
     @Override
     public void onPause() {
         super.onPause();
+        TinyDB.getInstance().flush();
     }
 
     /**
@@ -100,7 +100,7 @@ public class OpenCellIdActivity extends BaseActivity {
             if (isKeyValid(s)) {
                 String opcidKey = getString(R.string.pref_ocid_key);
                 prefs.edit().putString(opcidKey, s).commit();
-                CellTracker.OCID_API_KEY = s;
+                CellTracker.setOcidApiKey(s);
 
                 Helpers.msgShort(OpenCellIdActivity.this, getString(R.string.ocid_api_success));
 
@@ -84,6 +84,12 @@ public class DrawerMenuItem implements NavDrawerItem {
             case MAIN.AT_COMMAND_INTERFACE:
                 return R.string.help_main_at_command_interface;
 
+            case DATABASE_SETTINGS.BACKUP_DB:
+                return R.string.help_settings_backup_db;
+
+            case DATABASE_SETTINGS.RESTORE_DB:
+                return R.string.help_settings_restore_db;
+
             case DATABASE_SETTINGS.RESET_DB:
                 return R.string.help_settings_reset_db;
 
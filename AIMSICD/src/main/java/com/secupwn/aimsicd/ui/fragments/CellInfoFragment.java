@@ -24,7 +24,6 @@ import android.content.Intent;
 import android.content.ServiceConnection;
 import android.os.AsyncTask;
 import android.os.Bundle;
-import android.os.Handler;
 import android.os.IBinder;
 import android.support.v4.widget.SwipeRefreshLayout;
 import android.text.TextUtils;
@@ -42,7 +41,7 @@ import com.secupwn.aimsicd.adapters.CardItemData;
 import com.secupwn.aimsicd.adapters.CellCardInflater;
 import com.secupwn.aimsicd.rilexecutor.RilExecutor;
 import com.secupwn.aimsicd.service.AimsicdService;
-import com.secupwn.aimsicd.service.CellTracker;
+import com.secupwn.aimsicd.service.RefreshScheduler;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.Helpers;
 
@@ -63,6 +62,8 @@ import io.freefair.android.injection.app.InjectionFragment;
  * pref_refresh_entries    (the names)
  * pref_refresh_values     (the values in seconds)
  * <p>
+ * and adapted by the {@link RefreshScheduler} while visible.
+ * <p>
  * <p>
  * Dependencies:   Seem that this is intimately connected to: CellTracker.java service...
  * <p>
@@ -81,7 +82,7 @@ public class CellInfoFragment extends InjectionFragment implements SwipeRefreshL
     private RilExecutor rilExecutor;
     private boolean mBound;
     private Context mContext;
-    private final Handler timerHandler = new Handler();
+    private RefreshScheduler.Subscription refreshSubscription;
 
     private List<Cell> neighboringCells;
 
@@ -94,19 +95,18 @@ public class CellInfoFragment extends InjectionFragment implements SwipeRefreshL
     private BaseInflaterAdapter<CardItemData> mBaseInflaterAdapter;
     private CellInfoAdapter mCellInfoAdapter;
 
-    private final Runnable timerRunnable = new Runnable() {
+    private final Runnable refreshTask = new Runnable() {
 
         @Override
         public void run() {
             updateUI();
-            timerHandler.postDelayed(this, CellTracker.REFRESH_RATE);
         }
     };
 
     @Override
     public void onPause() {
         super.onPause();
-        timerHandler.removeCallbacks(timerRunnable);
+        stopRefreshing();
     }
 
     @Override
@@ -116,15 +116,33 @@ public class CellInfoFragment extends InjectionFragment implements SwipeRefreshL
             // Bind to LocalService
             Intent intent = new Intent(mContext, AimsicdService.class);
             mContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE);
+        } else {
+            startRefreshing();
+        }
+    }
+
+    /**
+     * Refresh display periodically while visible, unless the preference (pref_refresh_values)
+     * is set to manual (0). The interval is decided by the {@link RefreshScheduler}.
+     */
+    private void startRefreshing() {
+        if (refreshSubscription != null || !mBound) {
+            return;
         }
+        RefreshScheduler scheduler = mAimsicdService.getCellTracker().getRefreshScheduler();
+        refreshSubscription = scheduler.subscribe(RefreshScheduler.Kind.UI, refreshTask);
 
-        // Refresh display if preference (pref_refresh_values) is not set to manual (0)
-        // For automatic it is "1" and defined in:
-        //    CellTracker.java :: onSharedPreferenceChanged()
-        if (CellTracker.REFRESH_RATE != 0) {
-            timerHandler.postDelayed(timerRunnable, 0);
+        long interval = scheduler.getInterval(RefreshScheduler.Kind.UI);
+        if (interval != RefreshScheduler.PAUSED) {
             Helpers.msgShort(mContext, mContext.getString(R.string.refreshing_every) + " " +
-                    TimeUnit.MILLISECONDS.toSeconds(CellTracker.REFRESH_RATE) + " " + mContext.getString(R.string.seconds));
+                    TimeUnit.MILLISECONDS.toSeconds(interval) + " " + mContext.getString(R.string.seconds));
+        }
+    }
+
+    private void stopRefreshing() {
+        if (refreshSubscription != null) {
+            refreshSubscription.cancel();
+            refreshSubscription = null;
         }
     }
 
@@ -152,7 +170,7 @@ public class CellInfoFragment extends InjectionFragment implements SwipeRefreshL
             mContext.unbindService(mConnection);
             mBound = false;
         }
-        timerHandler.removeCallbacks(timerRunnable);
+        stopRefreshing();
     }
 
     /**
@@ -165,11 +183,17 @@ public class CellInfoFragment extends InjectionFragment implements SwipeRefreshL
             mAimsicdService = ((AimsicdService.AimscidBinder) service).getService();
             rilExecutor = mAimsicdService.getRilExecutor();
             mBound = true;
-            updateUI();
+            if (isResumed()) {
+                // runs updateUI() right away
+                startRefreshing();
+            } else {
+                updateUI();
+            }
         }
 
         @Override
         public void onServiceDisconnected(ComponentName arg0) {
+            stopRefreshing();
             mBound = false;
         }
     };
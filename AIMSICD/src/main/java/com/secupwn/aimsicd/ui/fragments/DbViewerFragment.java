@@ -1,37 +1,61 @@
 package com.secupwn.aimsicd.ui.fragments;
 
 import android.app.Activity;
+import android.app.AlertDialog;
+import android.app.DatePickerDialog;
+import android.app.TimePickerDialog;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
+import android.widget.Button;
+import android.widget.DatePicker;
+import android.widget.EditText;
 import android.widget.ListAdapter;
 import android.widget.ListView;
+import android.widget.RadioGroup;
 import android.widget.Spinner;
+import android.widget.TimePicker;
 
 import com.secupwn.aimsicd.R;
 import com.secupwn.aimsicd.adapters.DbViewerSpinnerAdapter;
-import com.secupwn.aimsicd.adapters.MeasuredCellStrengthAdapter;
-import com.secupwn.aimsicd.data.adapter.BaseStationAdapter;
+import com.secupwn.aimsicd.data.DatabaseExporter;
+import com.secupwn.aimsicd.data.DatabaseQuery;
+import com.secupwn.aimsicd.data.adapter.BaseStationTable;
 import com.secupwn.aimsicd.data.adapter.DefaultLocationAdapter;
 import com.secupwn.aimsicd.data.adapter.DetectionStringAdapter;
-import com.secupwn.aimsicd.data.adapter.EventAdapter;
-import com.secupwn.aimsicd.data.adapter.ImportAdapter;
-import com.secupwn.aimsicd.data.adapter.MeasureAdapter;
+import com.secupwn.aimsicd.data.adapter.EventTable;
+import com.secupwn.aimsicd.data.adapter.ImportTable;
+import com.secupwn.aimsicd.data.adapter.MeasureTable;
+import com.secupwn.aimsicd.data.adapter.MeasuredCellStrengthTable;
+import com.secupwn.aimsicd.data.adapter.PageLoader;
+import com.secupwn.aimsicd.data.adapter.PagedRowAdapter;
+import com.secupwn.aimsicd.data.adapter.PagedTable;
 import com.secupwn.aimsicd.data.adapter.SmsDataAdapter;
-import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
 import com.secupwn.aimsicd.data.model.DefaultLocation;
-import com.secupwn.aimsicd.data.model.Event;
-import com.secupwn.aimsicd.data.model.Import;
-import com.secupwn.aimsicd.data.model.Measure;
 import com.secupwn.aimsicd.data.model.SmsData;
 import com.secupwn.aimsicd.data.model.SmsDetectionString;
 import com.secupwn.aimsicd.enums.StatesDbViewer;
+import com.secupwn.aimsicd.utils.Helpers;
 import com.secupwn.aimsicd.utils.RealmHelper;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
 import io.freefair.android.injection.annotation.InjectView;
 import io.freefair.android.injection.annotation.XmlLayout;
 import io.freefair.android.injection.app.InjectionFragment;
 import io.realm.Realm;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * Description:    Class that handles the display of the items in the 'Database Viewer' (DBV)
@@ -39,9 +63,19 @@ import io.realm.Realm;
  * Issues:
  * <p/>
  * Notes:          See issue #234 for details on how to format the UI
+ *                 The potentially large tables are shown through a {@link PageLoader},
+ *                 newest rows first, with more pages loaded while scrolling.
+ *                 Events, measurements and cells can be exported to CSV or JSON with
+ *                 time and cell filters, see {@link DatabaseExporter}.
  */
+@Slf4j
 @XmlLayout(R.layout.fragment_db_viewer)
-public final class DbViewerFragment extends InjectionFragment {
+public final class DbViewerFragment extends InjectionFragment implements PageLoader.Listener {
+
+    /**
+     * Load the next page when the last visible row is this close to the end of the list
+     */
+    private static final int PREFETCH_ROWS = 10;
 
     private RealmHelper mDb;
     private StatesDbViewer mTableSelected;
@@ -55,7 +89,21 @@ public final class DbViewerFragment extends InjectionFragment {
     @InjectView(R.id.db_list_empty)
     private View emptyView;
 
+    @InjectView(R.id.jump_to_time)
+    private Button jumpToTime;
+
+    @InjectView(R.id.export_table)
+    private Button exportTable;
+
     private Realm realm;
+    private PageLoader pageLoader;
+    private PagedTable<?> pagedTable;
+    private PagedRowAdapter pagedAdapter;
+
+    /**
+     * The exportable table behind the shown one, null if it can't be exported
+     */
+    private DatabaseQuery.Table exportQueryTable;
 
     public DbViewerFragment() {
     }
@@ -70,6 +118,8 @@ public final class DbViewerFragment extends InjectionFragment {
     public void onViewCreated(View view, Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
+        pageLoader = new PageLoader(this);
+
         DbViewerSpinnerAdapter mSpinnerAdapter = new DbViewerSpinnerAdapter(getActivity(), R.layout.item_spinner_db_viewer);
         tblSpinner.setAdapter(mSpinnerAdapter);
         tblSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
@@ -83,13 +133,13 @@ public final class DbViewerFragment extends InjectionFragment {
 
                 switch (position) {
                     case 0:
-                        setListAdapter(new BaseStationAdapter(realm.where(BaseTransceiverStation.class).findAll()));
+                        showPaged(new BaseStationTable(), DatabaseQuery.Table.BASE_STATION);
                         break;
                     case 1:
-                        setListAdapter(new MeasureAdapter(realm.where(Measure.class).findAll()));
+                        showPaged(new MeasureTable(), DatabaseQuery.Table.MEASURE);
                         break;
                     case 2:
-                        setListAdapter(new ImportAdapter(realm.where(Import.class).findAll()));
+                        showPaged(new ImportTable(), null);
                         break;
                     case 3:
                         setListAdapter(new DefaultLocationAdapter(realm.where(DefaultLocation.class).findAll()));
@@ -98,10 +148,10 @@ public final class DbViewerFragment extends InjectionFragment {
                         setListAdapter(new SmsDataAdapter(realm.where(SmsData.class).findAll()));
                         break;
                     case 5:
-                        setListAdapter(new MeasuredCellStrengthAdapter(realm.where(Measure.class).findAll()));
+                        showPaged(new MeasuredCellStrengthTable(), DatabaseQuery.Table.MEASURE);
                         break;
                     case 6:
-                        setListAdapter(new EventAdapter(realm.where(Event.class).findAll()));
+                        showPaged(new EventTable(), DatabaseQuery.Table.EVENT);
                         break;
                     case 7:
                         setListAdapter(new DetectionStringAdapter(realm.where(SmsDetectionString.class).findAll()));
@@ -115,12 +165,215 @@ public final class DbViewerFragment extends InjectionFragment {
             public void onNothingSelected(AdapterView<?> parentView) {
             }
         });
+
+        lv.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+                if (pagedTable != null && totalItemCount > 0
+                        && firstVisibleItem + visibleItemCount >= totalItemCount - PREFETCH_ROWS) {
+                    pageLoader.loadNext();
+                }
+            }
+        });
+
+        jumpToTime.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                pickJumpTime();
+            }
+        });
+
+        exportTable.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (exportQueryTable != null) {
+                    showExportDialog(exportQueryTable);
+                }
+            }
+        });
+    }
+
+    /**
+     * Shows a table through the {@link PageLoader}, the rows appear once the first page is loaded.
+     *
+     * @param queryTable The table exported by the export button, null to hide it
+     */
+    private void showPaged(PagedTable<?> table, DatabaseQuery.Table queryTable) {
+        pagedTable = table;
+        pagedAdapter = null;
+        exportQueryTable = queryTable;
+        jumpToTime.setVisibility(View.VISIBLE);
+        exportTable.setVisibility(queryTable == null ? View.GONE : View.VISIBLE);
+        getActivity().setProgressBarIndeterminateVisibility(true);
+        pageLoader.open(table, Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onPageLoaded(List<String[]> page, boolean first) {
+        if (first) {
+            pagedAdapter = new PagedRowAdapter(pagedTable);
+            pagedAdapter.addPage(page);
+            setListAdapter(page.isEmpty() ? null : pagedAdapter);
+        } else if (pagedAdapter != null) {
+            pagedAdapter.addPage(page);
+        }
+    }
+
+    private void pickJumpTime() {
+        final Calendar calendar = Calendar.getInstance();
+        new DatePickerDialog(getActivity(), new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+                calendar.set(year, monthOfYear, dayOfMonth);
+                new TimePickerDialog(getActivity(), new TimePickerDialog.OnTimeSetListener() {
+                    @Override
+                    public void onTimeSet(TimePicker view, int hourOfDay, int minute) {
+                        calendar.set(Calendar.HOUR_OF_DAY, hourOfDay);
+                        calendar.set(Calendar.MINUTE, minute);
+                        calendar.set(Calendar.SECOND, 59);
+                        calendar.set(Calendar.MILLISECOND, 999);
+                        if (pagedTable != null) {
+                            pagedAdapter = null;
+                            pageLoader.open(pagedTable, calendar.getTimeInMillis() + 1);
+                        }
+                    }
+                }, calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), true).show();
+            }
+        }, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH)).show();
+    }
+
+    /**
+     * Asks for the filters and the format, then exports the matching rows of {@code table}
+     * in the background.
+     */
+    private void showExportDialog(final DatabaseQuery.Table table) {
+        final View view = getActivity().getLayoutInflater().inflate(R.layout.dialog_db_export, null, false);
+        final Button from = (Button) view.findViewById(R.id.export_from);
+        final Button to = (Button) view.findViewById(R.id.export_to);
+        final EditText cellId = (EditText) view.findViewById(R.id.export_cell_id);
+        final EditText lac = (EditText) view.findViewById(R.id.export_lac);
+        final EditText detectionType = (EditText) view.findViewById(R.id.export_detection_type);
+        final RadioGroup format = (RadioGroup) view.findViewById(R.id.export_format);
+        detectionType.setVisibility(table == DatabaseQuery.Table.EVENT ? View.VISIBLE : View.GONE);
+
+        // start of the first and end of the last day, Long.MIN_VALUE / MAX_VALUE while unset
+        final long[] range = {Long.MIN_VALUE, Long.MAX_VALUE};
+        from.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                pickExportDay(from, R.string.export_from, range, 0);
+            }
+        });
+        to.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                pickExportDay(to, R.string.export_to, range, 1);
+            }
+        });
+
+        new AlertDialog.Builder(getActivity())
+                .setTitle(R.string.export_table)
+                .setView(view)
+                .setPositiveButton(R.string.export_table, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        DatabaseQuery query = DatabaseQuery.of(table).between(range[0], range[1]);
+                        if (!TextUtils.isEmpty(cellId.getText())) {
+                            query.cellId(Integer.parseInt(cellId.getText().toString()));
+                        }
+                        if (!TextUtils.isEmpty(lac.getText())) {
+                            query.locationAreaCode(Integer.parseInt(lac.getText().toString()));
+                        }
+                        if (table == DatabaseQuery.Table.EVENT && !TextUtils.isEmpty(detectionType.getText())) {
+                            query.detectionType(Integer.parseInt(detectionType.getText().toString()));
+                        }
+                        DatabaseExporter.Format selected = format.getCheckedRadioButtonId() == R.id.export_format_json
+                                ? DatabaseExporter.Format.JSON : DatabaseExporter.Format.CSV;
+                        Helpers.msgShort(getActivity(), getString(R.string.export_running));
+                        new ExportTask(getActivity(), selected).execute(query);
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * @param index 0 to set the first day of {@code range}, 1 to set the last one
+     */
+    private void pickExportDay(final Button button, final int label, final long[] range, final int index) {
+        final Calendar calendar = Calendar.getInstance();
+        new DatePickerDialog(getActivity(), new DatePickerDialog.OnDateSetListener() {
+            @Override
+            public void onDateSet(DatePicker view, int year, int monthOfYear, int dayOfMonth) {
+                calendar.set(year, monthOfYear, dayOfMonth, 0, 0, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                if (index == 1) {
+                    calendar.add(Calendar.DAY_OF_MONTH, 1);
+                    calendar.add(Calendar.MILLISECOND, -1);
+                }
+                range[index] = calendar.getTimeInMillis();
+                button.setText(getString(label,
+                        DateFormat.getDateInstance().format(new Date(range[index]))));
+            }
+        }, calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH)).show();
+    }
+
+    /**
+     * Writes an export to the app's external files directory and toasts where it went.
+     */
+    private static class ExportTask extends AsyncTask<DatabaseQuery, Void, String> {
+        private final Context context;
+        private final DatabaseExporter.Format format;
+
+        ExportTask(Context context, DatabaseExporter.Format format) {
+            this.context = context.getApplicationContext();
+            this.format = format;
+        }
+
+        @Override
+        protected String doInBackground(DatabaseQuery... queries) {
+            DatabaseQuery query = queries[0];
+            File dir = new File(context.getExternalFilesDir(null), "export");
+            File file = new File(dir, query.getTable().name().toLowerCase(Locale.US) + "-" + System.currentTimeMillis()
+                    + (format == DatabaseExporter.Format.JSON ? ".json" : ".csv"));
+            Realm realm = Realm.getDefaultInstance();
+            try {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Could not create " + dir);
+                }
+                long rows = DatabaseExporter.export(realm, query, format, file);
+                return context.getString(R.string.export_done, rows, file.getAbsolutePath());
+            } catch (IOException e) {
+                log.error("Export of " + query.getTable() + " failed", e);
+                return context.getString(R.string.export_failed, e.getMessage());
+            } finally {
+                realm.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(String message) {
+            Helpers.msgLong(context, message);
+        }
     }
 
     private void setListAdapter(ListAdapter adapter) {
         if (getActivity() == null) {
             return; // fragment detached
         }
+        if (!(adapter instanceof PagedRowAdapter) && adapter != null) {
+            // one of the small tables, shown directly from the realm
+            pagedTable = null;
+            pagedAdapter = null;
+            pageLoader.close();
+            exportQueryTable = null;
+            jumpToTime.setVisibility(View.GONE);
+            exportTable.setVisibility(View.GONE);
+        }
 
         lv.setEmptyView(emptyView);
         if (adapter != null) {
@@ -138,11 +391,16 @@ public final class DbViewerFragment extends InjectionFragment {
     public void onStart() {
         super.onStart();
         realm = Realm.getDefaultInstance();
+        if (pagedTable != null) {
+            pagedAdapter = null;
+            pageLoader.open(pagedTable, Long.MAX_VALUE);
+        }
     }
 
     @Override
     public void onStop() {
         super.onStop();
+        pageLoader.close();
         realm.close();
     }
 }
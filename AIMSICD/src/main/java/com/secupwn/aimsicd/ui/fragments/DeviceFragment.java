@@ -247,7 +247,7 @@ public class DeviceFragment extends InjectionFragment implements SwipeRefreshLay
 
     @Override
     public void onRefresh() {
-        if (CellTracker.OCID_API_KEY != null && !CellTracker.OCID_API_KEY.equals("NA")) {
+        if (CellTracker.hasOcidApiKey()) {
             Request request = createOpenCellIdApiCall();
             okHttpClient.newCall(request).enqueue(getOpenCellIdResponseCallback());
         } else {
@@ -290,7 +290,7 @@ public class DeviceFragment extends InjectionFragment implements SwipeRefreshLay
     //TODO: Use Retrofit for this
     private Request createOpenCellIdApiCall() {
         StringBuilder sb = new StringBuilder();
-        sb.append("http://www.opencellid.org/cell/get?key=").append(CellTracker.OCID_API_KEY);
+        sb.append("http://www.opencellid.org/cell/get?key=").append(CellTracker.getOcidApiKey());
 
         if (mAimsicdService.getCell().getMobileCountryCode() != Integer.MAX_VALUE) {
             sb.append("&mcc=").append(mAimsicdService.getCell().getMobileCountryCode());
@@ -32,14 +32,17 @@ import com.secupwn.aimsicd.AndroidIMSICatcherDetector;
 import com.secupwn.aimsicd.BuildConfig;
 import com.secupwn.aimsicd.R;
 import com.secupwn.aimsicd.constants.TinyDbKeys;
+import com.secupwn.aimsicd.data.MeasureArchive;
+import com.secupwn.aimsicd.data.MeasureRecord;
+import com.secupwn.aimsicd.data.ReferenceRealm;
 import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
 import com.secupwn.aimsicd.data.model.GpsLocation;
 import com.secupwn.aimsicd.data.model.Import;
-import com.secupwn.aimsicd.data.model.Measure;
 import com.secupwn.aimsicd.map.CellTowerGridMarkerClusterer;
 import com.secupwn.aimsicd.map.CellTowerMarker;
 import com.secupwn.aimsicd.map.MarkerData;
 import com.secupwn.aimsicd.service.AimsicdService;
+import com.secupwn.aimsicd.service.NeighborLocationResolver;
 import com.secupwn.aimsicd.ui.activities.MapPrefActivity;
 import com.secupwn.aimsicd.utils.Cell;
 import com.secupwn.aimsicd.utils.GeoLocation;
@@ -413,10 +416,11 @@ public final class MapFragment extends InjectionFragment implements OnSharedPref
                         final int mnc = baseStation.getMobileNetworkCode();
                         final int psc = baseStation.getPrimaryScramblingCode();
 
-                        Measure first = realm.where(Measure.class).equalTo("baseStation.cellId", baseStation.getCellId()).findFirst();
-                        final String rat = first.getRadioAccessTechnology();
-                        final double dLat = baseStation.getGpsLocation().getLatitude();
-                        final double dLng = baseStation.getGpsLocation().getLongitude();
+                        // the measurements of cells not seen for a while are only in the archive
+                        MeasureRecord newest = MeasureArchive.newest(realm, baseStation);
+                        final String rat = newest == null ? "" : newest.getRadioAccessTechnologyName();
+                        final double dLat = baseStation.getLatitude();
+                        final double dLng = baseStation.getLongitude();
 
                         if (Double.doubleToRawLongBits(dLat) == 0
                                 && Double.doubleToRawLongBits(dLng) == 0) {
@@ -486,13 +490,17 @@ public final class MapFragment extends InjectionFragment implements OnSharedPref
                         log.warn("thread interrupted", e);
                     }
                 }
-                List<Cell> nc = mAimsicdService.getCellTracker().updateNeighboringCells();
-                for (Cell cell : nc) {
+                List<NeighborLocationResolver.Resolution> nc = mAimsicdService.getCellTracker().resolveNeighboringCells();
+                for (NeighborLocationResolver.Resolution resolution : nc) {
                     if (isCancelled() || !isAdded()) {
                         return null;
                     }
+                    if (!resolution.isResolved()) {
+                        continue; // location of the neighbor is unknown, don't plot it at (0,0)
+                    }
+                    Cell cell = resolution.getCell();
                     try {
-                        mLatestCellLoc = new GeoPoint(cell.getLat(), cell.getLon());
+                        mLatestCellLoc = new GeoPoint(resolution.getLatitude(), resolution.getLongitude());
                         CellTowerMarker ovm = new CellTowerMarker(getActivity(), mMap,
                                 getString(R.string.cell_id_label) + cell.getCellId(),
                                 "", mLatestCellLoc,
@@ -584,7 +592,7 @@ public final class MapFragment extends InjectionFragment implements OnSharedPref
 
         Drawable cellTowerMarkerIcon = getResources().getDrawable(R.drawable.ic_map_pin_green);
 
-        @Cleanup Realm realm = Realm.getDefaultInstance();
+        @Cleanup Realm realm = ReferenceRealm.getInstance();
 
         RealmResults<Import> importRealmResults = mDbHelper.returnOcidBtsByNetwork(realm, currentMmc, currentMnc).findAll();
         for (Import anImport : importRealmResults) {
@@ -594,9 +602,9 @@ public final class MapFragment extends InjectionFragment implements OnSharedPref
             final int mcc = anImport.getMobileCountryCode();
             final int mnc = anImport.getMobileNetworkCode();
             final int psc = anImport.getPrimaryScramblingCode();
-            final String rat = anImport.getRadioAccessTechnology();
-            final double dLat = anImport.getGpsLocation().getLatitude();
-            final double dLng = anImport.getGpsLocation().getLongitude();
+            final String rat = anImport.getRadioAccessTechnologyName();
+            final double dLat = anImport.getLatitude();
+            final double dLng = anImport.getLongitude();
             final GeoPoint location = new GeoPoint(dLat, dLng);
             //where is c.getString(6)AvgSigStr
             final int samples = anImport.getSamples();
@@ -0,0 +1,106 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.utils;
+
+import android.content.Context;
+import android.net.Uri;
+
+import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.backup.DatabaseBackup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import io.freefair.android.injection.app.InjectionAppCompatActivity;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Description:
+ * <p/>
+ * Writes a {@link DatabaseBackup} to the app's external files directory, or restores one
+ * picked by the user, off the main thread. The result is shown as a toast.
+ * <p/>
+ */
+@Slf4j
+public class BackupTask extends BaseAsyncTask<Void, Void, String> {
+
+    private final Context mAppContext;
+
+    /**
+     * The backup to restore, null to write a new backup
+     */
+    private final Uri restoreFile;
+
+    /**
+     * @param restoreFile The backup to restore, null to write a new backup
+     */
+    public BackupTask(InjectionAppCompatActivity context, Uri restoreFile) {
+        super(context);
+        this.mAppContext = context.getApplicationContext();
+        this.restoreFile = restoreFile;
+    }
+
+    @Override
+    protected String doInBackground(Void... params) {
+        try {
+            if (restoreFile == null) {
+                File dir = new File(mAppContext.getExternalFilesDir(null), "backup");
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("Could not create " + dir);
+                }
+                File file = new File(dir, "aimsicd-" + System.currentTimeMillis() + ".aimsicdb");
+                DatabaseBackup.backup(file);
+                return mAppContext.getString(R.string.backup_db_done, file.getAbsolutePath());
+            }
+
+            // the backup is read twice (verify, restore), so it needs to be a local file
+            File copy = new File(mAppContext.getCacheDir(), "restore.aimsicdb");
+            try {
+                copy(restoreFile, copy);
+                DatabaseBackup.restore(copy);
+            } finally {
+                if (copy.exists() && !copy.delete()) {
+                    log.warn("Could not delete {}", copy);
+                }
+            }
+            return mAppContext.getString(R.string.restore_db_done);
+        } catch (IOException | IllegalStateException e) {
+            log.error(restoreFile == null ? "Backup failed" : "Restore of " + restoreFile + " failed", e);
+            return mAppContext.getString(restoreFile == null ? R.string.backup_db_failed : R.string.restore_db_failed,
+                    e.getMessage());
+        }
+    }
+
+    private void copy(Uri source, File target) throws IOException {
+        InputStream in = mAppContext.getContentResolver().openInputStream(source);
+        if (in == null) {
+            throw new IOException("Could not open " + source);
+        }
+        try {
+            OutputStream out = new FileOutputStream(target);
+            try {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected void onPostExecute(String message) {
+        super.onPostExecute(message);
+        Helpers.msgLong(mAppContext, message);
+    }
+}
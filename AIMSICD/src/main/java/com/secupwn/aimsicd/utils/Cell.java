@@ -309,6 +309,8 @@ public class Cell implements Parcelable {
                 return "EVDO rev. B";
             case TelephonyManager.NETWORK_TYPE_GPRS:
                 return "GPRS";
+            case TelephonyManager.NETWORK_TYPE_GSM:
+                return "GSM";
             case TelephonyManager.NETWORK_TYPE_HSDPA:
                 return "HSDPA";
             case TelephonyManager.NETWORK_TYPE_HSPA:
@@ -0,0 +1,216 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.utils;
+
+import android.telephony.TelephonyManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * All cells of one {@link TelephonyManager#getAllCellInfo()} result, serving and neighbors of
+ * all RATs, as primitive columns instead of framework objects.
+ * <p>
+ * Unknown values are {@link Integer#MAX_VALUE} like in {@link Cell}. For CDMA cells the
+ * network id is stored as LAC, the system id as MNC and the base station id as cell id;
+ * for LTE cells the TAC is stored as LAC and the PCI as PSC.
+ * <p>
+ * Filled by {@link DeviceApi18#toSnapshot}, immutable once returned.
+ *
+ * @see CellInfoSource
+ */
+public final class CellInfoSnapshot {
+
+    public static final int RAT_GSM = 1;
+    public static final int RAT_WCDMA = 2;
+    public static final int RAT_LTE = 3;
+    public static final int RAT_CDMA = 4;
+
+    /**
+     * Wall clock time of the read in milliseconds, 0 if nothing was read
+     */
+    @Getter
+    private final long time;
+
+    private int size;
+    private final int[] rat;
+    private final boolean[] registered;
+    private final int[] mobileCountryCode;
+    private final int[] mobileNetworkCode;
+    private final int[] locationAreaCode;
+    private final int[] cellId;
+    private final int[] primaryScramblingCode;
+    private final int[] dbm;
+    private final int[] timingAdvance;
+    private final long[] timestamp;
+
+    CellInfoSnapshot(long time, int capacity) {
+        this.time = time;
+        rat = new int[capacity];
+        registered = new boolean[capacity];
+        mobileCountryCode = new int[capacity];
+        mobileNetworkCode = new int[capacity];
+        locationAreaCode = new int[capacity];
+        cellId = new int[capacity];
+        primaryScramblingCode = new int[capacity];
+        dbm = new int[capacity];
+        timingAdvance = new int[capacity];
+        timestamp = new long[capacity];
+    }
+
+    /**
+     * @return A snapshot without cells taken at the given time
+     */
+    public static CellInfoSnapshot empty(long time) {
+        return new CellInfoSnapshot(time, 0);
+    }
+
+    void add(int rat, boolean registered, int mcc, int mnc, int lac, int cid, int psc, int dbm,
+             int timingAdvance, long timestamp) {
+        int i = size++;
+        this.rat[i] = rat;
+        this.registered[i] = registered;
+        this.mobileCountryCode[i] = mcc;
+        this.mobileNetworkCode[i] = mnc;
+        this.locationAreaCode[i] = lac;
+        this.cellId[i] = cid;
+        this.primaryScramblingCode[i] = psc;
+        this.dbm[i] = dbm;
+        this.timingAdvance[i] = timingAdvance;
+        this.timestamp[i] = timestamp;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the snapshot was taken within the last {@code maxAgeMs} milliseconds
+     */
+    public boolean isFresh(long maxAgeMs) {
+        return time != 0 && System.currentTimeMillis() - time <= maxAgeMs;
+    }
+
+    /**
+     * @return One of the RAT_ constants
+     */
+    public int getRat(int i) {
+        return rat[i];
+    }
+
+    public boolean isRegistered(int i) {
+        return registered[i];
+    }
+
+    public int getMobileCountryCode(int i) {
+        return mobileCountryCode[i];
+    }
+
+    public int getMobileNetworkCode(int i) {
+        return mobileNetworkCode[i];
+    }
+
+    public int getLocationAreaCode(int i) {
+        return locationAreaCode[i];
+    }
+
+    public int getCellId(int i) {
+        return cellId[i];
+    }
+
+    public int getPrimaryScramblingCode(int i) {
+        return primaryScramblingCode[i];
+    }
+
+    public int getDbm(int i) {
+        return dbm[i];
+    }
+
+    public int getTimingAdvance(int i) {
+        return timingAdvance[i];
+    }
+
+    /**
+     * @return The time the modem reported the cell, nanoseconds since boot
+     */
+    public long getTimestamp(int i) {
+        return timestamp[i];
+    }
+
+    public boolean isValid(int i) {
+        return cellId[i] != Integer.MAX_VALUE && locationAreaCode[i] != Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return Index of the serving cell: the registered one, else the first valid one, -1 if none
+     */
+    public int getServingIndex() {
+        int firstValid = -1;
+        for (int i = 0; i < size; i++) {
+            if (registered[i]) {
+                return i;
+            }
+            if (firstValid < 0 && isValid(i)) {
+                firstValid = i;
+            }
+        }
+        return firstValid;
+    }
+
+    /**
+     * @return All cells but the serving one
+     */
+    public List<Cell> getNeighbors() {
+        int serving = getServingIndex();
+        List<Cell> cells = new ArrayList<>(Math.max(0, size - 1));
+        for (int i = 0; i < size; i++) {
+            if (i != serving) {
+                cells.add(toCell(i));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return A new {@link Cell} with the values of entry {@code i}
+     */
+    public Cell toCell(int i) {
+        Cell cell = new Cell(cellId[i], locationAreaCode[i], dbm[i], primaryScramblingCode[i],
+                toNetworkType(rat[i]), true);
+        cell.setMobileCountryCode(mobileCountryCode[i]);
+        cell.setMobileNetworkCode(mobileNetworkCode[i]);
+        cell.setTimingAdvance(timingAdvance[i]);
+        if (rat[i] == RAT_CDMA) {
+            cell.setSid(mobileNetworkCode[i]);
+        }
+        return cell;
+    }
+
+    /**
+     * @return The {@link TelephonyManager} network type closest to the RAT
+     */
+    static int toNetworkType(int rat) {
+        switch (rat) {
+            case RAT_GSM:
+                return TelephonyManager.NETWORK_TYPE_GSM;
+            case RAT_WCDMA:
+                return TelephonyManager.NETWORK_TYPE_UMTS;
+            case RAT_LTE:
+                return TelephonyManager.NETWORK_TYPE_LTE;
+            case RAT_CDMA:
+                return TelephonyManager.NETWORK_TYPE_CDMA;
+            default:
+                return TelephonyManager.NETWORK_TYPE_UNKNOWN;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CellInfoSnapshot{" + size + " cells @" + time + "}";
+    }
+}
@@ -0,0 +1,90 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.utils;
+
+import android.os.Build;
+import android.telephony.CellInfo;
+import android.telephony.TelephonyManager;
+
+import java.util.List;
+
+/**
+ * Reads {@link TelephonyManager#getAllCellInfo()} of one subscription at most once per
+ * validity window and hands the same {@link CellInfoSnapshot} to every consumer within it:
+ * the {@link Device} refresh, the neighbor monitor and the location processing.
+ * <p>
+ * Cell info pushed by {@code onCellInfoChanged} is taken via {@link #update(List)} without
+ * a read. Below API 18 the snapshot is always empty.
+ */
+public class CellInfoSource {
+
+    public static final long DEFAULT_VALIDITY_MS = 1000;
+
+    private final TelephonyManager tm;
+    private final long validityMs;
+
+    // guarded by this
+    private CellInfoSnapshot snapshot = CellInfoSnapshot.empty(0);
+    private long reads;
+    private long hits;
+
+    public CellInfoSource(TelephonyManager tm) {
+        this(tm, DEFAULT_VALIDITY_MS);
+    }
+
+    public CellInfoSource(TelephonyManager tm, long validityMs) {
+        this.tm = tm;
+        this.validityMs = validityMs;
+    }
+
+    /**
+     * @return The cached snapshot while it is valid, else a new read. Concurrent callers wait
+     * for the same read.
+     */
+    public synchronized CellInfoSnapshot get() {
+        if (snapshot.isFresh(validityMs)) {
+            hits++;
+            return snapshot;
+        }
+        reads++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            snapshot = DeviceApi18.readCellInfo(tm);
+        } else {
+            snapshot = CellInfoSnapshot.empty(System.currentTimeMillis());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the cached snapshot with cell info delivered by a callback.
+     */
+    public synchronized void update(List<CellInfo> cellInfo) {
+        if (cellInfo != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            snapshot = DeviceApi18.toSnapshot(cellInfo, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Forces a read on the next {@link #get()}.
+     */
+    public synchronized void invalidate() {
+        snapshot = CellInfoSnapshot.empty(0);
+    }
+
+    /**
+     * @return Number of calls to {@link TelephonyManager#getAllCellInfo()}
+     */
+    public synchronized long getReads() {
+        return reads;
+    }
+
+    /**
+     * @return Number of {@link #get()} calls served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+}
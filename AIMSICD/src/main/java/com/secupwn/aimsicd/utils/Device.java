@@ -66,23 +66,92 @@ public class Device {
     @Setter
     private Location lastLocation;
 
+    /**
+     * Shared with the other consumers of the cell info of this subscription, created on
+     * the first refresh if not set
+     */
+    @Setter
+    private CellInfoSource cellInfoSource;
+
+    /**
+     * The details that never change (IMEI, phone type) have been read
+     */
+    private boolean staticLoaded;
+
+    /**
+     * The SIM details are re-read on the next refresh, see {@link #invalidateSim()}
+     */
+    private volatile boolean simStale = true;
+
+    /**
+     * The network operator and roaming state are re-read on the next refresh, see
+     * {@link #invalidateNetwork()}
+     */
+    private volatile boolean networkStale = true;
+
+    /**
+     * The RAT at the time the network details were read, a different RAT invalidates them
+     */
+    private int networkNetType = -1;
+
+    /**
+     * Number of calls into the telephony service made by all refreshes
+     */
+    private volatile long ipcCalls;
+
+    /**
+     * Number of calls into the telephony service made by the last refresh
+     */
+    private volatile int lastRefreshIpcCalls;
+
     /**
      * Refreshes all device specific details
      */
     public void refreshDeviceInfo(TelephonyManager tm, Context context) {
+        staticLoaded = false;
+        invalidateSim();
+        invalidateNetwork();
+        refresh(tm, context);
+    }
 
-        //Phone type and associated details
-        iMEI = tm.getDeviceId();
-        iMEIv = tm.getDeviceSoftwareVersion();
-        phoneId = tm.getPhoneType();
-        roaming = tm.isNetworkRoaming();
+    /**
+     * To be called when the SIM state changes (SIM inserted, removed, unlocked)
+     */
+    public void invalidateSim() {
+        simStale = true;
+    }
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            DeviceApi18.loadCellInfo(tm, this);
+    /**
+     * To be called when the service state changes, RAT changes are noticed by {@link #refresh}
+     */
+    public void invalidateNetwork() {
+        networkStale = true;
+    }
+
+    /**
+     * Refreshes the details that may have changed: the cell and data state always, the
+     * network operator and the SIM details only after they were invalidated.
+     */
+    public void refresh(TelephonyManager tm, Context context) {
+        int calls = 0;
+
+        //Phone type and associated details
+        if (!staticLoaded) {
+            iMEI = tm.getDeviceId();
+            iMEIv = tm.getDeviceSoftwareVersion();
+            phoneId = tm.getPhoneType();
+            calls += 3;
+            staticLoaded = true;
         }
 
-        if (cell == null) {
-            cell = new Cell();
+        calls += loadCellInfo(tm);
+
+        boolean network = networkStale || cell.getNetType() != networkNetType;
+        networkStale = false;
+        if (network) {
+            networkNetType = cell.getNetType();
+            roaming = tm.isNetworkRoaming();
+            calls++;
         }
 
         switch (phoneId) {
@@ -91,22 +160,26 @@ public class Device {
             case TelephonyManager.PHONE_TYPE_SIP:
             case TelephonyManager.PHONE_TYPE_GSM:
                 phoneType = "GSM";
-                mncMcc = tm.getNetworkOperator();
+                if (network) {
+                    mncMcc = tm.getNetworkOperator();
+                    networkName = tm.getNetworkOperatorName();
+                    calls += 2;
+                }
                 if (mncMcc != null && mncMcc.length() >= 5) {
                     try {
                         if (cell.getMobileCountryCode() == Integer.MAX_VALUE) {
-                            cell.setMobileCountryCode(Integer.parseInt(tm.getNetworkOperator().substring(0, 3)));
+                            cell.setMobileCountryCode(Integer.parseInt(mncMcc.substring(0, 3)));
                         }
                         if (cell.getMobileNetworkCode() == Integer.MAX_VALUE) {
-                            cell.setMobileNetworkCode(Integer.parseInt(tm.getNetworkOperator().substring(3, 5)));
+                            cell.setMobileNetworkCode(Integer.parseInt(mncMcc.substring(3, 5)));
                         }
                     } catch (Exception e) {
                         log.info("MncMcc parse exception: ", e);
                     }
                 }
-                networkName = tm.getNetworkOperatorName();
                 if (!cell.isValid()) {
                     GsmCellLocation gsmCellLocation = (GsmCellLocation) tm.getCellLocation();
+                    calls++;
                     if (gsmCellLocation != null) {
                         cell.setCellId(gsmCellLocation.getCid());
                         cell.setLocationAreaCode(gsmCellLocation.getLac());
@@ -119,6 +192,7 @@ public class Device {
                 phoneType = "CDMA";
                 if (!cell.isValid()) {
                     CdmaCellLocation cdmaCellLocation = (CdmaCellLocation) tm.getCellLocation();
+                    calls++;
                     if (cdmaCellLocation != null) {
                         cell.setCellId(cdmaCellLocation.getBaseStationId());
                         cell.setLocationAreaCode(cdmaCellLocation.getNetworkId());
@@ -148,15 +222,48 @@ public class Device {
         }
 
         // SIM Information
-        simCountry = getSimCountry(tm);
-        // Get the operator code of the active SIM (MCC + MNC)
-        simOperator = getSimOperator(tm);
-        simOperatorName = getSimOperatorName(tm);
-        simSerial = getSimSerial(tm);
-        simSubs = getSimSubs(tm);
+        if (simStale) {
+            simStale = false;
+            simCountry = getSimCountry(tm);
+            // Get the operator code of the active SIM (MCC + MNC)
+            simOperator = getSimOperator(tm);
+            simOperatorName = getSimOperatorName(tm);
+            simSerial = getSimSerial(tm);
+            simSubs = getSimSubs(tm);
+            calls += 5;
+        }
 
         dataActivityType = getDataActivityType(tm);
         dataState = getDataState(tm);
+        calls += 2;
+
+        lastRefreshIpcCalls = calls;
+        ipcCalls += calls;
+    }
+
+    /**
+     * Updates the serving cell from the shared {@link CellInfoSnapshot}.
+     *
+     * @return Number of calls into the telephony service made
+     */
+    public int loadCellInfo(TelephonyManager tm) {
+        if (cell == null) {
+            cell = new Cell();
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            return 0;
+        }
+        if (cellInfoSource == null) {
+            cellInfoSource = new CellInfoSource(tm);
+        }
+        long reads = cellInfoSource.getReads();
+        CellInfoSnapshot snapshot = cellInfoSource.get();
+        int calls = (int) (cellInfoSource.getReads() - reads);
+        if (snapshot.getServingIndex() >= 0) {
+            DeviceApi18.loadCellInfo(snapshot, tm.getNetworkType(), this);
+            calls++;
+        }
+        return calls;
     }
 
     private Optional<String> getSimInformation(Supplier<String> simInfoSupplier) {
@@ -327,5 +434,6 @@ public class Device {
      */
     public void setNetID(TelephonyManager tm) {
         cell.setNetType(tm.getNetworkType());
+        ipcCalls++;
     }
 }
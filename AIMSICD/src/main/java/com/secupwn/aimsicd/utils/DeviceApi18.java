@@ -39,74 +39,101 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class DeviceApi18 {
 
-    public static void loadCellInfo(TelephonyManager tm, Device pDevice) {
-        int lCurrentApiVersion = Build.VERSION.SDK_INT;
+    /**
+     * Reads all cells the modem reports, serving and neighbors.
+     */
+    public static CellInfoSnapshot readCellInfo(TelephonyManager tm) {
+        long time = System.currentTimeMillis();
         try {
-            if (pDevice.cell == null) {
-                pDevice.cell = new Cell();
-            }
             List<CellInfo> cellInfoList = tm.getAllCellInfo();
             if (cellInfoList != null) {
-                for (final CellInfo info : cellInfoList) {
-
-                    //Network Type
-                    pDevice.cell.setNetType(tm.getNetworkType());
+                return toSnapshot(cellInfoList, time);
+            }
+        } catch (RuntimeException e) {
+            log.error("readCellInfo: Unable to obtain cell signal information: ", e);
+        }
+        return CellInfoSnapshot.empty(time);
+    }
 
-                    if (info instanceof CellInfoGsm) {
-                        final CellSignalStrengthGsm gsm = ((CellInfoGsm) info).getCellSignalStrength();
-                        final CellIdentityGsm identityGsm = ((CellInfoGsm) info).getCellIdentity();
-                        // Signal Strength
-                        pDevice.cell.setDbm(gsm.getDbm()); // [dBm]
-                        // Cell Identity
-                        pDevice.cell.setCellId(identityGsm.getCid());
-                        pDevice.cell.setMobileCountryCode(identityGsm.getMcc());
-                        pDevice.cell.setMobileNetworkCode(identityGsm.getMnc());
-                        pDevice.cell.setLocationAreaCode(identityGsm.getLac());
+    /**
+     * Converts the framework objects into primitive columns, see {@link CellInfoSnapshot}.
+     */
+    public static CellInfoSnapshot toSnapshot(List<CellInfo> cellInfoList, long time) {
+        CellInfoSnapshot snapshot = new CellInfoSnapshot(time, cellInfoList.size());
+        for (final CellInfo info : cellInfoList) {
+            if (info instanceof CellInfoGsm) {
+                final CellSignalStrengthGsm gsm = ((CellInfoGsm) info).getCellSignalStrength();
+                final CellIdentityGsm identityGsm = ((CellInfoGsm) info).getCellIdentity();
+                snapshot.add(CellInfoSnapshot.RAT_GSM, info.isRegistered(),
+                        identityGsm.getMcc(), identityGsm.getMnc(), identityGsm.getLac(), identityGsm.getCid(),
+                        Integer.MAX_VALUE, gsm.getDbm(), Integer.MAX_VALUE, info.getTimeStamp());
 
-                    } else if (info instanceof CellInfoCdma) {
-                        final CellSignalStrengthCdma cdma = ((CellInfoCdma) info).getCellSignalStrength();
-                        final CellIdentityCdma identityCdma = ((CellInfoCdma) info).getCellIdentity();
-                        // Signal Strength
-                        pDevice.cell.setDbm(cdma.getDbm());
-                        // Cell Identity
-                        pDevice.cell.setCellId(identityCdma.getBasestationId());
-                        pDevice.cell.setMobileNetworkCode(identityCdma.getSystemId());
-                        pDevice.cell.setLocationAreaCode(identityCdma.getNetworkId());
-                        pDevice.cell.setSid(identityCdma.getSystemId());
+            } else if (info instanceof CellInfoCdma) {
+                final CellSignalStrengthCdma cdma = ((CellInfoCdma) info).getCellSignalStrength();
+                final CellIdentityCdma identityCdma = ((CellInfoCdma) info).getCellIdentity();
+                snapshot.add(CellInfoSnapshot.RAT_CDMA, info.isRegistered(),
+                        Integer.MAX_VALUE, identityCdma.getSystemId(), identityCdma.getNetworkId(),
+                        identityCdma.getBasestationId(), Integer.MAX_VALUE, cdma.getDbm(), Integer.MAX_VALUE,
+                        info.getTimeStamp());
 
-                    } else if (info instanceof CellInfoLte) {
-                        final CellSignalStrengthLte lte = ((CellInfoLte) info).getCellSignalStrength();
-                        final CellIdentityLte identityLte = ((CellInfoLte) info).getCellIdentity();
-                        // Signal Strength
-                        pDevice.cell.setDbm(lte.getDbm());
-                        pDevice.cell.setTimingAdvance(lte.getTimingAdvance());
-                        // Cell Identity
-                        pDevice.cell.setMobileCountryCode(identityLte.getMcc());
-                        pDevice.cell.setMobileNetworkCode(identityLte.getMnc());
-                        pDevice.cell.setCellId(identityLte.getCi());
+            } else if (info instanceof CellInfoLte) {
+                final CellSignalStrengthLte lte = ((CellInfoLte) info).getCellSignalStrength();
+                final CellIdentityLte identityLte = ((CellInfoLte) info).getCellIdentity();
+                snapshot.add(CellInfoSnapshot.RAT_LTE, info.isRegistered(),
+                        identityLte.getMcc(), identityLte.getMnc(), identityLte.getTac(), identityLte.getCi(),
+                        identityLte.getPci(), lte.getDbm(), lte.getTimingAdvance(), info.getTimeStamp());
 
-                    } else if  (lCurrentApiVersion >= Build.VERSION_CODES.JELLY_BEAN_MR2 && info instanceof CellInfoWcdma) {
-                        final CellSignalStrengthWcdma wcdma = ((CellInfoWcdma) info).getCellSignalStrength();
-                        final CellIdentityWcdma identityWcdma = ((CellInfoWcdma) info).getCellIdentity();
-                        // Signal Strength
-                        pDevice.cell.setDbm(wcdma.getDbm());
-                        // Cell Identity
-                        pDevice.cell.setLocationAreaCode(identityWcdma.getLac());
-                        pDevice.cell.setMobileCountryCode(identityWcdma.getMcc());
-                        pDevice.cell.setMobileNetworkCode(identityWcdma.getMnc());
-                        pDevice.cell.setCellId(identityWcdma.getCid());
-                        pDevice.cell.setPrimaryScramblingCode(identityWcdma.getPsc());
+            } else if (info instanceof CellInfoWcdma) {
+                final CellSignalStrengthWcdma wcdma = ((CellInfoWcdma) info).getCellSignalStrength();
+                final CellIdentityWcdma identityWcdma = ((CellInfoWcdma) info).getCellIdentity();
+                snapshot.add(CellInfoSnapshot.RAT_WCDMA, info.isRegistered(),
+                        identityWcdma.getMcc(), identityWcdma.getMnc(), identityWcdma.getLac(), identityWcdma.getCid(),
+                        identityWcdma.getPsc(), wcdma.getDbm(), Integer.MAX_VALUE, info.getTimeStamp());
 
-                    } else {
-                        log.info("Unknown type of cell signal!\n ClassName: {}\n ToString: {}", info.getClass().getSimpleName(), info.toString());
-                    }
-                    if (pDevice.cell.isValid()) {
-                        break;
-                    }
-                }
+            } else {
+                log.info("Unknown type of cell signal!\n ClassName: {}\n ToString: {}", info.getClass().getSimpleName(), info.toString());
             }
-        } catch (NullPointerException npe) {
-            log.error("loadCellInfo: Unable to obtain cell signal information: ", npe);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Copies the serving cell of the snapshot into the device.
+     *
+     * @param netType The current network type, see {@link TelephonyManager#getNetworkType()}
+     */
+    public static void loadCellInfo(CellInfoSnapshot snapshot, int netType, Device pDevice) {
+        if (pDevice.cell == null) {
+            pDevice.cell = new Cell();
+        }
+        int i = snapshot.getServingIndex();
+        if (i < 0) {
+            return;
+        }
+        Cell cell = pDevice.cell;
+        //Network Type
+        cell.setNetType(netType);
+        // Signal Strength
+        cell.setDbm(snapshot.getDbm(i));
+        // Cell Identity
+        cell.setCellId(snapshot.getCellId(i));
+        cell.setLocationAreaCode(snapshot.getLocationAreaCode(i));
+        cell.setMobileNetworkCode(snapshot.getMobileNetworkCode(i));
+        switch (snapshot.getRat(i)) {
+            case CellInfoSnapshot.RAT_CDMA:
+                cell.setSid(snapshot.getMobileNetworkCode(i));
+                break;
+            case CellInfoSnapshot.RAT_LTE:
+                cell.setMobileCountryCode(snapshot.getMobileCountryCode(i));
+                cell.setTimingAdvance(snapshot.getTimingAdvance(i));
+                break;
+            case CellInfoSnapshot.RAT_WCDMA:
+                cell.setMobileCountryCode(snapshot.getMobileCountryCode(i));
+                cell.setPrimaryScramblingCode(snapshot.getPrimaryScramblingCode(i));
+                break;
+            default:
+                cell.setMobileCountryCode(snapshot.getMobileCountryCode(i));
+                break;
         }
     }
 
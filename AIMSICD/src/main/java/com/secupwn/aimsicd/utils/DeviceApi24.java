@@ -0,0 +1,84 @@
+/* Android IMSI-Catcher Detector | (c) AIMSICD Privacy Project
+ * -----------------------------------------------------------
+ * LICENSE:  http://git.io/vki47 | TERMS:  http://git.io/vki4o
+ * -----------------------------------------------------------
+ */
+package com.secupwn.aimsicd.utils;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.telephony.TelephonyManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Multi-SIM support, only available in the AOS API 24 and above. Before that a
+ * {@link TelephonyManager} (and its listeners) can't be bound to a subscription,
+ * so only the default subscription is tracked.
+ *
+ * See: http://developer.android.com/reference/android/os/Build.VERSION_CODES.html
+ */
+@TargetApi(Build.VERSION_CODES.N)
+@Slf4j
+public class DeviceApi24 {
+
+    /**
+     * @return The ids of the active subscriptions, in SIM slot order
+     */
+    public static List<Integer> getActiveSubscriptionIds(Context context) {
+        List<Integer> ids = new ArrayList<>();
+        try {
+            List<SubscriptionInfo> infos = SubscriptionManager.from(context).getActiveSubscriptionInfoList();
+            if (infos != null) {
+                for (SubscriptionInfo info : infos) {
+                    ids.add(info.getSubscriptionId());
+                }
+            }
+        } catch (SecurityException e) {
+            log.warn("Not allowed to read the active subscriptions", e);
+        }
+        return ids;
+    }
+
+    /**
+     * @return The subscription the default {@link TelephonyManager} reports on
+     */
+    public static int getDefaultSubscriptionId() {
+        return SubscriptionManager.getDefaultSubscriptionId();
+    }
+
+    /**
+     * @return A TelephonyManager whose methods and listeners refer to the given subscription
+     */
+    public static TelephonyManager createForSubscription(TelephonyManager tm, int subscriptionId) {
+        return tm.createForSubscriptionId(subscriptionId);
+    }
+
+    /**
+     * Runs {@code onChanged} whenever subscriptions are added, removed or changed, and once
+     * right after registering. Must be called on a thread with a looper.
+     *
+     * @return The listener to pass to {@link #removeSubscriptionsListener(Context, Object)}
+     */
+    public static Object addSubscriptionsListener(Context context, final Runnable onChanged) {
+        SubscriptionManager.OnSubscriptionsChangedListener listener = new SubscriptionManager.OnSubscriptionsChangedListener() {
+            @Override
+            public void onSubscriptionsChanged() {
+                onChanged.run();
+            }
+        };
+        SubscriptionManager.from(context).addOnSubscriptionsChangedListener(listener);
+        return listener;
+    }
+
+    public static void removeSubscriptionsListener(Context context, Object listener) {
+        SubscriptionManager.from(context).removeOnSubscriptionsChangedListener(
+                (SubscriptionManager.OnSubscriptionsChangedListener) listener);
+    }
+}
@@ -192,7 +192,7 @@ public class Helpers {
     }
     public static void getOpenCellData(InjectionAppCompatActivity injectionActivity, Cell cell, char type, final AimsicdService service) {
         if (Helpers.isNetAvailable(injectionActivity)) {
-            if (!"NA".equals(CellTracker.OCID_API_KEY)) {
+            if (!"NA".equals(CellTracker.getOcidApiKey())) {
                 double earthRadius = 6371.01; // [Km]
                 int radius = 2; // Use a 2 Km radius with center at GPS location.
 
@@ -215,7 +215,7 @@ public class Helpers {
 
                     StringBuilder sb = new StringBuilder();
                     sb.append("http://www.opencellid.org/cell/getInArea?key=")
-                            .append(CellTracker.OCID_API_KEY).append("&BBOX=")
+                            .append(CellTracker.getOcidApiKey()).append("&BBOX=")
                             .append(boundParameter);
 
                     log.info("OCID MCC is set to: {}", cell.getMobileCountryCode());
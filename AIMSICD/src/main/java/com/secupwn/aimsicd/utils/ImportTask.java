@@ -10,19 +10,19 @@ import android.net.Uri;
 import android.support.annotation.NonNull;
 
 import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.ReferenceRealm;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.zip.GZIPInputStream;
 
 import au.com.bytecode.opencsv.CSVReader;
 import io.freefair.android.injection.app.InjectionAppCompatActivity;
 import io.realm.Realm;
-import lombok.Cleanup;
+import io.realm.RealmConfiguration;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -48,6 +48,7 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
     private AsyncTaskCompleteListener mListener;
 
     public static final double EARTH_RADIUS = 6371.01;
+    private static final int COMMIT_INTERVAL = 10000;
 
     /**
      * @param context           App context
@@ -109,8 +110,16 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
     @Override
     protected String doInBackground(String... commandString) {
 
+        RealmConfiguration staging;
         try {
-            @Cleanup Realm realm = Realm.getDefaultInstance();
+            staging = ReferenceRealm.beginImport();
+        } catch (IllegalStateException e) {
+            log.warn("Cannot import while another import is running", e);
+            return null;
+        }
+        boolean published = false;
+        try {
+            Realm realm = Realm.getInstance(staging);
 
             Long elapsedSeconds = System.currentTimeMillis() / 1000;
 
@@ -123,6 +132,7 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
 
             CSVReader csvReader = null;
             try {
+                realm.beginTransaction();
                 String next[];
 
                 csvReader = new CSVReader(createFileReader());
@@ -165,8 +175,8 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
                         opencellid_csv[12] = null; // cid, not used
                         opencellid_csv[13] = null; // psc, not present
 
-                        Date dateCreated = dateOrNow(next[11]);
-                        Date dateUpdated = dateOrNow(next[12]);
+                        long dateCreated = millisOrNow(next[11]);
+                        long dateUpdated = millisOrNow(next[12]);
 
                         mDbAdapter.addCSVRecord(realm, opencellid_csv, dateCreated, dateUpdated);
                         ++progress;
@@ -182,6 +192,11 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
                         // multi-gigabyte file is slow
                         //publishProgress((int) progress, (int) totalRecords);
                     }
+                    if ((progress % COMMIT_INTERVAL) == 0) {
+                        // nobody reads the staging realm, commits only bound the transaction size
+                        realm.commitTransaction();
+                        realm.beginTransaction();
+                    }
                     if ((progress % 1000) == 0) {
                         try {
                             Thread.sleep(1000); // wait 1 second to allow user to see progress bar.
@@ -190,11 +205,19 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
                         }
                     }
                 }
+                mDbAdapter.checkDBe().execute(realm);
+                realm.commitTransaction();
             } finally {
+                if (realm.isInTransaction()) {
+                    realm.cancelTransaction();
+                }
+                realm.close();
                 if (csvReader != null) {
                     csvReader.close();
                 }
             }
+            ReferenceRealm.publish(staging);
+            published = true;
             elapsedSeconds = (System.currentTimeMillis() / 1000) - elapsedSeconds;
             log.debug("Importing took {} seconds", String.valueOf(elapsedSeconds));
             log.debug("Imported records: {}", String.valueOf(progress));
@@ -205,6 +228,10 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
         } catch (IOException e) {
             log.warn("Problem reading data from CSV", e);
             return null;
+        } finally {
+            if (!published) {
+                ReferenceRealm.discard(staging);
+            }
         }
     }
 
@@ -228,9 +255,8 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
         return new InputStreamReader(fileStream);
     }
 
-    @NonNull
-    private static Date dateOrNow(String timestamp) {
-        return timestamp == null || timestamp.isEmpty() ? new Date() : new Date(Long.valueOf(timestamp) * 1000);
+    private static long millisOrNow(String timestamp) {
+        return timestamp == null || timestamp.isEmpty() ? System.currentTimeMillis() : Long.valueOf(timestamp) * 1000;
     }
 
     private static String stringOrZero(String s) {
@@ -241,8 +267,6 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
      * This is where we:
      * <ol>
      * <li>Check the success for data import</li>
-     * <li>call the updateOpenCellID() to populate the {@link com.secupwn.aimsicd.data.model.Import Import} realm</li>
-     * <li>call the {@link RealmHelper#checkDBe()} to cleanup bad cells from imported data</li>
      * <li>present a failure/success toast message</li>
      * <li>set a shared preference to indicate that data has been downloaded:
      * {@code ocid_downloaded true}</li>
@@ -253,14 +277,11 @@ public class ImportTask extends BaseAsyncTask<String, Integer, String> {
         super.onPostExecute(result);
         TinyDB tinydb = TinyDB.getInstance();
 
-        @Cleanup Realm realm = Realm.getDefaultInstance();
-
         // if `result` is null, it will evaluate to false, no need to check for null
         if ("Successful".equals(result)) {
 
             Helpers.msgShort(mAppContext, mAppContext.getString(R.string.celltowers_data_successfully_imported));
 
-            realm.executeTransaction(mDbAdapter.checkDBe());
             tinydb.putBoolean("ocid_downloaded", true);
         } else {
             Helpers.msgLong(mAppContext, mAppContext.getString(R.string.error_importing_celltowers_data));
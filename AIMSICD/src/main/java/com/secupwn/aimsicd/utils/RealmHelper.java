@@ -1,30 +1,30 @@
 package com.secupwn.aimsicd.utils;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.os.Vibrator;
-import android.preference.PreferenceManager;
+import android.telephony.TelephonyManager;
 
-import com.secupwn.aimsicd.R;
+import com.secupwn.aimsicd.data.MeasureArchive;
+import com.secupwn.aimsicd.data.MeasureRecord;
+import com.secupwn.aimsicd.data.RadioAccessTechnology;
+import com.secupwn.aimsicd.data.ReferenceRealm;
 import com.secupwn.aimsicd.data.model.BaseTransceiverStation;
 import com.secupwn.aimsicd.data.model.DefaultLocation;
-import com.secupwn.aimsicd.data.model.Event;
 import com.secupwn.aimsicd.data.model.GpsLocation;
 import com.secupwn.aimsicd.data.model.Import;
 import com.secupwn.aimsicd.data.model.Measure;
-import com.secupwn.aimsicd.enums.Status;
-import com.secupwn.aimsicd.service.CellTracker;
+import com.secupwn.aimsicd.data.model.MeasureArchiveBlock;
+import com.secupwn.aimsicd.data.model.NeighborObservation;
+import com.secupwn.aimsicd.service.AlertPipeline;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.io.IOException;
 
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 import io.realm.Realm;
+import io.realm.RealmConfiguration;
 import io.realm.RealmQuery;
 import io.realm.RealmResults;
 import lombok.extern.slf4j.Slf4j;
@@ -37,12 +37,10 @@ import lombok.extern.slf4j.Slf4j;
 public final class RealmHelper {
 
     private Context mContext;
-    private SharedPreferences mPreferences;
     public static String mExternalFilesDirPath;
 
     public RealmHelper(Context context) {
         mContext = context;
-        mPreferences = PreferenceManager.getDefaultSharedPreferences(mContext);
         mExternalFilesDirPath = mContext.getExternalFilesDir(null) + File.separator;
         //e.g. /storage/emulated/0/Android/data/com.SecUpwN.AIMSICD/
     }
@@ -103,6 +101,7 @@ public final class RealmHelper {
                     Measure measure = measures.get(i);
                     measure.setSubmitted(true);
                 }
+                MeasureArchive.markSubmitted(realm);
             }
         };
     }
@@ -111,6 +110,8 @@ public final class RealmHelper {
     /**
      * This returns all {@link Import} by current sim card network rather
      * than returning other bts from different networks and slowing down map view
+     *
+     * @param realm A realm on the reference data, see {@link ReferenceRealm#getInstance()}
      */
     public RealmQuery<Import> returnOcidBtsByNetwork(Realm realm, int mcc, int mnc) {
 
@@ -119,6 +120,30 @@ public final class RealmHelper {
                 .equalTo("mobileNetworkCode", mnc);
     }
 
+    /**
+     * Returns every neighbor ever seen while camped on the given serving cell,
+     * one {@link NeighborObservation} per distinct neighbor.
+     */
+    public RealmResults<NeighborObservation> getNeighborsSeenWith(Realm realm, int lac, int cellId) {
+        return realm.where(NeighborObservation.class)
+                .equalTo("servingCellId", cellId)
+                .equalTo("servingLocationAreaCode", lac)
+                .distinct("neighborKey");
+    }
+
+    /**
+     * Checks if the neighbor was ever seen while camped on the given serving cell.
+     *
+     * @param neighborKey See {@link NeighborObservation#neighborKey(int, int, int)}
+     */
+    public boolean isKnownNeighbor(Realm realm, int lac, int cellId, long neighborKey) {
+        return realm.where(NeighborObservation.class)
+                .equalTo("servingCellId", cellId)
+                .equalTo("servingLocationAreaCode", lac)
+                .equalTo("neighborKey", neighborKey)
+                .count() > 0;
+    }
+
     public GpsLocation getDefaultLocation(Realm realm, int mcc) {
         return realm.where(DefaultLocation.class)
                 .equalTo("mobileCountryCode", mcc)
@@ -172,11 +197,10 @@ public final class RealmHelper {
         File file = new File(dir, "aimsicd-ocid-data.csv");
 
         try {
-            // Get data not yet submitted:
-            RealmResults<Measure> c;
-            c = getOCIDSubmitData(realm);
+            // Get data not yet submitted, from both the live and the archived measurements:
+            long size = getOCIDSubmitData(realm).size() + MeasureArchive.countUnsubmitted(realm);
             // Check if we have something to upload:
-            if (c.size() > 0) {
+            if (size > 0) {
                 if (!file.exists()) {
                     result = file.createNewFile();
                     if (!result) {
@@ -185,26 +209,28 @@ public final class RealmHelper {
 
                     // OCID CSV upload format and items
                     // mcc,mnc,lac,cellid,lon,lat,signal,measured_at,rating,speed,direction,act,ta,psc,tac,pci,sid,nid,bid
-                    CSVWriter csvWrite = new CSVWriter(new FileWriter(file));
+                    final CSVWriter csvWrite = new CSVWriter(new FileWriter(file));
                     // TODO: Add "act"
                     csvWrite.writeNext("mcc,mnc,lac,cellid,lon,lat,signal,measured_at,rating");
 
-                    int size = c.size();
                     log.debug("OCID UPLOAD: row count = {}", size);
 
-                    for (Measure measure : c) {
-                        csvWrite.writeNext(
-                                String.valueOf(measure.getBaseStation().getMobileCountryCode()),
-                                String.valueOf(measure.getBaseStation().getMobileNetworkCode()),
-                                String.valueOf(measure.getBaseStation().getLocationAreaCode()),
-                                String.valueOf(measure.getBaseStation().getCellId()),
-                                String.valueOf(measure.getGpsLocation().getLongitude()),
-                                String.valueOf(measure.getGpsLocation().getLatitude()),
-                                String.valueOf(measure.getRxSignal()),
-                                String.valueOf(measure.getTime().getTime()),
-                                String.valueOf(measure.getGpsLocation().getAccuracy())
-                        );
-                    }
+                    MeasureArchive.forEach(realm, 0, Long.MAX_VALUE, true, new MeasureArchive.Visitor() {
+                        @Override
+                        public void visit(BaseTransceiverStation baseStation, MeasureRecord measure) {
+                            csvWrite.writeNext(
+                                    String.valueOf(baseStation.getMobileCountryCode()),
+                                    String.valueOf(baseStation.getMobileNetworkCode()),
+                                    String.valueOf(baseStation.getLocationAreaCode()),
+                                    String.valueOf(baseStation.getCellId()),
+                                    String.valueOf(measure.getLongitude()),
+                                    String.valueOf(measure.getLatitude()),
+                                    String.valueOf(measure.getRxSignal()),
+                                    String.valueOf(measure.getTime()),
+                                    String.valueOf(measure.getAccuracy())
+                            );
+                        }
+                    });
                     csvWrite.close();
                 }
                 return true;
@@ -264,60 +290,86 @@ public final class RealmHelper {
      * <p/>
      * 54.63376,25.160243,246,3,20,1294,0,-1,1,1,GSM,,,,,,,,
      * ========================================================================
+     * <p/>
+     * Copies and writes the whole reference realm, don't call it on the main thread.
+     *
+     * @throws IllegalStateException if another import is still in progress, see {@link ReferenceRealm#beginImport()}
      */
-    public boolean populateDBeImport(Realm realm) {
+    public boolean populateDBeImport() {
         // This was not finding the file on a Samsung S5
         // String fileName = Environment.getExternalStorageDirectory()+ "/AIMSICD/OpenCellID/opencellid.csv";
         String fileName = mContext.getExternalFilesDir(null) + File.separator + "OpenCellID/opencellid.csv";
         File file = new File(fileName);
 
-        try {
-            if (file.exists()) {
+        if (!file.exists()) {
+            log.error("Opencellid.csv file does not exist!");
+            return true;
+        }
 
-                CSVReader csvReader = new CSVReader(new FileReader(file));
-                List<String[]> csvCellID = new ArrayList<>();
-                String next[];
+        // Build the new data off to the side, readers keep using the current reference data
+        RealmConfiguration staging = ReferenceRealm.beginImport();
+        Realm realm = null;
+        boolean imported = false;
+        try {
+            realm = Realm.getInstance(staging);
+            CSVReader csvReader = new CSVReader(new FileReader(file));
+            try {
+                realm.beginTransaction();
 
+                String next[] = csvReader.readNext(); // skip header
+                int rowCounter = 0;
                 while ((next = csvReader.readNext()) != null) {
-                    csvCellID.add(next);
+                    addCSVRecord(realm, next);
+                    rowCounter++;
                 }
+                log.debug("PopulateDBeImport(): inserted {} cells.", rowCounter);
 
-                if (!csvCellID.isEmpty()) {
-                    int lines = csvCellID.size();
-                    log.info("UpdateOpenCellID: OCID CSV size (lines): {}", lines);
-
-                    int rowCounter;
-                    for (rowCounter = 1; rowCounter < lines; rowCounter++) {
-
-                        addCSVRecord(realm, csvCellID.get(rowCounter));
-                    }
-                    log.debug("PopulateDBeImport(): inserted {} cells.", rowCounter);
-                }
-            } else {
-                log.error("Opencellid.csv file does not exist!");
+                checkDBe().execute(realm);
+                realm.commitTransaction();
+                imported = true;
+            } finally {
+                csvReader.close();
             }
-            return true;
         } catch (Exception e) {
             log.error("Error parsing OpenCellID data: {}", e.getMessage());
-            return false;
         } finally {
+            if (realm != null) {
+                if (realm.isInTransaction()) {
+                    realm.cancelTransaction();
+                }
+                realm.close();
+            }
+
+            if (imported) {
+                try {
+                    ReferenceRealm.publish(staging);
+                } catch (IOException e) {
+                    log.error("Could not publish the imported OpenCellID data", e);
+                    imported = false;
+                }
+            }
+            if (!imported) {
+                ReferenceRealm.discard(staging);
+            }
             try {
                 Thread.sleep(1000); // wait 1 second to allow user to see progress bar.
             } catch (InterruptedException ex) {
                 Thread.currentThread().interrupt();
             }
         }
+        return imported;
     }
 
     public void addCSVRecord(Realm realm, String[] csv) {
-        Date date = new Date();
-        addCSVRecord(realm, csv, date, date);
+        long now = System.currentTimeMillis();
+        addCSVRecord(realm, csv, now, now);
     }
     /**
      * Adds one CSV record from OpenCellID import to the database to populate "Import" table.
-     *
+     * <p>
+     * Must be called inside a transaction on a staging realm, see {@link ReferenceRealm#beginImport()}.
      */
-    public void addCSVRecord(Realm realm, String[] csv, Date created, Date updated) {
+    public void addCSVRecord(Realm realm, String[] csv, long created, long updated) {
 
         // Insert details into OpenCellID Database using:  insertDBeImport()
         // Beware of negative values of "range" and "samples"!!
@@ -349,9 +401,9 @@ public final class RealmHelper {
         int ichange = Integer.parseInt(change);
         ichange = (ichange == 0 ? 1 : 0);
 
-        Realm.Transaction transaction = insertDBeImport(
+        insertDBeImport(
                 "OCID",                     // DBsource
-                radio,                      // RAT
+                RadioAccessTechnology.fromName(radio), // RAT
                 Integer.parseInt(mcc),      // MCC
                 Integer.parseInt(mnc),      // MNC
                 Integer.parseInt(lac),      // LAC
@@ -365,8 +417,7 @@ public final class RealmHelper {
                 Integer.parseInt(samples),  // samples
                 created,                    // time_first  (not in OCID)
                 updated                     // time_last   (not in OCID)
-        );
-        realm.executeTransaction(transaction);
+        ).execute(realm);
     }
 
     /**
@@ -438,9 +489,9 @@ public final class RealmHelper {
                 realm.where(Import.class)
                         .greaterThan("cellId", 65534)
                         .beginGroup()
-                            .equalTo("radioAccessTechnology", "GSM")
+                            .equalTo("radioAccessTechnology", TelephonyManager.NETWORK_TYPE_GSM)
                             .or()
-                            .equalTo("radioAccessTechnology", "CDMA")
+                            .equalTo("radioAccessTechnology", TelephonyManager.NETWORK_TYPE_CDMA)
                         .endGroup()
                         .findAll().deleteAllFromRealm();
                 log.info("CheckDBe() Deleted BTS entries from Import realm with bad LAC/CID...");
@@ -479,10 +530,23 @@ public final class RealmHelper {
 
     }
 
+    /**
+     * Average signal of a cell over both the live and the archived measurements.
+     */
     public int getAverageSignalStrength(Realm realm, int cellID) {
-        return (int) realm.where(Measure.class)
+        RealmResults<Measure> live = realm.where(Measure.class)
+                .equalTo("baseStation.cellId", cellID)
+                .findAll();
+        RealmResults<MeasureArchiveBlock> archived = realm.where(MeasureArchiveBlock.class)
                 .equalTo("baseStation.cellId", cellID)
-                .average("rxSignal");
+                .findAll();
+
+        long count = live.size() + archived.sum("count").longValue();
+        if (count == 0) {
+            return 0;
+        }
+        long sum = live.sum("rxSignal").longValue() + archived.sum("rxSignalSum").longValue();
+        return (int) (sum / count);
     }
 
     /**
@@ -494,7 +558,7 @@ public final class RealmHelper {
      */
     public Realm.Transaction insertDBeImport(
             final String db_src,
-            final String rat,
+            final int rat,
             final int mcc,
             final int mnc,
             final int lac,
@@ -506,8 +570,8 @@ public final class RealmHelper {
             final int avg_range,
             final int avg_signal,
             final int samples,
-            final Date time_first,
-            final Date time_last
+            final long time_first,
+            final long time_last
     ) {
         return new Realm.Transaction() {
             @Override
@@ -524,12 +588,8 @@ public final class RealmHelper {
                     anImport.setLocationAreaCode(lac);
                     anImport.setCellId(cid);
                     anImport.setPrimaryScramblingCode(psc);
-
-                    GpsLocation gpsLocation = realm.createObject(GpsLocation.class);
-                    gpsLocation.setLatitude(lat);
-                    gpsLocation.setLongitude(lon);
-
-                    anImport.setGpsLocation(gpsLocation);
+                    anImport.setLatitude(lat);
+                    anImport.setLongitude(lon);
                     anImport.setGpsExact(isGpsExact);
                     anImport.setAvgRange(avg_range);
                     anImport.setAvgSignal(avg_signal);
@@ -560,13 +620,12 @@ public final class RealmHelper {
             baseStation.setCellId(cell.getCellId());
             baseStation.setPrimaryScramblingCode(cell.getPrimaryScramblingCode());
 
-            baseStation.setTimeFirst(new Date());
-            baseStation.setTimeLast(new Date());
+            long now = System.currentTimeMillis();
+            baseStation.setTimeFirst(now);
+            baseStation.setTimeLast(now);
 
-            GpsLocation gpsLocation = realm.createObject(GpsLocation.class);
-            gpsLocation.setLatitude(cell.getLat());  // TODO NO! These should be exact GPS from Import or by manual addition!
-            gpsLocation.setLongitude(cell.getLon());  // TODO NO! These should be exact GPS from Import or by manual addition!
-            baseStation.setGpsLocation(gpsLocation);
+            baseStation.setLatitude(cell.getLat());  // TODO NO! These should be exact GPS from Import or by manual addition!
+            baseStation.setLongitude(cell.getLon());  // TODO NO! These should be exact GPS from Import or by manual addition!
 
             realm.commitTransaction();
 
@@ -578,7 +637,7 @@ public final class RealmHelper {
 
             realm.beginTransaction();
 
-            baseStation.setTimeLast(new Date());
+            baseStation.setTimeLast(System.currentTimeMillis());
 
             // TODO NO! These should be exact GPS from Import or by manual addition!
             // Only update if GPS coordinates are good
@@ -586,11 +645,8 @@ public final class RealmHelper {
                     && Double.doubleToRawLongBits(cell.getLat()) != 0
                     && Double.doubleToRawLongBits(cell.getLon()) != 0
                     && Double.doubleToRawLongBits(cell.getLon()) != 0) {
-                if (baseStation.getGpsLocation() == null) {
-                    baseStation.setGpsLocation(realm.createObject(GpsLocation.class));
-                }
-                baseStation.getGpsLocation().setLatitude(cell.getLat());
-                baseStation.getGpsLocation().setLongitude(cell.getLon());
+                baseStation.setLatitude(cell.getLat());
+                baseStation.setLongitude(cell.getLon());
             }
 
             realm.commitTransaction();
@@ -608,16 +664,13 @@ public final class RealmHelper {
             BaseTransceiverStation baseStation = realm.where(BaseTransceiverStation.class).equalTo("cellId", cell.getCellId()).findFirst();
 
             measure.setBaseStation(baseStation);
-            measure.setTime(new Date());
-
-            GpsLocation gpsLocation = realm.createObject(GpsLocation.class);
-            gpsLocation.setLatitude(cell.getLat());
-            gpsLocation.setLongitude(cell.getLon());
-            gpsLocation.setAccuracy(cell.getAccuracy());
-            measure.setGpsLocation(gpsLocation);
+            measure.setTime(System.currentTimeMillis());
+            measure.setLatitude(cell.getLat());
+            measure.setLongitude(cell.getLon());
+            measure.setAccuracy((float) cell.getAccuracy());
 
             measure.setRxSignal(cell.getDbm());
-            measure.setRadioAccessTechnology(String.valueOf(cell.getRat()));
+            measure.setRadioAccessTechnology(cell.getNetType());
             measure.setTimingAdvance(cell.getTimingAdvance()); //TODO does this actually get timing advance?
             measure.setSubmitted(false);
             measure.setNeighbor(false);
@@ -638,12 +691,12 @@ public final class RealmHelper {
 
                 if (Double.doubleToRawLongBits(cell.getLat()) != 0
                         && Double.doubleToRawLongBits(cell.getLon()) != 0) {
-                    measure.getGpsLocation().setLatitude(cell.getLat());
-                    measure.getGpsLocation().setLongitude(cell.getLon());
+                    measure.setLatitude(cell.getLat());
+                    measure.setLongitude(cell.getLon());
                 }
                 if (Double.doubleToRawLongBits(cell.getAccuracy()) != 0
                         && cell.getAccuracy() > 0) {
-                    measure.getGpsLocation().setAccuracy(cell.getAccuracy());
+                    measure.setAccuracy((float) cell.getAccuracy());
                 }
 
                 if (cell.getDbm() > 0) {
@@ -663,82 +716,30 @@ public final class RealmHelper {
 
     /**
      * Defining a new simpler version of insertEventLog for use in CellTracker.
+     * Repeats are suppressed and the event is written asynchronously, see {@link AlertPipeline}.
      */
-    public void toEventLog(Realm realm, final int DF_id, final String DF_desc) {
-
-        final Date timestamp = new Date();
-        final int lac = CellTracker.monitorCell.getLocationAreaCode();
-        final int cid = CellTracker.monitorCell.getCellId();
-        final int psc = CellTracker.monitorCell.getPrimaryScramblingCode(); //[UMTS,LTE]
-        final double gpsd_lat = CellTracker.monitorCell.getLat();
-        final double gpsd_lon = CellTracker.monitorCell.getLon();
-        final double gpsd_accu = CellTracker.monitorCell.getAccuracy();
-
-        realm.executeTransactionAsync(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-
-                // skip CID/LAC of "-1" (due to crappy API, Roaming or Air-Plane Mode)
-                if (cid != -1 || lac != -1) {
-                    // Check if LAST entry is the same!
-                    RealmResults<Event> events = realm.where(Event.class).findAllSorted("timestamp");
-
-                    boolean insertData;
-                    if (events.isEmpty()) {
-                        insertData = true;
-                    } else {
-                        Event lastEvent = events.last();
-                        insertData = !(lastEvent.getCellId() == cid && lastEvent.getLocationAreaCode() == lac && lastEvent.getPrimaryScramblingCode() == psc && lastEvent.getDfId() == DF_id);
-                    }
-                    // WARNING: By skipping duplicate events, we might be missing counts of Type-0 SMS etc.
-
-                    if (insertData) {
-
-                        Event event = realm.createObject(Event.class);
-
-                        event.setTimestamp(timestamp);
-                        event.setLocationAreaCode(lac);
-                        event.setCellId(cid);
-                        event.setPrimaryScramblingCode(psc);
-
-                        GpsLocation gpsLocation = realm.createObject(GpsLocation.class);
-                        gpsLocation.setLatitude(gpsd_lat);
-                        gpsLocation.setLongitude(gpsd_lon);
-                        gpsLocation.setAccuracy(gpsd_accu);
-                        event.setGpsLocation(gpsLocation);
-
-                        event.setDfId(DF_id);
-                        event.setDfDescription(DF_desc);
-                    }
-                }
-            }
-        }, new Realm.Transaction.OnSuccess() {
-            @Override
-            public void onSuccess() {
-                log.info("ToEventLog(): Added new event: id={} time={} cid={}", DF_id, timestamp, cid);
-
-                // Short 100 ms Vibration
-                // TODO not elegant solution, vibrator invocation should be moved somewhere else imho
-                boolean vibrationEnabled = mPreferences.getBoolean(mContext.getString(R.string.pref_notification_vibrate_enable), true);
-                int thresholdLevel = Integer.valueOf(mPreferences.getString(mContext.getString(R.string.pref_notification_vibrate_min_level), String.valueOf(Status.MEDIUM.ordinal())));
-                boolean higherLevelThanThreshold = Status.MEDIUM.ordinal() <= thresholdLevel;
-
-                if (vibrationEnabled && higherLevelThanThreshold) {
-                    Vibrator v = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
-                    v.vibrate(100);
-                }
+    public void toEventLog(final int DF_id, final String DF_desc) {
+        AlertPipeline.getInstance().raise(DF_id, DF_desc);
+    }
 
-                // Short sound:
-                // TODO see issue #15
-            }
-        });
+    /**
+     * Like {@link #toEventLog(int, String)} for a detection on the serving cell of a
+     * subscription, which is not necessarily the default one.
+     */
+    public void toEventLog(final int DF_id, final String DF_desc, final Cell cell) {
+        AlertPipeline.getInstance().raise(DF_id, DF_desc, cell);
     }
 
     /**
      * This checks if a cell with a given CID already exists in the {@link Import} realm.
      */
-    public boolean openCellExists(Realm realm, int cellID) {
-        return realm.where(Import.class).equalTo("cellId", cellID).count() > 0;
+    public boolean openCellExists(int cellID) {
+        Realm realm = ReferenceRealm.getInstance();
+        try {
+            return realm.where(Import.class).equalTo("cellId", cellID).count() > 0;
+        } finally {
+            realm.close();
+        }
     }
 
     /**
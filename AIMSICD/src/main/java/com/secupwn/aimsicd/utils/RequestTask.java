@@ -95,8 +95,18 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
     private char mType;
     private int mTimeOut;
 
+    /**
+     * Result of a download whose data could not be imported because another import was running
+     */
+    private static final String IMPORT_IN_PROGRESS = "ImportInProgress";
+
     private AsyncTaskCompleteListener mListener;
 
+    /**
+     * Whether the downloaded data was imported, set by {@link #doInBackground(String...)}
+     */
+    private boolean mImported;
+
     @Inject
     private OkHttpClient okHttpClient;
 
@@ -145,7 +155,7 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
 
                         RequestBody requestBody = new MultipartBuilder()
                                 .type(MultipartBuilder.FORM)
-                                .addFormDataPart("key", CellTracker.OCID_API_KEY)
+                                .addFormDataPart("key", CellTracker.getOcidApiKey())
                                 .addFormDataPart("datafile", "aimsicd-ocid-data.csv", RequestBody.create(MediaType.parse("text/csv"), file))
                                 .build();
 
@@ -255,7 +265,7 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
                         output.flush();
                         output.close();
                     }
-                    return "Successful";
+                    return importDownload();
 
                 } catch (IOException e) {
                     log.warn("Problem reading data from steam", e);
@@ -266,12 +276,27 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
         return null;
     }
 
+    /**
+     * Calls {@link RealmHelper#populateDBeImport()} to populate the {@link com.secupwn.aimsicd.data.model.Import Import}
+     * realm and cleanup bad cells from the downloaded data. Runs here and not in
+     * {@link #onPostExecute(String)} since the import copies the whole reference realm.
+     *
+     * @return "Successful" or {@link #IMPORT_IN_PROGRESS} if the data can't be imported now
+     */
+    private String importDownload() {
+        try {
+            mImported = mDbAdapter.populateDBeImport();
+        } catch (IllegalStateException e) {
+            log.warn("Not importing downloaded OpenCellID data: {}", e.getMessage());
+            return IMPORT_IN_PROGRESS;
+        }
+        return "Successful";
+    }
+
     /**
      * This is where we:
      * <ol>
-     * <li>Check the success for OCID data download</li>
-     * <li>call the updateOpenCellID() to populate the {@link com.secupwn.aimsicd.data.model.Import Import} realm</li>
-     * <li>call the {@link RealmHelper#checkDBe()} to cleanup bad cells from imported data</li>
+     * <li>Check the success for OCID data download and import, see {@link #importDownload()}</li>
      * <li>present a failure/success toast message</li>
      * <li>set a shared preference to indicate that data has been downloaded:
      * {@code ocid_downloaded true}</li>
@@ -282,19 +307,19 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
         super.onPostExecute(result);
         TinyDB tinydb = TinyDB.getInstance();
 
-        @Cleanup Realm realm = Realm.getDefaultInstance();
-
         switch (mType) {
             case DBE_DOWNLOAD_REQUEST:
                 // if `result` is null, it will evaluate to false, no need to check for null
                 if ("Successful".equals(result)) {
 
-                    if (mDbAdapter.populateDBeImport(realm)) {
+                    // populateDBeImport() also ran checkDBe() before the new data was published
+                    if (mImported) {
                         Helpers.msgShort(mAppContext, mAppContext.getString(R.string.opencellid_data_successfully_received));
                     }
 
-                    realm.executeTransaction(mDbAdapter.checkDBe());
                     tinydb.putBoolean("ocid_downloaded", true);
+                } else if (IMPORT_IN_PROGRESS.equals(result)) {
+                    Helpers.msgLong(mAppContext, mAppContext.getString(R.string.reference_import_in_progress));
                 } else if ("Timeout".equals(result)) {
                     Helpers.msgLong(mAppContext, mAppContext.getString(R.string.download_timed_out));
                 } else {
@@ -304,14 +329,15 @@ public class RequestTask extends BaseAsyncTask<String, Integer, String> {
 
             case DBE_DOWNLOAD_REQUEST_FROM_MAP:
                 if ("Successful".equals(result)) {
-                    if (mDbAdapter.populateDBeImport(realm)) {
+                    if (mImported) {
                         Intent intent = new Intent(MapFragment.updateOpenCellIDMarkers);
                         LocalBroadcastManager.getInstance(mAppContext).sendBroadcast(intent);
                         Helpers.msgShort(mAppContext, mAppContext.getString(R.string.opencellid_data_successfully_received_markers_updated));
 
-                        realm.executeTransaction(mDbAdapter.checkDBe());
                         tinydb.putBoolean("ocid_downloaded", true);
                     }
+                } else if (IMPORT_IN_PROGRESS.equals(result)) {
+                    Helpers.msgLong(mAppContext, mAppContext.getString(R.string.reference_import_in_progress));
                 } else if ("Timeout".equals(result)) {
                     Helpers.msgLong(mAppContext, mAppContext.getString(R.string.download_timed_out));
                 } else {
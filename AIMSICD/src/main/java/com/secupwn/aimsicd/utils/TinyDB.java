@@ -17,8 +17,12 @@ package com.secupwn.aimsicd.utils;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
 import java.util.Map;
 
 
@@ -26,6 +30,11 @@ import java.util.Map;
  * This class simplifies calls to SharedPreferences in a line of code.
  * It can also do more like: saving a list of Strings or Integers and Saving images.
  *
+ * Values are cached in memory once read or written. Writes of an unchanged value are
+ * dropped, the others are applied together {@link #FLUSH_DELAY_MS} after the first one,
+ * or on {@link #flush()}. Changes made through other SharedPreferences users invalidate
+ * the cached value.
+ *
  * See: http://stackoverflow.com/questions/5734721/android-shared-preferences
  *      https://github.com/kcochibili/TinyDB--Android-Shared-Preferences-Turbo/
  *
@@ -54,7 +63,36 @@ import java.util.Map;
 */
 public class TinyDB {
 
+    /**
+     * Writes are collected for this long and then applied with one editor
+     */
+    public static final long FLUSH_DELAY_MS = 2000;
+
+    private static final Object REMOVED = new Object();
+    private static final long MINUTE_MS = 60 * 1000;
+
     private SharedPreferences preferences;
+    private Handler handler;
+
+    /**
+     * Values read or written so far, REMOVED for absent keys. Guarded by this
+     */
+    private final Map<String, Object> cache = new HashMap<>();
+
+    /**
+     * Values written but not applied to the preferences yet. Guarded by this
+     */
+    private final Map<String, Object> dirty = new HashMap<>();
+
+    /**
+     * Times of the flushes within the last minute. Guarded by this
+     */
+    private final ArrayDeque<Long> recentFlushes = new ArrayDeque<>();
+
+    private boolean flushScheduled;
+    private long writes;
+    private long unchangedWrites;
+    private long flushes;
 
     //prevent direct initialisation
     private TinyDB() {
@@ -62,44 +100,194 @@ public class TinyDB {
 
     public void init(Context appContext) {
         preferences = PreferenceManager.getDefaultSharedPreferences(appContext);
+        preferences.registerOnSharedPreferenceChangeListener(changeListener);
+        handler = new Handler(Looper.getMainLooper());
     }
 
     public String getString(String key) {
-        return preferences.getString(key, "");
+        return getString(key, "");
+    }
+
+    public synchronized String getString(String key, String defValue) {
+        Object value = cache.get(key);
+        if (value == null) {
+            value = preferences.contains(key) ? preferences.getString(key, defValue) : REMOVED;
+            cache.put(key, value);
+        }
+        return value instanceof String ? (String) value : defValue;
+    }
+
+    public void putString(String key, String value) {
+        write(key, value);
     }
 
     public void putInt(String key, int value) {
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putInt(key, value);
-        editor.apply();
+        write(key, value);
     }
 
     public void putBoolean(String key, boolean value) {
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.putBoolean(key, value);
-        editor.apply();
+        write(key, value);
     }
 
     public boolean getBoolean(String key) {
-        return preferences.getBoolean(key, false);
+        return getBoolean(key, false);
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = cache.get(key);
+        if (value == null) {
+            value = preferences.contains(key) ? preferences.getBoolean(key, defValue) : REMOVED;
+            cache.put(key, value);
+        }
+        return value instanceof Boolean ? (Boolean) value : defValue;
     }
 
     public void remove(String key) {
-        SharedPreferences.Editor editor = preferences.edit();
-        editor.remove(key);
-        editor.apply();
+        write(key, REMOVED);
     }
 
     public void clear() {
+        synchronized (this) {
+            cache.clear();
+            dirty.clear();
+        }
         SharedPreferences.Editor editor = preferences.edit();
         editor.clear();
         editor.apply();
     }
 
     public Map<String, ?> getAll() {
+        flush();
         return preferences.getAll();
     }
 
+    /**
+     * Applies the pending writes now, call when the app may be stopped.
+     */
+    public void flush() {
+        Map<String, Object> batch;
+        synchronized (this) {
+            flushScheduled = false;
+            handler.removeCallbacks(flushTask);
+            if (dirty.isEmpty()) {
+                return;
+            }
+            batch = new HashMap<>(dirty);
+            dirty.clear();
+            flushes++;
+            long now = System.currentTimeMillis();
+            recentFlushes.addLast(now);
+            trimRecentFlushes(now);
+        }
+        SharedPreferences.Editor editor = preferences.edit();
+        for (Map.Entry<String, Object> entry : batch.entrySet()) {
+            Object value = entry.getValue();
+            if (value == REMOVED) {
+                editor.remove(entry.getKey());
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(entry.getKey(), (Boolean) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else {
+                editor.putString(entry.getKey(), (String) value);
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * @return Number of put and remove calls
+     */
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return Number of put and remove calls that didn't change the value and were dropped
+     */
+    public synchronized long getUnchangedWrites() {
+        return unchangedWrites;
+    }
+
+    /**
+     * @return Number of times the preferences file was written
+     */
+    public synchronized long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return Number of times the preferences file was written within the last minute
+     */
+    public synchronized int getFlushesPerMinute() {
+        trimRecentFlushes(System.currentTimeMillis());
+        return recentFlushes.size();
+    }
+
+    private synchronized void write(String key, Object value) {
+        writes++;
+        Object current = cache.get(key);
+        if (value.equals(current) || (current == null && value == REMOVED && !preferences.contains(key))) {
+            unchangedWrites++;
+            return;
+        }
+        cache.put(key, value);
+        dirty.put(key, value);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushTask, FLUSH_DELAY_MS);
+        }
+    }
+
+    private void trimRecentFlushes(long now) {
+        while (!recentFlushes.isEmpty() && now - recentFlushes.peekFirst() > MINUTE_MS) {
+            recentFlushes.removeFirst();
+        }
+    }
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Forgets values changed by other writers of the same file, e.g. the settings screen.
+     * Kept in a field, the preferences only hold the listener weakly.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            synchronized (TinyDB.this) {
+                Object cached = cache.get(key);
+                if (cached != null && !dirty.containsKey(key) && !isStored(sharedPreferences, key, cached)) {
+                    cache.remove(key);
+                }
+            }
+        }
+    };
+
+    /**
+     * @return true if the preferences hold {@code value}, e.g. after our own flush
+     */
+    private static boolean isStored(SharedPreferences preferences, String key, Object value) {
+        if (value == REMOVED) {
+            return !preferences.contains(key);
+        }
+        try {
+            if (value instanceof Boolean) {
+                return preferences.contains(key) && preferences.getBoolean(key, false) == (Boolean) value;
+            } else if (value instanceof Integer) {
+                return preferences.contains(key) && preferences.getInt(key, 0) == (Integer) value;
+            }
+            return value.equals(preferences.getString(key, null));
+        } catch (ClassCastException e) {
+            return false;
+        }
+    }
+
     private static class InstanceHolder {
         private static final TinyDB INSTANCE = new TinyDB();
     }
@@ -108,4 +296,3 @@ public class TinyDB {
         return InstanceHolder.INSTANCE;
     }
 }
-
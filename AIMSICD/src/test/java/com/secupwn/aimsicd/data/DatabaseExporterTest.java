@@ -0,0 +1,75 @@
+package com.secupwn.aimsicd.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the CSV and JSON row writers of {@link DatabaseExporter}, the realm queries are not
+ * available in a JVM test.
+ */
+public class DatabaseExporterTest {
+
+    private static final String[] COLUMNS = {"time", "cellId", "message"};
+    private static final boolean[] RAW = {true, true, false};
+
+    @Test
+    public void testCsv() throws IOException {
+        StringWriter out = new StringWriter();
+        DatabaseExporter.RowWriter writer = DatabaseExporter.open(DatabaseExporter.Format.CSV, out, COLUMNS, RAW);
+        writer.write(new String[]{"1000", "4711", "plain"});
+        writer.write(new String[]{"2000", null, "comma, \"quoted\""});
+        writer.finish();
+
+        assertEquals("\"time\",\"cellId\",\"message\"\n"
+                + "\"1000\",\"4711\",\"plain\"\n"
+                + "\"2000\",,\"comma, \"\"quoted\"\"\"\n", out.toString());
+    }
+
+    @Test
+    public void testJson() throws IOException {
+        StringWriter out = new StringWriter();
+        DatabaseExporter.RowWriter writer = DatabaseExporter.open(DatabaseExporter.Format.JSON, out, COLUMNS, RAW);
+        writer.write(new String[]{"1000", "4711", "line\nbreak \"quoted\" back\\slash \u0001"});
+        writer.write(new String[]{"2000", null, null});
+        writer.finish();
+
+        assertEquals("[\n"
+                + "{\"time\":1000,\"cellId\":4711,\"message\":\"line\\nbreak \\\"quoted\\\" back\\\\slash \\u0001\"},\n"
+                + "{\"time\":2000,\"cellId\":null,\"message\":null}\n"
+                + "]\n", out.toString());
+    }
+
+    @Test
+    public void testEmptyExport() throws IOException {
+        StringWriter csv = new StringWriter();
+        DatabaseExporter.open(DatabaseExporter.Format.CSV, csv, COLUMNS, RAW).finish();
+        assertEquals("\"time\",\"cellId\",\"message\"\n", csv.toString());
+
+        StringWriter json = new StringWriter();
+        DatabaseExporter.open(DatabaseExporter.Format.JSON, json, COLUMNS, RAW).finish();
+        assertEquals("[\n]\n", json.toString());
+    }
+
+    @Test
+    public void testFlushesEveryChunk() throws IOException {
+        final int[] flushes = new int[1];
+        StringWriter out = new StringWriter() {
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        DatabaseExporter.RowWriter writer = DatabaseExporter.open(DatabaseExporter.Format.JSON, out, COLUMNS, RAW);
+        String[] row = {"1", "2", "x"};
+        for (int i = 0; i < 2 * DatabaseExporter.CHUNK_SIZE + 1; i++) {
+            writer.write(row);
+        }
+        assertEquals(2, flushes[0]);
+        writer.finish();
+        assertEquals(3, flushes[0]);
+    }
+}
@@ -0,0 +1,230 @@
+package com.secupwn.aimsicd.service;
+
+import android.content.Context;
+import android.telephony.PhoneStateListener;
+import android.telephony.TelephonyManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Simulates a dual-SIM phone: real {@link SubscriptionTracker}s on top of one
+ * {@link SubscriptionTracker.Shared} report interleaved data callbacks, which are routed
+ * like {@link CellTracker} does. The telephony services are mocks, the detectors don't
+ * analyze data callbacks so no database is needed.
+ */
+public class TwoSimHarnessTest {
+
+    private static final int SIM_1 = 1;
+    private static final int SIM_2 = 2;
+    private static final long TIMEOUT_MS = 5000;
+
+    private final Map<Integer, TelephonyManager> telephonyManagers = new HashMap<>();
+    private final List<SubscriptionTracker> created = new ArrayList<>();
+    private final List<SubscriptionTracker> released = new ArrayList<>();
+    private final BlockingQueue<RadioSnapshot> analyzed = new LinkedBlockingQueue<>();
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    private ScheduledThreadPoolExecutor timerExecutor;
+    private ExecutorService detectorExecutor;
+    private RadioSnapshotBus bus;
+    private SubscriptionTracker.Shared shared;
+    private SubscriptionTracker primary;
+    private SubscriptionRegistry<SubscriptionTracker> secondary;
+
+    @Before
+    public void setUp() {
+        timerExecutor = new ScheduledThreadPoolExecutor(1);
+        detectorExecutor = Executors.newSingleThreadExecutor();
+        bus = new RadioSnapshotBus("test-analyzer");
+        // the database, signal and preference helpers are not used by the data callbacks
+        shared = new SubscriptionTracker.Shared(mock(Context.class), bus, null, null, null, null,
+                detectorExecutor, timerExecutor);
+
+        primary = new SubscriptionTracker(shared, RadioSnapshot.DEFAULT_SUBSCRIPTION,
+                telephonyManager(RadioSnapshot.DEFAULT_SUBSCRIPTION));
+        secondary = new SubscriptionRegistry<>(new SubscriptionRegistry.Factory<SubscriptionTracker>() {
+            @Override
+            public SubscriptionTracker create(int subscriptionId) {
+                SubscriptionTracker tracker = new SubscriptionTracker(shared, subscriptionId,
+                        telephonyManager(subscriptionId));
+                created.add(tracker);
+                return tracker;
+            }
+
+            @Override
+            public void release(SubscriptionTracker tracker) {
+                tracker.stop();
+                released.add(tracker);
+            }
+        });
+
+        bus.subscribe(new RadioSnapshotBus.Subscriber() {
+            @Override
+            public void onSnapshot(RadioSnapshot snapshot) {
+                SubscriptionTracker tracker = secondary.route(snapshot, primary);
+                if (tracker == null) {
+                    dropped.incrementAndGet();
+                } else {
+                    tracker.process(snapshot);
+                }
+                analyzed.add(snapshot);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        bus.shutdown();
+        detectorExecutor.shutdownNow();
+        timerExecutor.shutdownNow();
+    }
+
+    private TelephonyManager telephonyManager(int subscriptionId) {
+        TelephonyManager tm = mock(TelephonyManager.class);
+        telephonyManagers.put(subscriptionId, tm);
+        return tm;
+    }
+
+    /**
+     * Waits until the analysis thread handled the given number of snapshots
+     */
+    private List<RadioSnapshot> awaitAnalyzed(int count) throws InterruptedException {
+        List<RadioSnapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            RadioSnapshot snapshot = analyzed.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("snapshot " + i + " of " + count, snapshot);
+            snapshots.add(snapshot);
+        }
+        return snapshots;
+    }
+
+    @Test
+    public void testSnapshotsReachOnlyTheirSubscription() throws InterruptedException {
+        secondary.update(Arrays.asList(SIM_1, SIM_2));
+        SubscriptionTracker sim1 = secondary.get(SIM_1);
+        SubscriptionTracker sim2 = secondary.get(SIM_2);
+
+        sim1.onCallback(RadioSnapshot.dataActivity(TelephonyManager.DATA_ACTIVITY_IN));
+        sim2.onCallback(RadioSnapshot.dataActivity(TelephonyManager.DATA_ACTIVITY_OUT));
+        sim2.onCallback(RadioSnapshot.dataConnectionState(TelephonyManager.DATA_CONNECTED));
+        primary.onCallback(RadioSnapshot.dataConnectionState(TelephonyManager.DATA_SUSPENDED));
+        awaitAnalyzed(4);
+
+        assertEquals("In", sim1.getDevice().getDataActivityType());
+        assertEquals("Disconnected", sim1.getDevice().getDataState());
+        assertEquals("Out", sim2.getDevice().getDataActivityType());
+        assertEquals("Connected", sim2.getDevice().getDataState());
+        assertEquals("None", primary.getDevice().getDataActivityType());
+        assertEquals("Suspended", primary.getDevice().getDataState());
+    }
+
+    @Test
+    public void testSimsShareOneQueueAndExecutor() throws InterruptedException {
+        secondary.update(Arrays.asList(SIM_1, SIM_2));
+        assertEquals(2, created.size());
+        assertNotSame(created.get(0), created.get(1));
+
+        // a burst on each SIM, interleaved
+        for (int i = 0; i < 100; i++) {
+            secondary.get(i % 3 == 0 ? SIM_2 : SIM_1).onCallback(RadioSnapshot.dataActivity(i % 5));
+        }
+        List<RadioSnapshot> snapshots = awaitAnalyzed(2);
+        assertEquals(SIM_1 + SIM_2, snapshots.get(0).getSubscriptionId() + snapshots.get(1).getSubscriptionId());
+        for (SubscriptionTracker tracker : created) {
+            tracker.updateNeighboringCells();
+        }
+
+        timerExecutor.shutdown();
+        assertTrue(timerExecutor.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        // one window and one neighbor read per SIM, all on the one shared thread
+        assertEquals(4, timerExecutor.getCompletedTaskCount());
+        assertEquals(1, timerExecutor.getLargestPoolSize());
+        // every burst is analyzed once, not once per SIM
+        assertTrue(analyzed.isEmpty());
+        assertEquals(0, bus.getDropped());
+    }
+
+    @Test
+    public void testUnchangedSubscriptionsKeepTheirState() throws InterruptedException {
+        secondary.update(Arrays.asList(SIM_1, SIM_2));
+        SubscriptionTracker sim1 = secondary.get(SIM_1);
+        sim1.onCallback(RadioSnapshot.dataActivity(TelephonyManager.DATA_ACTIVITY_INOUT));
+        awaitAnalyzed(1);
+
+        secondary.update(Arrays.asList(SIM_2, SIM_1));
+
+        assertEquals(2, created.size());
+        assertTrue(released.isEmpty());
+        assertSame(sim1, secondary.get(SIM_1));
+        assertEquals("In-Out", sim1.getDevice().getDataActivityType());
+    }
+
+    @Test
+    public void testRemovedSimIsReleasedAndItsSnapshotsDropped() throws InterruptedException {
+        secondary.update(Arrays.asList(SIM_1, SIM_2));
+        SubscriptionTracker sim2 = secondary.get(SIM_2);
+        sim2.setCellTracking(true);
+
+        secondary.update(Collections.singletonList(SIM_1));
+
+        assertEquals(Collections.singletonList(sim2), released);
+        assertNull(secondary.get(SIM_2));
+        assertFalse(sim2.isTrackingCell());
+        verify(telephonyManagers.get(SIM_2)).listen(any(PhoneStateListener.class), eq(PhoneStateListener.LISTEN_NONE));
+
+        sim2.publish(RadioSnapshot.dataActivity(TelephonyManager.DATA_ACTIVITY_IN));
+        awaitAnalyzed(1);
+        assertEquals(1, dropped.get());
+        assertEquals("None", sim2.getDevice().getDataActivityType());
+
+        // SIM reinserted: starts with fresh state
+        secondary.update(Arrays.asList(SIM_1, SIM_2));
+        assertEquals(3, created.size());
+        assertNotSame(sim2, secondary.get(SIM_2));
+
+        secondary.clear();
+        assertEquals(0, secondary.size());
+        assertTrue(released.contains(created.get(0)));
+    }
+
+    @Test
+    public void testWithSubscriptionKeepsSequenceAndTime() {
+        RadioSnapshot snapshot = RadioSnapshot.dataActivity(TelephonyManager.DATA_ACTIVITY_IN);
+        RadioSnapshot tagged = snapshot.withSubscription(SIM_2);
+
+        assertEquals(RadioSnapshot.DEFAULT_SUBSCRIPTION, snapshot.getSubscriptionId());
+        assertEquals(SIM_2, tagged.getSubscriptionId());
+        assertEquals(snapshot.getSequence(), tagged.getSequence());
+        assertEquals(snapshot.getTime(), tagged.getTime());
+        assertEquals(snapshot.getState(), tagged.getState());
+        assertSame(tagged, tagged.withSubscription(SIM_2));
+    }
+}
@@ -0,0 +1,124 @@
+package com.secupwn.aimsicd.smsdetection;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Checks the matcher against {@link String#contains} on a radio logcat corpus
+ * ({@code src/test/resources/radio_logcat.txt}). The timing comparison is the
+ * {@code DetectionStringMatcherBenchmark} instrumentation test.
+ */
+public class DetectionStringMatcherTest {
+
+    private static final int TYPE0 = 1, MWI = 2, WAP = 3;
+
+    /**
+     * The detectable default strings of {@link com.secupwn.aimsicd.data.DefaultDataTransaction}
+     */
+    private static final String[] STRINGS = {
+            "Received short message type 0",
+            "Received voice mail indicator clear SMS shouldStore=false",
+            "isTypeZero=true",
+            "incoming msg. Mti 0 ProtocolID 0 DCS 0x04 class -1",
+            "SMS TP-PID:0 data coding scheme: 4",
+    };
+    private static final int[] TYPES = {TYPE0, MWI, TYPE0, WAP, WAP};
+
+    private List<String> corpus;
+
+    @Before
+    public void setUp() throws IOException {
+        corpus = new ArrayList<>();
+        InputStream stream = getClass().getClassLoader().getResourceAsStream("radio_logcat.txt");
+        assertNotNull(stream);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                corpus.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMatchesLikeContainsOnCorpus() {
+        DetectionStringMatcher matcher = build(STRINGS, TYPES);
+        int detected = 0;
+        for (String line : corpus) {
+            int expected = naive(STRINGS, TYPES, line);
+            assertEquals(line, expected, matcher.match(line));
+            if (expected != DetectionStringMatcher.NO_MATCH) {
+                detected++;
+            }
+        }
+        assertEquals(5, detected);
+    }
+
+    @Test
+    public void testOverlappingStrings() {
+        String[] strings = {"hers", "he", "his", "she"};
+        int[] values = {1, 2, 3, 4};
+        DetectionStringMatcher matcher = build(strings, values);
+
+        assertEquals(2, matcher.match("usher")); // "she" and "he" end at once, "he" was added first
+        assertEquals(1, matcher.match("ushers"));
+        assertEquals(1, matcher.match("ahishers"));
+        assertEquals(3, matcher.match("this"));
+        assertEquals(DetectionStringMatcher.NO_MATCH, matcher.match("hx s h e"));
+        for (String line : new String[]{"usher", "ushers", "ahishers", "this", "hhhshe", ""}) {
+            assertEquals(line, naive(strings, values, line), matcher.match(line));
+        }
+    }
+
+    @Test
+    public void testNonAsciiAndRepeatedPrefixes() {
+        String[] strings = {"aab", "\u00e4\u00f6\u00fc", "abab"};
+        int[] values = {1, 2, 3};
+        DetectionStringMatcher matcher = build(strings, values);
+
+        assertEquals(1, matcher.match("aaab"));
+        assertEquals(3, matcher.match("ababab"));
+        assertEquals(2, matcher.match("x\u00e4\u00f6\u00fcx"));
+        assertEquals(DetectionStringMatcher.NO_MATCH, matcher.match("\u00e4\u00f6a\u00fc"));
+    }
+
+    @Test
+    public void testWithoutStrings() {
+        DetectionStringMatcher matcher = new DetectionStringMatcher.Builder().add("", TYPE0).build();
+
+        assertEquals(DetectionStringMatcher.NO_MATCH, matcher.match(corpus.get(0)));
+        assertEquals(DetectionStringMatcher.NO_MATCH, matcher.match(""));
+    }
+
+    private static DetectionStringMatcher build(String[] strings, int[] values) {
+        DetectionStringMatcher.Builder builder = new DetectionStringMatcher.Builder();
+        for (int i = 0; i < strings.length; i++) {
+            builder.add(strings[i], values[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The loop {@link SmsDetector} used before
+     */
+    private static int naive(String[] strings, int[] values, String line) {
+        for (int i = 0; i < strings.length; i++) {
+            if (line.contains(strings[i])) {
+                return values[i];
+            }
+        }
+        return DetectionStringMatcher.NO_MATCH;
+    }
+}